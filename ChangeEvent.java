@@ -0,0 +1,105 @@
+/**
+ * A change made to a University, as delivered by a ChangeFeed.
+ *
+ * Events are not created per change: a subscription hands the same instance to its handler for every event, so
+ * an event must be used (or copied with copy()) before the handler returns.
+ */
+public class ChangeEvent {
+
+    public enum Type {
+        STUDENT_ADDED,
+        STUDENT_REMOVED,
+        COURSE_ADDED,
+        COURSE_REMOVED,
+        //getCourse() got getOtherCourse() as a pre-requisite.
+        REQUISITE_ADDED,
+        PREVIOUS_COURSE_ADDED,
+        ENROLLED,
+        //Also recorded for each enrollment ended by removing the student or the course, before the removal.
+        DROPPED,
+        WAITLISTED,
+        //getCourse() has getCapacity() seats.
+        CAPACITY_CHANGED
+    }
+
+    Type type;
+    long sequence;
+    Student student;
+    Course course;
+    Course otherCourse;
+    int capacity;
+
+    ChangeEvent() {
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the position of the event in its feed: 0 for the first change seen by the feed, then 1, 2...
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return the student concerned, null for events about courses only
+     */
+    public Student getStudent() {
+        return student;
+    }
+
+    /**
+     * @return the course concerned, null for STUDENT_ADDED and STUDENT_REMOVED
+     */
+    public Course getCourse() {
+        return course;
+    }
+
+    /**
+     * @return the pre-requisite of a REQUISITE_ADDED event, null otherwise
+     */
+    public Course getOtherCourse() {
+        return otherCourse;
+    }
+
+    /**
+     * @return the new capacity of a CAPACITY_CHANGED event, 0 otherwise
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return an event with the same values that can be kept after the handler returns
+     */
+    public ChangeEvent copy() {
+        ChangeEvent copy = new ChangeEvent();
+        copy.type = type;
+        copy.sequence = sequence;
+        copy.student = student;
+        copy.course = course;
+        copy.otherCourse = otherCourse;
+        copy.capacity = capacity;
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder().append('#').append(sequence).append(' ').append(type);
+        if (student != null) {
+            builder.append(' ').append(student);
+        }
+        if (course != null) {
+            builder.append(' ').append(course);
+        }
+        if (otherCourse != null) {
+            builder.append(" requires ").append(otherCourse);
+        }
+        if (type == Type.CAPACITY_CHANGED) {
+            builder.append(" capacity ").append(capacity);
+        }
+        return builder.toString();
+    }
+}
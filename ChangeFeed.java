@@ -0,0 +1,345 @@
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Feed of the changes made to a University, so downstream systems (billing, LMS provisioning, waitlist
+ * notifications) process what changed instead of polling and diffing rosters.
+ *
+ *     ChangeFeed feed = ChangeFeed.attach(university, 1 << 16);
+ *     ChangeFeed.Subscription subscription = feed.subscribe();
+ *     ...
+ *     subscription.poll(event -> bill(event), 1024);
+ *
+ * The feed listens to the university and writes every change into a ring buffer allocated up front (one slot per
+ * event, a few parallel arrays), so recording a change allocates nothing and takes no lock: the thread making the
+ * change claims a sequence number with one atomic increment and publishes the slot with a volatile write. It never
+ * waits for consumers, so registration is never slowed down by a slow consumer. It never waits for other writers
+ * either, since it records changes while holding the university's locks: if the writer of the lap before is still
+ * in the slot (it was descheduled for a whole lap), the event is counted as lost (see getLostEventCount) and the
+ * subscriptions that reach it are told they overflowed.
+ *
+ * Removing a student or a course also ends the enrollments it had: a DROPPED event is recorded for each of them
+ * before the STUDENT_REMOVED or COURSE_REMOVED event, so consumers keeping class lists need no special case.
+ *
+ * Each subscription reads the ring at its own position, in batches, and sees the changes in the order of their
+ * sequence numbers (changes to the same student or course are numbered in the order they were applied). A
+ * subscription that falls behind by more than the capacity of the ring has lost events: it is told so (see
+ * Subscription.hasOverflowed) and must rebuild its state from the university before skipping ahead. getLag()
+ * tells how far behind a subscription is, so it can be given more threads before that happens.
+ */
+public class ChangeFeed implements UniversityListener {
+    private final University university;
+    private final int capacity;
+    private final int mask;
+
+    //Sequence numbers start at capacity, so slot i initially holds the (never written) sequence i of the lap before.
+    private final AtomicLong next;
+    //published[slot] is the sequence number written in the slot, writing(sequence) while it is being written and
+    //lost(sequence) if the event could not be written (see publish).
+    private final AtomicLongArray published;
+    private final AtomicLong lostEvents = new AtomicLong();
+    private final ChangeEvent.Type[] types;
+    private final Student[] students;
+    private final Course[] courses;
+    private final Course[] otherCourses;
+    private final int[] capacities;
+
+    private ChangeFeed(University university, int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("The capacity must be a power of two: " + capacity);
+        }
+        this.university = university;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        next = new AtomicLong(capacity);
+        published = new AtomicLongArray(capacity);
+        for (int slot = 0; slot < capacity; slot++) {
+            published.set(slot, slot);
+        }
+        types = new ChangeEvent.Type[capacity];
+        students = new Student[capacity];
+        courses = new Course[capacity];
+        otherCourses = new Course[capacity];
+        capacities = new int[capacity];
+    }
+
+    /**
+     * Starts recording the changes made to the university from now on.
+     * @param capacity the number of events kept for the subscriptions, a power of two
+     */
+    public static ChangeFeed attach(University university, int capacity) {
+        ChangeFeed feed = new ChangeFeed(university, capacity);
+        university.addListener(feed);
+        return feed;
+    }
+
+    /**
+     * Stops recording. Subscriptions can still read the events recorded before.
+     */
+    public void detach() {
+        university.removeListener(this);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of events recorded so far
+     */
+    public long getEventCount() {
+        return next.get() - capacity;
+    }
+
+    /**
+     * @return the number of events that could not be written because the writer of the lap before was still in
+     *   their slot. Subscriptions reaching them overflow; a growing count means the ring is too small.
+     */
+    public long getLostEventCount() {
+        return lostEvents.get();
+    }
+
+    /**
+     * @return a subscription that starts with the next change
+     */
+    public Subscription subscribe() {
+        return new Subscription(next.get());
+    }
+
+    /*
+     * Recording
+     */
+
+    private void publish(ChangeEvent.Type type, Student student, Course course, Course otherCourse, int newCapacity) {
+        long sequence = next.getAndIncrement();
+        int slot = (int) (sequence & mask);
+        long previous = sequence - capacity;
+        while (true) {
+            long current = published.get(slot);
+            if (current == previous || current == lost(previous)) {
+                //The event of the lap before is done with: the slot is ours.
+                if (published.compareAndSet(slot, current, writing(sequence))) {
+                    break;
+                }
+            } else if (sequenceIn(current) > sequence) {
+                //A writer of a later lap gave up on the slot, see below.
+                lostEvents.incrementAndGet();
+                return;
+            } else if (published.compareAndSet(slot, current, lost(sequence))) {
+                //A writer a whole lap behind is still in the slot. Waiting for it would hold up the university's
+                //locks, so the event is given up and the readers reaching the slot are told they lost events.
+                lostEvents.incrementAndGet();
+                return;
+            }
+        }
+        types[slot] = type;
+        students[slot] = student;
+        courses[slot] = course;
+        otherCourses[slot] = otherCourse;
+        capacities[slot] = newCapacity;
+        if (!published.compareAndSet(slot, writing(sequence), sequence)) {
+            //A writer a lap ahead gave up on the slot while we were in it, so this event is lost as well.
+            lostEvents.incrementAndGet();
+        }
+    }
+
+    private static long writing(long sequence) {
+        return -(sequence + 1);
+    }
+
+    private static long lost(long sequence) {
+        return Long.MIN_VALUE + sequence;
+    }
+
+    /**
+     * @return the sequence number of the event a value of published is about, whatever its state
+     */
+    private static long sequenceIn(long value) {
+        if (value >= 0) {
+            return value;
+        }
+        //Sequence numbers stay far below 2^62, so the two negative ranges do not meet.
+        return value < Long.MIN_VALUE / 2 ? value - Long.MIN_VALUE : -value - 1;
+    }
+
+    @Override
+    public void studentAdded(Student student) {
+        publish(ChangeEvent.Type.STUDENT_ADDED, student, null, null, 0);
+    }
+
+    @Override
+    public void studentRemoved(Student student) {
+        //The student still lists the courses they were removed from.
+        for (Course course : student.getEnrolledCourses()) {
+            publish(ChangeEvent.Type.DROPPED, student, course, null, 0);
+        }
+        publish(ChangeEvent.Type.STUDENT_REMOVED, student, null, null, 0);
+    }
+
+    @Override
+    public void courseAdded(Course course) {
+        publish(ChangeEvent.Type.COURSE_ADDED, null, course, null, 0);
+    }
+
+    @Override
+    public void courseRemoved(Course course) {
+        //The course still lists the students it was removed from.
+        for (Student student : course.getEnrolledStudents()) {
+            publish(ChangeEvent.Type.DROPPED, student, course, null, 0);
+        }
+        publish(ChangeEvent.Type.COURSE_REMOVED, null, course, null, 0);
+    }
+
+    @Override
+    public void requisiteAdded(Course course, Course preRequisite) {
+        publish(ChangeEvent.Type.REQUISITE_ADDED, null, course, preRequisite, 0);
+    }
+
+    @Override
+    public void previousCourseAdded(Student student, Course course) {
+        publish(ChangeEvent.Type.PREVIOUS_COURSE_ADDED, student, course, null, 0);
+    }
+
+    @Override
+    public void studentEnrolled(Student student, Course course) {
+        publish(ChangeEvent.Type.ENROLLED, student, course, null, 0);
+    }
+
+    @Override
+    public void studentDropped(Student student, Course course) {
+        publish(ChangeEvent.Type.DROPPED, student, course, null, 0);
+    }
+
+    @Override
+    public void studentWaitlisted(Student student, Course course) {
+        publish(ChangeEvent.Type.WAITLISTED, student, course, null, 0);
+    }
+
+    @Override
+    public void capacityChanged(Course course, int capacity) {
+        publish(ChangeEvent.Type.CAPACITY_CHANGED, null, course, null, capacity);
+    }
+
+    /*
+     * Reading
+     */
+
+    /**
+     * Receives the events of a subscription. The event is reused for the next one, see ChangeEvent.
+     */
+    public interface Handler {
+        void accept(ChangeEvent event);
+    }
+
+    /**
+     * A position in the feed. A subscription must be read by one thread at a time.
+     */
+    public class Subscription {
+        private long position;
+        private boolean overflowed;
+        private final ChangeEvent event = new ChangeEvent();
+
+        private Subscription(long position) {
+            this.position = position;
+        }
+
+        /**
+         * Hands the events recorded since the last poll to the handler, oldest first, without waiting.
+         * @param maxEvents the most events to hand over
+         * @return the number of events handed over, 0 if there were none or the subscription overflowed
+         */
+        public int poll(Handler handler, int maxEvents) {
+            int delivered = 0;
+            while (delivered < maxEvents && !overflowed) {
+                long sequence = position;
+                int slot = (int) (sequence & mask);
+                long written = published.get(slot);
+                if (written != sequence) {
+                    //A later lap in the slot means the event was overwritten before we read it, and a lost event
+                    //could not be written at all.
+                    overflowed = sequenceIn(written) > sequence || written == lost(sequence);
+                    break;
+                }
+                event.type = types[slot];
+                event.student = students[slot];
+                event.course = courses[slot];
+                event.otherCourse = otherCourses[slot];
+                event.capacity = capacities[slot];
+                event.sequence = sequence - capacity;
+                //The fields must be read before checking that the slot was not reused meanwhile.
+                VarHandle.loadLoadFence();
+                if (published.get(slot) != sequence) {
+                    overflowed = true;
+                    break;
+                }
+                handler.accept(event);
+                position++;
+                delivered++;
+            }
+            return delivered;
+        }
+
+        /**
+         * Same as poll, but waits up to the timeout for a first event.
+         * @return the number of events handed over, 0 if none came in time or the subscription overflowed
+         */
+        public int poll(Handler handler, int maxEvents, long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            long park = 1_000;
+            while (true) {
+                int delivered = poll(handler, maxEvents);
+                if (delivered > 0 || overflowed) {
+                    return delivered;
+                }
+                long left = deadline - System.nanoTime();
+                if (left <= 0) {
+                    return 0;
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                //Backs off up to a millisecond: writers do not wake readers, so nothing is paid on their side.
+                LockSupport.parkNanos(Math.min(park, left));
+                park = Math.min(park * 2, 1_000_000);
+            }
+        }
+
+        /**
+         * @return true if events were overwritten before this subscription read them. poll delivers nothing more
+         *   until skipToLatest is called.
+         */
+        public boolean hasOverflowed() {
+            return overflowed;
+        }
+
+        /**
+         * Moves past every event recorded so far, e.g. after rebuilding the consumer's state from the university
+         * when the subscription overflowed.
+         * @return the number of events skipped
+         */
+        public long skipToLatest() {
+            long latest = next.get();
+            long skipped = latest - position;
+            position = latest;
+            overflowed = false;
+            return skipped;
+        }
+
+        /**
+         * @return the number of events recorded that this subscription did not read yet
+         */
+        public long getLag() {
+            return next.get() - position;
+        }
+
+        /**
+         * @return the sequence number of the next event this subscription will read (see ChangeEvent.getSequence)
+         */
+        public long getPosition() {
+            return position - capacity;
+        }
+    }
+}
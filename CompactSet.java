@@ -0,0 +1,181 @@
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * Set for the few courses a student is enrolled in or has passed.
+ *
+ * A HashSet costs a HashMap, a table of 16 buckets and a node per element even for 3 elements (about 250 bytes).
+ * Here up to MAX_INLINE elements live in a small array, in the order they were added, and are found with a
+ * linear scan that compares cached hash codes (see Course.hashCode) before calling equals. Past MAX_INLINE elements
+ * the set is promoted to a HashSet, so big sets stay constant time. A promoted set stays promoted.
+ *
+ * The class is not thread-safe. Student instances are protected by the University's locks.
+ */
+public class CompactSet<E> extends AbstractSet<E> implements Serializable {
+    private static final long serialVersionUID = 1L;
+    public static final int MAX_INLINE = 8;
+    private static final Object[] EMPTY = new Object[0];
+
+    //The elements while there are at most MAX_INLINE, null once promoted.
+    private Object[] elements = EMPTY;
+    private int size;
+    private HashSet<E> promoted;
+    private transient int modCount;
+
+    public CompactSet() {
+    }
+
+    @Override
+    public int size() {
+        return promoted != null ? promoted.size() : size;
+    }
+
+    @Override
+    public boolean contains(Object element) {
+        if (promoted != null) {
+            return promoted.contains(element);
+        }
+        return indexOf(element) >= 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean add(E element) {
+        Objects.requireNonNull(element);
+        if (promoted != null) {
+            return promoted.add(element);
+        }
+        if (indexOf(element) >= 0) {
+            return false;
+        }
+        if (size == MAX_INLINE) {
+            promoted = new HashSet<>(MAX_INLINE * 4);
+            for (int i = 0; i < size; i++) {
+                promoted.add((E) elements[i]);
+            }
+            promoted.add(element);
+            elements = null;
+            size = 0;
+            //Iterators over the array must fail, not read the array we just dropped.
+            modCount++;
+            return true;
+        }
+        if (size == elements.length) {
+            elements = Arrays.copyOf(elements, Math.min(MAX_INLINE, Math.max(2, size * 2)));
+        }
+        elements[size++] = element;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object element) {
+        if (promoted != null) {
+            return promoted.remove(element);
+        }
+        int index = indexOf(element);
+        if (index < 0) {
+            return false;
+        }
+        removeAt(index);
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        if (promoted != null) {
+            promoted.clear();
+            return;
+        }
+        Arrays.fill(elements, 0, size, null);
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        if (promoted != null) {
+            return promoted.iterator();
+        }
+        return new Iterator<E>() {
+            private int next;
+            private int last = -1;
+            private int expectedModCount = modCount;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                last = next++;
+                return (E) elements[last];
+            }
+
+            @Override
+            public void remove() {
+                if (last < 0) {
+                    throw new IllegalStateException();
+                }
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                //The elements after the removed one move back by one, so the next one is at its place.
+                removeAt(last);
+                next = last;
+                last = -1;
+                expectedModCount = modCount;
+            }
+        };
+    }
+
+    @Override
+    public Object[] toArray() {
+        return promoted != null ? promoted.toArray() : Arrays.copyOf(elements, size);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T[] toArray(T[] array) {
+        if (promoted != null) {
+            return promoted.toArray(array);
+        }
+        if (array.length < size) {
+            return (T[]) Arrays.copyOf(elements, size, array.getClass());
+        }
+        System.arraycopy(elements, 0, array, 0, size);
+        if (array.length > size) {
+            array[size] = null;
+        }
+        return array;
+    }
+
+    private int indexOf(Object element) {
+        if (element == null) {
+            return -1;
+        }
+        int hash = element.hashCode();
+        for (int i = 0; i < size; i++) {
+            Object candidate = elements[i];
+            if (candidate == element || (candidate.hashCode() == hash && candidate.equals(element))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void removeAt(int index) {
+        //Shifting keeps the order the elements were added in, for at most MAX_INLINE - 1 references.
+        System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+        elements[--size] = null;
+        modCount++;
+    }
+}
@@ -0,0 +1,325 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Detects timetable and exam clashes from the co-enrollment graph of a University: the number of students shared
+ * by every pair of courses.
+ *
+ * The graph is built once when the engine is attached (see attach) and then kept up to date by listening to the
+ * university, so every enrollment, drop or removal only changes the pairs of the student concerned. The counts are
+ * kept in 64 LongIntCounter shards (pairs spread by their key), each guarded by its own monitor, so registrations
+ * in different courses rarely wait for each other.
+ *
+ * With the graph the engine can:
+ *   - tell which courses of a student clash with a course (same meeting time or same exam slot), in O(load);
+ *   - assign exam slots so that no two courses sharing a student have their exams at the same time
+ *     (see scheduleExams).
+ */
+public class ConflictEngine implements UniversityListener {
+    private static final int SHARDS = 64;
+
+    private final University university;
+    private final LongIntCounter[] shards = new LongIntCounter[SHARDS];
+
+    private ConflictEngine(University university) {
+        this.university = university;
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new LongIntCounter(64);
+        }
+    }
+
+    /**
+     * Builds the co-enrollment graph of the university and keeps it up to date from now on.
+     * Changes to the university wait while the graph is built.
+     */
+    public static ConflictEngine attach(University university) {
+        ConflictEngine engine = new ConflictEngine(university);
+        Lock lock = university.catalogWriteLock();
+        lock.lock();
+        try {
+            for (Course course : university.getCoursesView()) {
+                int ordinal = course.getOrdinal();
+                for (Student student : course.getEnrolledStudents()) {
+                    for (Course other : student.getEnrolledCourses()) {
+                        //Each pair is counted from its course with the smaller ordinal only.
+                        if (other.getOrdinal() > ordinal) {
+                            engine.add(ordinal, other.getOrdinal(), 1);
+                        }
+                    }
+                }
+            }
+            university.addListener(engine);
+        } finally {
+            lock.unlock();
+        }
+        return engine;
+    }
+
+    /**
+     * Stops following the university, the graph is no longer up to date.
+     */
+    public void detach() {
+        university.removeListener(this);
+    }
+
+    /*
+     * Keeping the graph up to date
+     */
+
+    @Override
+    public void studentEnrolled(Student student, Course course) {
+        for (Course other : student.getEnrolledCourses()) {
+            if (other != course) {
+                add(course.getOrdinal(), other.getOrdinal(), 1);
+            }
+        }
+    }
+
+    @Override
+    public void studentDropped(Student student, Course course) {
+        for (Course other : student.getEnrolledCourses()) {
+            add(course.getOrdinal(), other.getOrdinal(), -1);
+        }
+    }
+
+    @Override
+    public void studentRemoved(Student student) {
+        Course[] courses = student.getEnrolledCourses().toArray(new Course[0]);
+        for (int i = 0; i < courses.length; i++) {
+            for (int j = i + 1; j < courses.length; j++) {
+                add(courses[i].getOrdinal(), courses[j].getOrdinal(), -1);
+            }
+        }
+    }
+
+    @Override
+    public void courseRemoved(Course course) {
+        //The students no longer list the course, but the course still lists them.
+        for (Student student : course.getEnrolledStudents()) {
+            for (Course other : student.getEnrolledCourses()) {
+                add(course.getOrdinal(), other.getOrdinal(), -1);
+            }
+        }
+    }
+
+    private void add(int first, int second, int delta) {
+        long key = UniversityAnalytics.pairKey(first, second);
+        LongIntCounter shard = shards[shardOf(key)];
+        synchronized (shard) {
+            shard.add(key, delta);
+        }
+    }
+
+    private static int shardOf(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 58);
+    }
+
+    /*
+     * Queries
+     */
+
+    /**
+     * @return the number of students enrolled in both courses
+     */
+    public int getSharedStudents(Course first, Course second) {
+        if (first == second || first.getOrdinal() < 0 || second.getOrdinal() < 0) {
+            return 0;
+        }
+        long key = UniversityAnalytics.pairKey(first.getOrdinal(), second.getOrdinal());
+        LongIntCounter shard = shards[shardOf(key)];
+        synchronized (shard) {
+            return shard.get(key);
+        }
+    }
+
+    /**
+     * @return the number of pairs of courses sharing at least one student
+     */
+    public int getPairCount() {
+        int pairs = 0;
+        for (LongIntCounter shard : shards) {
+            synchronized (shard) {
+                pairs += shard.size();
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * @return the courses the student is enrolled in that meet at the same time as the course, or have their exam in
+     *   the same slot. Empty if the student or the course doesn't exist.
+     */
+    public List<Course> getClashes(int studentID, String courseCode) {
+        Student student = university.getStudent(studentID);
+        Course course = university.getCourse(courseCode);
+        if (student == null || course == null) {
+            return Collections.emptyList();
+        }
+        List<Course> clashes = new ArrayList<>();
+        for (Course other : university.getEnrolledCourses(student)) {
+            if (other != course && clash(course, other)) {
+                clashes.add(other);
+            }
+        }
+        return clashes;
+    }
+
+    /**
+     * @return true if enrolling the student in the course would clash with one of their courses (see getClashes)
+     */
+    public boolean wouldClash(int studentID, String courseCode) {
+        Student student = university.getStudent(studentID);
+        Course course = university.getCourse(courseCode);
+        if (student == null || course == null) {
+            return false;
+        }
+        for (Course other : university.getEnrolledCourses(student)) {
+            if (other != course && clash(course, other)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean clash(Course course, Course other) {
+        int examSlot = course.getExamSlot();
+        return (examSlot != Course.NO_EXAM_SLOT && examSlot == other.getExamSlot()) || course.meetsAtSameTime(other);
+    }
+
+    /*
+     * Exam scheduling
+     */
+
+    /**
+     * Exam slots for every course of the university, numbered from 0.
+     */
+    public static class ExamSchedule {
+        private final Course[] coursesByOrdinal;
+        private final int[] slots;
+        private final int slotCount;
+
+        ExamSchedule(Course[] coursesByOrdinal, int[] slots, int slotCount) {
+            this.coursesByOrdinal = coursesByOrdinal;
+            this.slots = slots;
+            this.slotCount = slotCount;
+        }
+
+        /**
+         * @return the slot of the course, or Course.NO_EXAM_SLOT if it was not scheduled
+         */
+        public int getSlot(Course course) {
+            int ordinal = course.getOrdinal();
+            return ordinal >= 0 && ordinal < slots.length && coursesByOrdinal[ordinal] == course ? slots[ordinal] : Course.NO_EXAM_SLOT;
+        }
+
+        public int getSlotCount() {
+            return slotCount;
+        }
+
+        /**
+         * @return the courses having their exam in the slot
+         */
+        public List<Course> getCourses(int slot) {
+            List<Course> courses = new ArrayList<>();
+            for (int ordinal = 0; ordinal < slots.length; ordinal++) {
+                if (slots[ordinal] == slot && coursesByOrdinal[ordinal] != null) {
+                    courses.add(coursesByOrdinal[ordinal]);
+                }
+            }
+            return courses;
+        }
+
+        /**
+         * Sets the exam slot of every scheduled course (see Course.setExamSlot).
+         */
+        public void apply() {
+            for (int ordinal = 0; ordinal < slots.length; ordinal++) {
+                if (coursesByOrdinal[ordinal] != null) {
+                    coursesByOrdinal[ordinal].setExamSlot(slots[ordinal]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Assigns an exam slot to every course so that no two courses sharing a student have the same slot, using as few
+     * slots as the greedy Welsh-Powell colouring finds: courses sharing students with the most other courses pick
+     * first, each one the smallest slot none of its neighbours has.
+     *
+     * Changes to the university only wait while the graph is copied, not while the slots are chosen. The courses are
+     * not changed, see ExamSchedule.apply.
+     */
+    public ExamSchedule scheduleExams() {
+        Course[] coursesByOrdinal;
+        int[] offsets;
+        int[] neighbours;
+        Lock lock = university.catalogWriteLock();
+        lock.lock();
+        try {
+            coursesByOrdinal = university.getCoursesByOrdinal();
+            int courses = coursesByOrdinal.length;
+            //Adjacency lists in one array (compressed sparse rows): the neighbours of c are
+            //neighbours[offsets[c]] to neighbours[offsets[c + 1] - 1].
+            offsets = new int[courses + 1];
+            for (LongIntCounter shard : shards) {
+                shard.forEach((key, count) -> {
+                    offsets[(int) (key >>> 32) + 1]++;
+                    offsets[(int) key + 1]++;
+                });
+            }
+            for (int c = 0; c < courses; c++) {
+                offsets[c + 1] += offsets[c];
+            }
+            neighbours = new int[offsets[courses]];
+            int[] next = Arrays.copyOf(offsets, courses);
+            for (LongIntCounter shard : shards) {
+                shard.forEach((key, count) -> {
+                    int first = (int) (key >>> 32);
+                    int second = (int) key;
+                    neighbours[next[first]++] = second;
+                    neighbours[next[second]++] = first;
+                });
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        int courses = coursesByOrdinal.length;
+        //Most neighbours first: the degree is packed above the ordinal so one sort of longs orders both.
+        long[] order = new long[courses];
+        for (int c = 0; c < courses; c++) {
+            int degree = offsets[c + 1] - offsets[c];
+            order[c] = ((long) (Integer.MAX_VALUE - degree) << 32) | c;
+        }
+        Arrays.sort(order);
+
+        int[] slots = new int[courses];
+        Arrays.fill(slots, Course.NO_EXAM_SLOT);
+        //taken[slot] == c + 1 while choosing the slot of c if a neighbour of c has the slot.
+        int[] taken = new int[courses + 1];
+        int slotCount = 0;
+        for (long packed : order) {
+            int c = (int) packed;
+            if (coursesByOrdinal[c] == null) {
+                continue;
+            }
+            for (int i = offsets[c]; i < offsets[c + 1]; i++) {
+                int slot = slots[neighbours[i]];
+                if (slot != Course.NO_EXAM_SLOT) {
+                    taken[slot] = c + 1;
+                }
+            }
+            int slot = 0;
+            while (taken[slot] == c + 1) {
+                slot++;
+            }
+            slots[c] = slot;
+            slotCount = Math.max(slotCount, slot + 1);
+        }
+        return new ExamSchedule(coursesByOrdinal, slots, slotCount);
+    }
+}
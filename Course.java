@@ -1,62 +1,406 @@
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Class used to represents Courses in a University
  * Courses have a List of Students who are currently enrolled and a List of pre-requisites courses.
+ * Courses may have a limited number of seats. When the course is full, students can wait for a seat in a
+ *   first-come first-served waitlist. Each student also knows the waitlists they are on (see
+ *   Student.getWaitlistedCourses), which the waitlist methods keep up to date.
+ *   The waitlist only changes through the University (e.g. University.addStudentToWaitlist), which holds the
+ *   course's lock around each change, so the queue, the set of waiting students and the students' own lists
+ *   always change together.
+ * The University gives each course a dense ordinal number, used to keep sets of courses as bits (OrdinalSet).
+ *   Each course keeps the bits of its direct pre-requisites and of all its pre-requisites (transitively).
  *
  * The class implements the Serializable interface so we can save objects from it to a File.
  */
 public class Course implements Serializable {
+    //Capacity of courses that do not limit the number of seats.
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+    //Exam slot of a course whose exam was not scheduled yet.
+    public static final int NO_EXAM_SLOT = -1;
+
     private String name;
     private List<Course> preRequisites;
-    private List<Student> enrolledStudents;
+    private List<Course> preRequisitesView;
+    //Reverse of preRequisites: the courses that have this course as a direct pre-requisite.
+    private Roster<Course> dependentCourses;
+    private List<Course> dependentCoursesView;
+    private Roster<Student> enrolledStudents;
+    //Read-only view handed to callers, so the roster is only changed through the Course methods.
+    private List<Student> enrolledStudentsView;
     private String courseCode;
+    //Hash of the course code, kept so sets of courses (see CompactSet) compare it before calling equals.
+    private final int hash;
+
+    private volatile int capacity;
+    //Seats are claimed with compare-and-set, so claiming a seat never needs a lock.
+    private final AtomicInteger seatsTaken = new AtomicInteger();
+    private final ConcurrentLinkedQueue<Student> waitlist = new ConcurrentLinkedQueue<>();
+    //Students currently on the waitlist, so we do not have to scan the queue to find duplicates.
+    private final Set<Student> waiting = ConcurrentHashMap.newKeySet();
+
+    //Weekly meeting times (immutable list, replaced as a whole) and exam slot (-1 until exams are scheduled).
+    private volatile List<TimeSlot> meetingTimes = Collections.emptyList();
+    private volatile int examSlot = NO_EXAM_SLOT;
+
+    //"CODE - name", built once because the code and name never change (see toString).
+    private transient String header;
+
+    //Position of the course in its University's catalog, -1 until the course is added to a University.
+    private int ordinal = -1;
+    //Maintained by the University, which changes them only while holding its catalog lock exclusively.
+    private final OrdinalSet directPreRequisites = new OrdinalSet();
+    private final OrdinalSet allPreRequisites = new OrdinalSet();
+    //Counts the changes to the pre-requisites, so cached course information can tell it is stale (see QueryCache).
+    private transient volatile int version;
 
     /**
      * Creates a new Course object.
      * Considering that students are frequently registering and registering from courses,
      *    what is the ideal List implementation?
+     * Neither ArrayList nor LinkedList: both need a linear scan to find the student being removed.
+     *    The Roster keeps the class list order and adds, removes and finds students in constant time.
      *
      * @param name the name of the course (e.g: Intro to CS)
      * @param courseCode the course's  code (e.g: CSCI 1105)
      */
     public Course(String name, String courseCode) {
+        this(name, courseCode, UNLIMITED);
+    }
+
+    /**
+     * Creates a new Course object with a limited number of seats.
+     *
+     * @param name the name of the course (e.g: Intro to CS)
+     * @param courseCode the course's  code (e.g: CSCI 1105)
+     * @param capacity the maximum number of enrolled students
+     */
+    public Course(String name, String courseCode, int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity cannot be negative: " + capacity);
+        }
         this.name = name;
         this.courseCode = courseCode;
+        this.hash = Objects.hashCode(courseCode);
+        this.capacity = capacity;
         preRequisites = new ArrayList<>();
-        enrolledStudents = new LinkedList<>();
+        preRequisitesView = Collections.unmodifiableList(preRequisites);
+        dependentCourses = new Roster<>();
+        dependentCoursesView = Collections.unmodifiableList(dependentCourses);
+        enrolledStudents = new Roster<>();
+        enrolledStudentsView = Collections.unmodifiableList(enrolledStudents);
     }
 
     public String getCourseCode() {
         return courseCode;
     }
 
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return a read-only view of the direct pre-requisites. Use University.addRequisiteToCourse to add one.
+     */
     public List<Course> getPreRequisites() {
-        return preRequisites;
+        return preRequisitesView;
+    }
+
+    /**
+     * @return a read-only view of the courses that have this course as a direct pre-requisite
+     */
+    public List<Course> getDependentCourses() {
+        return dependentCoursesView;
+    }
+
+    //Both directions are always changed together, so the reverse index never disagrees with preRequisites.
+    void addPreRequisite(Course course) {
+        preRequisites.add(course);
+        directPreRequisites.add(course.ordinal);
+        course.dependentCourses.add(this);
+        version++;
+    }
+
+    boolean removePreRequisite(Course course) {
+        if (!preRequisites.remove(course)) {
+            return false;
+        }
+        directPreRequisites.remove(course.ordinal);
+        course.dependentCourses.remove(this);
+        version++;
+        return true;
     }
 
-    public List<Student> getEnrolledStudents() { return enrolledStudents;}
+    /**
+     * @return a number that changes every time the course's pre-requisites change
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the ordinal of the course in its University, or -1 if it was not added to a University
+     */
+    public int getOrdinal() {
+        return ordinal;
+    }
+
+    void setOrdinal(int ordinal) {
+        this.ordinal = ordinal;
+    }
 
-    public void addStudentToCourse(Student student){
+    /**
+     * The bits of the direct pre-requisites. Must not be changed by the caller.
+     */
+    OrdinalSet getDirectPreRequisiteBits() {
+        return directPreRequisites;
+    }
+
+    /**
+     * The bits of every pre-requisite, including the pre-requisites of the pre-requisites and so on.
+     * Only the University changes them.
+     */
+    OrdinalSet getAllPreRequisiteBits() {
+        return allPreRequisites;
+    }
+
+    /**
+     * @return a read-only view of the students enrolled in the course, in the order they enrolled
+     */
+    public List<Student> getEnrolledStudents() { return enrolledStudentsView;}
+
+    /**
+     * Adds a student to the list of enrolled students. Only the University calls this, together with
+     * Student.enrollInCourse and under the locks of both, so the two sides never disagree.
+     */
+    void addStudentToCourse(Student student){
         enrolledStudents.add(student);
     }
 
+    /**
+     * Removes a student from the list of enrolled students. Only the University calls this, see addStudentToCourse.
+     * @param student the student to be removed
+     * @return true if the student was enrolled in the course
+     */
+    boolean removeStudentFromCourse(Student student){
+        return enrolledStudents.remove(student);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Changes the number of seats of the course. Students that are already enrolled are kept even if the new
+     * capacity is smaller than the number of enrolled students.
+     * Use University.setCourseCapacity to also move waitlisted students into the new seats.
+     *
+     * @param capacity the maximum number of enrolled students
+     */
+    public void setCapacity(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity cannot be negative: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    public int getSeatsTaken() {
+        return seatsTaken.get();
+    }
+
+    public int getAvailableSeats() {
+        return Math.max(0, capacity - seatsTaken.get());
+    }
+
+    /**
+     * Claims one seat of the course.
+     * @return true if a seat was claimed, false if the course is full
+     */
+    public boolean tryClaimSeat() {
+        while (true) {
+            int taken = seatsTaken.get();
+            if (taken >= capacity) {
+                return false;
+            }
+            if (seatsTaken.compareAndSet(taken, taken + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Claims up to the given number of seats of the course with one update, for a caller enrolling several
+     * students at once.
+     * @return the number of seats claimed, 0 if the course is full
+     */
+    public int tryClaimSeats(int wanted) {
+        while (true) {
+            int taken = seatsTaken.get();
+            int claimed = Math.min(wanted, capacity - taken);
+            if (claimed <= 0) {
+                return 0;
+            }
+            if (seatsTaken.compareAndSet(taken, taken + claimed)) {
+                return claimed;
+            }
+        }
+    }
+
+    /**
+     * Gives back a seat claimed with tryClaimSeat.
+     */
+    public void releaseSeat() {
+        seatsTaken.decrementAndGet();
+    }
+
+    /**
+     * Adds a student to the end of the waitlist. Students cannot be on the waitlist twice.
+     * The caller holds the course's lock in its University.
+     * @param student the student waiting for a seat
+     * @return true if the student was added to the waitlist
+     */
+    boolean addToWaitlist(Student student) {
+        if (!waiting.add(student)) {
+            return false;
+        }
+        student.waitlistedFor(this);
+        return waitlist.offer(student);
+    }
+
+    /**
+     * Removes and returns the student at the head of the waitlist.
+     * The caller holds the course's lock in its University.
+     * @return the student waiting for the longest time, or null if nobody is waiting
+     */
+    Student pollWaitlist() {
+        Student student = waitlist.poll();
+        if (student != null) {
+            waiting.remove(student);
+            student.leftWaitlist(this);
+        }
+        return student;
+    }
+
+    /**
+     * @return the student waiting for the longest time, left on the waitlist, or null if nobody is waiting
+     */
+    public Student peekWaitlist() {
+        return waitlist.peek();
+    }
+
+    /**
+     * Removes a student from the waitlist. The caller holds the course's lock in its University.
+     * @return true if the student was on the waitlist
+     */
+    boolean removeFromWaitlist(Student student) {
+        if (!waiting.remove(student)) {
+            return false;
+        }
+        student.leftWaitlist(this);
+        return waitlist.remove(student);
+    }
+
+    /**
+     * @return the weekly meeting times of the course (read-only, empty if none were set)
+     */
+    public List<TimeSlot> getMeetingTimes() {
+        return meetingTimes;
+    }
+
+    public void setMeetingTimes(TimeSlot... meetingTimes) {
+        this.meetingTimes = List.of(meetingTimes);
+    }
+
+    /**
+     * @return true if a meeting of this course overlaps a meeting of the other course
+     */
+    public boolean meetsAtSameTime(Course other) {
+        for (TimeSlot slot : meetingTimes) {
+            for (TimeSlot otherSlot : other.meetingTimes) {
+                if (slot.overlaps(otherSlot)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the exam slot of the course (see ConflictEngine.scheduleExams), or NO_EXAM_SLOT
+     */
+    public int getExamSlot() {
+        return examSlot;
+    }
+
+    public void setExamSlot(int examSlot) {
+        if (examSlot < NO_EXAM_SLOT) {
+            throw new IllegalArgumentException("Invalid exam slot: " + examSlot);
+        }
+        this.examSlot = examSlot;
+    }
+
+    public boolean isWaitlistEmpty() {
+        return waitlist.isEmpty();
+    }
+
+    /**
+     * @return the number of students on the waitlist, without walking the queue
+     */
+    public int getWaitlistSize() {
+        return waiting.size();
+    }
+
+    /**
+     * @return a read-only view of the waitlist, in the order students will get a seat
+     */
+    public Collection<Student> getWaitlist() {
+        return Collections.unmodifiableCollection(waitlist);
+    }
+
+    public boolean isOnWaitlist(Student student) {
+        return waiting.contains(student);
+    }
+
+    /**
+     * Empties the waitlist, when the course leaves its University.
+     */
+    void clearWaitlist() {
+        for (Student student : waitlist) {
+            student.leftWaitlist(this);
+        }
+        waitlist.clear();
+        waiting.clear();
+    }
+
     public String getFullCourseInfo(){
         StringBuilder builder = new StringBuilder();
-        builder.append(String.format("%s - %s Pre-Requisites: ", courseCode, name));
-        for (Course c : preRequisites){
-            builder.append(c);
-        }
+        appendFullCourseInfo(builder);
         return builder.toString();
     }
 
+    /**
+     * Appends the text of getFullCourseInfo to the builder. ReportWriter uses it to reuse a single builder.
+     */
+    void appendFullCourseInfo(StringBuilder builder) {
+        builder.append(toString()).append(" Pre-Requisites: ");
+        for (int i = 0; i < preRequisites.size(); i++) {
+            builder.append(preRequisites.get(i).toString());
+        }
+    }
+
     @Override
     public int hashCode() {
-        return Objects.hashCode(courseCode);
+        return hash;
     }
 
     @Override
@@ -70,6 +414,12 @@ public class Course implements Serializable {
 
     @Override
     public String toString() {
-        return String.format("%s - %s", courseCode, name);
+        //Built on the first call, see Student.toString.
+        String header = this.header;
+        if (header == null) {
+            header = courseCode + " - " + name;
+            this.header = header;
+        }
+        return header;
     }
 }
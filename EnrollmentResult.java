@@ -0,0 +1,12 @@
+/**
+ * Outcome of an enrollment (see University.enroll), one value per reason enrollStudentInCourse returns false.
+ */
+public enum EnrollmentResult {
+    ENROLLED,
+    UNKNOWN_STUDENT,
+    UNKNOWN_COURSE,
+    //The course has no seat left for a student who could otherwise take it.
+    COURSE_FULL,
+    ALREADY_ENROLLED,
+    MISSING_PREREQUISITES
+}
@@ -0,0 +1,479 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Micro-benchmarks of the University hot paths, in the spirit of JMH but with no dependencies, so they run
+ * wherever the project compiles:
+ *
+ *     javac *.java && java HotPathBenchmark [name...]
+ *
+ * Every benchmark runs a few warmup iterations (so the JIT compiles the code) and then measured iterations.
+ * For each it reports the time per operation (mean and standard deviation over the measured iterations) and the
+ * bytes allocated per operation by the measuring thread, the same number as JMH's gc.alloc.rate.norm.
+ * Work needed to get an iteration ready (e.g. adding back the students removed by the previous one) is done
+ * before the clock starts and is not counted.
+ *
+ * The synthetic university can be scaled with system properties:
+ *   -Dstudents=20000     number of students
+ *   -Dcourses=500        number of courses
+ *   -Ddepth=3            length of the pre-requisite chains (1 means no pre-requisites)
+ *   -Denrollments=5      courses each student is enrolled in
+ *   -Dwarmup=3 -Diterations=5   number of warmup and measured iterations
+ *
+ * Names given on the command line select the benchmarks whose name contains one of them.
+ */
+public class HotPathBenchmark {
+    private static final int STUDENTS = Integer.getInteger("students", 20_000);
+    private static final int COURSES = Integer.getInteger("courses", 500);
+    private static final int DEPTH = Math.max(1, Integer.getInteger("depth", 3));
+    private static final int ENROLLMENTS = Integer.getInteger("enrollments", 5);
+    private static final int WARMUP = Integer.getInteger("warmup", 3);
+    private static final int ITERATIONS = Math.max(1, Integer.getInteger("iterations", 5));
+
+    //Results of benchmarks written here, so the JIT cannot drop the work that computed them.
+    static volatile long sink;
+
+    //Allocated bytes are only counted by the HotSpot version of the bean.
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * One benchmark. setup() runs before every iteration and is not measured, run() is.
+     */
+    private abstract static class HotPath {
+        final String name;
+
+        HotPath(String name) {
+            this.name = name;
+        }
+
+        void setup() throws Exception {
+        }
+
+        /**
+         * @return the number of operations done
+         */
+        abstract int run() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.out.printf("University: %,d students, %,d courses, pre-requisite chains of %d, %d enrollments per student%n",
+                STUDENTS, COURSES, DEPTH, ENROLLMENTS);
+        System.out.printf("%d warmup and %d measured iterations%n%n", WARMUP, ITERATIONS);
+        System.out.printf("%-30s %16s %14s %14s%n", "benchmark", "ns/op", "error", "B/op");
+        for (HotPath hotPath : hotPaths()) {
+            if (args.length == 0 || Arrays.stream(args).anyMatch(hotPath.name::contains)) {
+                measure(hotPath);
+            }
+        }
+    }
+
+    private static void measure(HotPath hotPath) throws Exception {
+        double[] nanosPerOp = new double[ITERATIONS];
+        double allocated = 0;
+        for (int iteration = -WARMUP; iteration < ITERATIONS; iteration++) {
+            hotPath.setup();
+            long bytes = THREADS.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            int operations = hotPath.run();
+            long elapsed = System.nanoTime() - start;
+            bytes = THREADS.getCurrentThreadAllocatedBytes() - bytes;
+            if (iteration >= 0) {
+                nanosPerOp[iteration] = elapsed / (double) operations;
+                allocated += bytes / (double) operations;
+            }
+        }
+        double mean = Arrays.stream(nanosPerOp).average().orElse(0);
+        double variance = Arrays.stream(nanosPerOp).map(x -> (x - mean) * (x - mean)).sum() / Math.max(1, ITERATIONS - 1);
+        System.out.printf("%-30s %,16.1f %14s %,14.1f%n", hotPath.name, mean,
+                String.format("+- %.1f", Math.sqrt(variance)), allocated / ITERATIONS);
+    }
+
+    /*
+     * The benchmarks
+     */
+
+    private static List<HotPath> hotPaths() {
+        List<HotPath> hotPaths = new ArrayList<>();
+        final int operations = 100_000;
+
+        hotPaths.add(new HotPath("enrollStudentInCourse") {
+            University university;
+            Enrollments pairs;
+
+            @Override
+            void setup() {
+                university = syntheticUniversity(new Random(1));
+                pairs = eligiblePairs(university, new Random(2), operations);
+            }
+
+            @Override
+            int run() {
+                for (int i = 0; i < pairs.size; i++) {
+                    university.enrollStudentInCourse(pairs.studentIDs[i], pairs.courseCodes[i]);
+                }
+                return pairs.size;
+            }
+        });
+
+        hotPaths.add(new HotPath("enrollStudentInCourse+metrics") {
+            University university;
+            Enrollments pairs;
+
+            @Override
+            void setup() {
+                university = syntheticUniversity(new Random(1));
+                UniversityMetrics.attach(university);
+                pairs = eligiblePairs(university, new Random(2), operations);
+            }
+
+            @Override
+            int run() {
+                for (int i = 0; i < pairs.size; i++) {
+                    university.enrollStudentInCourse(pairs.studentIDs[i], pairs.courseCodes[i]);
+                }
+                return pairs.size;
+            }
+        });
+
+        hotPaths.add(new HotPath("removeStudentFromCourse") {
+            University university;
+            Enrollments pairs;
+
+            @Override
+            void setup() {
+                university = syntheticUniversity(new Random(1));
+                pairs = enrolledPairs(university, new Random(3), operations);
+            }
+
+            @Override
+            int run() {
+                for (int i = 0; i < pairs.size; i++) {
+                    university.removeStudentFromCourse(pairs.studentIDs[i], pairs.courseCodes[i]);
+                }
+                return pairs.size;
+            }
+        });
+
+        hotPaths.add(new HotPath("removeStudentFromUniversity") {
+            University university;
+
+            @Override
+            void setup() {
+                university = syntheticUniversity(new Random(1));
+            }
+
+            @Override
+            int run() {
+                int removed = STUDENTS / 2;
+                for (int i = 0; i < removed; i++) {
+                    university.removeStudentFromUniversity(i * 2);
+                }
+                return removed;
+            }
+        });
+
+        hotPaths.add(new HotPath("removeCourseFromUniversity") {
+            University university;
+
+            @Override
+            void setup() {
+                university = syntheticUniversity(new Random(1));
+            }
+
+            @Override
+            int run() {
+                //The first course of every chain, so its dependents are changed as well.
+                int removed = 0;
+                for (int i = 0; i < COURSES; i += DEPTH) {
+                    university.removeCourseFromUniversity(courseCode(i));
+                    removed++;
+                }
+                return removed;
+            }
+        });
+
+        University shared = syntheticUniversity(new Random(1));
+
+        hotPaths.add(new HotPath("getStudents") {
+            @Override
+            int run() {
+                int calls = Math.max(10, 10_000_000 / STUDENTS);
+                for (int i = 0; i < calls; i++) {
+                    shared.getStudents();
+                }
+                return calls;
+            }
+        });
+
+        hotPaths.add(new HotPath("getCourses") {
+            @Override
+            int run() {
+                int calls = Math.max(10, 10_000_000 / COURSES);
+                for (int i = 0; i < calls; i++) {
+                    shared.getCourses();
+                }
+                return calls;
+            }
+        });
+
+        hotPaths.add(new HotPath("getStudentsView iteration") {
+            @Override
+            int run() {
+                int calls = Math.max(10, 10_000_000 / STUDENTS);
+                long enrollments = 0;
+                for (int i = 0; i < calls; i++) {
+                    for (Student student : shared.getStudentsView()) {
+                        enrollments += student.getEnrolledCourses().size();
+                    }
+                }
+                sink = enrollments;
+                return calls;
+            }
+        });
+
+        hotPaths.add(new HotPath("getStudents(offset, 50)") {
+            final Random random = new Random(5);
+
+            @Override
+            int run() {
+                for (int i = 0; i < operations; i++) {
+                    shared.getStudents(random.nextInt(STUDENTS), 50);
+                }
+                return operations;
+            }
+        });
+
+        hotPaths.add(new HotPath("getFullStudentInfo") {
+            final Random random = new Random(4);
+
+            @Override
+            int run() {
+                for (int i = 0; i < operations; i++) {
+                    shared.getStudent(random.nextInt(STUDENTS)).getFullStudentInfo();
+                }
+                return operations;
+            }
+        });
+
+        //The portal keeps asking about the same few thousand students. The second university has no query cache.
+        University uncached = syntheticUniversity(new Random(1));
+        uncached.getQueryCache().setMaxWeight(0);
+        for (University university : Arrays.asList(shared, uncached)) {
+            String suffix = university == shared ? "" : " uncached";
+
+            hotPaths.add(new HotPath("getEligibleCourses" + suffix) {
+                final Random random = new Random(6);
+
+                @Override
+                int run() {
+                    int activeStudents = Math.min(STUDENTS, 2_000);
+                    long eligible = 0;
+                    for (int i = 0; i < operations; i++) {
+                        eligible += university.getEligibleCourses(random.nextInt(activeStudents)).size();
+                    }
+                    sink = eligible;
+                    return operations;
+                }
+            });
+
+            hotPaths.add(new HotPath("getFullCourseInfo(code)" + suffix) {
+                final Random random = new Random(7);
+                String[] codes;
+
+                @Override
+                void setup() {
+                    codes = new String[COURSES];
+                    for (int i = 0; i < COURSES; i++) {
+                        codes[i] = courseCode(i);
+                    }
+                }
+
+                @Override
+                int run() {
+                    long length = 0;
+                    for (int i = 0; i < operations; i++) {
+                        length += university.getFullCourseInfo(codes[random.nextInt(COURSES)]).length();
+                    }
+                    sink = length;
+                    return operations;
+                }
+            });
+        }
+
+        hotPaths.add(new HotPath("ReportWriter.writeStudent") {
+            final Random random = new Random(4);
+            final ReportWriter report = new ReportWriter(Writer.nullWriter());
+
+            @Override
+            int run() throws IOException {
+                for (int i = 0; i < operations; i++) {
+                    report.writeStudent(shared.getStudent(random.nextInt(STUDENTS)));
+                }
+                return operations;
+            }
+        });
+
+        hotPaths.add(new HotPath("ReportWriter.writeClassList") {
+            final ReportWriter report = new ReportWriter(Writer.nullWriter());
+
+            @Override
+            int run() throws IOException {
+                //One operation per line written.
+                int lines = 0;
+                for (Course course : shared.getCourses()) {
+                    report.writeClassList(course);
+                    lines += 1 + course.getEnrolledStudents().size();
+                }
+                return lines;
+            }
+        });
+
+        hotPaths.add(new HotPath("UniversitySnapshot round trip") {
+            Path file;
+
+            @Override
+            void setup() throws IOException {
+                file = Files.createTempFile("university", ".snapshot");
+                file.toFile().deleteOnExit();
+            }
+
+            @Override
+            int run() throws IOException {
+                try {
+                    UniversitySnapshot.write(shared, file);
+                    UniversitySnapshot.read(file);
+                } finally {
+                    Files.delete(file);
+                }
+                return 1;
+            }
+        });
+
+        hotPaths.add(new HotPath("Java serialization write") {
+            @Override
+            int run() throws InterruptedException {
+                //Reading back is not measured: it cannot always rebuild the cyclic student/course graph.
+                //Serialization recurses through the whole graph, so it needs a thread with a big stack.
+                //Its allocations are not counted, they happen on that thread.
+                Thread writer = new Thread(null, () -> {
+                    try (ObjectOutputStream output = new ObjectOutputStream(new ByteArrayOutputStream())) {
+                        output.writeObject(shared.getStudents());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, "serialization", 1L << 30);
+                writer.start();
+                writer.join();
+                return 1;
+            }
+        });
+        return hotPaths;
+    }
+
+    /*
+     * Synthetic data
+     */
+
+    /**
+     * Creates the university described by the system properties. Courses form pre-requisite chains of DEPTH courses,
+     * students have passed every course before a random point of a few chains and are enrolled in courses they have
+     * the pre-requisites for.
+     */
+    private static University syntheticUniversity(Random random) {
+        University university = new University("Benchmark University", "Measure twice", STUDENTS, COURSES);
+        for (int i = 0; i < COURSES; i++) {
+            university.addCourse("Course " + i, courseCode(i));
+            if (i % DEPTH != 0) {
+                university.addRequisiteToCourse(courseCode(i), courseCode(i - 1));
+            }
+        }
+        for (int i = 0; i < STUDENTS; i++) {
+            university.addStudent("Student " + i, i);
+            for (int chain = 0; chain < 3; chain++) {
+                int course = random.nextInt(COURSES);
+                for (int passed = course - course % DEPTH; passed < course; passed++) {
+                    university.addPreviousCourseToStudent(i, courseCode(passed));
+                }
+            }
+            for (int attempt = 0; attempt < ENROLLMENTS * 4
+                    && university.getStudent(i).getEnrolledCourses().size() < ENROLLMENTS; attempt++) {
+                university.enrollStudentInCourse(i, courseCode(random.nextInt(COURSES)));
+            }
+        }
+        return university;
+    }
+
+    /**
+     * Student/course pairs prepared before an iteration, so the measured loop does not build course codes.
+     */
+    private static class Enrollments {
+        final int[] studentIDs;
+        final String[] courseCodes;
+        int size;
+
+        Enrollments(int capacity) {
+            studentIDs = new int[capacity];
+            courseCodes = new String[capacity];
+        }
+
+        void add(Student student, Course course) {
+            studentIDs[size] = student.getIdNumber();
+            courseCodes[size] = course.getCourseCode();
+            size++;
+        }
+    }
+
+    /**
+     * Random student/course pairs where the student has the pre-requisites and is not enrolled yet.
+     */
+    private static Enrollments eligiblePairs(University university, Random random, int count) {
+        Enrollments pairs = new Enrollments(count);
+        while (pairs.size < count) {
+            Student student = university.getStudent(random.nextInt(STUDENTS));
+            List<Course> eligible = university.getEligibleCourses(student.getIdNumber());
+            if (!eligible.isEmpty()) {
+                pairs.add(student, eligible.get(random.nextInt(eligible.size())));
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * Random enrollments of the university, each at most once.
+     */
+    private static Enrollments enrolledPairs(University university, Random random, int count) {
+        List<Student> students = new ArrayList<>();
+        List<Course> courses = new ArrayList<>();
+        for (Student student : university.getStudents()) {
+            for (Course course : student.getEnrolledCourses()) {
+                students.add(student);
+                courses.add(course);
+            }
+        }
+        //The same seed shuffles both lists the same way.
+        long seed = random.nextLong();
+        Collections.shuffle(students, new Random(seed));
+        Collections.shuffle(courses, new Random(seed));
+        Enrollments pairs = new Enrollments(Math.min(count, students.size()));
+        for (int i = 0; i < pairs.studentIDs.length; i++) {
+            pairs.add(students.get(i), courses.get(i));
+        }
+        return pairs;
+    }
+
+    private static String courseCode(int i) {
+        return "BNCH " + i;
+    }
+}
@@ -0,0 +1,141 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result of a bulk import (see UniversityImporter): how many rows of each file were applied and, for every row that
+ * was not, the reason why. Rows are never silently dropped, so the registrar can fix them and import them again.
+ */
+public class ImportReport {
+
+    /**
+     * Why a row was rejected.
+     */
+    public enum Reason {
+        //The row does not have the expected fields, or a number could not be read.
+        MALFORMED,
+        DUPLICATE_STUDENT,
+        DUPLICATE_COURSE,
+        UNKNOWN_STUDENT,
+        UNKNOWN_COURSE,
+        //The pre-requisite is already there or would make a course depend on itself.
+        INVALID_REQUISITE,
+        ALREADY_PASSED,
+        ALREADY_ENROLLED,
+        MISSING_PREREQUISITES,
+        COURSE_FULL
+    }
+
+    /**
+     * A row that was not applied.
+     */
+    public static class Rejection {
+        private final String file;
+        private final long line;
+        private final String row;
+        private final Reason reason;
+
+        Rejection(String file, long line, String row, Reason reason) {
+            this.file = file;
+            this.line = line;
+            this.row = row;
+            this.reason = reason;
+        }
+
+        public String getFile() {
+            return file;
+        }
+
+        /**
+         * @return the line number in the file, starting at 1 (the header)
+         */
+        public long getLine() {
+            return line;
+        }
+
+        public String getRow() {
+            return row;
+        }
+
+        public Reason getReason() {
+            return reason;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s:%d %s (%s)", file, line, reason, row);
+        }
+    }
+
+    private long students;
+    private long courses;
+    private long requisites;
+    private long previousCourses;
+    private long enrollments;
+    private final List<Rejection> rejections = new ArrayList<>();
+    private final Map<Reason, Long> rejectionCounts = new EnumMap<>(Reason.class);
+
+    void studentAdded() {
+        students++;
+    }
+
+    void courseAdded() {
+        courses++;
+    }
+
+    void requisiteAdded() {
+        requisites++;
+    }
+
+    void previousCourseAdded() {
+        previousCourses++;
+    }
+
+    void studentEnrolled() {
+        enrollments++;
+    }
+
+    void reject(String file, long line, String row, Reason reason) {
+        rejections.add(new Rejection(file, line, row, reason));
+        rejectionCounts.merge(reason, 1L, Long::sum);
+    }
+
+    public long getStudents() {
+        return students;
+    }
+
+    public long getCourses() {
+        return courses;
+    }
+
+    public long getRequisites() {
+        return requisites;
+    }
+
+    public long getPreviousCourses() {
+        return previousCourses;
+    }
+
+    public long getEnrollments() {
+        return enrollments;
+    }
+
+    /**
+     * @return every rejected row, in the order the files were imported
+     */
+    public List<Rejection> getRejections() {
+        return Collections.unmodifiableList(rejections);
+    }
+
+    public long getRejectionCount(Reason reason) {
+        return rejectionCounts.getOrDefault(reason, 0L);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Students: %d\nCourses: %d\nPre-requisites: %d\nPrevious courses: %d\nEnrollments: %d\nRejected rows: %d %s",
+                students, courses, requisites, previousCourses, enrollments, rejections.size(), rejectionCounts);
+    }
+}
@@ -0,0 +1,111 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of durations in nanoseconds that many threads can record into without locking, in the spirit of
+ * HdrHistogram: values are counted in buckets whose width grows with the value, so any value from 1 ns to hours
+ * is kept within about 3% (32 buckets per power of two) in a fixed array of 1,888 counters.
+ *
+ * Recording a value is a few shifts and one atomic increment, and allocates nothing. Percentiles are read from
+ * the counters as they are, so while values are being recorded they may miss the latest ones.
+ */
+public class LatencyHistogram {
+    //Values are split into 2^SUB_BITS buckets per power of two. Values below 2 * SUB_BUCKETS get a bucket each.
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Counts one value. Negative values (e.g. a clock going back) are counted as 0.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        total.add(value);
+        long seen = max.get();
+        while (value > seen && !max.compareAndSet(seen, value)) {
+            seen = max.get();
+        }
+    }
+
+    static int bucketOf(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * @return the largest value counted in the bucket
+     */
+    static long highestValueOf(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long subBucket = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    public long getCount() {
+        long values = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            values += counts.get(bucket);
+        }
+        return values;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long values = getCount();
+        return values == 0 ? 0 : total.sum() / (double) values;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return a value such that at least percentile % of the recorded values are not larger (0 if none was recorded)
+     */
+    public long getPercentile(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long values = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            snapshot[bucket] = counts.get(bucket);
+            values += snapshot[bucket];
+        }
+        long wanted = Math.max(1, (long) Math.ceil(values * percentile / 100));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += snapshot[bucket];
+            if (seen >= wanted) {
+                return Math.min(highestValueOf(bucket), getMax());
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Forgets every value. Values recorded at the same time may be partly kept.
+     */
+    public void reset() {
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            counts.set(bucket, 0);
+        }
+        total.reset();
+        max.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.0fns p50=%dns p99=%dns p99.9=%dns max=%dns",
+                getCount(), getMean(), getPercentile(50), getPercentile(99), getPercentile(99.9), getMax());
+    }
+}
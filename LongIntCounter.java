@@ -0,0 +1,173 @@
+import java.util.Arrays;
+
+/**
+ * Counts occurrences of long keys without boxing: open addressing with linear probing over a long[] of keys
+ * and an int[] of counts (a count of 0 marks an empty slot).
+ *
+ * A HashMap&lt;Long, Integer&gt; allocates a Long, an Integer and a node for every key and a new Integer on every
+ * increment. Here an increment is a couple of array reads and writes. Used for pairs of course ordinals
+ * (see UniversityAnalytics.getCoEnrollment), packed into one long.
+ *
+ * Counts can also go down (see ConflictEngine); a key whose count drops to 0 is removed.
+ *
+ * The class is not thread-safe: parallel code gives every thread its own counter and merges them with addAll.
+ */
+public class LongIntCounter {
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private int[] counts;
+    private int size;
+
+    /**
+     * Receives the keys of a counter with their counts.
+     */
+    public interface Entry {
+        void accept(long key, int count);
+    }
+
+    public LongIntCounter() {
+        this(MIN_CAPACITY);
+    }
+
+    public LongIntCounter(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity / 2 < expectedSize && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        keys = new long[capacity];
+        counts = new int[capacity];
+    }
+
+    /**
+     * Adds delta to the count of the key. The key is removed when its count gets to 0.
+     * @throws IllegalStateException if the count would become negative
+     */
+    public void add(long key, int delta) {
+        int mask = keys.length - 1;
+        int slot = slotOf(key, mask);
+        while (counts[slot] != 0) {
+            if (keys[slot] == key) {
+                int count = counts[slot] + delta;
+                if (count < 0) {
+                    throw new IllegalStateException("Count of " + key + " would become " + count);
+                }
+                counts[slot] = count;
+                if (count == 0) {
+                    deleteSlot(slot, mask);
+                    size--;
+                }
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (delta == 0) {
+            return;
+        }
+        if (delta < 0) {
+            throw new IllegalStateException("Count of " + key + " would become " + delta);
+        }
+        keys[slot] = key;
+        counts[slot] = delta;
+        if (++size > keys.length / 2) {
+            resize(keys.length << 1);
+        }
+    }
+
+    public void increment(long key) {
+        add(key, 1);
+    }
+
+    public void decrement(long key) {
+        add(key, -1);
+    }
+
+    /**
+     * @return the count of the key, 0 if it was never added
+     */
+    public int get(long key) {
+        int mask = keys.length - 1;
+        int slot = slotOf(key, mask);
+        while (counts[slot] != 0) {
+            if (keys[slot] == key) {
+                return counts[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    /**
+     * Adds the counts of another counter to this one.
+     */
+    public void addAll(LongIntCounter other) {
+        for (int i = 0; i < other.keys.length; i++) {
+            if (other.counts[i] != 0) {
+                add(other.keys[i], other.counts[i]);
+            }
+        }
+    }
+
+    /**
+     * @return the number of different keys
+     */
+    public int size() {
+        return size;
+    }
+
+    public void forEach(Entry action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (counts[i] != 0) {
+                action.accept(keys[i], counts[i]);
+            }
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(counts, 0);
+        size = 0;
+    }
+
+    /**
+     * Empties a slot and moves back the entries that probed past it (same as StudentIndex).
+     */
+    private void deleteSlot(int slot, int mask) {
+        int hole = slot;
+        int next = (slot + 1) & mask;
+        while (counts[next] != 0) {
+            int home = slotOf(keys[next], mask);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                counts[hole] = counts[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        counts[hole] = 0;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new long[capacity];
+        counts = new int[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldCounts[i] != 0) {
+                int slot = slotOf(oldKeys[i], mask);
+                while (counts[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    private static int slotOf(long key, int mask) {
+        //The high bits of the product are the well mixed ones, they are folded into the low bits.
+        long hash = key * 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 32;
+        return (int) (hash ^ (hash >>> 16)) & mask;
+    }
+}
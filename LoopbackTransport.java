@@ -0,0 +1,52 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs the nodes of a ShardedUniversity in this JVM, for tests and benchmarks. Every node has its own threads
+ * (one by default), standing for the request threads of a remote node: messages to a node wait in its queue
+ * like they would on the network, and nodes work in parallel.
+ */
+public class LoopbackTransport implements ShardTransport {
+    private final ShardNode[] nodes;
+    private final ExecutorService[] executors;
+
+    public LoopbackTransport(ShardNode... nodes) {
+        this(1, nodes);
+    }
+
+    public LoopbackTransport(int threadsPerNode, ShardNode... nodes) {
+        this.nodes = nodes.clone();
+        executors = new ExecutorService[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            String name = "shard-node-" + i;
+            executors[i] = Executors.newFixedThreadPool(threadsPerNode, task -> {
+                Thread thread = new Thread(task, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    @Override
+    public int getNodeCount() {
+        return nodes.length;
+    }
+
+    public ShardNode getNode(int node) {
+        return nodes[node];
+    }
+
+    @Override
+    public CompletableFuture<Object> send(int node, ShardMessage message) {
+        ShardNode target = nodes[node];
+        return CompletableFuture.supplyAsync(() -> target.handle(message), executors[node]);
+    }
+
+    @Override
+    public void close() {
+        for (ExecutorService executor : executors) {
+            executor.shutdown();
+        }
+    }
+}
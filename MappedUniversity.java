@@ -0,0 +1,442 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.IntFunction;
+
+/**
+ * Read-only University backed by a memory-mapped snapshot file (written by UniversitySnapshot, version 2 or later).
+ *
+ * Nothing is loaded when the file is opened: students and courses are read straight from the mapped file when
+ * they are asked for, using the index stored at the end of the snapshot. Opening is almost instant and the heap
+ * used does not depend on the size of the university; the operating system pages the file in and out as needed.
+ *
+ * Students and courses are returned as small views (StudentView, CourseView) that only remember where their
+ * record is in the file. Lists returned by the views are read lazily as well.
+ * The class is thread-safe, every read uses absolute positions on the shared buffer.
+ *
+ * Every position, length, count and ordinal read from the file is checked before it is used. open() checks the
+ * header and the index tables; a damaged record is only found when it is read, so the views report it with an
+ * UncheckedIOException wrapping an IOException, never an IndexOutOfBoundsException or a wrong student.
+ */
+public class MappedUniversity {
+    private final ByteBuffer buffer;
+    private final int limit;
+    private final String universityName;
+    private final String universityMotto;
+    private final int studentCount;
+    private final int courseCount;
+
+    //Positions of the index tables in the file (see UniversitySnapshot for the layout).
+    private final int studentOffsets;
+    private final int courseOffsets;
+    private final int sortedIds;
+    private final int sortedIdOrdinals;
+    private final int sortedCodeOrdinals;
+    private final int enrolledOffsets;
+
+    private MappedUniversity(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        limit = buffer.limit();
+        if (limit < UniversitySnapshot.FOOTER_SIZE || buffer.getInt(0) != UniversitySnapshot.MAGIC
+                || buffer.getInt(limit - Integer.BYTES) != UniversitySnapshot.MAGIC) {
+            throw new IOException("Not a university snapshot with an index");
+        }
+        short version = buffer.getShort(Integer.BYTES);
+        if (version < 2 || version > UniversitySnapshot.VERSION) {
+            throw new IOException("Snapshot version " + version + " cannot be mapped");
+        }
+
+        try {
+            int position = Integer.BYTES + Short.BYTES;
+            universityName = readString(position);
+            position = skipString(position);
+            universityMotto = readString(position);
+            position = skipString(position);
+            studentCount = intAt(position);
+            courseCount = intAt(position + Integer.BYTES);
+            if (studentCount < 0 || courseCount < 0) {
+                throw corrupted("negative count", position);
+            }
+            int recordsStart = position + 2 * Integer.BYTES;
+
+            //The index tables lie between the records and the footer.
+            int footer = limit - UniversitySnapshot.FOOTER_SIZE;
+            long indexOffset = buffer.getLong(footer);
+            long indexSize = (long) Long.BYTES * (2L * studentCount + courseCount)
+                    + (long) Integer.BYTES * (2L * studentCount + courseCount);
+            if (indexOffset < recordsStart || indexOffset > footer - indexSize) {
+                throw corrupted("index out of the file", footer);
+            }
+            studentOffsets = (int) indexOffset;
+            courseOffsets = studentOffsets + Long.BYTES * studentCount;
+            sortedIds = courseOffsets + Long.BYTES * courseCount;
+            sortedIdOrdinals = sortedIds + Integer.BYTES * studentCount;
+            sortedCodeOrdinals = sortedIdOrdinals + Integer.BYTES * studentCount;
+            enrolledOffsets = sortedCodeOrdinals + Integer.BYTES * courseCount;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Maps a snapshot file. The file must not be changed while the MappedUniversity is in use.
+     *
+     * @param file a file written by UniversitySnapshot.write
+     * @return a read-only university backed by the file
+     * @throws IOException if the file cannot be mapped, has no index or its header or index is damaged
+     */
+    public static MappedUniversity open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too big to be mapped in one piece");
+            }
+            //The mapping stays valid after the channel is closed.
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new MappedUniversity(buffer);
+        }
+    }
+
+    public String getUniversityName() {
+        return universityName;
+    }
+
+    public String getUniversityMotto() {
+        return universityMotto;
+    }
+
+    /**
+     * Gets a student from the university (binary search on the sorted IDs of the index).
+     * @param idNumber the student's ID.
+     * @return the student or null if not found
+     */
+    public StudentView getStudent(int idNumber) {
+        int low = 0;
+        int high = studentCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int id = intAt(sortedIds + Integer.BYTES * middle);
+            if (id < idNumber) {
+                low = middle + 1;
+            } else if (id > idNumber) {
+                high = middle - 1;
+            } else {
+                return new StudentView(studentOrdinal(sortedIdOrdinals + Integer.BYTES * middle));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets a course from the university (binary search on the course codes, compared as UTF-8 bytes).
+     * @param courseCode the course code.
+     * @return the course or null if not found
+     */
+    public CourseView getCourse(String courseCode) {
+        byte[] code = courseCode.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = courseCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int ordinal = courseOrdinal(sortedCodeOrdinals + Integer.BYTES * middle);
+            int comparison = compareString(courseOffset(ordinal), code);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return new CourseView(ordinal);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return every student of the university, in the order they were saved. The list is read lazily.
+     */
+    public List<StudentView> getStudents() {
+        return new LazyList<>(studentCount, StudentView::new);
+    }
+
+    /**
+     * @return every course of the university, in the order they were saved. The list is read lazily.
+     */
+    public List<CourseView> getCourses() {
+        return new LazyList<>(courseCount, CourseView::new);
+    }
+
+    public int getStudentCount() {
+        return studentCount;
+    }
+
+    public int getCourseCount() {
+        return courseCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (%s)\nNumber of Students: %d\nNumber of Courses %d",
+                universityName, universityMotto, studentCount, courseCount);
+    }
+
+    /**
+     * A student of the mapped university.
+     */
+    public class StudentView {
+        private final int ordinal;
+
+        private StudentView(int ordinal) {
+            this.ordinal = ordinal;
+        }
+
+        public int getIdNumber() {
+            return intAt(studentOffset(ordinal));
+        }
+
+        public String getName() {
+            return readString(studentOffset(ordinal) + Integer.BYTES);
+        }
+
+        /**
+         * @return the student's previous courses (PASS Mark)
+         */
+        public List<CourseView> getPreviousCourses() {
+            return courses(skipString(studentOffset(ordinal) + Integer.BYTES));
+        }
+
+        public List<CourseView> getEnrolledCourses() {
+            return courses(offsetAt(enrolledOffsets + Long.BYTES * ordinal));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof StudentView && ((StudentView) o).ordinal == ordinal;
+        }
+
+        @Override
+        public int hashCode() {
+            return ordinal;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Student %s (%06d)", getName(), getIdNumber());
+        }
+    }
+
+    /**
+     * A course of the mapped university.
+     */
+    public class CourseView {
+        private final int ordinal;
+
+        private CourseView(int ordinal) {
+            this.ordinal = ordinal;
+        }
+
+        public String getCourseCode() {
+            return readString(courseOffset(ordinal));
+        }
+
+        public String getName() {
+            return readString(skipString(courseOffset(ordinal)));
+        }
+
+        public int getCapacity() {
+            return intAt(capacityPosition());
+        }
+
+        public List<CourseView> getPreRequisites() {
+            return courses(preRequisitesPosition());
+        }
+
+        /**
+         * @return the students enrolled in the course, in the order they enrolled
+         */
+        public List<StudentView> getEnrolledStudents() {
+            return students(enrolledPosition());
+        }
+
+        public List<StudentView> getWaitlist() {
+            return students(skipOrdinals(enrolledPosition()));
+        }
+
+        private int capacityPosition() {
+            return skipString(skipString(courseOffset(ordinal)));
+        }
+
+        private int preRequisitesPosition() {
+            return capacityPosition() + Integer.BYTES;
+        }
+
+        private int enrolledPosition() {
+            return skipOrdinals(preRequisitesPosition());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CourseView && ((CourseView) o).ordinal == ordinal;
+        }
+
+        @Override
+        public int hashCode() {
+            return ordinal;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s - %s", getCourseCode(), getName());
+        }
+    }
+
+    /**
+     * List whose elements are created from their index when they are asked for.
+     */
+    private static class LazyList<T> extends AbstractList<T> {
+        private final int size;
+        private final IntFunction<T> element;
+
+        LazyList(int size, IntFunction<T> element) {
+            this.size = size;
+            this.element = element;
+        }
+
+        @Override
+        public T get(int index) {
+            return element.apply(Objects.checkIndex(index, size));
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /*
+     * Reading records
+     */
+
+    private int studentOffset(int ordinal) {
+        return offsetAt(studentOffsets + Long.BYTES * ordinal);
+    }
+
+    private int courseOffset(int ordinal) {
+        return offsetAt(courseOffsets + Long.BYTES * ordinal);
+    }
+
+    /**
+     * Views of the ordinals stored at the position (an int count followed by the ordinals).
+     */
+    private List<CourseView> courses(int position) {
+        return new LazyList<>(countAt(position),
+                index -> new CourseView(courseOrdinal(position + Integer.BYTES * (index + 1))));
+    }
+
+    private List<StudentView> students(int position) {
+        return new LazyList<>(countAt(position),
+                index -> new StudentView(studentOrdinal(position + Integer.BYTES * (index + 1))));
+    }
+
+    private int skipOrdinals(int position) {
+        return position + Integer.BYTES * (1 + countAt(position));
+    }
+
+    private String readString(int position) {
+        byte[] bytes = new byte[lengthAt(position)];
+        buffer.get(position + Integer.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int skipString(int position) {
+        return position + Integer.BYTES + lengthAt(position);
+    }
+
+    /**
+     * Compares the string stored at the position with the given UTF-8 bytes, without decoding it.
+     */
+    private int compareString(int position, byte[] other) {
+        int length = lengthAt(position);
+        int common = Math.min(length, other.length);
+        for (int i = 0; i < common; i++) {
+            int comparison = Byte.compareUnsigned(buffer.get(position + Integer.BYTES + i), other[i]);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return Integer.compare(length, other.length);
+    }
+
+    /*
+     * Checked reads: everything read from the file must stay in the file
+     */
+
+    private int intAt(int position) {
+        if (position < 0 || position > limit - Integer.BYTES) {
+            throw corrupted("position out of the file", position);
+        }
+        return buffer.getInt(position);
+    }
+
+    /**
+     * @return the record offset stored as a long at the position
+     */
+    private int offsetAt(int position) {
+        if (position < 0 || position > limit - Long.BYTES) {
+            throw corrupted("position out of the file", position);
+        }
+        long offset = buffer.getLong(position);
+        if (offset < 0 || offset >= limit) {
+            throw corrupted("offset " + offset + " out of the file", position);
+        }
+        return (int) offset;
+    }
+
+    /**
+     * @return the length of the string at the position, whose bytes follow it in the file
+     */
+    private int lengthAt(int position) {
+        int length = intAt(position);
+        if (length < 0 || length > limit - Integer.BYTES - position) {
+            throw corrupted("string of " + length + " bytes", position);
+        }
+        return length;
+    }
+
+    /**
+     * @return the count of the ordinals at the position, which follow it in the file
+     */
+    private int countAt(int position) {
+        int count = intAt(position);
+        if (count < 0 || count > (limit - Integer.BYTES - position) / Integer.BYTES) {
+            throw corrupted(count + " ordinals", position);
+        }
+        return count;
+    }
+
+    private int studentOrdinal(int position) {
+        int ordinal = intAt(position);
+        if (ordinal < 0 || ordinal >= studentCount) {
+            throw corrupted("student ordinal " + ordinal, position);
+        }
+        return ordinal;
+    }
+
+    private int courseOrdinal(int position) {
+        int ordinal = intAt(position);
+        if (ordinal < 0 || ordinal >= courseCount) {
+            throw corrupted("course ordinal " + ordinal, position);
+        }
+        return ordinal;
+    }
+
+    private static UncheckedIOException corrupted(String what, int position) {
+        return new UncheckedIOException(new IOException("Corrupted snapshot: " + what + " at position " + position));
+    }
+}
@@ -0,0 +1,28 @@
+/**
+ * Receives the outcome and the duration of the hot operations of a University (see University.setMetricsSink).
+ *
+ * Methods are called by the thread that ran the operation, after it released its locks. They are called for
+ * every operation, so they must be fast and thread-safe (see UniversityMetrics).
+ */
+public interface MetricsSink {
+
+    enum Operation {
+        ENROLL,
+        DROP,
+        REMOVE_STUDENT,
+        REMOVE_COURSE
+    }
+
+    /**
+     * An enrollment (Operation.ENROLL) finished.
+     * @param nanos the time it took, in nanoseconds
+     */
+    void enrolled(EnrollmentResult result, long nanos);
+
+    /**
+     * Any other operation finished.
+     * @param succeeded the value the University method returned
+     * @param nanos the time it took, in nanoseconds
+     */
+    void completed(Operation operation, boolean succeeded, long nanos);
+}
@@ -0,0 +1,747 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead log of the changes made to a University, so they survive a crash without saving the whole
+ * university after every change.
+ *
+ * The log listens to the university (see UniversityListener) and appends one small record per change to an
+ * in-memory buffer. A background thread writes the buffers to disk and forces them to the device every few
+ * milliseconds (group commit), so callers never wait for the disk. Callers that need to know a change is durable
+ * call sync().
+ *
+ * Listeners are called while the University holds the locks of the change, so appending must not make threads
+ * changing different students wait for each other. Each thread appends to one of several buffers, each with its
+ * own lock, and gives its record the next sequence number. Changes that depend on each other are ordered by the
+ * University's locks, so their sequence numbers are in the same order. The flusher merges the buffers by
+ * sequence number and only writes a record once every record before it has been written, so a segment is always
+ * in the order of the changes.
+ *
+ * The log lives in a directory:
+ *   log-N.wal        log segments, N grows by one every time a segment is started
+ *   snapshot-N.bin   a UniversitySnapshot containing every change from the segments up to N
+ * checkpoint() compacts the log: it starts a new segment, saves a snapshot of the university and deletes the
+ * files the snapshot replaces. Registration only waits while the segment is started: the snapshot is written from
+ * a TermSnapshot opened at the same moment. recover() loads the newest snapshot and replays the segments written
+ * after it.
+ *
+ * Each record is an int length, an int CRC32 of the payload and the payload (an operation code and its arguments).
+ * A record cut short or damaged by a crash ends the replay of its segment. The sequence numbers are only kept in
+ * memory.
+ */
+public class MutationLog implements UniversityListener, Closeable {
+    private static final String SEGMENT_PREFIX = "log-";
+    private static final String SEGMENT_SUFFIX = ".wal";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int APPEND_BUFFERS = 16;
+    private static final long FLUSH_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+    //In the buffers every record is preceded by its sequence number, which is not written to the segment.
+    private static final int SEQUENCE_SIZE = Long.BYTES;
+
+    //Operation codes of the records.
+    private static final byte ADD_STUDENT = 1;
+    private static final byte ADD_COURSE = 2;
+    private static final byte ADD_REQUISITE = 3;
+    private static final byte ADD_PREVIOUS_COURSE = 4;
+    private static final byte ENROLL = 5;
+    private static final byte DROP = 6;
+    private static final byte WAITLIST = 7;
+    private static final byte CAPACITY = 8;
+    private static final byte REMOVE_STUDENT = 9;
+    private static final byte REMOVE_COURSE = 10;
+
+    private final University university;
+    private final Path directory;
+
+    //Records are appended to the buffer of the thread. The count is also the next sequence number.
+    private final AppendBuffer[] buffers = new AppendBuffer[APPEND_BUFFERS];
+    private final AtomicLong appendedRecords = new AtomicLong();
+    private volatile boolean closed;
+
+    //Draining the buffers and waiting for the disk happen under this lock, appending does not take it.
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition durable = lock.newCondition();
+    //The records taken from the buffers that are ready to be written, in sequence order.
+    private ByteBuffer output = ByteBuffer.allocate(BUFFER_SIZE);
+    //Records taken from the buffers that come after a record still being appended, with their sequence number.
+    private ByteBuffer held = ByteBuffer.allocate(0);
+    private ByteBuffer spareHeld = ByteBuffer.allocate(0);
+    private long drainedRecords;
+    private long durableRecords;
+    private IOException failure;
+
+    //The segment being written. Only changed by the flusher thread or while the flusher is idle (ioLock).
+    private final ReentrantLock ioLock = new ReentrantLock();
+    private FileChannel segment;
+    private long generation;
+
+    private final Thread flusher;
+
+    private MutationLog(University university, Path directory, long generation) throws IOException {
+        this.university = university;
+        this.directory = directory;
+        this.generation = generation;
+        segment = openSegment(generation);
+        forceDirectory(directory);
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = new AppendBuffer();
+        }
+        flusher = new Thread(this::flushLoop, "mutation-log-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Starts logging every change made to the university in a new segment of the directory.
+     * Changes made before are not logged: attach the log right after recover() or after saving a snapshot
+     * with checkpoint().
+     *
+     * @param university the university to be logged
+     * @param directory the directory of the log (created if it does not exist)
+     * @return the log, already listening to the university
+     * @throws IOException if the directory or the segment cannot be created
+     */
+    public static MutationLog attach(University university, Path directory) throws IOException {
+        Files.createDirectories(directory);
+        MutationLog log = new MutationLog(university, directory, latestGeneration(directory) + 1);
+        university.addListener(log);
+        return log;
+    }
+
+    /**
+     * Rebuilds a university from the newest snapshot of the directory and the log segments written after it.
+     *
+     * @param directory the directory of the log
+     * @param universityName name of the university, used if the directory has no snapshot yet
+     * @param universityMotto motto of the university, used if the directory has no snapshot yet
+     * @return the university as it was when the last durable record was written
+     * @throws IOException if the files cannot be read
+     */
+    public static University recover(Path directory, String universityName, String universityMotto)
+            throws IOException {
+        long snapshotGeneration = -1;
+        List<Long> segments = new ArrayList<>();
+        if (Files.isDirectory(directory)) {
+            for (Path file : list(directory)) {
+                long snapshot = generationOf(file, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+                snapshotGeneration = Math.max(snapshotGeneration, snapshot);
+                long segment = generationOf(file, SEGMENT_PREFIX, SEGMENT_SUFFIX);
+                if (segment >= 0) {
+                    segments.add(segment);
+                }
+            }
+        }
+
+        University university = snapshotGeneration < 0
+                ? new University(universityName, universityMotto)
+                : UniversitySnapshot.read(directory.resolve(SNAPSHOT_PREFIX + snapshotGeneration + SNAPSHOT_SUFFIX));
+        segments.sort(null);
+        for (long segment : segments) {
+            if (segment > snapshotGeneration) {
+                replay(university, directory.resolve(SEGMENT_PREFIX + segment + SEGMENT_SUFFIX));
+            }
+        }
+        return university;
+    }
+
+    /**
+     * Waits until every change logged so far has been written and forced to the disk.
+     * @throws IOException if writing the log failed
+     */
+    public void sync() throws IOException {
+        long target = appendedRecords.get();
+        LockSupport.unpark(flusher);
+        lock.lock();
+        try {
+            while (durableRecords < target && failure == null) {
+                durable.awaitUninterruptibly();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Compacts the log: saves a snapshot of the university and deletes the segments and snapshots it replaces.
+     * Changes to the university only wait while a new segment is started and a TermSnapshot is opened. The
+     * snapshot is written to disk while registration goes on.
+     * @throws IOException if the snapshot cannot be written
+     */
+    public void checkpoint() throws IOException {
+        long covered;
+        TermSnapshot snapshot;
+        Lock exclusive = university.catalogWriteLock();
+        exclusive.lock();
+        //Taken after the catalog lock: the flusher never waits for the catalog, so it cannot hold us up for long.
+        ioLock.lock();
+        try {
+            long written;
+            FileChannel previous = segment;
+            try {
+                //Nothing can be logged now. Everything so far goes to the current segment, without waiting for the
+                //disk, so the snapshot opened at the same moment covers exactly that segment. No record is still
+                //being appended, so draining the buffers leaves nothing held back.
+                lock.lock();
+                try {
+                    writeTo(previous, output);
+                    drain();
+                    writeTo(previous, output);
+                    written = drainedRecords;
+                } finally {
+                    lock.unlock();
+                }
+                segment = openSegment(generation + 1);
+                covered = generation++;
+                snapshot = university.openSnapshot();
+            } finally {
+                exclusive.unlock();
+            }
+            //The flusher cannot report later records as durable before these are on the disk.
+            try {
+                previous.force(false);
+                previous.close();
+                forceDirectory(directory);
+            } catch (IOException e) {
+                snapshot.close();
+                throw fail(e);
+            }
+            lock.lock();
+            try {
+                durableRecords = Math.max(durableRecords, written);
+                durable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            ioLock.unlock();
+        }
+
+        Path temporary = directory.resolve(SNAPSHOT_PREFIX + covered + ".tmp");
+        try {
+            UniversitySnapshot.write(snapshot, temporary);
+        } finally {
+            snapshot.close();
+        }
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(SNAPSHOT_PREFIX + covered + SNAPSHOT_SUFFIX),
+                StandardCopyOption.ATOMIC_MOVE);
+        //The rename is only durable once the directory is, the older files must not be deleted before.
+        forceDirectory(directory);
+
+        //The new snapshot replaces every older file.
+        for (Path file : list(directory)) {
+            long snapshotFile = generationOf(file, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+            long segmentFile = generationOf(file, SEGMENT_PREFIX, SEGMENT_SUFFIX);
+            if ((snapshotFile >= 0 && snapshotFile < covered) || (segmentFile >= 0 && segmentFile <= covered)) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * Writes the records of a buffer to a segment and empties the buffer. The caller holds ioLock and lock.
+     */
+    private static void writeTo(FileChannel channel, ByteBuffer records) throws IOException {
+        records.flip();
+        try {
+            while (records.hasRemaining()) {
+                channel.write(records);
+            }
+        } finally {
+            records.clear();
+        }
+    }
+
+    /**
+     * Remembers the first failure, so sync() reports it, and returns it.
+     */
+    private IOException fail(IOException error) {
+        lock.lock();
+        try {
+            if (failure == null) {
+                failure = error;
+            }
+            durable.signalAll();
+            return error;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops logging, writes what is left in the buffer and closes the segment.
+     */
+    @Override
+    public void close() throws IOException {
+        university.removeListener(this);
+        closed = true;
+        LockSupport.unpark(flusher);
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        ioLock.lock();
+        try {
+            segment.close();
+        } finally {
+            ioLock.unlock();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /*
+     * Logging (UniversityListener)
+     */
+
+    @Override
+    public void studentAdded(Student student) {
+        //A student can be added with courses already passed, which the record carries (see replay).
+        append(ADD_STUDENT, student.getIdNumber(), student.getName(), null, 0, student.getPreviousCourses());
+    }
+
+    @Override
+    public void courseAdded(Course course) {
+        append(ADD_COURSE, 0, course.getCourseCode(), course.getName(), course.getCapacity());
+    }
+
+    @Override
+    public void requisiteAdded(Course course, Course preRequisite) {
+        append(ADD_REQUISITE, 0, course.getCourseCode(), preRequisite.getCourseCode(), 0);
+    }
+
+    @Override
+    public void previousCourseAdded(Student student, Course course) {
+        append(ADD_PREVIOUS_COURSE, student.getIdNumber(), course.getCourseCode(), null, 0);
+    }
+
+    @Override
+    public void studentEnrolled(Student student, Course course) {
+        append(ENROLL, student.getIdNumber(), course.getCourseCode(), null, 0);
+    }
+
+    @Override
+    public void studentDropped(Student student, Course course) {
+        append(DROP, student.getIdNumber(), course.getCourseCode(), null, 0);
+    }
+
+    @Override
+    public void studentWaitlisted(Student student, Course course) {
+        append(WAITLIST, student.getIdNumber(), course.getCourseCode(), null, 0);
+    }
+
+    @Override
+    public void capacityChanged(Course course, int capacity) {
+        append(CAPACITY, 0, course.getCourseCode(), null, capacity);
+    }
+
+    @Override
+    public void studentRemoved(Student student) {
+        append(REMOVE_STUDENT, student.getIdNumber(), null, null, 0);
+    }
+
+    @Override
+    public void courseRemoved(Course course) {
+        append(REMOVE_COURSE, 0, course.getCourseCode(), null, 0);
+    }
+
+    private void append(byte operation, int studentID, String first, String second, int number) {
+        append(operation, studentID, first, second, number, null);
+    }
+
+    /**
+     * Appends a record to the buffer of the thread. Every record has the same shape: operation, student ID, two
+     * optional strings and an int, followed for a student by the code and name of each course they passed. Only
+     * waits if the buffer is full (the disk cannot keep up).
+     */
+    private void append(byte operation, int studentID, String first, String second, int number,
+                        Collection<Course> courses) {
+        byte[] firstBytes = first == null ? null : first.getBytes(StandardCharsets.UTF_8);
+        byte[] secondBytes = second == null ? null : second.getBytes(StandardCharsets.UTF_8);
+        int payload = 1 + Integer.BYTES + stringSize(firstBytes) + stringSize(secondBytes) + Integer.BYTES;
+        byte[][] courseBytes = null;
+        if (courses != null && !courses.isEmpty()) {
+            courseBytes = new byte[2 * courses.size()][];
+            int i = 0;
+            for (Course course : courses) {
+                courseBytes[i++] = course.getCourseCode().getBytes(StandardCharsets.UTF_8);
+                courseBytes[i++] = course.getName().getBytes(StandardCharsets.UTF_8);
+            }
+            payload += Integer.BYTES;
+            for (byte[] bytes : courseBytes) {
+                payload += stringSize(bytes);
+            }
+        }
+        int size = SEQUENCE_SIZE + HEADER_SIZE + payload;
+
+        AppendBuffer buffer = buffers[(int) Thread.currentThread().getId() & (APPEND_BUFFERS - 1)];
+        boolean wake = false;
+        buffer.lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            while (buffer.active.remaining() < size) {
+                if (buffer.active.position() == 0) {
+                    //A record bigger than the buffer: give it a buffer of its own.
+                    buffer.active = ByteBuffer.allocate(size);
+                    break;
+                }
+                LockSupport.unpark(flusher);
+                buffer.drained.awaitUninterruptibly();
+            }
+            ByteBuffer active = buffer.active;
+            //Taken under the buffer's lock, so the flusher finds every record numbered before it starts draining.
+            active.putLong(appendedRecords.getAndIncrement());
+            int start = active.position();
+            active.putInt(payload);
+            active.putInt(0);
+            active.put(operation);
+            active.putInt(studentID);
+            putString(active, firstBytes);
+            putString(active, secondBytes);
+            active.putInt(number);
+            if (courseBytes != null) {
+                active.putInt(courseBytes.length / 2);
+                for (byte[] bytes : courseBytes) {
+                    putString(active, bytes);
+                }
+            }
+
+            buffer.crc.reset();
+            buffer.crc.update(active.array(), start + HEADER_SIZE, payload);
+            active.putInt(start + Integer.BYTES, (int) buffer.crc.getValue());
+            if (!buffer.flushRequested && active.position() > active.capacity() / 2) {
+                buffer.flushRequested = true;
+                wake = true;
+            }
+        } finally {
+            buffer.lock.unlock();
+        }
+        if (wake) {
+            LockSupport.unpark(flusher);
+        }
+    }
+
+    private static int stringSize(byte[] bytes) {
+        return Integer.BYTES + (bytes == null ? 0 : bytes.length);
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    /**
+     * A buffer records are appended to, with the one the flusher drained last, ready to be swapped in.
+     */
+    private static final class AppendBuffer {
+        final ReentrantLock lock = new ReentrantLock();
+        //Signalled when the flusher swaps the buffers, for a thread waiting for room.
+        final Condition drained = lock.newCondition();
+        final CRC32 crc = new CRC32();
+        ByteBuffer active = ByteBuffer.allocate(BUFFER_SIZE / APPEND_BUFFERS);
+        ByteBuffer spare = ByteBuffer.allocate(BUFFER_SIZE / APPEND_BUFFERS);
+        boolean flushRequested;
+    }
+
+    /**
+     * Takes the records of every buffer and moves them to output in sequence order, up to the first record that
+     * is still being appended. The records after it are held back for the next time. The caller holds lock.
+     */
+    private void drain() {
+        ByteBuffer[] sources = new ByteBuffer[buffers.length + 1];
+        for (int i = 0; i < buffers.length; i++) {
+            AppendBuffer buffer = buffers[i];
+            buffer.lock.lock();
+            try {
+                ByteBuffer full = buffer.active;
+                buffer.active = buffer.spare;
+                buffer.spare = full;
+                buffer.flushRequested = false;
+                buffer.drained.signalAll();
+            } finally {
+                buffer.lock.unlock();
+            }
+            //The spare is only touched again by the next drain, which finds it cleared below.
+            sources[i] = buffer.spare.flip();
+        }
+        sources[buffers.length] = held.flip();
+
+        int total = 0;
+        for (ByteBuffer source : sources) {
+            total += source.remaining();
+        }
+        if (output.remaining() < total) {
+            output = ByteBuffer.allocate(output.position() + total).put(output.flip());
+        }
+        if (spareHeld.capacity() < total) {
+            spareHeld = ByteBuffer.allocate(total);
+        }
+        //Every buffer is in sequence order, so the smallest first record is the next one.
+        while (true) {
+            ByteBuffer next = null;
+            for (ByteBuffer source : sources) {
+                if (source.hasRemaining()
+                        && (next == null || source.getLong(source.position()) < next.getLong(next.position()))) {
+                    next = source;
+                }
+            }
+            if (next == null) {
+                break;
+            }
+            long sequence = next.getLong();
+            int recordSize = HEADER_SIZE + next.getInt(next.position());
+            ByteBuffer record = next.slice(next.position(), recordSize);
+            next.position(next.position() + recordSize);
+            if (sequence == drainedRecords && spareHeld.position() == 0) {
+                output.put(record);
+                drainedRecords++;
+            } else {
+                spareHeld.putLong(sequence);
+                spareHeld.put(record);
+            }
+        }
+        for (int i = 0; i < buffers.length; i++) {
+            sources[i].clear();
+        }
+        ByteBuffer drainedHeld = held;
+        held = spareHeld;
+        spareHeld = drainedHeld.clear();
+    }
+
+    /**
+     * Body of the flusher thread: drains the buffers, writes the records and forces them to the disk.
+     */
+    private void flushLoop() {
+        while (true) {
+            //Once closed, a last drain takes the records appended before the appending threads saw it.
+            boolean last = closed;
+            long target;
+            lock.lock();
+            try {
+                drain();
+                target = drainedRecords;
+            } finally {
+                lock.unlock();
+            }
+
+            IOException error = null;
+            ioLock.lock();
+            try {
+                //Empty if a checkpoint wrote the records to the previous segment while we waited for ioLock.
+                if (output.position() > 0) {
+                    writeTo(segment, output);
+                    segment.force(false);
+                }
+            } catch (IOException e) {
+                error = e;
+            } finally {
+                ioLock.unlock();
+            }
+
+            lock.lock();
+            try {
+                if (error != null && failure == null) {
+                    failure = error;
+                }
+                //A checkpoint may already have reported later records, see checkpoint().
+                if (target > durableRecords) {
+                    durableRecords = target;
+                    durable.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (last) {
+                return;
+            }
+            if (target == appendedRecords.get()) {
+                LockSupport.parkNanos(this, FLUSH_INTERVAL_NANOS);
+                if (Thread.interrupted()) {
+                    closed = true;
+                }
+            }
+        }
+    }
+
+    /*
+     * Replaying
+     */
+
+    private static void replay(University university, Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        CRC32 crc = new CRC32();
+        while (buffer.remaining() >= HEADER_SIZE) {
+            int payload = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (payload <= 0 || payload > buffer.remaining()) {
+                return;
+            }
+            crc.reset();
+            crc.update(buffer.array(), buffer.position(), payload);
+            if ((int) crc.getValue() != checksum) {
+                return;
+            }
+            int end = buffer.position() + payload;
+            byte operation = buffer.get();
+            int studentID = buffer.getInt();
+            String first = getString(buffer);
+            String second = getString(buffer);
+            int number = buffer.getInt();
+            if (operation == ADD_STUDENT && buffer.position() < end) {
+                addStudent(university, studentID, first, buffer);
+            } else {
+                apply(university, operation, studentID, first, second, number);
+            }
+            buffer.position(end);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    /**
+     * Adds a student with the courses they passed, read from the rest of their record. A course the university
+     * does not offer yet is given by code and name, and resolved when the course is added (see University).
+     */
+    private static void addStudent(University university, int studentID, String name, ByteBuffer buffer) {
+        Student student = new Student(name, studentID);
+        int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            String code = getString(buffer);
+            String courseName = getString(buffer);
+            Course offered = university.getCourse(code);
+            student.addPreviousCourse(offered != null ? offered : new Course(courseName, code));
+        }
+        university.addStudent(student);
+    }
+
+    private static void apply(University university, byte operation, int studentID, String first, String second,
+                              int number) throws IOException {
+        switch (operation) {
+            case ADD_STUDENT:
+                university.addStudent(first, studentID);
+                break;
+            case ADD_COURSE:
+                university.addCourse(new Course(second, first, number));
+                break;
+            case ADD_REQUISITE:
+                university.addRequisiteToCourse(first, second);
+                break;
+            case ADD_PREVIOUS_COURSE:
+                university.addPreviousCourseToStudent(studentID, first);
+                break;
+            case ENROLL:
+                university.enrollStudentInCourse(studentID, first);
+                break;
+            case DROP:
+                university.removeStudentFromCourse(studentID, first);
+                break;
+            case WAITLIST:
+                university.addStudentToWaitlist(studentID, first);
+                break;
+            case CAPACITY:
+                university.setCourseCapacity(first, number);
+                break;
+            case REMOVE_STUDENT:
+                university.removeStudentFromUniversity(studentID);
+                break;
+            case REMOVE_COURSE:
+                university.removeCourseFromUniversity(first);
+                break;
+            default:
+                throw new IOException("Unknown operation " + operation + " in the mutation log");
+        }
+    }
+
+    /*
+     * Files
+     */
+
+    private FileChannel openSegment(long generation) throws IOException {
+        return FileChannel.open(directory.resolve(SEGMENT_PREFIX + generation + SEGMENT_SUFFIX),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Forces the directory to the disk, so files created or renamed in it survive a crash.
+     */
+    private static void forceDirectory(Path directory) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (AccessDeniedException e) {
+            //Directories cannot be opened on some platforms (Windows), where the file system orders this itself.
+        }
+    }
+
+    private static long latestGeneration(Path directory) throws IOException {
+        long latest = -1;
+        for (Path file : list(directory)) {
+            latest = Math.max(latest, generationOf(file, SEGMENT_PREFIX, SEGMENT_SUFFIX));
+            latest = Math.max(latest, generationOf(file, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX));
+        }
+        return latest;
+    }
+
+    /**
+     * @return the generation in the name of the file, or -1 if the name does not have the prefix and suffix
+     */
+    private static long generationOf(Path file, String prefix, String suffix) {
+        String name = file.getFileName().toString();
+        if (!name.startsWith(prefix) || !name.endsWith(suffix)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static List<Path> list(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+}
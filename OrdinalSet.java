@@ -0,0 +1,268 @@
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Set of small non-negative integers (course ordinals).
+ *
+ * java.util.BitSet has no "contains all" test without copying one of the sets, and this is exactly what
+ * pre-requisite checks need: a student can enroll when the pre-requisites of the course are a subset of the
+ * courses the student passed. Here that test is a loop with no allocation.
+ *
+ * Most sets are small (a student passed a few courses, a course has one or two direct pre-requisites), but their
+ * ordinals can be anywhere in a catalog of thousands of courses: as bits, 3 passed courses of a 5,000 course
+ * catalog take 640 bytes. So a set starts as a sorted int[] of at most MAX_SORTED ordinals, searched with a binary
+ * search, and is promoted to bits in a long[] (one bit per ordinal) when it grows past that. A promoted set stays
+ * promoted.
+ *
+ * The class is not thread-safe.
+ */
+public class OrdinalSet implements Serializable {
+    private static final long serialVersionUID = 1L;
+    public static final int MAX_SORTED = 16;
+    private static final int[] NO_ORDINALS = new int[0];
+
+    //The elements are sorted[0..count) until the set is promoted, then words is not null and holds them as bits.
+    private int[] sorted = NO_ORDINALS;
+    private int count;
+    private long[] words;
+
+    public OrdinalSet() {
+    }
+
+    public OrdinalSet(OrdinalSet other) {
+        if (other.words != null) {
+            words = other.words.clone();
+        } else if (other.count > 0) {
+            sorted = Arrays.copyOf(other.sorted, other.count);
+            count = other.count;
+        }
+    }
+
+    public void add(int ordinal) {
+        insert(ordinal);
+    }
+
+    /**
+     * @return true if the ordinal was not in the set yet
+     */
+    private boolean insert(int ordinal) {
+        if (words == null) {
+            int index = Arrays.binarySearch(sorted, 0, count, ordinal);
+            if (index >= 0) {
+                return false;
+            }
+            if (count < MAX_SORTED) {
+                index = -index - 1;
+                if (count == sorted.length) {
+                    sorted = Arrays.copyOf(sorted, Math.min(MAX_SORTED, Math.max(4, count * 2)));
+                }
+                System.arraycopy(sorted, index, sorted, index + 1, count - index);
+                sorted[index] = ordinal;
+                count++;
+                return true;
+            }
+            promote();
+        }
+        int word = ordinal >>> 6;
+        if (word >= words.length) {
+            words = Arrays.copyOf(words, Math.max(word + 1, words.length * 2));
+        }
+        long before = words[word];
+        words[word] = before | (1L << ordinal);
+        return words[word] != before;
+    }
+
+    /**
+     * Moves the sorted ordinals to bits.
+     */
+    private void promote() {
+        int highest = count == 0 ? 0 : sorted[count - 1];
+        words = new long[(highest >>> 6) + 1];
+        for (int i = 0; i < count; i++) {
+            words[sorted[i] >>> 6] |= 1L << sorted[i];
+        }
+        sorted = NO_ORDINALS;
+        count = 0;
+    }
+
+    public void remove(int ordinal) {
+        if (words == null) {
+            int index = Arrays.binarySearch(sorted, 0, count, ordinal);
+            if (index >= 0) {
+                System.arraycopy(sorted, index + 1, sorted, index, count - index - 1);
+                count--;
+            }
+            return;
+        }
+        int word = ordinal >>> 6;
+        if (word < words.length) {
+            words[word] &= ~(1L << ordinal);
+        }
+    }
+
+    public boolean contains(int ordinal) {
+        if (words == null) {
+            return Arrays.binarySearch(sorted, 0, count, ordinal) >= 0;
+        }
+        int word = ordinal >>> 6;
+        return word < words.length && (words[word] & (1L << ordinal)) != 0;
+    }
+
+    /**
+     * Adds every element of the other set to this one.
+     * @return true if this set changed
+     */
+    public boolean addAll(OrdinalSet other) {
+        boolean changed = false;
+        if (other.words == null) {
+            for (int i = 0; i < other.count; i++) {
+                changed |= insert(other.sorted[i]);
+            }
+            return changed;
+        }
+        if (words == null) {
+            promote();
+        }
+        long[] otherWords = other.words;
+        if (otherWords.length > words.length) {
+            words = Arrays.copyOf(words, otherWords.length);
+        }
+        for (int i = 0; i < otherWords.length; i++) {
+            long merged = words[i] | otherWords[i];
+            changed |= merged != words[i];
+            words[i] = merged;
+        }
+        return changed;
+    }
+
+    /**
+     * @return true if every element of the other set is in this set
+     */
+    public boolean containsAll(OrdinalSet other) {
+        if (other.words == null) {
+            for (int i = 0; i < other.count; i++) {
+                if (!contains(other.sorted[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        long[] otherWords = other.words;
+        if (words == null) {
+            for (int i = 0; i < otherWords.length; i++) {
+                long word = otherWords[i];
+                while (word != 0) {
+                    if (!contains((i << 6) + Long.numberOfTrailingZeros(word))) {
+                        return false;
+                    }
+                    word &= word - 1;
+                }
+            }
+            return true;
+        }
+        int common = Math.min(words.length, otherWords.length);
+        for (int i = 0; i < common; i++) {
+            if ((otherWords[i] & ~words[i]) != 0) {
+                return false;
+            }
+        }
+        for (int i = common; i < otherWords.length; i++) {
+            if (otherWords[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isEmpty() {
+        if (words == null) {
+            return count == 0;
+        }
+        for (long word : words) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int size() {
+        if (words == null) {
+            return count;
+        }
+        int size = 0;
+        for (long word : words) {
+            size += Long.bitCount(word);
+        }
+        return size;
+    }
+
+    public void clear() {
+        if (words == null) {
+            count = 0;
+        } else {
+            Arrays.fill(words, 0);
+        }
+    }
+
+    /**
+     * Calls the action for every element, in increasing order.
+     */
+    public void forEach(IntConsumer action) {
+        if (words == null) {
+            for (int i = 0; i < count; i++) {
+                action.accept(sorted[i]);
+            }
+            return;
+        }
+        for (int i = 0; i < words.length; i++) {
+            long word = words[i];
+            while (word != 0) {
+                action.accept((i << 6) + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof OrdinalSet)) {
+            return false;
+        }
+        OrdinalSet other = (OrdinalSet) o;
+        return size() == other.size() && containsAll(other);
+    }
+
+    @Override
+    public int hashCode() {
+        //The same for both representations: the elements in increasing order.
+        int hash = 0;
+        if (words == null) {
+            for (int i = 0; i < count; i++) {
+                hash = 31 * hash + sorted[i];
+            }
+            return hash;
+        }
+        for (int i = 0; i < words.length; i++) {
+            long word = words[i];
+            while (word != 0) {
+                hash = 31 * hash + (i << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("[");
+        forEach(ordinal -> {
+            if (builder.length() > 1) {
+                builder.append(", ");
+            }
+            builder.append(ordinal);
+        });
+        return builder.append(']').toString();
+    }
+}
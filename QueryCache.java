@@ -0,0 +1,286 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of the answers to the read queries the University gets over and over (eligible courses of a
+ * student, course information, pre-requisite closures), see University.getQueryCache.
+ *
+ * Every answer is kept with the object it was computed from (a Student or a Course) and the version that object
+ * had. Students and courses count their own changes (see Student.getVersion and Course.getVersion), and the
+ * University counts the changes to the shape of the catalog, so an answer is served only if nothing it depends on
+ * changed since: an enrollment makes the student's eligible courses stale and nothing else. Stale answers are
+ * dropped when they are found.
+ *
+ * The cache holds at most getMaxWeight() bytes of answers (estimated). It is split into segments, each an LRU list
+ * under its own lock, so lookups from many threads rarely wait for each other. The least recently used answers of
+ * a segment are evicted when it is over its share of the weight.
+ */
+public class QueryCache {
+    public static final long DEFAULT_MAX_WEIGHT = 16L << 20;
+    //Estimated bytes of a cached answer besides its value: key, entry, map node.
+    static final int ENTRY_WEIGHT = 96;
+    private static final int SEGMENTS = 16;
+
+    enum Query {
+        ELIGIBLE_COURSES,
+        COURSE_INFO,
+        ALL_PRE_REQUISITES
+    }
+
+    /**
+     * A query and its argument: a student ID or a course code.
+     */
+    static final class Key {
+        final Query query;
+        final int studentID;
+        final String courseCode;
+        private final int hash;
+
+        private Key(Query query, int studentID, String courseCode) {
+            this.query = query;
+            this.studentID = studentID;
+            this.courseCode = courseCode;
+            this.hash = 31 * (31 * query.hashCode() + studentID) + (courseCode == null ? 0 : courseCode.hashCode());
+        }
+
+        static Key of(Query query, int studentID) {
+            return new Key(query, studentID, null);
+        }
+
+        static Key of(Query query, String courseCode) {
+            return new Key(query, 0, courseCode);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return query == key.query && studentID == key.studentID
+                    && (courseCode == null ? key.courseCode == null : courseCode.equals(key.courseCode));
+        }
+    }
+
+    private static final class Entry {
+        final Object owner;
+        final long version;
+        final Object value;
+        final long weight;
+
+        Entry(Object owner, long version, Object value, long weight) {
+            this.owner = owner;
+            this.version = version;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    private final class Segment {
+        //Access order, so the eldest entry is the least recently used one.
+        private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long weight;
+
+        synchronized Object get(Key key, Object owner, long version) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.owner != owner || entry.version != version) {
+                entries.remove(key);
+                weight -= entry.weight;
+                invalidations.increment();
+                return null;
+            }
+            return entry.value;
+        }
+
+        synchronized void put(Key key, Entry entry, long maxWeight) {
+            Entry replaced = entries.put(key, entry);
+            weight += entry.weight - (replaced == null ? 0 : replaced.weight);
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (weight > maxWeight && eldest.hasNext()) {
+                weight -= eldest.next().weight;
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+
+        synchronized void remove(Key key) {
+            Entry entry = entries.remove(key);
+            if (entry != null) {
+                weight -= entry.weight;
+            }
+        }
+
+        synchronized void clear() {
+            entries.clear();
+            weight = 0;
+        }
+
+        synchronized long weight() {
+            return weight;
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+    }
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private volatile long maxWeight;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public QueryCache(long maxWeight) {
+        setMaxWeight(maxWeight);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    private Segment segmentOf(Key key) {
+        int hash = key.hashCode() * 0x9E3779B9;
+        return segments[hash >>> 28];
+    }
+
+    /**
+     * @param owner the student or course the answer was computed from
+     * @param version the version the answer must have been computed at
+     * @return the cached answer, or null if there is none or it is stale
+     */
+    Object get(Key key, Object owner, long version) {
+        Object value = segmentOf(key).get(key, owner, version);
+        if (value == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return value;
+    }
+
+    /**
+     * Caches an answer. The version must have been read before the answer was computed (or while nothing could
+     * change it), so an answer computed during a change is stored as stale rather than served.
+     * @param weight the estimated bytes of the value
+     */
+    void put(Key key, Object owner, long version, Object value, long weight) {
+        long segmentWeight = maxWeight / SEGMENTS;
+        long entryWeight = weight + ENTRY_WEIGHT;
+        if (entryWeight > segmentWeight) {
+            //Also the case when the cache is turned off with a maximum weight of 0.
+            return;
+        }
+        segmentOf(key).put(key, new Entry(owner, version, value, entryWeight), segmentWeight);
+    }
+
+    /**
+     * Drops the answer to a query, e.g. because its student or course is removed and it only takes room.
+     */
+    void remove(Key key) {
+        segmentOf(key).remove(key);
+    }
+
+    /**
+     * Drops every answer. The statistics are kept.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * Changes the most bytes the cached answers can take. 0 turns the cache off. Segments over their share
+     * shrink on their next insertion.
+     */
+    public void setMaxWeight(long maxWeight) {
+        if (maxWeight < 0) {
+            throw new IllegalArgumentException("The maximum weight cannot be negative: " + maxWeight);
+        }
+        this.maxWeight = maxWeight;
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    /**
+     * @return the estimated bytes taken by the cached answers
+     */
+    public long getWeight() {
+        long weight = 0;
+        for (Segment segment : segments) {
+            weight += segment.weight();
+        }
+        return weight;
+    }
+
+    /**
+     * @return the number of cached answers
+     */
+    public int getSize() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups that had to compute the answer, including those that found a stale one
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of answers dropped to make room
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the number of stale answers dropped because what they depend on changed
+     */
+    public long getInvalidationCount() {
+        return invalidations.sum();
+    }
+
+    public double getHitRate() {
+        long hits = getHitCount();
+        long lookups = hits + getMissCount();
+        return lookups == 0 ? 0 : hits / (double) lookups;
+    }
+
+    /**
+     * Resets the hit, miss, eviction and invalidation counts.
+     */
+    public void resetStats() {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+        invalidations.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits=%d misses=%d hitRate=%.3f evictions=%d invalidations=%d size=%d weight=%d/%d",
+                getHitCount(), getMissCount(), getHitRate(), getEvictionCount(), getInvalidationCount(), getSize(),
+                getWeight(), getMaxWeight());
+    }
+}
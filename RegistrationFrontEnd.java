@@ -0,0 +1,384 @@
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Takes registration requests from many clients at once and applies them to a University in micro-batches.
+ *
+ * Requests are split into partitions by course code or by student (see Partitioning). Each partition has a queue
+ * and a single writer thread. The writer takes every request waiting in its queue (up to MAX_BATCH) and groups
+ * them by course, keeping the order of the requests for each course. Consecutive enrollments in a course are
+ * coalesced into one University.enrollAll. That call takes the catalog lock and looks the course up once, locks the
+ * course once per chunk of students, and claims their seats with one update. The other requests are applied one by
+ * one. Callers get a CompletableFuture of the typed result, completed by the writer.
+ *
+ * Clients are meant to run one request (or one connection) per virtual thread, see newRequestExecutor: a virtual
+ * thread waiting for its future costs a few hundred bytes, so 100k clients can wait at the same time. Futures are
+ * completed on the writer thread, so work chained to them should be short or use the *Async methods.
+ */
+public class RegistrationFrontEnd implements AutoCloseable {
+    public static final int MAX_BATCH = 256;
+
+    /**
+     * How requests are spread over the writers.
+     */
+    public enum Partitioning {
+        //All the requests for a course go to one writer, so a burst for a popular course is coalesced as a whole
+        //and never competes with another writer for the course's lock.
+        BY_COURSE,
+        //All the requests of a student go to one writer, so writers never compete for a student's lock, e.g. when
+        //students register for many courses at the same time. Requests of different students for a course may
+        //then be applied in any order.
+        BY_STUDENT
+    }
+
+    //Groups a batch by course; the sort is stable, so the requests for a course keep their order.
+    private static final Comparator<Request<?>> BY_COURSE_CODE =
+            Comparator.comparing(request -> request.courseCode, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    //Executors.newVirtualThreadPerTaskExecutor, when the JVM has virtual threads (Java 21 and later).
+    private static final Method NEW_VIRTUAL_THREAD_EXECUTOR = virtualThreadExecutorFactory();
+    //Number of platform threads that wait for requests when there are no virtual threads.
+    private static final int FALLBACK_REQUEST_THREADS = 256;
+
+    private final University university;
+    private final Partitioning partitioning;
+    private final Partition[] partitions;
+    //Submitting holds it shared and close holds it exclusively, so no request is queued after its writer stopped.
+    private final ReentrantReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private boolean closed;
+
+    /**
+     * One partition per processor, by course.
+     */
+    public RegistrationFrontEnd(University university) {
+        this(university, Runtime.getRuntime().availableProcessors());
+    }
+
+    public RegistrationFrontEnd(University university, int partitions) {
+        this(university, partitions, Partitioning.BY_COURSE);
+    }
+
+    public RegistrationFrontEnd(University university, int partitions, Partitioning partitioning) {
+        if (partitions < 1) {
+            throw new IllegalArgumentException("At least one partition is needed: " + partitions);
+        }
+        this.university = university;
+        this.partitioning = Objects.requireNonNull(partitioning);
+        this.partitions = new Partition[partitions];
+        for (int i = 0; i < partitions; i++) {
+            this.partitions[i] = new Partition(i);
+        }
+    }
+
+    /*
+     * Requests
+     */
+
+    /**
+     * Queues an enrollment (see University.enroll).
+     */
+    public CompletableFuture<EnrollmentResult> enroll(int studentID, String courseCode) {
+        return submit(new Enroll(studentID, courseCode));
+    }
+
+    /**
+     * Queues a drop (see University.removeStudentFromCourse).
+     */
+    public CompletableFuture<Boolean> drop(int studentID, String courseCode) {
+        return submit(new Drop(studentID, courseCode));
+    }
+
+    /**
+     * Queues a waitlist request (see University.addStudentToWaitlist).
+     */
+    public CompletableFuture<Boolean> waitlist(int studentID, String courseCode) {
+        return submit(new Waitlist(studentID, courseCode));
+    }
+
+    private abstract static class Request<T> {
+        final int studentID;
+        final String courseCode;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+
+        Request(int studentID, String courseCode) {
+            this.studentID = studentID;
+            this.courseCode = courseCode;
+        }
+
+        abstract T applyTo(University university);
+
+        void run(University university) {
+            try {
+                result.complete(applyTo(university));
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static class Enroll extends Request<EnrollmentResult> {
+        Enroll(int studentID, String courseCode) {
+            super(studentID, courseCode);
+        }
+
+        @Override
+        EnrollmentResult applyTo(University university) {
+            return university.enroll(studentID, courseCode);
+        }
+    }
+
+    private static class Drop extends Request<Boolean> {
+        Drop(int studentID, String courseCode) {
+            super(studentID, courseCode);
+        }
+
+        @Override
+        Boolean applyTo(University university) {
+            return university.removeStudentFromCourse(studentID, courseCode);
+        }
+    }
+
+    private static class Waitlist extends Request<Boolean> {
+        Waitlist(int studentID, String courseCode) {
+            super(studentID, courseCode);
+        }
+
+        @Override
+        Boolean applyTo(University university) {
+            return university.addStudentToWaitlist(studentID, courseCode);
+        }
+    }
+
+    //Tells a writer to stop, once the requests queued before it are applied.
+    private static final Request<Void> STOP = new Request<Void>(0, null) {
+        @Override
+        Void applyTo(University university) {
+            return null;
+        }
+    };
+
+    private <T> CompletableFuture<T> submit(Request<T> request) {
+        closeLock.readLock().lock();
+        try {
+            if (closed) {
+                request.result.completeExceptionally(new IllegalStateException("The registration front-end is closed"));
+            } else {
+                partitions[partitionOf(request)].queue.add(request);
+            }
+        } finally {
+            closeLock.readLock().unlock();
+        }
+        return request.result;
+    }
+
+    private int partitionOf(Request<?> request) {
+        int hash;
+        if (partitioning == Partitioning.BY_STUDENT) {
+            hash = Integer.hashCode(request.studentID) * 0x9E3779B9;
+        } else if (request.courseCode == null) {
+            return 0;
+        } else {
+            hash = request.courseCode.hashCode();
+        }
+        hash ^= hash >>> 16;
+        return (hash & Integer.MAX_VALUE) % partitions.length;
+    }
+
+    /*
+     * Writers
+     */
+
+    private class Partition implements Runnable {
+        final LinkedBlockingQueue<Request<?>> queue = new LinkedBlockingQueue<>();
+        final Thread writer;
+        //Written by the writer only.
+        volatile long batches;
+        volatile long requests;
+        volatile long coalesced;
+
+        Partition(int number) {
+            writer = new Thread(this, "registration-writer-" + number);
+            writer.setDaemon(true);
+            writer.start();
+        }
+
+        @Override
+        public void run() {
+            List<Request<?>> batch = new ArrayList<>(MAX_BATCH);
+            boolean stopping = false;
+            while (!stopping) {
+                try {
+                    batch.add(queue.take());
+                } catch (InterruptedException e) {
+                    //Only close() stops a writer, requests would be left waiting otherwise.
+                    continue;
+                }
+                queue.drainTo(batch, MAX_BATCH - 1);
+                //Nothing is queued after STOP, so the requests before it are all in this batch or applied already.
+                stopping = batch.remove(STOP);
+                batch.sort(BY_COURSE_CODE);
+                int end;
+                for (int start = 0; start < batch.size(); start = end) {
+                    end = endOfEnrollments(batch, start);
+                    if (end - start > 1) {
+                        enrollAll(batch, start, end);
+                        coalesced += end - start;
+                    } else {
+                        batch.get(start).run(university);
+                        end = start + 1;
+                    }
+                }
+                requests += batch.size();
+                batches++;
+                batch.clear();
+            }
+        }
+
+        /**
+         * @return the end of the enrollments in the course of the request at start, start if it is not an enrollment
+         */
+        private int endOfEnrollments(List<Request<?>> batch, int start) {
+            String courseCode = batch.get(start).courseCode;
+            int end = start;
+            while (end < batch.size() && batch.get(end) instanceof Enroll
+                    && Objects.equals(batch.get(end).courseCode, courseCode)) {
+                end++;
+            }
+            return end;
+        }
+
+        private void enrollAll(List<Request<?>> batch, int start, int end) {
+            int[] studentIDs = new int[end - start];
+            for (int i = start; i < end; i++) {
+                studentIDs[i - start] = batch.get(i).studentID;
+            }
+            EnrollmentResult[] results;
+            try {
+                results = university.enrollAll(batch.get(start).courseCode, studentIDs);
+            } catch (RuntimeException e) {
+                for (int i = start; i < end; i++) {
+                    batch.get(i).result.completeExceptionally(e);
+                }
+                return;
+            }
+            for (int i = start; i < end; i++) {
+                ((Enroll) batch.get(i)).result.complete(results[i - start]);
+            }
+        }
+    }
+
+    /**
+     * @return the number of requests applied so far
+     */
+    public long getRequestCount() {
+        long requests = 0;
+        for (Partition partition : partitions) {
+            requests += partition.requests;
+        }
+        return requests;
+    }
+
+    /**
+     * @return the number of enrollments applied together with others in the same course (see University.enrollAll)
+     */
+    public long getCoalescedCount() {
+        long coalesced = 0;
+        for (Partition partition : partitions) {
+            coalesced += partition.coalesced;
+        }
+        return coalesced;
+    }
+
+    /**
+     * @return the mean number of requests a writer applied at once
+     */
+    public double getAverageBatchSize() {
+        long batches = 0;
+        for (Partition partition : partitions) {
+            batches += partition.batches;
+        }
+        return batches == 0 ? 0 : getRequestCount() / (double) batches;
+    }
+
+    /**
+     * Applies the requests already queued, then stops the writers. Requests made afterwards fail with an
+     * IllegalStateException. An interrupt does not stop the wait for the writers, the thread is interrupted again
+     * once they stopped.
+     */
+    @Override
+    public void close() {
+        closeLock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (Partition partition : partitions) {
+                partition.queue.add(STOP);
+            }
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        boolean interrupted = false;
+        for (Partition partition : partitions) {
+            while (true) {
+                try {
+                    partition.writer.join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * Client threads
+     */
+
+    /**
+     * @return true if newRequestExecutor starts a virtual thread per task
+     */
+    public static boolean hasVirtualThreads() {
+        return NEW_VIRTUAL_THREAD_EXECUTOR != null;
+    }
+
+    /**
+     * An executor to run client requests on: a new virtual thread per task on Java 21 and later, otherwise
+     * FALLBACK_REQUEST_THREADS platform threads, which bounds the number of clients waiting at the same time.
+     */
+    public static ExecutorService newRequestExecutor() {
+        if (NEW_VIRTUAL_THREAD_EXECUTOR != null) {
+            try {
+                return (ExecutorService) NEW_VIRTUAL_THREAD_EXECUTOR.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                //Falls back to platform threads.
+            }
+        }
+        return Executors.newFixedThreadPool(FALLBACK_REQUEST_THREADS, task -> {
+            Thread thread = new Thread(task, "registration-request");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static Method virtualThreadExecutorFactory() {
+        //Looked up by reflection so the code still compiles and runs on Java 17.
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes student transcripts and class lists, one line at a time, for the nightly reports.
+ *
+ * The lines have the same text as Student.getFullStudentInfo and Course.getFullCourseInfo, but no String is
+ * created for them: every line is rendered into one StringBuilder that is reused, from the headers that students
+ * and courses build once (see Student.toString), and then copied to the output.
+ *   - to a Writer (or an OutputStream, encoded as UTF-8) the line goes through a reused char[], so rendering a
+ *     line allocates (almost) nothing;
+ *   - to a StringBuilder the line is appended directly;
+ *   - to any other Appendable the line is passed as a CharSequence, which may be copied by the Appendable.
+ *
+ * Students and courses should not be changed while their lines are written (e.g. write the report from a
+ * university loaded from a snapshot, or while nobody is registering). The class is not thread-safe.
+ */
+public class ReportWriter implements Flushable {
+    private final Appendable out;
+    //Same object as out when it is a Writer, null otherwise.
+    private final Writer writer;
+    private final StringBuilder line = new StringBuilder(256);
+    private char[] chars = new char[256];
+
+    public ReportWriter(Appendable out) {
+        this.out = out;
+        this.writer = out instanceof Writer ? (Writer) out : null;
+    }
+
+    /**
+     * Writes to a stream, encoded as UTF-8. The stream is buffered, call flush() when done.
+     */
+    public ReportWriter(OutputStream out) {
+        this(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Writes the transcript line of a student (the text of getFullStudentInfo) followed by a new line.
+     */
+    public ReportWriter writeStudent(Student student) throws IOException {
+        line.setLength(0);
+        student.appendFullStudentInfo(line);
+        return endLine();
+    }
+
+    /**
+     * Writes the text of getFullCourseInfo followed by a new line.
+     */
+    public ReportWriter writeCourse(Course course) throws IOException {
+        line.setLength(0);
+        course.appendFullCourseInfo(line);
+        return endLine();
+    }
+
+    /**
+     * Writes the class list of a course: a line with the course and the number of students, then one indented
+     * line per enrolled student, in the order they enrolled.
+     */
+    public ReportWriter writeClassList(Course course) throws IOException {
+        line.setLength(0);
+        line.append(course.toString()).append(" - Class List: ").append(course.getEnrolledStudents().size());
+        line.append(" students");
+        endLine();
+        for (Student student : course.getEnrolledStudents()) {
+            line.setLength(0);
+            line.append("    ").append(student.toString());
+            endLine();
+        }
+        return this;
+    }
+
+    public ReportWriter writeStudents(Iterable<Student> students) throws IOException {
+        for (Student student : students) {
+            writeStudent(student);
+        }
+        return this;
+    }
+
+    public ReportWriter writeClassLists(Iterable<Course> courses) throws IOException {
+        for (Course course : courses) {
+            writeClassList(course);
+        }
+        return this;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (out instanceof Flushable) {
+            ((Flushable) out).flush();
+        }
+    }
+
+    private ReportWriter endLine() throws IOException {
+        line.append('\n');
+        int length = line.length();
+        if (writer != null) {
+            //Writer.append(CharSequence) would turn the line into a String first.
+            if (chars.length < length) {
+                chars = new char[Math.max(length, chars.length * 2)];
+            }
+            line.getChars(0, length, chars, 0);
+            writer.write(chars, 0, length);
+        } else {
+            out.append(line);
+        }
+        return this;
+    }
+}
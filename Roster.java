@@ -0,0 +1,295 @@
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * List of unique elements used for the class lists of courses.
+ * It keeps the order in which elements were added (the order of a class list) and, unlike a LinkedList,
+ * adds, removes and finds elements in constant time.
+ *
+ * Elements live in an array and a HashMap remembers the slot of each element.
+ * Removing an element only leaves a hole in its slot. Holes are skipped when iterating and reading, and are
+ * compacted away by add and remove once there are more holes than elements, so iterating stays proportional to
+ * the size of the list. Reads never change the list, so readers cannot damage it even when they race a writer.
+ *
+ * Many rosters stay small (most courses have a few dependent courses, often none), so the HashMap is only
+ * created when the list grows past MAX_UNINDEXED elements. Until then elements are found with a linear scan and
+ * removing one shifts the ones after it, so a small list has no holes. The array is created on the first add.
+ *
+ * The class is not thread-safe. Course instances are protected by the University's locks.
+ */
+public class Roster<E> extends AbstractList<E> implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final int MIN_HOLES_TO_COMPACT = 16;
+    public static final int MAX_UNINDEXED = 8;
+    private static final Object[] NO_SLOTS = new Object[0];
+
+    private Object[] slots;
+    private int end;   //Number of slots in use, holes included.
+    private int size;
+    //Null while the list has at most MAX_UNINDEXED elements.
+    private HashMap<E, Integer> positions;
+
+    public Roster() {
+        slots = NO_SLOTS;
+    }
+
+    public Roster(int expectedSize) {
+        slots = expectedSize > 0 ? new Object[expectedSize] : NO_SLOTS;
+        if (expectedSize > MAX_UNINDEXED) {
+            positions = new HashMap<>(Math.max(16, (int) (expectedSize / 0.75f) + 1));
+        }
+    }
+
+    /**
+     * Adds an element at the end of the list, if it is not on the list already.
+     * @param element the element to be added
+     * @return true if the element was added, false if it was already on the list
+     */
+    @Override
+    public boolean add(E element) {
+        Objects.requireNonNull(element);
+        if (positions == null) {
+            if (scan(element) >= 0) {
+                return false;
+            }
+            if (size == MAX_UNINDEXED) {
+                index();
+            }
+        }
+        if (positions != null && positions.putIfAbsent(element, end) != null) {
+            return false;
+        }
+        if (end == slots.length) {
+            //Compacting is enough if most of the array are holes, otherwise we grow it.
+            if (end - size > size) {
+                compact();
+                positions.put(element, end);
+            } else {
+                slots = Arrays.copyOf(slots, Math.max(4, slots.length + (slots.length >> 1) + 1));
+            }
+        }
+        slots[end++] = element;
+        size++;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object element) {
+        if (positions == null) {
+            int slot = scan(element);
+            if (slot < 0) {
+                return false;
+            }
+            removeUnindexed(slot);
+            return true;
+        }
+        Integer position = positions.remove(element);
+        if (position == null) {
+            return false;
+        }
+        slots[position] = null;
+        size--;
+        modCount++;
+        int holes = end - size;
+        if (holes > MIN_HOLES_TO_COMPACT && holes > size) {
+            compact();
+        }
+        return true;
+    }
+
+    @Override
+    public E remove(int index) {
+        E element = get(index);
+        remove(element);
+        return element;
+    }
+
+    @Override
+    public boolean contains(Object element) {
+        return positions == null ? scan(element) >= 0 : positions.containsKey(element);
+    }
+
+    @Override
+    public int indexOf(Object element) {
+        if (positions == null) {
+            return scan(element);
+        }
+        Integer position = positions.get(element);
+        if (position == null) {
+            return -1;
+        }
+        //The index is the slot less the holes before it.
+        Object[] slots = this.slots;
+        int slot = Math.min(position, slots.length);
+        int index = 0;
+        for (int i = 0; i < slot; i++) {
+            if (slots[i] != null) {
+                index++;
+            }
+        }
+        return index;
+    }
+
+    @Override
+    public int lastIndexOf(Object element) {
+        return indexOf(element);
+    }
+
+    /**
+     * Returns the element at the given position of the list.
+     * Fast when the list has no holes, otherwise the slots are scanned, skipping the holes.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        Objects.checkIndex(index, size);
+        Object[] slots = this.slots;
+        int end = Math.min(this.end, slots.length);
+        if (end == size) {
+            Object element = slots[index];
+            if (element != null) {
+                return (E) element;
+            }
+        }
+        int seen = 0;
+        for (int i = 0; i < end; i++) {
+            Object element = slots[i];
+            if (element != null && seen++ == index) {
+                return (E) element;
+            }
+        }
+        //Only when a writer removed elements meanwhile.
+        throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(slots, 0, end, null);
+        if (positions != null) {
+            positions.clear();
+        }
+        end = 0;
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private int next = skipHoles(0);
+            private int last = -1;
+            private int expectedModCount = modCount;
+
+            @Override
+            public boolean hasNext() {
+                return next < end;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (next >= end) {
+                    throw new NoSuchElementException();
+                }
+                last = next;
+                next = skipHoles(next + 1);
+                return (E) slots[last];
+            }
+
+            @Override
+            public void remove() {
+                if (last < 0) {
+                    throw new IllegalStateException();
+                }
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (positions == null) {
+                    //The elements after the removed one move back by one, so the next one is at its place.
+                    removeUnindexed(last);
+                    next = last;
+                    last = -1;
+                    expectedModCount = modCount;
+                    return;
+                }
+                //Removing from the iterator must not move the elements we have not visited yet.
+                positions.remove(slots[last]);
+                slots[last] = null;
+                size--;
+                last = -1;
+                modCount++;
+                expectedModCount = modCount;
+            }
+        };
+    }
+
+    /**
+     * @return the slot of the element, or -1. Only used while the list is not indexed, so it has no holes.
+     */
+    private int scan(Object element) {
+        for (int i = 0; i < end; i++) {
+            if (slots[i].equals(element)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void removeUnindexed(int slot) {
+        System.arraycopy(slots, slot + 1, slots, slot, end - slot - 1);
+        slots[--end] = null;
+        size--;
+        modCount++;
+    }
+
+    /**
+     * Creates the positions of the elements, when the list outgrows a linear scan.
+     */
+    @SuppressWarnings("unchecked")
+    private void index() {
+        positions = new HashMap<>(4 * MAX_UNINDEXED);
+        for (int i = 0; i < end; i++) {
+            positions.put((E) slots[i], i);
+        }
+    }
+
+    private int skipHoles(int from) {
+        while (from < end && slots[from] == null) {
+            from++;
+        }
+        return from;
+    }
+
+    /**
+     * Moves every element to the front of the array, in order, removing the holes.
+     */
+    @SuppressWarnings("unchecked")
+    private void compact() {
+        int target = 0;
+        for (int i = 0; i < end; i++) {
+            Object element = slots[i];
+            if (element != null) {
+                if (target != i) {
+                    slots[target] = element;
+                    if (positions != null) {
+                        positions.put((E) element, target);
+                    }
+                }
+                target++;
+            }
+        }
+        Arrays.fill(slots, target, end, null);
+        end = target;
+        //Positions changed, so iterators created before must not continue.
+        modCount++;
+    }
+}
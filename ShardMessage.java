@@ -0,0 +1,115 @@
+import java.io.Serializable;
+
+/**
+ * A request sent to one node of a ShardedUniversity through a ShardTransport. Messages only carry IDs, codes and
+ * numbers, so any transport that can copy a Serializable object (e.g. over a socket) can carry them.
+ */
+public class ShardMessage implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public enum Op {
+        ADD_STUDENT,
+        ADD_COURSE,
+        ADD_REQUISITE,
+        ADD_PREVIOUS_COURSE,
+        REPLICATE_STUDENT,
+        REPLICATE_PREVIOUS_COURSE,
+        ENROLL,
+        DROP,
+        SEAT,
+        RELEASE_SEAT,
+        REMOVE_STUDENT,
+        REMOVE_COURSE,
+        CLASS_LIST,
+        ENROLLED_COURSES
+    }
+
+    final Op op;
+    final int studentID;
+    final String courseCode;
+    //The student or course name of ADD_STUDENT and ADD_COURSE, the pre-requisite code of ADD_REQUISITE.
+    final String text;
+    final int capacity;
+
+    private ShardMessage(Op op, int studentID, String courseCode, String text, int capacity) {
+        this.op = op;
+        this.studentID = studentID;
+        this.courseCode = courseCode;
+        this.text = text;
+        this.capacity = capacity;
+    }
+
+    static ShardMessage addStudent(String name, int studentID) {
+        return new ShardMessage(Op.ADD_STUDENT, studentID, null, name, 0);
+    }
+
+    static ShardMessage addCourse(String name, String courseCode, int capacity) {
+        return new ShardMessage(Op.ADD_COURSE, 0, courseCode, name, capacity);
+    }
+
+    static ShardMessage addRequisite(String courseCode, String preReqCourseCode) {
+        return new ShardMessage(Op.ADD_REQUISITE, 0, courseCode, preReqCourseCode, 0);
+    }
+
+    static ShardMessage addPreviousCourse(int studentID, String courseCode) {
+        return new ShardMessage(Op.ADD_PREVIOUS_COURSE, studentID, courseCode, null, 0);
+    }
+
+    /**
+     * Adds a student of another node to the passed-courses view of a node, so its courses can seat them.
+     */
+    static ShardMessage replicateStudent(int studentID) {
+        return new ShardMessage(Op.REPLICATE_STUDENT, studentID, null, null, 0);
+    }
+
+    /**
+     * Adds a course passed by a student of another node to the passed-courses view of a node.
+     */
+    static ShardMessage replicatePreviousCourse(int studentID, String courseCode) {
+        return new ShardMessage(Op.REPLICATE_PREVIOUS_COURSE, studentID, courseCode, null, 0);
+    }
+
+    static ShardMessage enroll(int studentID, String courseCode) {
+        return new ShardMessage(Op.ENROLL, studentID, courseCode, null, 0);
+    }
+
+    static ShardMessage drop(int studentID, String courseCode) {
+        return new ShardMessage(Op.DROP, studentID, courseCode, null, 0);
+    }
+
+    /**
+     * Claims a seat on the course's node for a student of another node, checking their pre-requisites against the
+     * node's passed-courses view. The student's node records the course once the seat is claimed.
+     */
+    static ShardMessage seat(int studentID, String courseCode) {
+        return new ShardMessage(Op.SEAT, studentID, courseCode, null, 0);
+    }
+
+    /**
+     * Gives back the seat of a student of another node, which already recorded the drop.
+     */
+    static ShardMessage releaseSeat(int studentID, String courseCode) {
+        return new ShardMessage(Op.RELEASE_SEAT, studentID, courseCode, null, 0);
+    }
+
+    static ShardMessage removeStudent(int studentID) {
+        return new ShardMessage(Op.REMOVE_STUDENT, studentID, null, null, 0);
+    }
+
+    static ShardMessage removeCourse(String courseCode) {
+        return new ShardMessage(Op.REMOVE_COURSE, 0, courseCode, null, 0);
+    }
+
+    static ShardMessage classList(String courseCode) {
+        return new ShardMessage(Op.CLASS_LIST, 0, courseCode, null, 0);
+    }
+
+    static ShardMessage enrolledCourses(int studentID) {
+        return new ShardMessage(Op.ENROLLED_COURSES, studentID, null, null, 0);
+    }
+
+    @Override
+    public String toString() {
+        return op + " " + studentID + " " + courseCode + " " + text + " " + capacity;
+    }
+}
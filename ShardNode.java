@@ -0,0 +1,217 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One node of a ShardedUniversity: a University holding the whole catalog and the students the node owns, plus
+ * stubs of the students of other nodes enrolled in its courses.
+ *
+ * Every node knows the whole catalog (with pre-requisites). Seats and class lists are only real on the node owning
+ * the course (other nodes keep it with unlimited seats). Every node also keeps a passed-courses view of the
+ * students of the other nodes: their ID and the ordinals of the courses they passed, as this node numbers them, so
+ * a course's node checks pre-requisites without asking the student's node. That is an OrdinalSet per student, not
+ * a Student with its name and courses.
+ *
+ * A student of another node gets a seat through a stub: a Student with only their ID, no passed courses and the
+ * courses of this node they are enrolled in. The stub goes away with its last course.
+ */
+public class ShardNode {
+    private static final int STUB_LOCKS = 64;
+    //The view entry of a student who passed nothing. Entries are never changed, a new set replaces them.
+    private static final OrdinalSet NO_COURSES = new OrdinalSet();
+
+    private final int number;
+    private final University university;
+    //The stubs held by the university, so they are told apart from the students this node owns.
+    private final StudentIndex stubs = new StudentIndex();
+    //The passed-courses view of the students of other nodes, changed under the student's stub lock.
+    private final ConcurrentHashMap<Integer, OrdinalSet> passedCourses = new ConcurrentHashMap<>();
+    //Seating a stub and removing it once it has no course left must not interleave, when a node has many threads.
+    private final Object[] stubLocks = new Object[STUB_LOCKS];
+
+    public ShardNode(int number, String universityName, String universityMotto) {
+        this.number = number;
+        this.university = new University(universityName, universityMotto);
+        for (int i = 0; i < STUB_LOCKS; i++) {
+            stubLocks[i] = new Object();
+        }
+    }
+
+    public int getNumber() {
+        return number;
+    }
+
+    /**
+     * The local part of the university. Changes must go through the ShardedUniversity to stay consistent.
+     */
+    public University getUniversity() {
+        return university;
+    }
+
+    /**
+     * Applies a message to the local university.
+     * @return a Boolean, an EnrollmentResult or, for queries, a List of student IDs or course codes
+     */
+    public Object handle(ShardMessage message) {
+        switch (message.op) {
+            case ADD_STUDENT:
+                return university.addStudent(message.text, message.studentID);
+            case ADD_COURSE:
+                return university.addCourse(new Course(message.text, message.courseCode, message.capacity));
+            case ADD_REQUISITE:
+                return university.addRequisiteToCourse(message.courseCode, message.text);
+            case ADD_PREVIOUS_COURSE:
+                return university.addPreviousCourseToStudent(message.studentID, message.courseCode);
+            case REPLICATE_STUDENT:
+                return replicateStudent(message.studentID);
+            case REPLICATE_PREVIOUS_COURSE:
+                return replicatePreviousCourse(message.studentID, message.courseCode);
+            case ENROLL:
+                return university.enroll(message.studentID, message.courseCode);
+            case DROP:
+                return university.removeStudentFromCourse(message.studentID, message.courseCode);
+            case SEAT:
+                return seat(message.studentID, message.courseCode);
+            case RELEASE_SEAT:
+                return releaseSeat(message.studentID, message.courseCode);
+            case REMOVE_STUDENT:
+                return removeStudent(message.studentID);
+            case REMOVE_COURSE:
+                return removeCourse(message.courseCode);
+            case CLASS_LIST:
+                return classList(message.courseCode);
+            case ENROLLED_COURSES:
+                return enrolledCourses(message.studentID);
+            default:
+                throw new IllegalArgumentException("Unknown message " + message);
+        }
+    }
+
+    private boolean replicateStudent(int studentID) {
+        synchronized (stubLock(studentID)) {
+            return passedCourses.putIfAbsent(studentID, NO_COURSES) == null;
+        }
+    }
+
+    private boolean replicatePreviousCourse(int studentID, String courseCode) {
+        Course course = university.getCourse(courseCode);
+        synchronized (stubLock(studentID)) {
+            OrdinalSet passed = passedCourses.get(studentID);
+            if (passed == null || course == null || passed.contains(course.getOrdinal())) {
+                return false;
+            }
+            //Copied, a seat being claimed may be checking the current set.
+            OrdinalSet updated = new OrdinalSet(passed);
+            updated.add(course.getOrdinal());
+            passedCourses.put(studentID, updated);
+            return true;
+        }
+    }
+
+    private EnrollmentResult seat(int studentID, String courseCode) {
+        synchronized (stubLock(studentID)) {
+            OrdinalSet passed = passedCourses.get(studentID);
+            if (passed == null) {
+                return EnrollmentResult.UNKNOWN_STUDENT;
+            }
+            Student stub = stubs.get(studentID);
+            if (stub == null) {
+                if (university.getCourse(courseCode) == null) {
+                    return EnrollmentResult.UNKNOWN_COURSE;
+                }
+                university.addStudent(Integer.toString(studentID), studentID);
+                stub = university.getStudent(studentID);
+                stubs.putIfAbsent(stub);
+            }
+            EnrollmentResult result = university.claimSeat(studentID, courseCode, passed);
+            removeIfUnused(stub);
+            return result;
+        }
+    }
+
+    private boolean releaseSeat(int studentID, String courseCode) {
+        synchronized (stubLock(studentID)) {
+            Student stub = stubs.get(studentID);
+            if (stub == null) {
+                return false;
+            }
+            boolean dropped = university.removeStudentFromCourse(studentID, courseCode);
+            removeIfUnused(stub);
+            return dropped;
+        }
+    }
+
+    private boolean removeStudent(int studentID) {
+        synchronized (stubLock(studentID)) {
+            passedCourses.remove(studentID);
+            Student stub = stubs.get(studentID);
+            if (stub != null) {
+                stubs.remove(studentID, stub);
+            }
+            return university.removeStudentFromUniversity(studentID);
+        }
+    }
+
+    private boolean removeCourse(String courseCode) {
+        List<Integer> classList = classList(courseCode);
+        boolean removed = university.removeCourseFromUniversity(courseCode);
+        //The stubs only enrolled in the course are left with nothing.
+        for (int id : classList) {
+            synchronized (stubLock(id)) {
+                Student stub = stubs.get(id);
+                if (stub != null) {
+                    removeIfUnused(stub);
+                }
+            }
+        }
+        return removed;
+    }
+
+    //The caller holds the stub's lock.
+    private void removeIfUnused(Student stub) {
+        if (stub.getEnrolledCourses().isEmpty()) {
+            stubs.remove(stub.getIdNumber(), stub);
+            university.removeStudentFromUniversity(stub.getIdNumber());
+        }
+    }
+
+    private Object stubLock(int studentID) {
+        return stubLocks[Math.floorMod(studentID, STUB_LOCKS)];
+    }
+
+    /**
+     * @return the number of students of other nodes enrolled in the courses of this node
+     */
+    public int getStubCount() {
+        return stubs.size();
+    }
+
+    /**
+     * @return the number of students of other nodes in the passed-courses view of this node
+     */
+    public int getReplicatedStudentCount() {
+        return passedCourses.size();
+    }
+
+    private List<Integer> classList(String courseCode) {
+        Course course = university.getCourse(courseCode);
+        List<Integer> ids = new ArrayList<>();
+        if (course != null) {
+            for (Student student : course.getEnrolledStudents().toArray(new Student[0])) {
+                ids.add(student.getIdNumber());
+            }
+        }
+        return ids;
+    }
+
+    private List<String> enrolledCourses(int studentID) {
+        Student student = university.getStudent(studentID);
+        List<String> codes = new ArrayList<>();
+        if (student != null) {
+            for (Course course : university.getEnrolledCourses(student)) {
+                codes.add(course.getCourseCode());
+            }
+        }
+        return codes;
+    }
+}
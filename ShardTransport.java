@@ -0,0 +1,20 @@
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Carries messages from a ShardedUniversity to its nodes, numbered from 0 to getNodeCount() - 1.
+ * LoopbackTransport runs the nodes in the same JVM. Other transports (e.g. sockets to other JVMs) only have to
+ * deliver each message to ShardNode.handle on the right node and bring the result back.
+ */
+public interface ShardTransport extends AutoCloseable {
+
+    int getNodeCount();
+
+    /**
+     * Sends a message to a node.
+     * @return the value ShardNode.handle returned on the node, or the exception it threw
+     */
+    CompletableFuture<Object> send(int node, ShardMessage message);
+
+    @Override
+    void close();
+}
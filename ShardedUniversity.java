@@ -0,0 +1,283 @@
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * A University split over several nodes, each holding its own students and the class lists of its own courses.
+ *
+ *     ShardedUniversity university = ShardedUniversity.inProcess("Consortium", "Motto", 4);
+ *     university.addCourse("Algorithms", "COMP 3170", 120);
+ *     university.addStudent("Ada", 1001);
+ *     university.enroll(1001, "COMP 3170");
+ *
+ * Courses are owned by the node courseShardOf(code), which keeps their seats and class list. Students are owned
+ * by the node studentShardOf(id), which alone keeps them with the courses they are enrolled in. Two things are
+ * replicated on every node, because they change rarely next to enrollments: the catalog (courses and their
+ * pre-requisites), and a passed-courses view holding the ID of every student and the courses they passed (see
+ * ShardNode). A course's node only knows the IDs of the students of other nodes enrolled in it.
+ *
+ * An enrollment is a two-party operation. The course's node checks the pre-requisites against its passed-courses
+ * view, claims the seat and adds the student's ID to the class list; then the student's node records the course.
+ * If the second step fails (e.g. the student was removed meanwhile) the seat is given back. When one node owns
+ * both, it is a single message. Requests about the same student must wait for each other (as a single client
+ * does): a drop racing with the enrollment it undoes could reach the two nodes in different orders.
+ *
+ * Nodes are reached through a ShardTransport, so they can live in this JVM (LoopbackTransport) or elsewhere.
+ * Waitlists are not sharded yet.
+ */
+public class ShardedUniversity implements AutoCloseable {
+    private final String universityName;
+    private final String universityMotto;
+    private final ShardTransport transport;
+    private final int nodes;
+
+    public ShardedUniversity(String universityName, String universityMotto, ShardTransport transport) {
+        this.universityName = universityName;
+        this.universityMotto = universityMotto;
+        this.transport = transport;
+        this.nodes = transport.getNodeCount();
+        if (nodes < 1) {
+            throw new IllegalArgumentException("At least one node is needed: " + nodes);
+        }
+    }
+
+    /**
+     * A sharded university whose nodes run in this JVM, one thread each.
+     */
+    public static ShardedUniversity inProcess(String universityName, String universityMotto, int shards) {
+        ShardNode[] nodes = new ShardNode[shards];
+        for (int i = 0; i < shards; i++) {
+            nodes[i] = new ShardNode(i, universityName, universityMotto);
+        }
+        return new ShardedUniversity(universityName, universityMotto, new LoopbackTransport(nodes));
+    }
+
+    public int getNodeCount() {
+        return nodes;
+    }
+
+    public ShardTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * @return the node that owns the course's seats and class list
+     */
+    public int courseShardOf(String courseCode) {
+        int hash = courseCode.hashCode();
+        hash ^= hash >>> 16;
+        return (hash & Integer.MAX_VALUE) % nodes;
+    }
+
+    /**
+     * @return the node that owns the student's enrolled courses
+     */
+    public int studentShardOf(int studentID) {
+        return Math.floorMod(studentID, nodes);
+    }
+
+    /*
+     * Students, their passed courses and the catalog
+     */
+
+    public boolean addStudent(String name, int studentID) {
+        int owner = studentShardOf(studentID);
+        if (!(Boolean) join(transport.send(owner, ShardMessage.addStudent(name, studentID)))) {
+            return false;
+        }
+        replicate(ShardMessage.replicateStudent(studentID), owner);
+        return true;
+    }
+
+    /**
+     * @param capacity the number of seats, Course.UNLIMITED for no limit
+     */
+    public boolean addCourse(String name, String courseCode, int capacity) {
+        int owner = courseShardOf(courseCode);
+        CompletableFuture<?>[] replies = new CompletableFuture<?>[nodes];
+        for (int node = 0; node < nodes; node++) {
+            //Other nodes only check pre-requisites against the course, its seats are counted by the owner.
+            int seats = node == owner ? capacity : Course.UNLIMITED;
+            replies[node] = transport.send(node, ShardMessage.addCourse(name, courseCode, seats));
+        }
+        return (Boolean) await(replies, owner);
+    }
+
+    public boolean addCourse(String name, String courseCode) {
+        return addCourse(name, courseCode, Course.UNLIMITED);
+    }
+
+    /**
+     * See University.addRequisiteToCourse.
+     */
+    public boolean addRequisiteToCourse(String courseCode, String preReqCourseCode) {
+        return (Boolean) broadcast(ShardMessage.addRequisite(courseCode, preReqCourseCode), courseShardOf(courseCode));
+    }
+
+    /**
+     * See University.addPreviousCourseToStudent.
+     */
+    public boolean addPreviousCourseToStudent(int studentID, String courseCode) {
+        int owner = studentShardOf(studentID);
+        if (!(Boolean) join(transport.send(owner, ShardMessage.addPreviousCourse(studentID, courseCode)))) {
+            return false;
+        }
+        replicate(ShardMessage.replicatePreviousCourse(studentID, courseCode), owner);
+        return true;
+    }
+
+    /**
+     * Removes the student from their node and from the class lists of every node.
+     */
+    public boolean removeStudentFromUniversity(int studentID) {
+        return (Boolean) broadcast(ShardMessage.removeStudent(studentID), studentShardOf(studentID));
+    }
+
+    /**
+     * Removes the course from every node, which drops it from the enrolled courses of every student.
+     */
+    public boolean removeCourseFromUniversity(String courseCode) {
+        return (Boolean) broadcast(ShardMessage.removeCourse(courseCode), courseShardOf(courseCode));
+    }
+
+    /*
+     * Registration
+     */
+
+    /**
+     * See University.enroll.
+     */
+    public EnrollmentResult enroll(int studentID, String courseCode) {
+        return join(enrollAsync(studentID, courseCode));
+    }
+
+    public boolean enrollStudentInCourse(int studentID, String courseCode) {
+        return enroll(studentID, courseCode) == EnrollmentResult.ENROLLED;
+    }
+
+    /**
+     * Same as enroll, without waiting for the nodes. Many enrollments can be in flight at once, which is how the
+     * nodes are kept busy in parallel.
+     */
+    public CompletableFuture<EnrollmentResult> enrollAsync(int studentID, String courseCode) {
+        int courseNode = courseShardOf(courseCode);
+        int studentNode = studentShardOf(studentID);
+        if (courseNode == studentNode) {
+            return transport.send(studentNode, ShardMessage.enroll(studentID, courseCode))
+                    .thenApply(EnrollmentResult.class::cast);
+        }
+        CompletableFuture<EnrollmentResult> seated = transport.send(courseNode,
+                ShardMessage.seat(studentID, courseCode)).thenApply(EnrollmentResult.class::cast);
+        return seated.thenCompose(result -> {
+            if (result != EnrollmentResult.ENROLLED) {
+                return CompletableFuture.completedFuture(result);
+            }
+            return transport.send(studentNode, ShardMessage.enroll(studentID, courseCode))
+                    .thenApply(EnrollmentResult.class::cast)
+                    .thenCompose(recorded -> {
+                        if (recorded == EnrollmentResult.ENROLLED) {
+                            return CompletableFuture.completedFuture(recorded);
+                        }
+                        //Gives the seat back, so both nodes agree the student is not enrolled.
+                        return transport.send(courseNode, ShardMessage.releaseSeat(studentID, courseCode))
+                                .thenApply(released -> recorded);
+                    });
+        });
+    }
+
+    /**
+     * See University.removeStudentFromCourse.
+     */
+    public boolean removeStudentFromCourse(int studentID, String courseCode) {
+        return join(dropAsync(studentID, courseCode));
+    }
+
+    public CompletableFuture<Boolean> dropAsync(int studentID, String courseCode) {
+        int courseNode = courseShardOf(courseCode);
+        int studentNode = studentShardOf(studentID);
+        CompletableFuture<Boolean> dropped =
+                transport.send(studentNode, ShardMessage.drop(studentID, courseCode)).thenApply(Boolean.class::cast);
+        if (courseNode == studentNode) {
+            return dropped;
+        }
+        return dropped.thenCompose(result -> !result ? CompletableFuture.completedFuture(false)
+                : transport.send(courseNode, ShardMessage.releaseSeat(studentID, courseCode)).thenApply(done -> true));
+    }
+
+    /*
+     * Queries
+     */
+
+    /**
+     * @return the IDs of the students enrolled in the course, empty if there is no such course
+     */
+    @SuppressWarnings("unchecked")
+    public List<Integer> getClassList(String courseCode) {
+        return (List<Integer>) join(transport.send(courseShardOf(courseCode), ShardMessage.classList(courseCode)));
+    }
+
+    /**
+     * @return the codes of the courses the student is enrolled in, empty if there is no such student
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> getEnrolledCourses(int studentID) {
+        return (List<String>) join(transport.send(studentShardOf(studentID), ShardMessage.enrolledCourses(studentID)));
+    }
+
+    public String getUniversityName() {
+        return universityName;
+    }
+
+    public String getUniversityMotto() {
+        return universityMotto;
+    }
+
+    @Override
+    public void close() {
+        transport.close();
+    }
+
+    /*
+     * Messaging
+     */
+
+    private Object broadcast(ShardMessage message, int owner) {
+        CompletableFuture<?>[] replies = new CompletableFuture<?>[nodes];
+        for (int node = 0; node < nodes; node++) {
+            replies[node] = transport.send(node, message);
+        }
+        return await(replies, owner);
+    }
+
+    //Sends the change to every node but the owner, which already made it, and waits for them.
+    private void replicate(ShardMessage message, int owner) {
+        CompletableFuture<?>[] replies = new CompletableFuture<?>[nodes];
+        for (int node = 0; node < nodes; node++) {
+            replies[node] = node == owner ? CompletableFuture.completedFuture(null) : transport.send(node, message);
+        }
+        join(CompletableFuture.allOf(replies));
+    }
+
+    //Waits for every node, so the change is seen everywhere when the caller goes on, and returns the owner's reply.
+    private static Object await(CompletableFuture<?>[] replies, int owner) {
+        join(CompletableFuture.allOf(replies));
+        return replies[owner].join();
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            //Rethrows what the node threw, e.g. an IllegalArgumentException for a bad capacity.
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return universityName + " (" + nodes + " shards)";
+    }
+}
@@ -18,8 +18,23 @@ public class Student implements Serializable {
     private int idNumber;
 
     //Here the variable 'enrolledCourses' and 'previousCourses' are used.
-    private HashSet<Course> enrolledCourses; //The variable 'enrolledCourses' means the courses that are already registered.
-    private HashSet<Course> previousCourses; //The variable 'previousCourses' means the courses that were previously taken.
+    //Students take and pass a handful of courses, so both are CompactSets: a small array, not a HashMap each.
+    private CompactSet<Course> enrolledCourses; //The variable 'enrolledCourses' means the courses that are already registered.
+    //Read-only view handed to callers, so the courses are only changed through enrollInCourse and dropCourse.
+    private Set<Course> enrolledCoursesView;
+    private CompactSet<Course> previousCourses; //The variable 'previousCourses' means the courses that were previously taken.
+    //Courses whose waitlist the student is on, kept by Course so removing the student only visits those waitlists.
+    private CompactSet<Course> waitlistedCourses;
+    //The ordinals of the previous courses, so pre-requisite checks are a single subset test (see OrdinalSet).
+    private OrdinalSet passedCourses = new OrdinalSet();
+    //Previous courses recorded without an ordinal (not added to a University, or another instance of a course the
+    //University offers), until the University looks their code up. Null when there are none.
+    private CompactSet<Course> unresolvedCourses;
+    //"Student name (000042)", built once because the name and ID never change (see toString).
+    private transient String header;
+    //Counts the changes to the enrolled and previous courses, so cached answers about the student can tell they
+    //are stale (see QueryCache). Incremented after the change, by the thread holding the student's lock.
+    private transient volatile int version;
 
 
     /**
@@ -31,8 +46,10 @@ public class Student implements Serializable {
         this.name = name;
         this.idNumber = idNumber;
 
-        enrolledCourses = new HashSet<Course>(); //The courses that are enrolled are set to HashSet
-        previousCourses = new HashSet<Course>(); //The courses that were previously taken are set to HashSet
+        enrolledCourses = new CompactSet<Course>(); //The courses that are enrolled are set to CompactSet
+        enrolledCoursesView = Collections.unmodifiableSet(enrolledCourses);
+        previousCourses = new CompactSet<Course>(); //The courses that were previously taken are set to CompactSet
+        waitlistedCourses = new CompactSet<Course>();
     }
 
     /**
@@ -46,22 +63,174 @@ public class Student implements Serializable {
      * You don't have to answer this question anywhere in the assignment BUT if you
      * can't think of why, ask me two weeks after this assignment is released
      *
+     * Here we return a read-only view: it follows the enrolled courses without copying them, and they are only
+     *   changed with enrollInCourse and dropCourse, which the University calls together with the class list.
+     *
      * @return the student's courses.
      */
-    public HashSet<Course> getEnrolledCourses() {
-        //Here the variable 'courses' is used and is then returned.
-        HashSet<Course> courses = enrolledCourses; //The courses are set to enrolled courses using HashSet.
-        return courses;
+    public Set<Course> getEnrolledCourses() {
+        return enrolledCoursesView;
     }
 
     /**
      * Returns the previous courses. Same question as getEnrolledCourses applies
+     * Here we return a view that writes through: adding or removing a course through it is the same as calling
+     *   addPreviousCourse or removePreviousCourse, so the student's passed course bits stay in sync.
      * @return the student's previous courses (PASS Mark)
      */
-    public HashSet<Course> getPreviousCourses() {
-        //The courses are set to previous courses using HashSet.
-        HashSet<Course> courses = previousCourses;
-        return courses;
+    public Set<Course> getPreviousCourses() {
+        return new PreviousCourses();
+    }
+
+    //The view returned by getPreviousCourses.
+    private class PreviousCourses extends AbstractSet<Course> {
+        @Override
+        public int size() {
+            return previousCourses.size();
+        }
+
+        @Override
+        public boolean contains(Object course) {
+            return previousCourses.contains(course);
+        }
+
+        @Override
+        public boolean add(Course course) {
+            return addPreviousCourse(course);
+        }
+
+        @Override
+        public boolean remove(Object course) {
+            return course instanceof Course && removePreviousCourse((Course) course);
+        }
+
+        @Override
+        public Iterator<Course> iterator() {
+            Iterator<Course> iterator = previousCourses.iterator();
+            return new Iterator<Course>() {
+                private Course last;
+
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public Course next() {
+                    last = iterator.next();
+                    return last;
+                }
+
+                @Override
+                public void remove() {
+                    iterator.remove();
+                    forgetPreviousCourse(last);
+                }
+            };
+        }
+    }
+
+    /**
+     * Records that the student passed a course.
+     * @param course the course passed
+     * @return true if the course was not in the student's history yet
+     */
+    public boolean addPreviousCourse(Course course) {
+        if (!previousCourses.add(course)) {
+            return false;
+        }
+        if (course.getOrdinal() >= 0) {
+            passedCourses.add(course.getOrdinal());
+        } else {
+            if (unresolvedCourses == null) {
+                unresolvedCourses = new CompactSet<Course>();
+            }
+            unresolvedCourses.add(course);
+        }
+        version++;
+        return true;
+    }
+
+    public boolean removePreviousCourse(Course course) {
+        if (!previousCourses.remove(course)) {
+            return false;
+        }
+        forgetPreviousCourse(course);
+        return true;
+    }
+
+    //Called once the course is out of previousCourses.
+    private void forgetPreviousCourse(Course course) {
+        if (unresolvedCourses != null) {
+            unresolvedCourses.remove(course);
+        }
+        //Rebuilt from the set, another previous course may share the ordinal (e.g. a course re-added to the catalog).
+        OrdinalSet rebuilt = new OrdinalSet();
+        for (Course passed : previousCourses) {
+            if (passed.getOrdinal() >= 0) {
+                rebuilt.add(passed.getOrdinal());
+            }
+        }
+        passedCourses = rebuilt;
+        version++;
+    }
+
+    /**
+     * The ordinals of the courses the student passed. Must not be changed by the caller.
+     * Courses without an ordinal are missing until the University resolves them (see takeUnresolvedCourses).
+     */
+    OrdinalSet getPassedCourseBits() {
+        return passedCourses;
+    }
+
+    boolean hasUnresolvedCourses() {
+        return unresolvedCourses != null;
+    }
+
+    /**
+     * Hands the previous courses recorded without an ordinal to the University, which resolves them by code.
+     */
+    Collection<Course> takeUnresolvedCourses() {
+        Collection<Course> courses = unresolvedCourses;
+        unresolvedCourses = null;
+        return courses == null ? Collections.<Course>emptyList() : courses;
+    }
+
+    /**
+     * Replaces the previous course with the same code by the course the University offers, and sets its bit.
+     * @return false if the student has no previous course with this code
+     */
+    boolean resolvePreviousCourse(Course offered) {
+        if (!previousCourses.remove(offered)) {
+            return false;
+        }
+        previousCourses.add(offered);
+        passedCourses.add(offered.getOrdinal());
+        version++;
+        return true;
+    }
+
+    /**
+     * @return a read-only view of the courses whose waitlist the student is on
+     */
+    public Set<Course> getWaitlistedCourses() {
+        return Collections.unmodifiableSet(waitlistedCourses);
+    }
+
+    //Only called by Course, which changes its waitlist and this set together.
+    void waitlistedFor(Course course) {
+        waitlistedCourses.add(course);
+    }
+
+    void leftWaitlist(Course course) {
+        waitlistedCourses.remove(course);
+    }
+
+    /**
+     * @return a number that changes every time the student's enrolled or previous courses change
+     */
+    public int getVersion() {
+        return version;
     }
 
     public int getIdNumber() {
@@ -69,11 +238,27 @@ public class Student implements Serializable {
     }
 
     /**
-     * Enrolls the student in a course
+     * Enrolls the student in a course. Only the University calls this, together with Course.addStudentToCourse.
      * @param course the course to be added to the student's current course load.
      */
-    public void enrollInCourse(Course course){
-        enrolledCourses.add(course);
+    void enrollInCourse(Course course){
+        if (enrolledCourses.add(course)) {
+            version++;
+        }
+    }
+
+    /**
+     * Drops a course from the student's current course load. Only the University calls this, together with
+     * Course.removeStudentFromCourse.
+     * @param course the course to be dropped
+     * @return true if the student was enrolled in the course
+     */
+    boolean dropCourse(Course course){
+        if (!enrolledCourses.remove(course)) {
+            return false;
+        }
+        version++;
+        return true;
     }
 
     public String getName(){
@@ -82,7 +267,8 @@ public class Student implements Serializable {
 
     @Override
     public int hashCode() {
-        return Objects.hash(idNumber);
+        //Same value as Objects.hash(idNumber), without boxing the ID into a new varargs array on every call.
+        return 31 + idNumber;
     }
 
     @Override
@@ -98,8 +284,15 @@ public class Student implements Serializable {
         //Here is an example on how to use the StringBuilder class to avoid concatenation of Strings (+=) in loops
         //Why? Strings are immutable. Every time we += we are creating a new String.
         StringBuilder stringBuilder = new StringBuilder();
+        appendFullStudentInfo(stringBuilder);
+        return stringBuilder.toString();
+    }
 
-        stringBuilder.append(String.format("Student %s (%06d) - Course Load: ", name, idNumber));
+    /**
+     * Appends the text of getFullStudentInfo to the builder. ReportWriter uses it to reuse a single builder.
+     */
+    void appendFullStudentInfo(StringBuilder stringBuilder) {
+        stringBuilder.append(toString()).append(" - Course Load: ");
         if(enrolledCourses.size() == 0){
             stringBuilder.append("none");
         }
@@ -113,12 +306,38 @@ public class Student implements Serializable {
                 }
             }
         }
-        return stringBuilder.toString();
     }
 
     @Override
     public String toString() {
-        return String.format("Student %s (%06d)",name,idNumber);
+        //Built on the first call without String.format, which parses its format string on every call.
+        //Two threads may both build it, they build the same String.
+        String header = this.header;
+        if (header == null) {
+            StringBuilder stringBuilder = new StringBuilder(name.length() + 17);
+            stringBuilder.append("Student ").append(name).append(" (");
+            appendPaddedId(stringBuilder, idNumber);
+            header = stringBuilder.append(')').toString();
+            this.header = header;
+        }
+        return header;
+    }
+
+    /**
+     * Appends the ID with zeros in front up to 6 characters, like String.format("%06d").
+     */
+    static void appendPaddedId(StringBuilder stringBuilder, int idNumber) {
+        String digits = Integer.toString(idNumber);
+        int width = 6;
+        if (idNumber < 0) {
+            stringBuilder.append('-');
+            digits = digits.substring(1);
+            width--;
+        }
+        for (int i = digits.length(); i < width; i++) {
+            stringBuilder.append('0');
+        }
+        stringBuilder.append(digits);
     }
 
     /**
@@ -129,9 +348,12 @@ public class Student implements Serializable {
      * The file is a binary file, therefore it is not human readable
      *
      * You don't need this method for the assignment. It is here as an example on how to save objects (there are multiple ways)
+     * Serialization follows every reference recursively (students -> courses -> students...), which is slow and can
+     *   overflow the stack for big universities. UniversitySnapshot saves a whole University in a compact format instead.
      * @param students A list containing the students
      * @param filename The output filename (or fully qualified path)
      * @return true if writing was successful, false otherwise
+     * @see UniversitySnapshot
      */
     public static boolean writeStudentsToFile(List<Student> students, String filename){
         try {
@@ -0,0 +1,623 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+/**
+ * Index of students by ID number, used by the University instead of a Map&lt;Integer, Student&gt;.
+ *
+ * A HashMap boxes every ID into an Integer and allocates one node per entry. This index keeps the IDs in a plain
+ * int[] and the students in a parallel array (open addressing with linear probing), so a lookup is a couple of
+ * array reads with no allocation, and an entry costs 8 to 16 bytes instead of about 50.
+ *
+ * Lookups do not take a lock: they read optimistically and only retry under the read lock if a writer changed
+ * the index at the same time. Adding and removing students is serialized by a write lock.
+ *
+ * The students are also kept sorted by ID, in chunks of at most CHUNK_SIZE that a change edits in place, so pages
+ * and iteration in ID order never sort or copy the whole index. That costs another int and reference per student.
+ * Iterators and spliterators read a few students at a time under the read lock and go on from the last ID they saw, so
+ * they are weakly consistent: every student there for the whole iteration is seen once, in ID order, and students
+ * added or removed meanwhile may or may not be.
+ */
+public class StudentIndex {
+    private static final int MIN_CAPACITY = 16;
+    //The table is grown when it is more than half full, so probe sequences stay short.
+    private static final int MAX_LOAD_SHIFT = 1;
+    //Students per chunk of the ordered index. Adding or removing a student moves at most a chunk's entries.
+    static final int CHUNK_SIZE = 256;
+    //Students an iterator copies at a time, under one read lock.
+    private static final int BATCH_SIZE = 64;
+
+    private final StampedLock lock = new StampedLock();
+    private int[] keys;
+    private Student[] values;
+    private int size;
+    //Changed every time a student is added or removed, so a cached snapshot knows when it is stale.
+    private int version;
+    //Last snapshot handed out, reused until the index changes (see snapshot()).
+    private volatile Snapshot snapshot;
+    //The students sorted by ID: chunks[0..chunkCount), each sorted, every ID of a chunk below those of the next.
+    private Chunk[] chunks = new Chunk[4];
+    private int chunkCount;
+
+    /**
+     * The students of the index at one version, sorted by ID.
+     */
+    private static final class Snapshot {
+        final int version;
+        final Student[] students;
+
+        Snapshot(int version, Student[] students) {
+            this.version = version;
+            this.students = students;
+        }
+    }
+
+    /**
+     * A run of the ordered index: ids[0..count) sorted, and the student of each ID.
+     */
+    private static final class Chunk {
+        final int[] ids = new int[CHUNK_SIZE];
+        final Student[] students = new Student[CHUNK_SIZE];
+        int count;
+    }
+
+    public StudentIndex() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Creates an index that can hold expectedSize students without resizing.
+     * @param expectedSize the number of students expected in the index
+     */
+    public StudentIndex(int expectedSize) {
+        int capacity = tableSizeFor(expectedSize);
+        keys = new int[capacity];
+        values = new Student[capacity];
+    }
+
+    /**
+     * Gets a student from the index.
+     * @param idNumber the student's ID.
+     * @return the student or null if not found
+     */
+    public Student get(int idNumber) {
+        long stamp = lock.tryOptimisticRead();
+        Student student = find(keys, values, idNumber);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                student = find(keys, values, idNumber);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return student;
+    }
+
+    public boolean containsKey(int idNumber) {
+        return get(idNumber) != null;
+    }
+
+    /**
+     * Adds a student if there is no student with the same ID yet.
+     * @param student the student to be added
+     * @return the student already in the index with the same ID, or null if the student was added
+     */
+    public Student putIfAbsent(Student student) {
+        long stamp = lock.writeLock();
+        try {
+            int id = student.getIdNumber();
+            int mask = keys.length - 1;
+            int slot = slotOf(id, mask);
+            while (values[slot] != null) {
+                if (keys[slot] == id) {
+                    return values[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = id;
+            values[slot] = student;
+            addOrdered(student);
+            size++;
+            version++;
+            if (size > (keys.length >>> MAX_LOAD_SHIFT)) {
+                resize(keys.length << 1);
+            }
+            return null;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes the student with the given ID, only if it is the given student object.
+     * @return true if the student was removed
+     */
+    public boolean remove(int idNumber, Student student) {
+        long stamp = lock.writeLock();
+        try {
+            int mask = keys.length - 1;
+            int slot = slotOf(idNumber, mask);
+            while (values[slot] != null) {
+                if (keys[slot] == idNumber) {
+                    if (values[slot] != student) {
+                        return false;
+                    }
+                    deleteSlot(slot, mask);
+                    removeOrdered(idNumber);
+                    size--;
+                    version++;
+                    return true;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return false;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Makes room for at least expectedSize students, so adding them does not resize the table one step at a time.
+     */
+    public void ensureCapacity(int expectedSize) {
+        long stamp = lock.writeLock();
+        try {
+            int capacity = tableSizeFor(expectedSize);
+            if (capacity > keys.length) {
+                resize(capacity);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public int size() {
+        long stamp = lock.tryOptimisticRead();
+        int result = size;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                result = size;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Calls the action for every student in the index. Writers wait until the iteration ends.
+     */
+    public void forEach(Consumer<? super Student> action) {
+        long stamp = lock.readLock();
+        try {
+            for (Student student : values) {
+                if (student != null) {
+                    action.accept(student);
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return a new list containing every student in the index
+     */
+    public List<Student> toList() {
+        //Copied once: new ArrayList<>(Arrays.asList(...)) would copy the array twice.
+        Student[] students = snapshot();
+        ArrayList<Student> list = new ArrayList<>(students.length);
+        for (Student student : students) {
+            list.add(student);
+        }
+        return list;
+    }
+
+    /**
+     * Returns every student of the index, sorted by ID, in an array that the caller must not change.
+     * The same array is returned until a student is added or removed, so asking for it many times between
+     * changes costs nothing. Changes made after the call are not seen by the array.
+     */
+    public Student[] snapshot() {
+        return currentSnapshot().students;
+    }
+
+    /**
+     * Same as snapshot(), which is sorted by ID.
+     */
+    public Student[] sortedSnapshot() {
+        return snapshot();
+    }
+
+    /**
+     * Returns the students from the given position in ID order, without copying the other ones.
+     * @return a new list of at most limit students, empty past the last student
+     */
+    public List<Student> getPage(int offset, int limit) {
+        long stamp = lock.readLock();
+        try {
+            int chunk = 0;
+            int skipped = 0;
+            while (chunk < chunkCount && skipped + chunks[chunk].count <= offset) {
+                skipped += chunks[chunk].count;
+                chunk++;
+            }
+            return copyFrom(chunk, offset - skipped, limit);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns the students with an ID greater than the given one, in ID order.
+     * @return a new list of at most limit students
+     */
+    public List<Student> getPageAfter(int idNumber, int limit) {
+        long stamp = lock.readLock();
+        try {
+            int chunk = chunkOf(idNumber);
+            return copyFrom(chunk, chunkCount == 0 ? 0 : positionAfter(chunks[chunk], idNumber), limit);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    //The caller holds the lock.
+    private List<Student> copyFrom(int chunk, int position, int limit) {
+        List<Student> page = new ArrayList<>(Math.min(limit, CHUNK_SIZE));
+        while (chunk < chunkCount && page.size() < limit) {
+            Chunk current = chunks[chunk];
+            int end = (int) Math.min(current.count, (long) position + limit - page.size());
+            for (int i = position; i < end; i++) {
+                page.add(current.students[i]);
+            }
+            chunk++;
+            position = 0;
+        }
+        return page;
+    }
+
+    /**
+     * Returns a spliterator over the students in ID order. It splits on chunk boundaries, so parallel streams get
+     * even parts, and it is weakly consistent (see the class comment).
+     */
+    public Spliterator<Student> spliterator() {
+        return new OrderedSpliterator(Long.MIN_VALUE, Integer.MAX_VALUE, size());
+    }
+
+    /**
+     * Copies the students with an ID in (after, last], in ID order, until the buffer is full or the chunk of the
+     * first one ends.
+     * @return the number of students copied, 0 if there is none in the range
+     */
+    private int copyChunk(long after, long last, Student[] buffer) {
+        long stamp = lock.readLock();
+        try {
+            if (chunkCount == 0) {
+                return 0;
+            }
+            int chunk = chunkOf(after);
+            int position = positionAfter(chunks[chunk], after);
+            if (position == chunks[chunk].count) {
+                if (++chunk == chunkCount) {
+                    return 0;
+                }
+                position = 0;
+            }
+            Chunk current = chunks[chunk];
+            int copied = 0;
+            while (copied < buffer.length && position < current.count && current.ids[position] <= last) {
+                buffer[copied++] = current.students[position++];
+            }
+            return copied;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Finds a chunk boundary inside (after, last], so a range splits into two ranges of whole chunks.
+     * @return the first ID of a chunk in the range but not the first one of it, or Long.MIN_VALUE if there is none
+     */
+    private long splitPoint(long after, long last) {
+        long stamp = lock.readLock();
+        try {
+            if (chunkCount == 0) {
+                return Long.MIN_VALUE;
+            }
+            //The chunk of the first ID in the range, so the prefix is never empty.
+            int first = chunkOf(after);
+            if (positionAfter(chunks[first], after) == chunks[first].count) {
+                first++;
+            }
+            int end = chunkOf(last);
+            if (end <= first) {
+                return Long.MIN_VALUE;
+            }
+            return chunks[(first + end + 1) >>> 1].ids[0];
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Spliterator over the students with an ID in (after, last], see spliterator().
+     */
+    private final class OrderedSpliterator implements Spliterator<Student> {
+        //The ID of the last student copied into the buffer.
+        private long after;
+        private final long last;
+        private long estimate;
+        private Student[] buffer;
+        private int next;
+        private int count;
+
+        OrderedSpliterator(long after, long last, long estimate) {
+            this.after = after;
+            this.last = last;
+            this.estimate = estimate;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Student> action) {
+            if (next == count) {
+                if (buffer == null) {
+                    buffer = new Student[BATCH_SIZE];
+                }
+                next = 0;
+                count = copyChunk(after, last, buffer);
+                if (count == 0) {
+                    return false;
+                }
+                after = buffer[count - 1].getIdNumber();
+            }
+            Student student = buffer[next];
+            buffer[next++] = null;
+            action.accept(student);
+            return true;
+        }
+
+        @Override
+        public Spliterator<Student> trySplit() {
+            //Students already copied come before any split, so the spliterator only splits before it started.
+            if (next < count) {
+                return null;
+            }
+            long split = splitPoint(after, last);
+            if (split == Long.MIN_VALUE) {
+                return null;
+            }
+            OrderedSpliterator prefix = new OrderedSpliterator(after, split - 1, estimate >>> 1);
+            after = split - 1;
+            estimate -= prefix.estimate;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return estimate;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL | Spliterator.CONCURRENT;
+        }
+    }
+
+    private Snapshot currentSnapshot() {
+        Snapshot cached = snapshot;
+        long stamp = lock.tryOptimisticRead();
+        int current = version;
+        if (cached != null && lock.validate(stamp) && cached.version == current) {
+            return cached;
+        }
+        stamp = lock.readLock();
+        try {
+            cached = snapshot;
+            if (cached != null && cached.version == version) {
+                return cached;
+            }
+            Student[] students = new Student[size];
+            int count = 0;
+            for (int i = 0; i < chunkCount; i++) {
+                System.arraycopy(chunks[i].students, 0, students, count, chunks[i].count);
+                count += chunks[i].count;
+            }
+            //Two readers may build the same snapshot at the same time, either one can be kept.
+            cached = new Snapshot(version, students);
+            snapshot = cached;
+            return cached;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Looks a student up in the given arrays. The arrays may be changed by a writer while we read them
+     * (the caller validates the read afterwards), so this method must never loop forever or go out of bounds.
+     */
+    private static Student find(int[] keys, Student[] values, int idNumber) {
+        if (keys.length != values.length) {
+            return null;
+        }
+        int mask = keys.length - 1;
+        int slot = slotOf(idNumber, mask);
+        for (int probes = 0; probes <= mask; probes++) {
+            Student student = values[slot];
+            if (student == null) {
+                return null;
+            }
+            if (keys[slot] == idNumber) {
+                return student;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Empties a slot and moves back the entries that probed past it, so no tombstones are needed.
+     */
+    private void deleteSlot(int slot, int mask) {
+        int hole = slot;
+        int next = (slot + 1) & mask;
+        while (values[next] != null) {
+            int home = slotOf(keys[next], mask);
+            //The entry can move into the hole if its home slot is not between the hole and its current slot.
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[hole] = 0;
+        values[hole] = null;
+    }
+
+    /**
+     * Adds the student to the ordered index. The caller holds the write lock and checked the ID is not there.
+     */
+    private void addOrdered(Student student) {
+        int id = student.getIdNumber();
+        if (chunkCount == 0) {
+            chunks[chunkCount++] = new Chunk();
+        }
+        int index = chunkOf(id);
+        Chunk chunk = chunks[index];
+        if (chunk.count == CHUNK_SIZE) {
+            Chunk next = new Chunk();
+            if (index == chunkCount - 1 && id > chunk.ids[CHUNK_SIZE - 1]) {
+                //IDs often come in ascending order: a new last chunk keeps the others full, where a split would not.
+                insertChunk(index + 1, next);
+                chunk = next;
+            } else {
+                int half = CHUNK_SIZE / 2;
+                System.arraycopy(chunk.ids, half, next.ids, 0, CHUNK_SIZE - half);
+                System.arraycopy(chunk.students, half, next.students, 0, CHUNK_SIZE - half);
+                Arrays.fill(chunk.students, half, CHUNK_SIZE, null);
+                next.count = CHUNK_SIZE - half;
+                chunk.count = half;
+                insertChunk(index + 1, next);
+                if (id > next.ids[0]) {
+                    chunk = next;
+                }
+            }
+        }
+        int position = positionAfter(chunk, id);
+        System.arraycopy(chunk.ids, position, chunk.ids, position + 1, chunk.count - position);
+        System.arraycopy(chunk.students, position, chunk.students, position + 1, chunk.count - position);
+        chunk.ids[position] = id;
+        chunk.students[position] = student;
+        chunk.count++;
+    }
+
+    /**
+     * Removes the ID from the ordered index, merging chunks that became small. The caller holds the write lock.
+     */
+    private void removeOrdered(int idNumber) {
+        int index = chunkOf(idNumber);
+        Chunk chunk = chunks[index];
+        int position = Arrays.binarySearch(chunk.ids, 0, chunk.count, idNumber);
+        System.arraycopy(chunk.ids, position + 1, chunk.ids, position, chunk.count - position - 1);
+        System.arraycopy(chunk.students, position + 1, chunk.students, position, chunk.count - position - 1);
+        chunk.students[--chunk.count] = null;
+        //A chunk is merged into the one before it once both fit in half a chunk, so chunks stay at least a quarter full
+        //on average and sparse chunks do not slow pages and iterators down.
+        if (index > 0 && chunks[index - 1].count + chunk.count <= CHUNK_SIZE / 2) {
+            Chunk previous = chunks[index - 1];
+            System.arraycopy(chunk.ids, 0, previous.ids, previous.count, chunk.count);
+            System.arraycopy(chunk.students, 0, previous.students, previous.count, chunk.count);
+            previous.count += chunk.count;
+            chunk.count = 0;
+        }
+        if (chunk.count == 0) {
+            System.arraycopy(chunks, index + 1, chunks, index, chunkCount - index - 1);
+            chunks[--chunkCount] = null;
+        }
+    }
+
+    private void insertChunk(int index, Chunk chunk) {
+        if (chunkCount == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunkCount * 2);
+        }
+        System.arraycopy(chunks, index, chunks, index + 1, chunkCount - index);
+        chunks[index] = chunk;
+        chunkCount++;
+    }
+
+    /**
+     * @return the last chunk whose first ID is not above the given ID, or 0 if there is none. The caller holds the
+     *         lock and there is at least one chunk, or the result is 0.
+     */
+    private int chunkOf(long idNumber) {
+        int low = 0;
+        int high = chunkCount - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (chunks[middle].ids[0] <= idNumber) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the position of the first ID of the chunk greater than the given one, count if there is none
+     */
+    private static int positionAfter(Chunk chunk, long idNumber) {
+        int low = 0;
+        int high = chunk.count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (chunk.ids[middle] <= idNumber) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        Student[] oldValues = values;
+        int[] newKeys = new int[capacity];
+        Student[] newValues = new Student[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = slotOf(oldKeys[i], mask);
+                while (newValues[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                newKeys[slot] = oldKeys[i];
+                newValues[slot] = oldValues[i];
+            }
+        }
+        //Values are published first: a reader that sees arrays of different lengths just retries under the lock.
+        values = newValues;
+        keys = newKeys;
+    }
+
+    private static int slotOf(int idNumber, int mask) {
+        //IDs are often sequential, so the bits are mixed to spread them over the table.
+        int hash = idNumber * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while ((capacity >>> MAX_LOAD_SHIFT) < expectedSize && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
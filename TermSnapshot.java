@@ -0,0 +1,382 @@
+import java.lang.ref.Cleaner;
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A point-in-time view of a University: its students, courses, enrollments, passed courses, pre-requisites,
+ * capacities and waitlists as they were when the snapshot was opened, while registration goes on.
+ *
+ *     try (TermSnapshot snapshot = university.openSnapshot()) {
+ *         for (Student student : snapshot.getStudents()) {
+ *             audit(student, snapshot.getEnrolledCourses(student.getIdNumber()));
+ *         }
+ *     }
+ *
+ * Opening a snapshot copies nothing: it only waits for the operations in progress to finish, like any catalog
+ * change. Afterwards, the first change made to a student or a course preserves what it is about to overwrite
+ * (copy on write): its enrolled courses, passed courses, class list, pre-requisites, capacity or waitlist, or the
+ * fact that it did not exist yet. The snapshot reads preserved state where there is some and the live objects
+ * everywhere else, so it only costs memory for what changed while it is open. Open snapshots share the state they
+ * preserve.
+ *
+ * Reads lock the student or course they read for a moment, like an enrollment would, so writers are never held
+ * up for the life of a snapshot. A snapshot should be closed once read: until then every change keeps preserving
+ * state for it. A snapshot that is dropped without being closed is closed once it is garbage collected, and counted
+ * (see University.getAbandonedSnapshotCount): the University only keeps what the snapshot preserved, not the
+ * snapshot itself. UniversitySnapshot can save a snapshot to a file while registration goes on.
+ */
+public class TermSnapshot implements AutoCloseable {
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final University university;
+    final Preserved preserved = new Preserved();
+    private final Release release;
+    private final Cleaner.Cleanable cleanable;
+    private volatile boolean closed;
+
+    TermSnapshot(University university) {
+        this.university = university;
+        release = new Release(university, preserved);
+        cleanable = CLEANER.register(this, release);
+    }
+
+    /**
+     * The state preserved for a snapshot, which is what its University keeps while it is open.
+     */
+    static final class Preserved {
+        //By student ID and course code. Only the first change after the snapshot was opened is kept.
+        private final Map<Integer, StudentImage> students = new ConcurrentHashMap<>();
+        private final Map<String, CourseImage> courses = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Stops preserving state for a snapshot, when it is closed or when it was garbage collected without being
+     * closed. Must not reference the snapshot, or it would never be collected.
+     */
+    private static final class Release implements Runnable {
+        private final University university;
+        private final Preserved preserved;
+        private volatile boolean closed;
+
+        Release(University university, Preserved preserved) {
+            this.university = university;
+            this.preserved = preserved;
+        }
+
+        @Override
+        public void run() {
+            university.closeSnapshot(preserved, !closed);
+        }
+    }
+
+    /**
+     * A student as the snapshot sees it. A null student means the ID was not used when the snapshot was opened.
+     */
+    static final class StudentImage {
+        static final StudentImage ABSENT = new StudentImage(null, null, null);
+
+        final Student student;
+        final Course[] enrolled;
+        final Course[] passed;
+
+        private StudentImage(Student student, Course[] enrolled, Course[] passed) {
+            this.student = student;
+            this.enrolled = enrolled;
+            this.passed = passed;
+        }
+
+        //The caller holds the student's stripe, or the catalog lock exclusively.
+        static StudentImage of(Student student) {
+            return new StudentImage(student, student.getEnrolledCourses().toArray(new Course[0]),
+                    student.getPreviousCourses().toArray(new Course[0]));
+        }
+    }
+
+    /**
+     * A course as the snapshot sees it. A null course means the code was not offered when the snapshot was opened.
+     */
+    static final class CourseImage {
+        static final CourseImage ABSENT = new CourseImage(null, null, null, 0, null);
+
+        final Course course;
+        final Student[] classList;
+        final Course[] preRequisites;
+        final int capacity;
+        final Student[] waitlist;
+
+        private CourseImage(Course course, Student[] classList, Course[] preRequisites, int capacity,
+                            Student[] waitlist) {
+            this.course = course;
+            this.classList = classList;
+            this.preRequisites = preRequisites;
+            this.capacity = capacity;
+            this.waitlist = waitlist;
+        }
+
+        //The caller holds the course's stripe and the catalog lock, or the catalog lock exclusively.
+        static CourseImage of(Course course) {
+            return new CourseImage(course, course.getEnrolledStudents().toArray(new Student[0]),
+                    course.getPreRequisites().toArray(new Course[0]), course.getCapacity(),
+                    course.getWaitlist().toArray(new Student[0]));
+        }
+    }
+
+    /*
+     * Preserving (called by the University before it changes a student or course)
+     */
+
+    /**
+     * Preserves the student in every snapshot that has nothing for its ID yet. The image is built once and shared.
+     */
+    static void preserve(Preserved[] snapshots, Student student) {
+        StudentImage image = null;
+        for (Preserved snapshot : snapshots) {
+            if (!snapshot.students.containsKey(student.getIdNumber())) {
+                if (image == null) {
+                    image = StudentImage.of(student);
+                }
+                snapshot.students.put(student.getIdNumber(), image);
+            }
+        }
+    }
+
+    static void preserveAbsentStudent(Preserved[] snapshots, int studentID) {
+        for (Preserved snapshot : snapshots) {
+            snapshot.students.putIfAbsent(studentID, StudentImage.ABSENT);
+        }
+    }
+
+    static void preserve(Preserved[] snapshots, Course course) {
+        CourseImage image = null;
+        for (Preserved snapshot : snapshots) {
+            if (!snapshot.courses.containsKey(course.getCourseCode())) {
+                if (image == null) {
+                    image = CourseImage.of(course);
+                }
+                snapshot.courses.put(course.getCourseCode(), image);
+            }
+        }
+    }
+
+    static void preserveAbsentCourse(Preserved[] snapshots, String courseCode) {
+        for (Preserved snapshot : snapshots) {
+            snapshot.courses.putIfAbsent(courseCode, CourseImage.ABSENT);
+        }
+    }
+
+    StudentImage preservedStudent(int studentID) {
+        return preserved.students.get(studentID);
+    }
+
+    CourseImage preservedCourse(String courseCode) {
+        return preserved.courses.get(courseCode);
+    }
+
+    Collection<CourseImage> preservedCourses() {
+        return preserved.courses.values();
+    }
+
+    /*
+     * Reading
+     */
+
+    public String getUniversityName() {
+        return university.getUniversityName();
+    }
+
+    public String getUniversityMotto() {
+        return university.getUniversityMotto();
+    }
+
+    /**
+     * @return the students, sorted by ID
+     */
+    public List<Student> getStudents() {
+        checkOpen();
+        try {
+            return students();
+        } finally {
+            //The snapshot must stay open until the read is done, see close().
+            Reference.reachabilityFence(this);
+        }
+    }
+
+    private List<Student> students() {
+        //Students live now are in the snapshot unless their ID was unused when it was opened. A student removed
+        //since was preserved before the removal, so everything preserved and no longer live is added afterwards.
+        Student[] live = university.sortedStudents();
+        List<Student> result = new ArrayList<>(live.length);
+        for (Student student : live) {
+            StudentImage image = preserved.students.get(student.getIdNumber());
+            if (image == null) {
+                result.add(student);
+            } else if (image.student != null) {
+                result.add(image.student);
+            }
+        }
+        boolean unsorted = false;
+        for (StudentImage image : preserved.students.values()) {
+            if (image.student != null && !containsID(live, image.student.getIdNumber())) {
+                result.add(image.student);
+                unsorted = true;
+            }
+        }
+        if (unsorted) {
+            result.sort((a, b) -> Integer.compare(a.getIdNumber(), b.getIdNumber()));
+        }
+        return result;
+    }
+
+    private static boolean containsID(Student[] sorted, int idNumber) {
+        int low = 0;
+        int high = sorted.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int id = sorted[middle].getIdNumber();
+            if (id < idNumber) {
+                low = middle + 1;
+            } else if (id > idNumber) {
+                high = middle - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the student with that ID when the snapshot was opened, or null if there was none
+     */
+    public Student getStudent(int studentID) {
+        return studentImage(studentID).student;
+    }
+
+    /**
+     * @return the courses the student was enrolled in (empty if the student is not in the snapshot)
+     */
+    public List<Course> getEnrolledCourses(int studentID) {
+        StudentImage image = studentImage(studentID);
+        return image.student == null ? Collections.emptyList() : Collections.unmodifiableList(Arrays.asList(image.enrolled));
+    }
+
+    /**
+     * @return the courses the student had passed (empty if the student is not in the snapshot)
+     */
+    public List<Course> getPreviousCourses(int studentID) {
+        StudentImage image = studentImage(studentID);
+        return image.student == null ? Collections.emptyList() : Collections.unmodifiableList(Arrays.asList(image.passed));
+    }
+
+    /**
+     * @return the courses offered, in the order they were added to the university
+     */
+    public List<Course> getCourses() {
+        checkOpen();
+        try {
+            return university.snapshotCourses(this);
+        } finally {
+            Reference.reachabilityFence(this);
+        }
+    }
+
+    /**
+     * @return the course offered with that code when the snapshot was opened, or null if there was none
+     */
+    public Course getCourse(String courseCode) {
+        return courseImage(courseCode).course;
+    }
+
+    /**
+     * @return the students enrolled in the course, in the order they enrolled, or null if the course is not found
+     */
+    public List<Student> getClassList(String courseCode) {
+        CourseImage image = courseImage(courseCode);
+        return image.course == null ? null : Collections.unmodifiableList(Arrays.asList(image.classList));
+    }
+
+    /**
+     * @return the direct pre-requisites of the course, or null if the course is not found
+     */
+    public List<Course> getPreRequisites(String courseCode) {
+        CourseImage image = courseImage(courseCode);
+        return image.course == null ? null : Collections.unmodifiableList(Arrays.asList(image.preRequisites));
+    }
+
+    /**
+     * @return the students waiting for a seat in the course, in order, or null if the course is not found
+     */
+    public List<Student> getWaitlist(String courseCode) {
+        CourseImage image = courseImage(courseCode);
+        return image.course == null ? null : Collections.unmodifiableList(Arrays.asList(image.waitlist));
+    }
+
+    /**
+     * @return the number of seats of the course, or -1 if the course is not found
+     */
+    public int getCapacity(String courseCode) {
+        CourseImage image = courseImage(courseCode);
+        return image.course == null ? -1 : image.capacity;
+    }
+
+    //Also used by UniversityAnalytics, which reads the arrays of the image without copying them into lists.
+    StudentImage studentImage(int studentID) {
+        checkOpen();
+        try {
+            return university.snapshotStudent(this, studentID);
+        } finally {
+            Reference.reachabilityFence(this);
+        }
+    }
+
+    CourseImage courseImage(String courseCode) {
+        checkOpen();
+        try {
+            return university.snapshotCourse(this, courseCode);
+        } finally {
+            Reference.reachabilityFence(this);
+        }
+    }
+
+    /**
+     * @return the number of students whose state was preserved because they changed since the snapshot was opened
+     */
+    public int getPreservedStudentCount() {
+        return preserved.students.size();
+    }
+
+    /**
+     * @return the number of courses whose state was preserved because they changed since the snapshot was opened
+     */
+    public int getPreservedCourseCount() {
+        return preserved.courses.size();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Stops preserving state for this snapshot. The snapshot cannot be read anymore.
+     * Reads keep the snapshot reachable until they are done, so the cleaner never closes it in the middle of one.
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            release.closed = true;
+            cleanable.clean();
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("The snapshot is closed");
+        }
+    }
+}
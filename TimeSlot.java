@@ -0,0 +1,63 @@
+import java.io.Serializable;
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.util.Objects;
+
+/**
+ * A weekly meeting time of a course, e.g. Monday 09:00 to 10:30 (see Course.setMeetingTimes).
+ * The end time is excluded, so a class ending at 10:30 does not clash with one starting at 10:30.
+ */
+public class TimeSlot implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final DayOfWeek day;
+    private final LocalTime start;
+    private final LocalTime end;
+
+    public TimeSlot(DayOfWeek day, LocalTime start, LocalTime end) {
+        if (!start.isBefore(end)) {
+            throw new IllegalArgumentException("A time slot must end after it starts: " + start + " - " + end);
+        }
+        this.day = Objects.requireNonNull(day);
+        this.start = start;
+        this.end = end;
+    }
+
+    public DayOfWeek getDay() {
+        return day;
+    }
+
+    public LocalTime getStart() {
+        return start;
+    }
+
+    public LocalTime getEnd() {
+        return end;
+    }
+
+    /**
+     * @return true if both slots are on the same day and share some time
+     */
+    public boolean overlaps(TimeSlot other) {
+        return day == other.day && start.isBefore(other.end) && other.start.isBefore(end);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof TimeSlot)) {
+            return false;
+        }
+        TimeSlot slot = (TimeSlot) o;
+        return day == slot.day && start.equals(slot.start) && end.equals(slot.end);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(day, start, end);
+    }
+
+    @Override
+    public String toString() {
+        return day + " " + start + "-" + end;
+    }
+}
@@ -1,24 +1,91 @@
+import java.lang.invoke.VarHandle;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 
 /**
  * Represents a University with students and courses.
  * The university class will maintain an index of students and courses using Maps.
- *   - The keys for the students' map is the Student's ID
+ *   - The keys for the students' index is the Student's ID (a StudentIndex, so IDs are never boxed)
  *   - The keys for the courses' map is the Course's Code
+ *
+ * The university is safe to use from many threads at the same time. Enrollment operations lock only the
+ *   student and the course they touch (lock striping), so registrations on different students/courses run
+ *   in parallel. Operations that change the shape of the catalog (pre-requisites, removing courses) are rare
+ *   and run exclusively.
  */
 public class University {
-    private Map<Integer, Student> studentBody;
-    private Map<String, Course> availableCourses;
+    //Number of locks used to stripe students and courses. Must be a power of two.
+    private static final int LOCK_STRIPES = 256;
+    //Number of students enrollAll locks at once: enough to share the lock of the course, few enough to leave most
+    //stripes to the other threads.
+    private static final int ENROLL_CHUNK = 16;
+
+    private StudentIndex studentBody;
+    //Changed only under the catalog lock held exclusively, read without locking by getCourse. ensureCapacity
+    //replaces it with a bigger copy, so it is volatile.
+    private volatile Map<String, Course> availableCourses;
+    //The number of courses availableCourses was sized for.
+    private int courseCapacity;
+    //Courses by ordinal (see Course.getOrdinal), null where a course was removed. Ordinals are not reused by
+    //other courses, so the bits a student keeps for the courses they passed never point to the wrong course.
+    private final ArrayList<Course> coursesByOrdinal;
+    //The courses in ordinal order, built when first needed after the catalog changed (see courseSnapshot()).
+    private volatile Course[] courseSnapshot;
+    //Read-only live views, see getStudentsView and getCoursesView.
+    private final Collection<Student> studentsView = new StudentsView();
+    private final Collection<Course> coursesView;
     private String universityName;
     private String universityMotto;
 
+    //Shared by enrollment operations, held exclusively by operations that change the catalog.
+    private final ReentrantReadWriteLock catalogLock = new ReentrantReadWriteLock();
+    //A student and a course are protected by the stripe their hash falls into.
+    //Both sides of an enrollment (student.enrolledCourses and course.enrolledStudents) are changed
+    //only while holding the stripes of the student AND the course.
+    private final ReentrantLock[] stripes;
+
+    //Copied on write, so notifying listeners never needs a lock.
+    private volatile UniversityListener[] listeners = new UniversityListener[0];
+    //Times the hot operations when set (see setMetricsSink). When null they only pay for reading the field.
+    private volatile MetricsSink metricsSink;
+    //Answers to repeated read queries, see getQueryCache.
+    private final QueryCache queryCache = new QueryCache(QueryCache.DEFAULT_MAX_WEIGHT);
+    //Counts the changes to the shape of the catalog (courses added or removed, pre-requisites added), which
+    //cached answers depending on the whole catalog check. Changed and read while holding the catalog lock.
+    private int catalogVersion;
+    //Students who passed a course the catalog did not offer when their previous courses were resolved, by code.
+    //addCourse gives them the bit of the course (see resolvePreviousCourses).
+    private final ConcurrentHashMap<String, Queue<Student>> awaitedCourses = new ConcurrentHashMap<>();
+    //Snapshots still open, copied on write. Changes preserve what they overwrite in them first (see TermSnapshot).
+    private volatile TermSnapshot.Preserved[] snapshots = new TermSnapshot.Preserved[0];
+    private final AtomicLong abandonedSnapshots = new AtomicLong();
 
     public University(String universityName, String universityMotto) {
+        this(universityName, universityMotto, 0, 0);
+    }
+
+    /**
+     * Creates a university with indexes already sized for the given number of students and courses,
+     * so loading them does not resize the indexes one step at a time.
+     */
+    public University(String universityName, String universityMotto, int expectedStudents, int expectedCourses) {
         this.universityName = universityName;
         this.universityMotto = universityMotto;
-        studentBody = new HashMap<>();
-        availableCourses = new HashMap<>();
+        studentBody = new StudentIndex(expectedStudents);
+        courseCapacity = Math.max(16, expectedCourses);
+        availableCourses = new ConcurrentHashMap<>(courseCapacity);
+        coursesByOrdinal = new ArrayList<>(expectedCourses);
+        coursesView = new CoursesView();
+        stripes = new ReentrantLock[LOCK_STRIPES];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantLock();
+        }
     }
 
     /**
@@ -27,15 +94,52 @@ public class University {
      * @return true if the student was added, false if the student was already on the map
      */
     public boolean addStudent(Student student){
-        //The if is checking if the student was already in the registered course.
-        //The if is also checking the id number and then false is returned if the student's id number is already registered.
-        //The else is activated if the if condition fails.
-        //Then in the else, the student's id number is registered and then true is returned.
-        if(studentBody.containsKey(student.getIdNumber())) {
-            return false;
-        } else {
-            studentBody.put(student.getIdNumber(), student);
+        //False is returned if the student's id number is already registered.
+        //putIfAbsent does the check and the insertion in one atomic step.
+        //The student's stripe orders this with a removal of the same ID, as seen by the listeners.
+        catalogLock.readLock().lock();
+        int stripe = stripeOf(student);
+        stripes[stripe].lock();
+        try {
+            TermSnapshot.Preserved[] open = snapshots;
+            if(open.length > 0 && !studentBody.containsKey(student.getIdNumber())) {
+                TermSnapshot.preserveAbsentStudent(open, student.getIdNumber());
+            }
+            if(studentBody.putIfAbsent(student) != null) {
+                return false;
+            }
+            if(student.hasUnresolvedCourses()) {
+                resolvePreviousCourses(student);
+            }
+            for (UniversityListener listener : listeners) {
+                listener.studentAdded(student);
+            }
             return true;
+        } finally {
+            stripes[stripe].unlock();
+            catalogLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Makes room for at least the given number of students and courses, e.g. before a bulk import, so the
+     * indexes are not resized one step at a time.
+     */
+    public void ensureCapacity(int expectedStudents, int expectedCourses){
+        studentBody.ensureCapacity(expectedStudents);
+        catalogLock.writeLock().lock();
+        try {
+            coursesByOrdinal.ensureCapacity(expectedCourses);
+            if(expectedCourses > courseCapacity) {
+                //A ConcurrentHashMap cannot be presized once created: the courses are copied to one that is.
+                //Readers see the old map or the new one, both complete, since nothing else changes them now.
+                Map<String, Course> bigger = new ConcurrentHashMap<>(expectedCourses);
+                bigger.putAll(availableCourses);
+                availableCourses = bigger;
+                courseCapacity = expectedCourses;
+            }
+        } finally {
+            catalogLock.writeLock().unlock();
         }
     }
 
@@ -52,8 +156,7 @@ public class University {
 
     /**
      * Returns a list containing all students from the university
-     * You will have to work with maps and lists on this method.
-     * Referer to the document on how to ITERATE over maps. You CANNOT use foreach directly with maps
+     * The students are kept in a StudentIndex (not a Map), which copies them into an ArrayList for us.
      * What is the best List type to use? ArrayList or LinkedList? Why?
      *
      * @return A list of all students (the list will be empty if the university is empty)
@@ -61,18 +164,49 @@ public class University {
     public List<Student> getStudents(){
 
         //Here the whole list of students are returned.
-        Set<Integer> set = studentBody.keySet();
+        //ArrayList is used because we only add at the end and callers usually access it by index.
+        //Callers that only iterate or count should use getStudentsView(), which does not copy anything.
+        return studentBody.toList();
+    }
 
-        //ArrayList is used here and the variable is 'students'.
-        ArrayList<Student> students = new ArrayList<>();
+    /**
+     * Returns a read-only view of the students of the university. Nothing is copied: size() and contains() always
+     *   reflect the current students, and iterating or streaming goes over the students in ID order, a chunk at a
+     *   time. Iteration is weakly consistent: it sees every student there for the whole iteration once, and
+     *   students added or removed meanwhile may or may not be seen (see StudentIndex).
+     * Its spliterator splits evenly, so parallelStream() uses every core.
+     */
+    public Collection<Student> getStudentsView(){
+        return studentsView;
+    }
 
-        Iterator iterator = set.iterator();
+    /**
+     * Returns a page of students, sorted by ID. The order does not depend on when students were added, so going
+     *   through the pages gives every student once as long as no student is added or removed in between.
+     * @param offset the number of students to skip
+     * @param limit the maximum number of students returned
+     * @return a read-only list of at most limit students (empty past the last student)
+     */
+    public List<Student> getStudents(int offset, int limit){
+        if(offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("Negative offset or limit: " + offset + ", " + limit);
+        }
+        //The index keeps the students sorted, so a page only copies its own students.
+        return Collections.unmodifiableList(studentBody.getPage(offset, limit));
+    }
 
-        for(int i = 0; i < studentBody.size(); i++) {
-            Object id = iterator.next();
-            students.add(studentBody.get(id));
+    /**
+     * Returns the students with an ID greater than the given one, sorted by ID. Passing the ID of the last student
+     *   of a page gives the next page, which stays correct even if students are added or removed in between.
+     * @param idNumber the ID to start after (Integer.MIN_VALUE for the first page)
+     * @param limit the maximum number of students returned
+     * @return a read-only list of at most limit students
+     */
+    public List<Student> getStudentsAfter(int idNumber, int limit){
+        if(limit < 0) {
+            throw new IllegalArgumentException("Negative limit: " + limit);
         }
-        return students;
+        return Collections.unmodifiableList(studentBody.getPageAfter(idNumber, limit));
     }
 
     /**
@@ -82,14 +216,44 @@ public class University {
      */
     public boolean addCourse(Course course){
 
-        //The if is checking if the courses are available or not.
         //If the course was present in the university before, then false is returned.
-        //Or else true is returned after adding the required course.
-        if(availableCourses.containsKey(course.getCourseCode())) {
-            return false;
+        //The catalog lock is held exclusively because the course gets its ordinal here.
+        catalogLock.writeLock().lock();
+        try {
+            TermSnapshot.Preserved[] open = snapshots;
+            if(open.length > 0 && !availableCourses.containsKey(course.getCourseCode())) {
+                TermSnapshot.preserveAbsentCourse(open, course.getCourseCode());
+            }
+            if(availableCourses.putIfAbsent(course.getCourseCode(), course) != null) {
+                return false;
+            }
+            courseSnapshot = null;
+            int ordinal = course.getOrdinal();
+            if(ordinal >= 0 && ordinal < coursesByOrdinal.size() && coursesByOrdinal.get(ordinal) == null) {
+                //A course removed earlier keeps its ordinal, so students who passed it still have the right bit.
+                coursesByOrdinal.set(ordinal, course);
+            } else {
+                course.setOrdinal(coursesByOrdinal.size());
+                coursesByOrdinal.add(course);
+            }
+            catalogVersion++;
+            Queue<Student> awaiting = awaitedCourses.remove(course.getCourseCode());
+            if(awaiting != null) {
+                //Nothing else runs while we hold the catalog lock exclusively, so the students need no stripe.
+                for (Student student : awaiting) {
+                    if(studentBody.get(student.getIdNumber()) == student) {
+                        preserve(student);
+                        student.resolvePreviousCourse(course);
+                    }
+                }
+            }
+            for (UniversityListener listener : listeners) {
+                listener.courseAdded(course);
+            }
+            return true;
+        } finally {
+            catalogLock.writeLock().unlock();
         }
-        availableCourses.put(course.getCourseCode(), course);
-        return true;
     }
 
 
@@ -98,21 +262,46 @@ public class University {
      * in the university's list of offered courses.
      * @param courseID the id of the course you want to add the pre-requisite to
      * @param preReqCourseID the id of the pre-requisite course
-     * @return false if either the courseID or preReqCourseID are invalid, true after adding the pre-requisite
+     * The pre-requisites of every course are kept closed (all pre-requisites, transitively, as bits), so a
+     *   pre-requisite that would make a course depend on itself is refused here instead of making it impossible
+     *   to enroll later.
+     * @return false if either the courseID or preReqCourseID are invalid, if the pre-requisite is already there
+     *   or if it would create a cycle, true after adding the pre-requisite
      */
     public boolean addRequisiteToCourse(String courseID, String preReqCourseID){
 
         //The courses are firstly added if the courses or pre-requisite is not valid.
         //Then true is returned.
         //Otherwise false is returned.
-        if(availableCourses.containsKey(courseID) && availableCourses.containsKey(preReqCourseID)) {
+        catalogLock.writeLock().lock();
+        try {
             Course course = availableCourses.get(courseID);
             Course preReqCourse = availableCourses.get(preReqCourseID);
-            List<Course> courseList = course.getPreRequisites();
-            courseList.add(preReqCourse);
-            return true;
+            if(course != null && preReqCourse != null) {
+                OrdinalSet required = preReqCourse.getAllPreRequisiteBits();
+                if(course == preReqCourse || required.contains(course.getOrdinal())
+                        || course.getDirectPreRequisiteBits().contains(preReqCourse.getOrdinal())) {
+                    return false;
+                }
+                preserve(course);
+                course.addPreRequisite(preReqCourse);
+
+                //The course, and every course that requires it, now also requires preReqCourse and its pre-requisites.
+                OrdinalSet added = new OrdinalSet(required);
+                added.add(preReqCourse.getOrdinal());
+                for (Course course1 : withDependents(course)) {
+                    course1.getAllPreRequisiteBits().addAll(added);
+                }
+                catalogVersion++;
+                for (UniversityListener listener : listeners) {
+                    listener.requisiteAdded(course, preReqCourse);
+                }
+                return true;
+            }
+            return false;
+        } finally {
+            catalogLock.writeLock().unlock();
         }
-        return false;
     }
 
     /**
@@ -136,19 +325,64 @@ public class University {
      */
     public List<Course> getCourses(){
 
-        //Here the whole list of courses are returned.
-        Set<String> set = availableCourses.keySet();
-
+        //Here the whole list of courses are returned, in the order they were added.
+        //The courses are copied from the cached snapshot instead of iterating the map and looking every key up again.
         //ArrayList is used here and the variable is 'courses'.
-        ArrayList<Course> courses = new ArrayList<>();
+        Course[] snapshot = courseSnapshot();
+        ArrayList<Course> courses = new ArrayList<>(snapshot.length);
+        for (Course course : snapshot) {
+            courses.add(course);
+        }
+        return courses;
+    }
+
+    /**
+     * Returns a read-only live view of the courses offered by the university. Nothing is copied; iterating it
+     *   is safe while courses are added or removed (changes may or may not be seen).
+     */
+    public Collection<Course> getCoursesView(){
+        return coursesView;
+    }
 
-        Iterator iterator = set.iterator();
+    /**
+     * Returns a page of courses, in the order they were added to the university.
+     * @param offset the number of courses to skip
+     * @param limit the maximum number of courses returned
+     * @return a read-only list of at most limit courses (empty past the last course)
+     */
+    public List<Course> getCourses(int offset, int limit){
+        if(offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("Negative offset or limit: " + offset + ", " + limit);
+        }
+        Course[] courses = courseSnapshot();
+        int from = Math.min(offset, courses.length);
+        int to = (int) Math.min((long) from + limit, courses.length);
+        return Collections.unmodifiableList(Arrays.asList(courses).subList(from, to));
+    }
 
-        for(int i = 0; i < availableCourses.size(); i++) {
-            Object id = iterator.next();
-            courses.add(availableCourses.get(id));
+    /**
+     * The courses in ordinal order, shared by every caller until a course is added or removed. Must not be changed.
+     */
+    private Course[] courseSnapshot() {
+        Course[] courses = courseSnapshot;
+        if(courses != null) {
+            return courses;
+        }
+        catalogLock.readLock().lock();
+        try {
+            //Writers clear the snapshot while holding the write lock, so the one built here is current.
+            courses = new Course[availableCourses.size()];
+            int count = 0;
+            for (Course course : coursesByOrdinal) {
+                if(course != null) {
+                    courses[count++] = course;
+                }
+            }
+            courseSnapshot = courses;
+            return courses;
+        } finally {
+            catalogLock.readLock().unlock();
         }
-        return courses;
     }
 
     /**
@@ -160,36 +394,376 @@ public class University {
      *
      * @param studentID the id of the student
      * @param courseCode the course code for enrollment.
-     * @return false if studentID, courseCode are incorrect, false if the student does not have the pre-requisites
-     *         true if the student was enrolled in the course.
+     * @return false if studentID, courseCode are incorrect, false if the student does not have the pre-requisites,
+     *         false if the student is already enrolled, true if the student was enrolled in the course.
      *
      * NOTE2: See how false is representing three different issues? Here the "modern" approach would be to use
      *        exceptions (throw an exception) for the wrong id and code problems.
+     *        Use enroll to find out which issue it was.
      */
     public boolean enrollStudentInCourse(int studentID, String courseCode){
+        return enroll(studentID, courseCode) == EnrollmentResult.ENROLLED;
+    }
 
-        //Here the courses and studentID are added using HashSet and List.
-        if(studentBody.containsKey(studentID) && availableCourses.containsKey(courseCode)) {
-            HashSet<Course> courses = studentBody.get(studentID).getPreviousCourses();
-            List<Course> courses1 = availableCourses.get(courseCode).getPreRequisites();
+    /**
+     * Same as enrollStudentInCourse, but tells why the student was not enrolled.
+     * @param studentID the id of the student
+     * @param courseCode the course code for enrollment.
+     * @return ENROLLED if the student was enrolled in the course, otherwise the reason they were not
+     */
+    public EnrollmentResult enroll(int studentID, String courseCode){
+        return enroll(studentID, courseCode, null);
+    }
 
-            //The if is used to check if the ID and courses code are correct or not.
-            //False is returned based on the conditions.
-            for(int i = 0; i < courses1.size(); i++) {
-                if(!courses.contains(courses1.get(i))) {
-                    return false;
+    /**
+     * Same as enroll, with the pre-requisites checked against the given courses instead of the student's own
+     * previous courses. A ShardNode seats the stub of a student of another node with it, checking the passed
+     * courses it keeps for that student (see ShardNode).
+     * @param passedCourses the ordinals of the courses the student passed, in this university
+     */
+    EnrollmentResult claimSeat(int studentID, String courseCode, OrdinalSet passedCourses){
+        return enroll(studentID, courseCode, passedCourses);
+    }
+
+    private EnrollmentResult enroll(int studentID, String courseCode, OrdinalSet passedCourses){
+        MetricsSink sink = metricsSink;
+        if(sink == null) {
+            return doEnroll(studentID, courseCode, passedCourses);
+        }
+        long start = System.nanoTime();
+        EnrollmentResult result = doEnroll(studentID, courseCode, passedCourses);
+        sink.enrolled(result, System.nanoTime() - start);
+        return result;
+    }
+
+    private EnrollmentResult doEnroll(int studentID, String courseCode, OrdinalSet passedCourses){
+
+        catalogLock.readLock().lock();
+        try {
+            Student student = studentBody.get(studentID);
+            if(student == null) {
+                return EnrollmentResult.UNKNOWN_STUDENT;
+            }
+            Course course = availableCourses.get(courseCode);
+            if(course == null) {
+                return EnrollmentResult.UNKNOWN_COURSE;
+            }
+
+            //The seat is claimed only after the student passed the other checks, under the locks. A seat claimed
+            //first would be held for a moment by students who are then turned away, and an eligible student
+            //asking at that moment would be told the course is full.
+            return enrollInCourse(student, course, false, passedCourses);
+        } finally {
+            catalogLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Same as calling enroll for each student in turn, for a caller with many enrollments in one course (see
+     * RegistrationFrontEnd). The catalog lock is taken and the course looked up once. The stripes of up to
+     * ENROLL_CHUNK students are locked together, and the seats of a chunk are claimed with one update, in the
+     * order of the students.
+     * @return the result of each student, in the order of studentIDs
+     */
+    EnrollmentResult[] enrollAll(String courseCode, int[] studentIDs){
+        EnrollmentResult[] results = new EnrollmentResult[studentIDs.length];
+        MetricsSink sink = metricsSink;
+        //The time of the chunk of each student, recorded once the locks are released.
+        long[] nanos = sink == null ? null : new long[studentIDs.length];
+        catalogLock.readLock().lock();
+        try {
+            Course course = availableCourses.get(courseCode);
+            for (int from = 0; from < studentIDs.length; from += ENROLL_CHUNK) {
+                long start = sink == null ? 0 : System.nanoTime();
+                int to = Math.min(from + ENROLL_CHUNK, studentIDs.length);
+                if(course == null) {
+                    //Like enroll, an unknown student is reported before an unknown course.
+                    for (int i = from; i < to; i++) {
+                        results[i] = studentBody.get(studentIDs[i]) == null
+                                ? EnrollmentResult.UNKNOWN_STUDENT : EnrollmentResult.UNKNOWN_COURSE;
+                    }
+                } else {
+                    enrollChunk(course, studentIDs, from, to, results);
                 }
+                if(sink != null) {
+                    Arrays.fill(nanos, from, to, System.nanoTime() - start);
+                }
+            }
+        } finally {
+            catalogLock.readLock().unlock();
+        }
+        if(sink != null) {
+            for (int i = 0; i < results.length; i++) {
+                sink.enrolled(results[i], nanos[i]);
             }
+        }
+        return results;
+    }
+
+    private void enrollChunk(Course course, int[] studentIDs, int from, int to, EnrollmentResult[] results) {
+        int size = to - from;
+        Student[] students = new Student[size];
+        int[] chunkStripes = new int[size + 1];
+        int stripeCount = 0;
+        chunkStripes[stripeCount++] = stripeOf(course);
+        for (int i = 0; i < size; i++) {
+            students[i] = studentBody.get(studentIDs[from + i]);
+            if(students[i] != null) {
+                chunkStripes[stripeCount++] = stripeOf(students[i]);
+            }
+        }
+        int[] sortedStripes = sortedDistinct(chunkStripes, stripeCount);
+        //sameAs[i] is the first request of the same student in the chunk, which answers for both.
+        int[] sameAs = new int[size];
+        boolean[] eligible = new boolean[size];
+        lockStripes(sortedStripes);
+        try {
+            //The checks of enrollLocked for every student first, so the seats are claimed at once.
+            int wanted = 0;
+            for (int i = 0; i < size; i++) {
+                Student student = students[i];
+                sameAs[i] = -1;
+                for (int j = 0; j < i && student != null; j++) {
+                    if(students[j] == student) {
+                        sameAs[i] = j;
+                        break;
+                    }
+                }
+                if(sameAs[i] >= 0) {
+                    continue;
+                }
+                if(student == null || studentBody.get(student.getIdNumber()) != student) {
+                    results[from + i] = EnrollmentResult.UNKNOWN_STUDENT;
+                } else if(student.getEnrolledCourses().contains(course)) {
+                    results[from + i] = EnrollmentResult.ALREADY_ENROLLED;
+                } else if(!hasPreRequisites(student, course)) {
+                    results[from + i] = EnrollmentResult.MISSING_PREREQUISITES;
+                } else {
+                    eligible[i] = true;
+                    wanted++;
+                }
+            }
+            int seats = wanted == 0 ? 0 : course.tryClaimSeats(wanted);
+            for (int i = 0; i < size; i++) {
+                if(sameAs[i] >= 0) {
+                    EnrollmentResult first = results[from + sameAs[i]];
+                    results[from + i] = first == EnrollmentResult.ENROLLED ? EnrollmentResult.ALREADY_ENROLLED : first;
+                } else if(eligible[i]) {
+                    if(seats > 0) {
+                        seats--;
+                        addEnrollment(students[i], course);
+                        results[from + i] = EnrollmentResult.ENROLLED;
+                    } else {
+                        results[from + i] = EnrollmentResult.COURSE_FULL;
+                    }
+                }
+            }
+        } finally {
+            unlockStripes(sortedStripes);
+        }
+    }
 
-            //The student and course are added.
-            //True is returned if the ID and the course code is valid or matches.
+    /**
+     * Puts a student at the end of the waitlist of a course. The student gets enrolled automatically, in
+     * first-come first-served order, when a seat is released.
+     * @param studentID the id of the student
+     * @param courseCode the course code
+     * @return false if studentID, courseCode are incorrect, false if the student does not have the pre-requisites,
+     *         is already enrolled or already waiting. True if the student was added to the waitlist.
+     */
+    public boolean addStudentToWaitlist(int studentID, String courseCode){
+
+        catalogLock.readLock().lock();
+        try {
             Student student = studentBody.get(studentID);
             Course course = availableCourses.get(courseCode);
-            student.enrollInCourse(course);
-            course.addStudentToCourse(student);
+            if(student == null || course == null) {
+                return false;
+            }
+            //The waitlist and the student's list of waitlists are changed together, under both stripes.
+            int studentStripe = stripeOf(student);
+            int courseStripe = stripeOf(course);
+            lockStripes(studentStripe, courseStripe);
+            try {
+                if(studentBody.get(studentID) != student || !hasPreRequisites(student, course)
+                        || student.getEnrolledCourses().contains(course) || course.isOnWaitlist(student)) {
+                    return false;
+                }
+                preserve(course);
+                course.addToWaitlist(student);
+                for (UniversityListener listener : listeners) {
+                    listener.studentWaitlisted(student, course);
+                }
+            } finally {
+                unlockStripes(studentStripe, courseStripe);
+            }
+
+            //A seat may have been released after the student found the course full. If so, hand it to the waitlist.
+            if(course.tryClaimSeat()) {
+                releaseSeat(course);
+            }
             return true;
+        } finally {
+            catalogLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Changes the number of seats of a course. If the course grows, students on the waitlist are enrolled
+     * in the new seats.
+     * @param courseCode the course code
+     * @param capacity the new maximum number of enrolled students
+     * @return false if the course code does not match any offered course, true after the capacity was changed.
+     */
+    public boolean setCourseCapacity(String courseCode, int capacity){
+
+        catalogLock.readLock().lock();
+        try {
+            Course course = availableCourses.get(courseCode);
+            if(course == null) {
+                return false;
+            }
+            int courseStripe = stripeOf(course);
+            stripes[courseStripe].lock();
+            try {
+                preserve(course);
+                course.setCapacity(capacity);
+                for (UniversityListener listener : listeners) {
+                    listener.capacityChanged(course, capacity);
+                }
+            } finally {
+                stripes[courseStripe].unlock();
+            }
+            while(!course.isWaitlistEmpty() && course.tryClaimSeat()) {
+                releaseSeat(course);
+            }
+            return true;
+        } finally {
+            catalogLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds the student to the course if they can take it, claiming a seat once every other check passed.
+     * The caller must hold the catalog lock (shared).
+     * @param seatClaimed true if the caller already claimed the seat (handing it to the waitlist). The caller must
+     *                    then give the seat back if this method does not return ENROLLED.
+     * @param passedCourses the courses to check the pre-requisites against, null for the student's own (see
+     *                      claimSeat)
+     */
+    private EnrollmentResult enrollInCourse(Student student, Course course, boolean seatClaimed,
+                                            OrdinalSet passedCourses) {
+        //Only the student and the course are locked, other enrollments keep running in parallel.
+        int studentStripe = stripeOf(student);
+        int courseStripe = stripeOf(course);
+        lockStripes(studentStripe, courseStripe);
+        try {
+            return enrollLocked(student, course, seatClaimed, passedCourses);
+        } finally {
+            unlockStripes(studentStripe, courseStripe);
+        }
+    }
+
+    /**
+     * Same as enrollInCourse, for a caller that already holds the stripes of the student and of the course.
+     */
+    private EnrollmentResult enrollLocked(Student student, Course course, boolean seatClaimed,
+                                          OrdinalSet passedCourses) {
+        //The student may have been removed while we were waiting for the lock.
+        if(studentBody.get(student.getIdNumber()) != student) {
+            return EnrollmentResult.UNKNOWN_STUDENT;
+        }
+
+        //A student cannot enroll at the same course twice.
+        if(student.getEnrolledCourses().contains(course)) {
+            return EnrollmentResult.ALREADY_ENROLLED;
+        }
+
+        if(passedCourses == null ? !hasPreRequisites(student, course)
+                : !passedCourses.containsAll(course.getDirectPreRequisiteBits())) {
+            return EnrollmentResult.MISSING_PREREQUISITES;
+        }
+
+        //Claiming the seat needs no lock, but claiming it here means only students who get it ever hold it.
+        if(!seatClaimed && !course.tryClaimSeat()) {
+            return EnrollmentResult.COURSE_FULL;
+        }
+        addEnrollment(student, course);
+        return EnrollmentResult.ENROLLED;
+    }
+
+    //The caller holds the stripes of the student and of the course, and claimed the seat.
+    private void addEnrollment(Student student, Course course) {
+        //The student and course are added while both locks are held, so nobody sees half of the enrollment.
+        preserve(student);
+        preserve(course);
+        student.enrollInCourse(course);
+        course.addStudentToCourse(student);
+        for (UniversityListener listener : listeners) {
+            listener.studentEnrolled(student, course);
+        }
+    }
+
+    private boolean hasPreRequisites(Student student, Course course) {
+        if(student.hasUnresolvedCourses()) {
+            resolvePreviousCourses(student);
+        }
+        //A subset test on a few longs instead of a hash lookup per pre-requisite.
+        return student.getPassedCourseBits().containsAll(course.getDirectPreRequisiteBits());
+    }
+
+    /**
+     * Gives the previous courses the student recorded without an ordinal (e.g. another instance of a course we
+     * offer) the bit of the course with the same code. Courses we do not offer yet are resolved by addCourse.
+     * Called while holding the student's stripe and the catalog lock, so each course is looked up only once.
+     */
+    private void resolvePreviousCourses(Student student) {
+        preserve(student);
+        for (Course course : student.takeUnresolvedCourses()) {
+            Course offered = availableCourses.get(course.getCourseCode());
+            if(offered != null) {
+                student.resolvePreviousCourse(offered);
+            } else {
+                awaitedCourses.computeIfAbsent(course.getCourseCode(), code -> new ConcurrentLinkedQueue<>())
+                        .add(student);
+            }
+        }
+    }
+
+    /**
+     * Gives a seat back to the course. If students are waiting, the seat goes straight to the first one that
+     * can still be enrolled, otherwise it becomes free.
+     * The caller must hold the catalog lock (shared) and must not hold any stripe.
+     */
+    private void releaseSeat(Course course) {
+        while(true) {
+            Student next;
+            while((next = course.peekWaitlist()) != null) {
+                //The student leaves the waitlist under the same stripes as the enrollment, so their own list of
+                //waitlists and the class list change together.
+                int studentStripe = stripeOf(next);
+                int courseStripe = stripeOf(course);
+                lockStripes(studentStripe, courseStripe);
+                try {
+                    //Somebody else may have taken the student off the waitlist meanwhile.
+                    if(course.isOnWaitlist(next)) {
+                        preserve(course);
+                        course.removeFromWaitlist(next);
+                        if(enrollLocked(next, course, true, null) == EnrollmentResult.ENROLLED) {
+                            return;
+                        }
+                    }
+                } finally {
+                    unlockStripes(studentStripe, courseStripe);
+                }
+            }
+            course.releaseSeat();
+
+            //Somebody may have joined the waitlist while we were releasing the seat. Take it back for them.
+            if(course.isWaitlistEmpty() || !course.tryClaimSeat()) {
+                return;
+            }
         }
-        return false;
     }
 
     /**
@@ -200,29 +774,54 @@ public class University {
      *        true if the student was removed from the course.
      */
     public boolean removeStudentFromCourse(int studentID, String courseCode){
+        MetricsSink sink = metricsSink;
+        if(sink == null) {
+            return dropStudentFromCourse(studentID, courseCode);
+        }
+        long start = System.nanoTime();
+        boolean dropped = dropStudentFromCourse(studentID, courseCode);
+        sink.completed(MetricsSink.Operation.DROP, dropped, System.nanoTime() - start);
+        return dropped;
+    }
+
+    private boolean dropStudentFromCourse(int studentID, String courseCode){
 
-        //Here the courses are added using HashSet.
-        if(studentBody.containsKey(studentID) && availableCourses.containsKey(courseCode)) {
+        catalogLock.readLock().lock();
+        try {
             Student student = studentBody.get(studentID);
             Course course = availableCourses.get(courseCode);
+            if(student == null || course == null) {
+                return false;
+            }
 
-            HashSet<Course> courses = student.getEnrolledCourses();
+            int studentStripe = stripeOf(student);
+            int courseStripe = stripeOf(course);
+            lockStripes(studentStripe, courseStripe);
+            try {
+                //The if here checks if the student is not registered for the course.
+                //A student removed meanwhile was already taken off the class list, and their seat given back.
+                if(studentBody.get(studentID) != student || !student.getEnrolledCourses().contains(course)) {
+                    return false;
+                }
+                preserve(student);
+                preserve(course);
+                student.dropCourse(course);
 
-            //The if here checks if the ID and course code is not valid.
-            //And also if the student is not registered for the course.
-            if(!courses.contains(course)) {
-               return false;
+                //Then the student gets removed from the course as well.
+                course.removeStudentFromCourse(student);
+                for (UniversityListener listener : listeners) {
+                    listener.studentDropped(student, course);
+                }
+            } finally {
+                unlockStripes(studentStripe, courseStripe);
             }
 
-            //Then the student gets removed.
-            //True is returned based on validations.
-            courses.remove(course);
-
-            List<Student> students = course.getEnrolledStudents();
-            students.remove(student);
+            //The freed seat goes to the waitlist, if anybody is waiting.
+            releaseSeat(course);
             return true;
+        } finally {
+            catalogLock.readLock().unlock();
         }
-        return false;
     }
 
 
@@ -234,28 +833,77 @@ public class University {
      * There are a couple of ways to solve this method. If you iterate over the student's own courses,
      *  you have to be careful not to change the collection while you are iterating (unless you remove with the iterator)
      *
+     * The student is also taken off every waitlist.
+     *
      * @param studentID the id of the student to remove
      * @return false if the studentID is not in the index. True if the student was removed from the index and courses
      */
     public boolean removeStudentFromUniversity(int studentID){
+        MetricsSink sink = metricsSink;
+        if(sink == null) {
+            return removeStudent(studentID);
+        }
+        long start = System.nanoTime();
+        boolean removed = removeStudent(studentID);
+        sink.completed(MetricsSink.Operation.REMOVE_STUDENT, removed, System.nanoTime() - start);
+        return removed;
+    }
 
-        //Here the Student object is declared.
-        Student student = studentBody.get(studentID);
+    private boolean removeStudent(int studentID){
 
-        //The HashSet is used and the name of the variable is 'students'.
-        HashSet<Course> students = student.getEnrolledCourses();
+        catalogLock.readLock().lock();
+        try {
+            Student student = studentBody.get(studentID);
+            if(student == null) {
+                return false;
+            }
 
-        Iterator iterator = students.iterator();
+            //We need the stripes of the student and of every course the student is enrolled in or waiting for.
+            //Locks must always be taken in ascending order, so we read the courses first, lock, and
+            //retry if the student enrolled in (or joined the waitlist of) a course from a stripe we did not lock.
+            Course[] freedSeats;
+            while(true) {
+                int[] held = stripesOf(student);
+                lockStripes(held);
+                try {
+                    if(studentBody.get(studentID) != student) {
+                        return false;
+                    }
+                    if(!coversCourses(held, student)) {
+                        continue;
+                    }
 
-        //Course object is called.
-        //Then the student is removed.
-        for(int i = 0; i < students.size(); i++) {
-            Object course = iterator.next();
-            Course course1 = (Course) course;
-            List<Student> studentsList = ((Course) course).getEnrolledStudents();
-            studentsList.remove(student);
+                    //Then the student is removed from every course.
+                    preserve(student);
+                    for(Course course : student.getEnrolledCourses()) {
+                        preserve(course);
+                        course.removeStudentFromCourse(student);
+                    }
+                    studentBody.remove(studentID, student);
+                    //Only the waitlists the student is on are visited, their stripes are held too.
+                    for(Course course : student.getWaitlistedCourses().toArray(new Course[0])) {
+                        preserve(course);
+                        course.removeFromWaitlist(student);
+                    }
+                    for (UniversityListener listener : listeners) {
+                        listener.studentRemoved(student);
+                    }
+                    freedSeats = student.getEnrolledCourses().toArray(new Course[0]);
+                    break;
+                } finally {
+                    unlockStripes(held);
+                }
+            }
+
+            //The seats the student had go to the waitlists.
+            for(Course course : freedSeats) {
+                releaseSeat(course);
+            }
+            queryCache.remove(QueryCache.Key.of(QueryCache.Query.ELIGIBLE_COURSES, studentID));
+            return true;
+        } finally {
+            catalogLock.readLock().unlock();
         }
-        return studentBody.remove(studentID, student);
     }
 
     /**
@@ -264,45 +912,650 @@ public class University {
      *     AND from each student's current courses.
      *
      * The method must remove the course from any other courses that have it as a pre-requisite
+     * The course itself loses its pre-requisites, so adding it back starts from an empty list.
      *
      * @param courseCode the course code
      * @return false if the course code does not match any offered course. True after the course was removed
      */
     public boolean removeCourseFromUniversity(String courseCode){
+        MetricsSink sink = metricsSink;
+        if(sink == null) {
+            return removeCourse(courseCode);
+        }
+        long start = System.nanoTime();
+        boolean removed = removeCourse(courseCode);
+        sink.completed(MetricsSink.Operation.REMOVE_COURSE, removed, System.nanoTime() - start);
+        return removed;
+    }
 
-        //Here Course object is called.
-        Course course = availableCourses.get(courseCode);
+    private boolean removeCourse(String courseCode){
 
-        //List is used here and the name of the variable is 'students'.
-        List<Student> students = course.getEnrolledStudents();
+        //Removing a course touches many students and courses, so it runs exclusively.
+        catalogLock.writeLock().lock();
+        try {
+            Course course = availableCourses.get(courseCode);
+            if(course == null) {
+                return false;
+            }
 
-        //HashSet is used and the variable is 'courseList'.
-        //The course is then removed.
-        for (int i = 0; i < students.size(); i++) {
-            Student student = students.get(i);
-            HashSet<Course> courseList = student.getEnrolledCourses();
-            courseList.remove(course);
+            //The course is removed from every enrolled student. Nobody is waiting for it anymore.
+            preserve(course);
+            for (Student student : course.getEnrolledStudents()) {
+                preserve(student);
+                student.dropCourse(course);
+            }
+            course.clearWaitlist();
+
+            //The course is then removed from the pre-requisites of the courses that depend on it, found with the
+            //reverse index instead of scanning the catalog. It also stops depending on its own pre-requisites.
+            //Courses that required it (even indirectly) may have lost other pre-requisites through it,
+            //so their closures are computed again.
+            List<Course> affected = withDependents(course);
+            affected.remove(0);
+            for (Course dependent : new ArrayList<>(course.getDependentCourses())) {
+                preserve(dependent);
+                dependent.removePreRequisite(course);
+            }
+            for (Course preReqCourse : new ArrayList<>(course.getPreRequisites())) {
+                course.removePreRequisite(preReqCourse);
+            }
+            availableCourses.remove(courseCode, course);
+            coursesByOrdinal.set(course.getOrdinal(), null);
+            courseSnapshot = null;
+            course.getAllPreRequisiteBits().clear();
+            recomputeAllPreRequisites(affected);
+            catalogVersion++;
+            queryCache.remove(QueryCache.Key.of(QueryCache.Query.COURSE_INFO, courseCode));
+            queryCache.remove(QueryCache.Key.of(QueryCache.Query.ALL_PRE_REQUISITES, courseCode));
+            for (UniversityListener listener : listeners) {
+                listener.courseRemoved(course);
+            }
+            return true;
+        } finally {
+            catalogLock.writeLock().unlock();
         }
-        Set<String> courses = availableCourses.keySet();
+    }
 
-        Iterator iterator = courses.iterator(); 
+    /**
+     * Returns the course followed by every course that depends on it, directly or not, walking the reverse index.
+     * The catalog lock must be held.
+     */
+    private List<Course> withDependents(Course course) {
+        List<Course> courses = new ArrayList<>();
+        OrdinalSet seen = new OrdinalSet();
+        courses.add(course);
+        seen.add(course.getOrdinal());
+        //The list doubles as the queue of a breadth-first walk.
+        for (int i = 0; i < courses.size(); i++) {
+            for (Course dependent : courses.get(i).getDependentCourses()) {
+                if(!seen.contains(dependent.getOrdinal())) {
+                    seen.add(dependent.getOrdinal());
+                    courses.add(dependent);
+                }
+            }
+        }
+        return courses;
+    }
 
-        //Course object is made.
-        //List is created.
-        //An if is used to check if the list of the courses contains the specified course or not.
-        //Then the course is removed from the list of courses.
-        for(int i = 0; i < courses.size(); i++) {
-            Object id = iterator.next();
-            Course course1 = availableCourses.get(id);
-            List<Course> courseList = course1.getPreRequisites();
-            if(courseList.contains(course)) {
-                courseList.remove(course);
+    /**
+     * Computes again the closures of the given courses from the closures of their direct pre-requisites.
+     * Courses are done in pre-requisite order (a course after its pre-requisites in the list), without recursion,
+     * so long chains of pre-requisites cannot overflow the stack. Closures of other courses are not touched.
+     * The catalog lock must be held exclusively.
+     */
+    private void recomputeAllPreRequisites(List<Course> courses) {
+        //waiting[ordinal] is the number of pre-requisites of the course that are still to be computed.
+        int[] waiting = new int[coursesByOrdinal.size()];
+        OrdinalSet pending = new OrdinalSet();
+        for (Course course : courses) {
+            pending.add(course.getOrdinal());
+        }
+        List<Course> ready = new ArrayList<>();
+        for (Course course : courses) {
+            for (Course preReqCourse : course.getPreRequisites()) {
+                if(pending.contains(preReqCourse.getOrdinal())) {
+                    waiting[course.getOrdinal()]++;
+                }
+            }
+            if(waiting[course.getOrdinal()] == 0) {
+                ready.add(course);
+            }
+        }
+        for (int i = 0; i < ready.size(); i++) {
+            Course course = ready.get(i);
+            OrdinalSet all = course.getAllPreRequisiteBits();
+            all.clear();
+            for (Course preReqCourse : course.getPreRequisites()) {
+                all.add(preReqCourse.getOrdinal());
+                all.addAll(preReqCourse.getAllPreRequisiteBits());
+            }
+            for (Course dependent : course.getDependentCourses()) {
+                if(pending.contains(dependent.getOrdinal()) && --waiting[dependent.getOrdinal()] == 0) {
+                    ready.add(dependent);
+                }
             }
         }
-        return availableCourses.remove(courseCode, course);
+    }
+
+    /**
+     * Returns every course the student could enroll in right now: the student has all its pre-requisites,
+     *   has not passed it and is not enrolled in it. Seats are not checked, a full course can still be waitlisted.
+     * @param studentID the student ID
+     * The answer is cached until the student's courses or the catalog change (see getQueryCache).
+     * @return the courses, in the order they were added to the university (empty if the student is not found)
+     */
+    public List<Course> getEligibleCourses(int studentID){
+        catalogLock.readLock().lock();
+        try {
+            Student student = studentBody.get(studentID);
+            if(student == null) {
+                return new ArrayList<>();
+            }
+            //The catalog cannot change while we hold its lock, the student can until we hold its stripe.
+            QueryCache.Key key = QueryCache.Key.of(QueryCache.Query.ELIGIBLE_COURSES, studentID);
+            Course[] eligible = (Course[]) queryCache.get(key, student, version(student));
+            if(eligible == null) {
+                int stripe = stripeOf(student);
+                stripes[stripe].lock();
+                try {
+                    eligible = eligibleCourses(student);
+                    queryCache.put(key, student, version(student), eligible, 16 + 4L * eligible.length);
+                } finally {
+                    stripes[stripe].unlock();
+                }
+            }
+            return new ArrayList<>(Arrays.asList(eligible));
+        } finally {
+            catalogLock.readLock().unlock();
+        }
+    }
+
+    //The student's version in the low bits and the catalog's in the high bits: either changing changes it.
+    private long version(Student student) {
+        return (long) catalogVersion << 32 | (student.getVersion() & 0xFFFFFFFFL);
+    }
+
+    private Course[] eligibleCourses(Student student) {
+        if(student.hasUnresolvedCourses()) {
+            resolvePreviousCourses(student);
+        }
+        List<Course> eligible = new ArrayList<>();
+        OrdinalSet passed = student.getPassedCourseBits();
+        Set<Course> enrolled = student.getEnrolledCourses();
+        for (Course course : coursesByOrdinal) {
+            if(course != null && !passed.contains(course.getOrdinal()) && !enrolled.contains(course)
+                    && passed.containsAll(course.getDirectPreRequisiteBits())) {
+                eligible.add(course);
+            }
+        }
+        return eligible.toArray(new Course[0]);
+    }
+
+    /**
+     * Returns every pre-requisite of a course, including the pre-requisites of its pre-requisites and so on.
+     * @param courseCode the course code
+     * The answer is cached until the catalog changes (see getQueryCache).
+     * @return the courses, in the order they were added to the university, or null if the course is not found
+     */
+    public List<Course> getAllPreRequisites(String courseCode){
+        catalogLock.readLock().lock();
+        try {
+            Course course = availableCourses.get(courseCode);
+            if(course == null) {
+                return null;
+            }
+            QueryCache.Key key = QueryCache.Key.of(QueryCache.Query.ALL_PRE_REQUISITES, courseCode);
+            Course[] preRequisites = (Course[]) queryCache.get(key, course, catalogVersion);
+            if(preRequisites == null) {
+                List<Course> courses = new ArrayList<>();
+                course.getAllPreRequisiteBits().forEach(ordinal -> courses.add(coursesByOrdinal.get(ordinal)));
+                preRequisites = courses.toArray(new Course[0]);
+                queryCache.put(key, course, catalogVersion, preRequisites, 16 + 4L * preRequisites.length);
+            }
+            return new ArrayList<>(Arrays.asList(preRequisites));
+        } finally {
+            catalogLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Same as getCourse(courseCode).getFullCourseInfo(), cached until the course's pre-requisites change
+     * (see getQueryCache).
+     * @param courseCode the course code
+     * @return the course and its pre-requisites, or null if the course is not found
+     */
+    public String getFullCourseInfo(String courseCode){
+        catalogLock.readLock().lock();
+        try {
+            Course course = availableCourses.get(courseCode);
+            if(course == null) {
+                return null;
+            }
+            //Pre-requisites only change under the catalog's write lock, so the version holds while we compute.
+            QueryCache.Key key = QueryCache.Key.of(QueryCache.Query.COURSE_INFO, courseCode);
+            String info = (String) queryCache.get(key, course, course.getVersion());
+            if(info == null) {
+                info = course.getFullCourseInfo();
+                queryCache.put(key, course, course.getVersion(), info, 40 + 2L * info.length());
+            }
+            return info;
+        } finally {
+            catalogLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns every course that depends on a course, directly or through other pre-requisites.
+     * These are the courses whose pre-requisites change if the course is removed.
+     * @param courseCode the course code
+     * @return the courses, in the order they were added to the university, or null if the course is not found
+     */
+    public List<Course> getDependentCourses(String courseCode){
+        catalogLock.readLock().lock();
+        try {
+            Course course = availableCourses.get(courseCode);
+            if(course == null) {
+                return null;
+            }
+            OrdinalSet dependents = new OrdinalSet();
+            for (Course dependent : withDependents(course)) {
+                dependents.add(dependent.getOrdinal());
+            }
+            dependents.remove(course.getOrdinal());
+            List<Course> courses = new ArrayList<>();
+            dependents.forEach(ordinal -> courses.add(coursesByOrdinal.get(ordinal)));
+            return courses;
+        } finally {
+            catalogLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The courses by ordinal, null where a course was removed (see Course.getOrdinal).
+     */
+    Course[] getCoursesByOrdinal(){
+        catalogLock.readLock().lock();
+        try {
+            return coursesByOrdinal.toArray(new Course[0]);
+        } finally {
+            catalogLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Copies the courses a student is enrolled in, while no enrollment of the student can change them.
+     */
+    Course[] getEnrolledCourses(Student student){
+        int stripe = stripeOf(student);
+        stripes[stripe].lock();
+        try {
+            return student.getEnrolledCourses().toArray(new Course[0]);
+        } finally {
+            stripes[stripe].unlock();
+        }
+    }
+
+    /**
+     * @return term statistics computed in parallel over this university (fill rates, loads, co-enrollment...)
+     */
+    public UniversityAnalytics getAnalytics(){
+        return new UniversityAnalytics(this);
+    }
+
+    /*
+     * Term snapshots
+     */
+
+    /**
+     * Opens a point-in-time view of the university that stays the same while registration goes on.
+     * Nothing is copied: the snapshot keeps what changes afterwards (see TermSnapshot). Close it once read.
+     */
+    public TermSnapshot openSnapshot(){
+        //Waits for the operations in progress, so none of them is half seen by the snapshot.
+        catalogLock.writeLock().lock();
+        try {
+            TermSnapshot snapshot = new TermSnapshot(this);
+            synchronized (this) {
+                TermSnapshot.Preserved[] updated = Arrays.copyOf(snapshots, snapshots.length + 1);
+                updated[snapshots.length] = snapshot.preserved;
+                snapshots = updated;
+            }
+            return snapshot;
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of snapshots open, each of them preserving what changes until it is closed
+     */
+    public int getOpenSnapshotCount(){
+        return snapshots.length;
+    }
+
+    /**
+     * @return the number of snapshots that were garbage collected without being closed, which preserved state
+     *   until then (see TermSnapshot). More than 0 means some code forgets to close its snapshots.
+     */
+    public long getAbandonedSnapshotCount(){
+        return abandonedSnapshots.get();
+    }
+
+    synchronized void closeSnapshot(TermSnapshot.Preserved snapshot, boolean abandoned){
+        if(abandoned) {
+            abandonedSnapshots.incrementAndGet();
+        }
+        for (int i = 0; i < snapshots.length; i++) {
+            if(snapshots[i] == snapshot) {
+                TermSnapshot.Preserved[] updated = new TermSnapshot.Preserved[snapshots.length - 1];
+                System.arraycopy(snapshots, 0, updated, 0, i);
+                System.arraycopy(snapshots, i + 1, updated, i, updated.length - i);
+                snapshots = updated;
+                return;
+            }
+        }
+    }
+
+    //Called before the student changes, while holding its stripe or the catalog lock exclusively.
+    private void preserve(Student student) {
+        TermSnapshot.Preserved[] open = snapshots;
+        if(open.length > 0) {
+            TermSnapshot.preserve(open, student);
+            //Optimistic readers must see what was preserved before any of the change (see snapshotStudent).
+            VarHandle.storeStoreFence();
+        }
+    }
+
+    //Called before the course changes, while holding its stripe and the catalog lock, or the catalog lock exclusively.
+    private void preserve(Course course) {
+        TermSnapshot.Preserved[] open = snapshots;
+        if(open.length > 0) {
+            TermSnapshot.preserve(open, course);
+        }
+    }
+
+    /**
+     * The student as the snapshot sees it: what was preserved for the ID, otherwise the live student, read while
+     * it cannot change. A student that changed since the snapshot was opened always has something preserved.
+     */
+    TermSnapshot.StudentImage snapshotStudent(TermSnapshot snapshot, int studentID){
+        //What was preserved never changes, so it is read without locking.
+        TermSnapshot.StudentImage preserved = snapshot.preservedStudent(studentID);
+        if(preserved != null) {
+            return preserved;
+        }
+        //Optimistic read, like StudentIndex: a writer preserves the student before changing it, so a copy made
+        //while nothing is preserved is the state the snapshot had. A copy torn by a writer is thrown away.
+        Student live = studentBody.get(studentID);
+        if(live != null) {
+            try {
+                TermSnapshot.StudentImage image = TermSnapshot.StudentImage.of(live);
+                VarHandle.loadLoadFence();
+                if(snapshot.preservedStudent(studentID) == null) {
+                    return image;
+                }
+            } catch (RuntimeException e) {
+                //Changed while we copied it, read again under the lock.
+            }
+        }
+        catalogLock.readLock().lock();
+        int stripe = spread(Integer.hashCode(studentID));
+        stripes[stripe].lock();
+        try {
+            preserved = snapshot.preservedStudent(studentID);
+            if(preserved != null) {
+                return preserved;
+            }
+            Student student = studentBody.get(studentID);
+            return student == null ? TermSnapshot.StudentImage.ABSENT : TermSnapshot.StudentImage.of(student);
+        } finally {
+            stripes[stripe].unlock();
+            catalogLock.readLock().unlock();
+        }
+    }
+
+    TermSnapshot.CourseImage snapshotCourse(TermSnapshot snapshot, String courseCode){
+        TermSnapshot.CourseImage preserved = snapshot.preservedCourse(courseCode);
+        if(preserved != null) {
+            return preserved;
+        }
+        catalogLock.readLock().lock();
+        int stripe = spread(courseCode.hashCode());
+        stripes[stripe].lock();
+        try {
+            preserved = snapshot.preservedCourse(courseCode);
+            if(preserved != null) {
+                return preserved;
+            }
+            Course course = availableCourses.get(courseCode);
+            return course == null ? TermSnapshot.CourseImage.ABSENT : TermSnapshot.CourseImage.of(course);
+        } finally {
+            stripes[stripe].unlock();
+            catalogLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The courses of the snapshot in ordinal order: the live courses that were already offered (or what was
+     * preserved for their code), plus the preserved courses that were removed since.
+     */
+    List<Course> snapshotCourses(TermSnapshot snapshot){
+        catalogLock.readLock().lock();
+        try {
+            List<Course> courses = new ArrayList<>();
+            for (Course live : coursesByOrdinal) {
+                if(live != null) {
+                    TermSnapshot.CourseImage preserved = snapshot.preservedCourse(live.getCourseCode());
+                    if(preserved == null) {
+                        courses.add(live);
+                    } else if(preserved.course != null) {
+                        courses.add(preserved.course);
+                    }
+                }
+            }
+            boolean removed = false;
+            for (TermSnapshot.CourseImage preserved : snapshot.preservedCourses()) {
+                if(preserved.course != null && !availableCourses.containsKey(preserved.course.getCourseCode())) {
+                    courses.add(preserved.course);
+                    removed = true;
+                }
+            }
+            if(removed) {
+                //Removed courses keep their ordinal, so this is the order the snapshot had.
+                courses.sort(Comparator.comparingInt(Course::getOrdinal));
+            }
+            return courses;
+        } finally {
+            catalogLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The live students sorted by ID, for TermSnapshot.getStudents.
+     */
+    Student[] sortedStudents(){
+        return studentBody.sortedSnapshot();
+    }
+
+    /**
+     * Lock that stops every other operation on the university while held, e.g. to save a consistent snapshot.
+     */
+    Lock catalogWriteLock() {
+        return catalogLock.writeLock();
+    }
+
+    /*
+     * Lock striping helpers.
+     * Several stripes are always locked in ascending order so two threads can never wait on each other.
+     */
+
+    private int stripeOf(Student student) {
+        return spread(Integer.hashCode(student.getIdNumber()));
+    }
+
+    private int stripeOf(Course course) {
+        return spread(course.getCourseCode().hashCode());
+    }
+
+    private int spread(int hash) {
+        hash ^= (hash >>> 16);
+        hash *= 0x45d9f3b;
+        hash ^= (hash >>> 16);
+        return hash & (stripes.length - 1);
+    }
+
+    private void lockStripes(int first, int second) {
+        if(first == second) {
+            stripes[first].lock();
+        } else {
+            stripes[Math.min(first, second)].lock();
+            stripes[Math.max(first, second)].lock();
+        }
+    }
+
+    private void unlockStripes(int first, int second) {
+        stripes[first].unlock();
+        if(first != second) {
+            stripes[second].unlock();
+        }
+    }
 
+    private void lockStripes(int[] sortedStripes) {
+        for (int stripe : sortedStripes) {
+            stripes[stripe].lock();
+        }
     }
 
+    private void unlockStripes(int[] sortedStripes) {
+        for (int i = sortedStripes.length - 1; i >= 0; i--) {
+            stripes[sortedStripes[i]].unlock();
+        }
+    }
+
+    /**
+     * Returns the sorted, distinct stripes of a student and of the courses the student is enrolled in or waiting for.
+     */
+    private int[] stripesOf(Student student) {
+        int studentStripe = stripeOf(student);
+        int[] result;
+        //The student's own stripe keeps its course sets stable while we copy them.
+        stripes[studentStripe].lock();
+        try {
+            result = new int[student.getEnrolledCourses().size() + student.getWaitlistedCourses().size() + 1];
+            int i = 0;
+            result[i++] = studentStripe;
+            for (Course course : student.getEnrolledCourses()) {
+                result[i++] = stripeOf(course);
+            }
+            for (Course course : student.getWaitlistedCourses()) {
+                result[i++] = stripeOf(course);
+            }
+        } finally {
+            stripes[studentStripe].unlock();
+        }
+        return sortedDistinct(result, result.length);
+    }
+
+    //Sorts the first count stripes and drops the repeated ones, the order lockStripes takes them in.
+    private static int[] sortedDistinct(int[] values, int count) {
+        Arrays.sort(values, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if(i == 0 || values[i] != values[distinct - 1]) {
+                values[distinct++] = values[i];
+            }
+        }
+        return Arrays.copyOf(values, distinct);
+    }
+
+    private boolean coversCourses(int[] sortedStripes, Student student) {
+        for (Course course : student.getEnrolledCourses()) {
+            if(Arrays.binarySearch(sortedStripes, stripeOf(course)) < 0) {
+                return false;
+            }
+        }
+        for (Course course : student.getWaitlistedCourses()) {
+            if(Arrays.binarySearch(sortedStripes, stripeOf(course)) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Records that a student passed a course, so the course counts as a pre-requisite the student has.
+     * Unlike calling student.addPreviousCourse directly, the change is seen by the listeners (e.g. the MutationLog).
+     * @param studentID the student ID
+     * @param courseCode the course code
+     * @return false if studentID, courseCode are incorrect or the course was already passed, true otherwise
+     */
+    public boolean addPreviousCourseToStudent(int studentID, String courseCode){
+
+        catalogLock.readLock().lock();
+        try {
+            Student student = studentBody.get(studentID);
+            Course course = availableCourses.get(courseCode);
+            if(student == null || course == null) {
+                return false;
+            }
+            int stripe = stripeOf(student);
+            stripes[stripe].lock();
+            try {
+                if(studentBody.get(studentID) != student || student.getPreviousCourses().contains(course)) {
+                    return false;
+                }
+                preserve(student);
+                student.addPreviousCourse(course);
+                for (UniversityListener listener : listeners) {
+                    listener.previousCourseAdded(student, course);
+                }
+                return true;
+            } finally {
+                stripes[stripe].unlock();
+            }
+        } finally {
+            catalogLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Registers a listener that will be told about every change made to the university from now on.
+     */
+    public synchronized void addListener(UniversityListener listener){
+        UniversityListener[] updated = Arrays.copyOf(listeners, listeners.length + 1);
+        updated[listeners.length] = listener;
+        listeners = updated;
+    }
+
+    public synchronized boolean removeListener(UniversityListener listener){
+        List<UniversityListener> updated = new ArrayList<>(Arrays.asList(listeners));
+        if(!updated.remove(listener)) {
+            return false;
+        }
+        listeners = updated.toArray(new UniversityListener[0]);
+        return true;
+    }
+
+    /**
+     * Reports the outcome and duration of every enrollment, drop, student removal and course removal to the sink
+     * (e.g. UniversityMetrics), or stops reporting them if the sink is null.
+     */
+    public void setMetricsSink(MetricsSink sink){
+        metricsSink = sink;
+    }
+
+    public MetricsSink getMetricsSink(){
+        return metricsSink;
+    }
+
+    /**
+     * The cache of getEligibleCourses, getAllPreRequisites and getFullCourseInfo(courseCode), with its hit, miss
+     * and eviction counts. Its size can be changed (0 turns it off) with setMaxWeight.
+     */
+    public QueryCache getQueryCache(){
+        return queryCache;
+    }
 
     public String getUniversityMotto() {
         return universityMotto;
@@ -328,6 +1581,58 @@ public class University {
 
 
 
+    /**
+     * Live view of the courses, see getCoursesView. It reads the map of courses each time, since ensureCapacity
+     * may replace it.
+     */
+    private class CoursesView extends AbstractCollection<Course> {
+        @Override
+        public Iterator<Course> iterator() {
+            return Collections.unmodifiableCollection(availableCourses.values()).iterator();
+        }
+
+        @Override
+        public Spliterator<Course> spliterator() {
+            return availableCourses.values().spliterator();
+        }
+
+        @Override
+        public int size() {
+            return availableCourses.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof Course && availableCourses.containsKey(((Course) o).getCourseCode());
+        }
+    }
+
+    /**
+     * Live view of the students, see getStudentsView.
+     */
+    private class StudentsView extends AbstractCollection<Student> {
+        @Override
+        public Iterator<Student> iterator() {
+            //The iterator of a spliterator does not support remove, so the view stays read-only.
+            return Spliterators.iterator(studentBody.spliterator());
+        }
+
+        @Override
+        public Spliterator<Student> spliterator() {
+            return studentBody.spliterator();
+        }
+
+        @Override
+        public int size() {
+            return studentBody.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof Student && studentBody.containsKey(((Student) o).getIdNumber());
+        }
+    }
+
     @Override
     public String toString() {
         return String.format("%s (%s)\nNumber of Students: %d\nNumber of Courses %d",
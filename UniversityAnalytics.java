@@ -0,0 +1,530 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.IntStream;
+
+/**
+ * Term statistics over the enrollment graph of a University (see University.getAnalytics):
+ * course fill rates, course load per student, pre-requisite bottlenecks and co-enrollment of courses.
+ *
+ * Every statistic is one pass over the students or the courses with a parallel stream, so it runs on every core
+ * of the common fork/join pool. Each worker adds into its own accumulator made of primitive arrays (or a
+ * LongIntCounter), and the accumulators are merged at the end: nothing is boxed per student or per enrollment.
+ *
+ * A statistic reads a TermSnapshot opened for it, so its numbers are consistent with each other. Registration
+ * only waits while the snapshot is opened, not while the statistic is computed.
+ */
+public class UniversityAnalytics {
+    private final University university;
+
+    UniversityAnalytics(University university) {
+        this.university = university;
+    }
+
+    /*
+     * Course fill rates
+     */
+
+    /**
+     * Seats taken, capacity and waitlist of every course.
+     */
+    public static class CourseFill {
+        private final Course[] courses;
+        private final int[] enrolled;
+        private final int[] capacity;
+        private final int[] waitlisted;
+
+        CourseFill(Course[] courses) {
+            this.courses = courses;
+            enrolled = new int[courses.length];
+            capacity = new int[courses.length];
+            waitlisted = new int[courses.length];
+        }
+
+        /**
+         * @return the courses, in the order they were added to the university. The other methods take an index
+         *   in this list.
+         */
+        public List<Course> getCourses() {
+            return Arrays.asList(courses);
+        }
+
+        public int getEnrolled(int index) {
+            return enrolled[index];
+        }
+
+        public int getCapacity(int index) {
+            return capacity[index];
+        }
+
+        public int getWaitlisted(int index) {
+            return waitlisted[index];
+        }
+
+        /**
+         * @return the part of the seats taken, between 0 and 1 (0 for a course with unlimited seats)
+         */
+        public double getFillRate(int index) {
+            return capacity[index] == Course.UNLIMITED || capacity[index] == 0 ? 0 : enrolled[index] / (double) capacity[index];
+        }
+
+        /**
+         * @return the indexes of the courses that have no seat left, or students waiting
+         */
+        public int[] getFullCourses() {
+            return IntStream.range(0, courses.length)
+                    .filter(i -> enrolled[i] >= capacity[i] || waitlisted[i] > 0)
+                    .toArray();
+        }
+    }
+
+    public CourseFill getCourseFill() {
+        try (TermSnapshot snapshot = university.openSnapshot()) {
+            CourseFill fill = new CourseFill(snapshot.getCourses().toArray(new Course[0]));
+            //Every index is written by one worker only, so the arrays can be shared.
+            IntStream.range(0, fill.courses.length).parallel().forEach(i -> {
+                TermSnapshot.CourseImage course = snapshot.courseImage(fill.courses[i].getCourseCode());
+                fill.enrolled[i] = course.classList.length;
+                fill.capacity[i] = course.capacity;
+                fill.waitlisted[i] = course.waitlist.length;
+            });
+            return fill;
+        }
+    }
+
+    /*
+     * Course load per student
+     */
+
+    /**
+     * Histogram of the number of courses students are enrolled in.
+     */
+    public static class LoadDistribution {
+        //students[load] is the number of students enrolled in load courses.
+        private long[] students = new long[8];
+        private long studentCount;
+        private long enrollments;
+
+        void add(int load) {
+            if (load >= students.length) {
+                students = Arrays.copyOf(students, Math.max(load + 1, students.length * 2));
+            }
+            students[load]++;
+            studentCount++;
+            enrollments += load;
+        }
+
+        void merge(LoadDistribution other) {
+            if (other.students.length > students.length) {
+                students = Arrays.copyOf(students, other.students.length);
+            }
+            for (int i = 0; i < other.students.length; i++) {
+                students[i] += other.students[i];
+            }
+            studentCount += other.studentCount;
+            enrollments += other.enrollments;
+        }
+
+        /**
+         * @return the number of students enrolled in exactly load courses
+         */
+        public long getStudents(int load) {
+            return load < students.length ? students[load] : 0;
+        }
+
+        public long getStudentCount() {
+            return studentCount;
+        }
+
+        public long getEnrollments() {
+            return enrollments;
+        }
+
+        public int getMaxLoad() {
+            for (int load = students.length - 1; load > 0; load--) {
+                if (students[load] != 0) {
+                    return load;
+                }
+            }
+            return 0;
+        }
+
+        public double getMeanLoad() {
+            return studentCount == 0 ? 0 : enrollments / (double) studentCount;
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         * @return the smallest load such that at least percentile % of the students have that load or less
+         */
+        public int getPercentile(double percentile) {
+            long wanted = (long) Math.ceil(studentCount * percentile / 100);
+            long seen = 0;
+            for (int load = 0; load < students.length; load++) {
+                seen += students[load];
+                if (seen >= wanted && seen > 0) {
+                    return load;
+                }
+            }
+            return 0;
+        }
+    }
+
+    public LoadDistribution getLoadDistribution() {
+        try (TermSnapshot snapshot = university.openSnapshot()) {
+            return snapshot.getStudents().parallelStream().collect(LoadDistribution::new,
+                    (load, student) -> load.add(snapshot.studentImage(student.getIdNumber()).enrolled.length),
+                    LoadDistribution::merge);
+        }
+    }
+
+    /*
+     * Pre-requisite bottlenecks
+     */
+
+    /**
+     * A number per course, e.g. how many students a course is holding back.
+     */
+    public static class CourseCounts {
+        private final Course[] coursesByOrdinal;
+        private final long[] counts;
+
+        CourseCounts(Course[] coursesByOrdinal, long[] counts) {
+            this.coursesByOrdinal = coursesByOrdinal;
+            this.counts = counts;
+        }
+
+        public long getCount(Course course) {
+            int ordinal = course.getOrdinal();
+            return ordinal >= 0 && ordinal < counts.length && coursesByOrdinal[ordinal] == course ? counts[ordinal] : 0;
+        }
+
+        /**
+         * @return the courses with the highest counts (at most limit, none with a count of 0), highest first.
+         *   Courses with the same count are in the order they were added to the university.
+         */
+        public List<Course> getTop(int limit) {
+            if (limit < 0) {
+                throw new IllegalArgumentException("Negative limit: " + limit);
+            }
+            //A heap of the best ordinals seen so far, the worst of them on top, so nothing is sorted or boxed.
+            int[] heap = new int[Math.min(limit, counts.length)];
+            int size = 0;
+            for (int ordinal = 0; ordinal < counts.length && heap.length > 0; ordinal++) {
+                if (counts[ordinal] == 0) {
+                    continue;
+                }
+                if (size < heap.length) {
+                    heap[size] = ordinal;
+                    siftUp(heap, size++);
+                } else if (counts[ordinal] > counts[heap[0]]) {
+                    //Ordinals come in increasing order, so one with the same count as the top is worse.
+                    heap[0] = ordinal;
+                    siftDown(heap, size);
+                }
+            }
+            //Taking the worst off the top fills the list from its end.
+            Course[] top = new Course[size];
+            while (size > 0) {
+                top[size - 1] = coursesByOrdinal[heap[0]];
+                heap[0] = heap[--size];
+                siftDown(heap, size);
+            }
+            return Arrays.asList(top);
+        }
+
+        //True if the course with the first ordinal ranks after the other one.
+        private boolean worse(int ordinal, int other) {
+            return counts[ordinal] < counts[other] || (counts[ordinal] == counts[other] && ordinal > other);
+        }
+
+        private void siftUp(int[] heap, int index) {
+            int ordinal = heap[index];
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (!worse(ordinal, heap[parent])) {
+                    break;
+                }
+                heap[index] = heap[parent];
+                index = parent;
+            }
+            heap[index] = ordinal;
+        }
+
+        private void siftDown(int[] heap, int size) {
+            if (size == 0) {
+                return;
+            }
+            int ordinal = heap[0];
+            int index = 0;
+            while (true) {
+                int child = 2 * index + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && worse(heap[child + 1], heap[child])) {
+                    child++;
+                }
+                if (!worse(heap[child], ordinal)) {
+                    break;
+                }
+                heap[index] = heap[child];
+                index = child;
+            }
+            heap[index] = ordinal;
+        }
+    }
+
+    /**
+     * Counts, for every course, the students it is holding back: students who have passed some of the
+     *   pre-requisites of a course that depends on it, but not this one (and have not passed the dependent course).
+     * Each student counts at most once per course.
+     */
+    public CourseCounts getPrerequisiteBottlenecks() {
+        try (TermSnapshot snapshot = university.openSnapshot()) {
+            Catalog catalog = new Catalog(snapshot);
+            long[] counts = snapshot.getStudents().parallelStream().collect(
+                    () -> new BottleneckCounter(catalog),
+                    (counter, student) -> counter.add(snapshot.studentImage(student.getIdNumber())),
+                    BottleneckCounter::merge).counts;
+            return new CourseCounts(catalog.coursesByOrdinal, counts);
+        }
+    }
+
+    /**
+     * The courses of a snapshot by ordinal, with the ordinals of their pre-requisites and dependents, read once
+     * so the workers do not read the courses again for every student.
+     */
+    private static class Catalog {
+        final Course[] coursesByOrdinal;
+        final int[][] preRequisites;
+        final int[][] dependents;
+
+        Catalog(TermSnapshot snapshot) {
+            List<Course> courses = snapshot.getCourses();
+            int ordinals = 0;
+            for (Course course : courses) {
+                ordinals = Math.max(ordinals, course.getOrdinal() + 1);
+            }
+            coursesByOrdinal = new Course[ordinals];
+            preRequisites = new int[ordinals][];
+            int[] dependentCount = new int[ordinals];
+            for (Course course : courses) {
+                Course[] direct = snapshot.courseImage(course.getCourseCode()).preRequisites;
+                int[] ordinalsOfDirect = new int[direct.length];
+                for (int i = 0; i < direct.length; i++) {
+                    ordinalsOfDirect[i] = direct[i].getOrdinal();
+                    dependentCount[ordinalsOfDirect[i]]++;
+                }
+                coursesByOrdinal[course.getOrdinal()] = course;
+                preRequisites[course.getOrdinal()] = ordinalsOfDirect;
+            }
+            dependents = new int[ordinals][];
+            for (int i = 0; i < ordinals; i++) {
+                dependents[i] = new int[dependentCount[i]];
+                dependentCount[i] = 0;
+            }
+            for (int ordinal = 0; ordinal < ordinals; ordinal++) {
+                if (preRequisites[ordinal] != null) {
+                    for (int preRequisite : preRequisites[ordinal]) {
+                        dependents[preRequisite][dependentCount[preRequisite]++] = ordinal;
+                    }
+                }
+            }
+        }
+    }
+
+    private static class BottleneckCounter {
+        final Catalog catalog;
+        final long[] counts;
+        //lastStudent[ordinal] is the number of the last student counted for the course, so each counts once.
+        final int[] lastStudent;
+        //The courses the current student passed, cleared for every student.
+        final OrdinalSet passed = new OrdinalSet();
+        int student;
+
+        BottleneckCounter(Catalog catalog) {
+            this.catalog = catalog;
+            counts = new long[catalog.coursesByOrdinal.length];
+            lastStudent = new int[counts.length];
+        }
+
+        void add(TermSnapshot.StudentImage image) {
+            if (image.student == null) {
+                return;
+            }
+            student++;
+            passed.clear();
+            for (Course course : image.passed) {
+                if (course.getOrdinal() >= 0) {
+                    passed.add(course.getOrdinal());
+                }
+            }
+            for (Course passedCourse : image.passed) {
+                int passedOrdinal = passedCourse.getOrdinal();
+                //A course no longer offered has no dependents.
+                if (passedOrdinal < 0 || passedOrdinal >= counts.length) {
+                    continue;
+                }
+                for (int dependent : catalog.dependents[passedOrdinal]) {
+                    if (passed.contains(dependent)) {
+                        continue;
+                    }
+                    for (int ordinal : catalog.preRequisites[dependent]) {
+                        if (!passed.contains(ordinal) && lastStudent[ordinal] != student) {
+                            lastStudent[ordinal] = student;
+                            counts[ordinal]++;
+                        }
+                    }
+                }
+            }
+        }
+
+        void merge(BottleneckCounter other) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other.counts[i];
+            }
+        }
+    }
+
+    /*
+     * Co-enrollment
+     */
+
+    /**
+     * Number of students enrolled in both courses of every pair of courses that share at least one student.
+     */
+    public static class CoEnrollment {
+        private final Course[] coursesByOrdinal;
+        private final LongIntCounter pairs;
+
+        CoEnrollment(Course[] coursesByOrdinal, LongIntCounter pairs) {
+            this.coursesByOrdinal = coursesByOrdinal;
+            this.pairs = pairs;
+        }
+
+        /**
+         * @return the number of students enrolled in both courses
+         */
+        public int getCount(Course first, Course second) {
+            if (first.getOrdinal() < 0 || second.getOrdinal() < 0 || first == second) {
+                return 0;
+            }
+            return pairs.get(pairKey(first.getOrdinal(), second.getOrdinal()));
+        }
+
+        /**
+         * @return the number of pairs of courses that share at least one student
+         */
+        public int getPairCount() {
+            return pairs.size();
+        }
+
+        /**
+         * Calls the action for every pair of courses sharing students.
+         */
+        public void forEach(PairAction action) {
+            pairs.forEach((key, count) ->
+                    action.accept(coursesByOrdinal[(int) (key >>> 32)], coursesByOrdinal[(int) key], count));
+        }
+
+        /**
+         * @return the pairs of courses sharing the most students, most first
+         */
+        public List<CoursePair> getTopPairs(int limit) {
+            //Keeps the best pairs seen so far, the worst of them on top of the queue.
+            PriorityQueue<CoursePair> top = new PriorityQueue<>(Comparator.comparingInt(CoursePair::getStudents));
+            forEach((first, second, count) -> {
+                if (top.size() < limit) {
+                    top.add(new CoursePair(first, second, count));
+                } else if (limit > 0 && top.peek().getStudents() < count) {
+                    top.poll();
+                    top.add(new CoursePair(first, second, count));
+                }
+            });
+            List<CoursePair> sorted = new ArrayList<>(top);
+            sorted.sort(Comparator.comparingInt(CoursePair::getStudents).reversed());
+            return sorted;
+        }
+    }
+
+    public interface PairAction {
+        void accept(Course first, Course second, int students);
+    }
+
+    public static class CoursePair {
+        private final Course first;
+        private final Course second;
+        private final int students;
+
+        CoursePair(Course first, Course second, int students) {
+            this.first = first;
+            this.second = second;
+            this.students = students;
+        }
+
+        public Course getFirst() {
+            return first;
+        }
+
+        public Course getSecond() {
+            return second;
+        }
+
+        public int getStudents() {
+            return students;
+        }
+
+        @Override
+        public String toString() {
+            return first + " & " + second + ": " + students;
+        }
+    }
+
+    /**
+     * Counts the students shared by every pair of courses, e.g. to schedule exams of the same students apart.
+     */
+    public CoEnrollment getCoEnrollment() {
+        try (TermSnapshot snapshot = university.openSnapshot()) {
+            LongIntCounter pairs = snapshot.getStudents().parallelStream().collect(PairCounter::new,
+                    (counter, student) -> counter.add(snapshot.studentImage(student.getIdNumber()).enrolled),
+                    PairCounter::merge).pairs;
+            return new CoEnrollment(new Catalog(snapshot).coursesByOrdinal, pairs);
+        }
+    }
+
+    private static class PairCounter {
+        final LongIntCounter pairs = new LongIntCounter(1 << 12);
+        int[] ordinals = new int[16];
+
+        void add(Course[] enrolled) {
+            int count = 0;
+            for (Course course : enrolled) {
+                if (count == ordinals.length) {
+                    ordinals = Arrays.copyOf(ordinals, count * 2);
+                }
+                ordinals[count++] = course.getOrdinal();
+            }
+            for (int i = 0; i < count; i++) {
+                for (int j = i + 1; j < count; j++) {
+                    pairs.increment(pairKey(ordinals[i], ordinals[j]));
+                }
+            }
+        }
+
+        void merge(PairCounter other) {
+            pairs.addAll(other.pairs);
+        }
+    }
+
+    /**
+     * Packs two course ordinals into one key, the smaller one first, so (a, b) and (b, a) are the same pair.
+     */
+    static long pairKey(int first, int second) {
+        int low = Math.min(first, second);
+        int high = Math.max(first, second);
+        return ((long) low << 32) | high;
+    }
+}
@@ -0,0 +1,1817 @@
+import java.io.*;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Small stand-alone harness used to measure (and sanity check) the University classes.
+ * It has no dependencies, so it can be compiled and run together with the rest of the project:
+ *
+ *     javac *.java && java UniversityBenchmark [scenario...]
+ *
+ * Running it without arguments runs every scenario.
+ * Scenarios:
+ *   - concurrent: many threads enrolling/dropping/removing students at the same time. Reports the throughput
+ *                 for 1, 2, 4... threads (up to the number of cores, or -Dthreads=N) and checks that no
+ *                 enrollment was lost or half-applied.
+ *   - seats:      many threads competing for the seats of one popular course, with drops feeding the waitlist.
+ *                 Reports seat claims per second and checks the course is never overbooked.
+ *   - roster:     add/drop churn and membership checks on class lists from 10 to 100k students,
+ *                 comparing the Roster used by Course with the LinkedList it replaced.
+ *   - footprint:  heap used by the student index at 1M students, StudentIndex against HashMap&lt;Integer, Student&gt;,
+ *                 plus the time of a batch of lookups. Run with a big enough heap (e.g. -Xmx2g).
+ *   - entities:   heap taken by the collections inside students and courses (enrolled and passed courses, class
+ *                 lists, dependent courses) for 500k students, CompactSet/OrdinalSet/Roster against the HashSet,
+ *                 bit set and eagerly indexed Roster they replaced.
+ *   - snapshot:   save/load time and file size of a 200k student university, UniversitySnapshot against
+ *                 Java serialization (Student.writeStudentsToFile).
+ *   - mapped:     time and heap needed to open a 200k student snapshot as a MappedUniversity, plus lookups
+ *                 checked against the university that was saved.
+ *   - wal:        concurrent registration with and without a MutationLog attached, with a checkpoint half way.
+ *                 The university is then recovered from the log directory (with a torn record at the end)
+ *                 and compared with the original.
+ *   - feed:       concurrent registration with and without a ChangeFeed, with a consumer keeping class sizes up
+ *                 to date from the events. Checks the sizes against the rosters and compares the cost of an event
+ *                 with polling every roster and diffing it with the previous poll.
+ *   - eligibility: eligible courses of every student in a 2,000 course catalog with deep pre-requisite chains,
+ *                 bit tests against the HashSet lookups they replaced. Also checks the pre-requisite closures
+ *                 against a plain graph walk, before and after courses are removed, and that cycles are refused.
+ *   - retirement: removes 10% of a 12,000 course catalog at once (term rollover). Compares the time of the removals
+ *                 with the scan of every pre-requisite list that removing a course used to need, and checks the
+ *                 reverse index (Course.getDependentCourses) still mirrors the pre-requisite lists.
+ *   - import:     loads 200k students and 1M enrollments (with a few bad rows) from CSV files with the
+ *                 UniversityImporter, against reading the files line by line and calling the University methods.
+ *                 Checks both end with the same enrollments and that every bad row is reported.
+ *   - analytics:  fill rates, load distribution, pre-requisite bottlenecks and co-enrollment with
+ *                 UniversityAnalytics on 1, 2, 4... threads, against the client loops over getStudents() they
+ *                 replace (boxed maps). -Dstudents=500000 gives the 500k students / 5M enrollments data set
+ *                 (run it with -Xmx4g).
+ *   - conflicts:  attaches a ConflictEngine to 100k students in 3,000 courses, then compares registration traffic
+ *                 with and without it, checks its co-enrollment graph against UniversityAnalytics, schedules the
+ *                 exams (checking no two courses sharing a student share a slot) and measures clash checks.
+ *   - frontend:   100k simulated students registering at the same time (5 requests each, a fifth of them for 10
+ *                 popular courses) through a RegistrationFrontEnd, against a pool of platform threads each
+ *                 holding the university's monitor. Reports throughput and p50/p99 latency of both, and how
+ *                 many enrollments the front-end coalesced.
+ *   - querycache: portal traffic (eligible courses and course pages, 10% enrollments and drops) on 4 threads with
+ *                 and without the University's QueryCache. Reports throughput and cache statistics, and checks the
+ *                 cached answers against uncached ones, after the traffic and after catalog changes.
+ *   - termsnapshot: a report over every student's courses and every class list of 200k students while two
+ *                 threads keep registering, with the writers stopped during the report (what we had) and on a
+ *                 TermSnapshot. Checks the snapshot report against the university at the time it was opened.
+ *   - shards:     the frontend load on a ShardedUniversity of 1, 2, 4 and 8 in-process nodes. Reports throughput
+ *                 and latency for each, and checks the class lists of the course nodes against the enrolled
+ *                 courses of the student nodes.
+ */
+public class UniversityBenchmark {
+
+    private static final List<String> ALL_SCENARIOS = Arrays.asList("concurrent", "seats", "roster", "footprint", "entities", "snapshot", "mapped", "wal", "feed",
+            "eligibility", "retirement", "import", "analytics", "conflicts", "frontend",
+            "querycache", "termsnapshot", "shards");
+
+    public static void main(String[] args) throws Exception {
+        List<String> scenarios = args.length == 0 ? ALL_SCENARIOS : Arrays.asList(args);
+        for (String scenario : scenarios) {
+            switch (scenario) {
+                case "concurrent":
+                    concurrentEnrollment();
+                    break;
+                case "seats":
+                    popularCourseSeats();
+                    break;
+                case "roster":
+                    rosterChurn();
+                    break;
+                case "footprint":
+                    studentIndexFootprint();
+                    break;
+                case "entities":
+                    entityFootprint();
+                    break;
+                case "snapshot":
+                    snapshotRoundTrip();
+                    break;
+                case "mapped":
+                    mappedSnapshot();
+                    break;
+                case "wal":
+                    mutationLog();
+                    break;
+                case "feed":
+                    changeFeed();
+                    break;
+                case "eligibility":
+                    eligibility();
+                    break;
+                case "retirement":
+                    courseRetirement();
+                    break;
+                case "import":
+                    csvImport();
+                    break;
+                case "analytics":
+                    analytics();
+                    break;
+                case "conflicts":
+                    conflicts();
+                    break;
+                case "frontend":
+                    frontEnd();
+                    break;
+                case "querycache":
+                    queryCache();
+                    break;
+                case "termsnapshot":
+                    termSnapshot();
+                    break;
+                case "shards":
+                    shardedUniversity();
+                    break;
+                default:
+                    System.out.println("Unknown scenario " + scenario + ", expected one of " + ALL_SCENARIOS);
+            }
+        }
+    }
+
+    /*
+     * Concurrent enrollment
+     */
+
+    private static void concurrentEnrollment() throws InterruptedException {
+        final int students = 20_000;
+        final int courses = 500;
+        final int totalOperations = 1_000_000;
+        int maxThreads = Integer.getInteger("threads", Runtime.getRuntime().availableProcessors());
+
+        System.out.printf("== concurrent enrollment (%d students, %d courses, %d operations) ==%n",
+                students, courses, totalOperations);
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            University university = syntheticUniversity(students, courses);
+            Thread[] workers = new Thread[threads];
+            int operationsPerThread = totalOperations / threads;
+            for (int t = 0; t < threads; t++) {
+                workers[t] = new Thread(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < operationsPerThread; i++) {
+                        int id = random.nextInt(students);
+                        String code = courseCode(random.nextInt(courses));
+                        int action = random.nextInt(100);
+                        if (action < 48) {
+                            university.enrollStudentInCourse(id, code);
+                        } else if (action < 96) {
+                            university.removeStudentFromCourse(id, code);
+                        } else if (university.removeStudentFromUniversity(id)) {
+                            university.addStudent("Student " + id, id);
+                        }
+                    }
+                });
+            }
+
+            long start = System.nanoTime();
+            for (Thread worker : workers) {
+                worker.start();
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            long elapsed = System.nanoTime() - start;
+
+            int enrollments = checkConsistency(university);
+            System.out.printf("threads=%2d  %,12.0f ops/s  (%,d enrollments, consistent)%n",
+                    threads, operationsPerThread * (double) threads / elapsed * 1e9, enrollments);
+        }
+    }
+
+    /**
+     * Checks that both sides of every enrollment agree, and that removed students are not left behind in rosters.
+     * @return the number of enrollments in the university
+     */
+    private static int checkConsistency(University university) {
+        int enrollments = 0;
+        for (Student student : university.getStudents()) {
+            for (Course course : student.getEnrolledCourses()) {
+                if (university.getCourse(course.getCourseCode()) != course
+                        || !course.getEnrolledStudents().contains(student)) {
+                    throw new IllegalStateException(student + " is enrolled in " + course + " but not on its roster");
+                }
+                enrollments++;
+            }
+        }
+        int rosterEntries = 0;
+        for (Course course : university.getCourses()) {
+            for (Student student : course.getEnrolledStudents()) {
+                if (university.getStudent(student.getIdNumber()) != student
+                        || !student.getEnrolledCourses().contains(course)) {
+                    throw new IllegalStateException(course + " lists " + student + " who is not enrolled in it");
+                }
+                rosterEntries++;
+            }
+        }
+        if (rosterEntries != enrollments) {
+            throw new IllegalStateException(rosterEntries + " roster entries for " + enrollments + " enrollments");
+        }
+        return enrollments;
+    }
+
+    /*
+     * Seats of a popular course
+     */
+
+    private static void popularCourseSeats() throws InterruptedException {
+        final int students = 50_000;
+        final int capacity = 800;
+        final int attemptsPerThread = 200_000;
+        int maxThreads = Integer.getInteger("threads", Runtime.getRuntime().availableProcessors());
+
+        System.out.printf("== seats of a popular course (%d students, %d seats) ==%n", students, capacity);
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            University university = syntheticUniversity(students, 1);
+            String code = courseCode(0);
+            university.setCourseCapacity(code, capacity);
+            Thread[] workers = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                workers[t] = new Thread(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < attemptsPerThread; i++) {
+                        int id = random.nextInt(students);
+                        int action = random.nextInt(100);
+                        if (action < 90) {
+                            if (!university.enrollStudentInCourse(id, code)) {
+                                university.addStudentToWaitlist(id, code);
+                            }
+                        } else {
+                            university.removeStudentFromCourse(id, code);
+                        }
+                    }
+                });
+            }
+
+            long start = System.nanoTime();
+            for (Thread worker : workers) {
+                worker.start();
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            long elapsed = System.nanoTime() - start;
+
+            Course course = university.getCourse(code);
+            int enrolled = course.getEnrolledStudents().size();
+            if (enrolled > capacity || enrolled != course.getSeatsTaken()) {
+                throw new IllegalStateException(enrolled + " students enrolled, " + course.getSeatsTaken()
+                        + " seats taken, capacity " + capacity);
+            }
+            if (enrolled < capacity && !course.isWaitlistEmpty()) {
+                throw new IllegalStateException("Free seats left while " + course.getWaitlist().size() + " are waiting");
+            }
+            checkConsistency(university);
+            System.out.printf("threads=%2d  %,12.0f claims/s  (%d enrolled, %d waiting)%n",
+                    threads, attemptsPerThread * (double) threads / elapsed * 1e9,
+                    enrolled, course.getWaitlist().size());
+        }
+    }
+
+    /*
+     * Class lists
+     */
+
+    private static void rosterChurn() {
+        System.out.println("== roster add/drop churn (ns per drop + re-add + contains) ==");
+        System.out.printf("%10s %14s %14s%n", "size", "LinkedList", "Roster");
+        for (int size = 10; size <= 100_000; size *= 10) {
+            Student[] students = new Student[size];
+            for (int i = 0; i < size; i++) {
+                students[i] = new Student("Student " + i, i);
+            }
+            //Fewer operations on big lists, so the LinkedList finishes in a reasonable time.
+            int operations = Math.max(2_000, Math.min(1_000_000, 50_000_000 / size));
+            //The first rounds warm up the JIT.
+            double linked = 0;
+            double roster = 0;
+            for (int round = 0; round < 3; round++) {
+                linked = churn(new LinkedList<>(), students, operations);
+                roster = churn(new Roster<>(size), students, operations);
+            }
+            System.out.printf("%,10d %14.1f %14.1f%n", size, linked, roster);
+        }
+    }
+
+    /**
+     * Fills the list, then repeatedly drops a random student, checks it is gone and adds it back.
+     * @return nanoseconds per operation
+     */
+    private static double churn(List<Student> list, Student[] students, int operations) {
+        Collections.addAll(list, students);
+        Random random = new Random(42);
+        long start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            Student student = students[random.nextInt(students.length)];
+            list.remove(student);
+            if (list.contains(student)) {
+                throw new IllegalStateException(student + " was not removed");
+            }
+            list.add(student);
+        }
+        return (System.nanoTime() - start) / (double) operations;
+    }
+
+    /*
+     * Student index footprint
+     */
+
+    private static final int FOOTPRINT_LOOKUPS = 5_000_000;
+
+    private static void studentIndexFootprint() {
+        final int count = 1_000_000;
+        Student[] students = new Student[count];
+        for (int i = 0; i < count; i++) {
+            students[i] = new Student("Student " + i, i);
+        }
+        System.out.printf("== student index footprint (%,d students, %,d lookups) ==%n", count, FOOTPRINT_LOOKUPS);
+        mapFootprint(students);
+        indexFootprint(students);
+    }
+
+    private static void mapFootprint(Student[] students) {
+        long before = usedHeap();
+        Map<Integer, Student> map = new HashMap<>();
+        for (Student student : students) {
+            map.put(student.getIdNumber(), student);
+        }
+        long bytes = usedHeap() - before;
+        long nanos = time(() -> {
+            Random random = new Random(7);
+            for (int i = 0; i < FOOTPRINT_LOOKUPS; i++) {
+                if (map.get(random.nextInt(students.length)) == null) {
+                    throw new IllegalStateException();
+                }
+            }
+        });
+        printFootprint("HashMap<Integer, Student>", bytes, students.length, nanos);
+    }
+
+    private static void indexFootprint(Student[] students) {
+        long before = usedHeap();
+        StudentIndex index = new StudentIndex();
+        for (Student student : students) {
+            index.putIfAbsent(student);
+        }
+        long bytes = usedHeap() - before;
+        long nanos = time(() -> {
+            Random random = new Random(7);
+            for (int i = 0; i < FOOTPRINT_LOOKUPS; i++) {
+                if (index.get(random.nextInt(students.length)) == null) {
+                    throw new IllegalStateException();
+                }
+            }
+        });
+        printFootprint("StudentIndex", bytes, students.length, nanos);
+    }
+
+    private static void printFootprint(String structure, long bytes, int count, long lookupNanos) {
+        System.out.printf("%-26s %,12d bytes (%5.1f per student)  %,6d ms of lookups%n",
+                structure, bytes, bytes / (double) count, lookupNanos / 1_000_000);
+    }
+
+    /*
+     * Entity footprint
+     */
+
+    private static void entityFootprint() {
+        int students = Integer.getInteger("students", 500_000);
+        int courses = 5_000;
+        University university = populatedUniversity(students, courses, 4);
+        List<Student> studentList = university.getStudents();
+        List<Course> courseList = university.getCourses();
+        System.out.printf("== entity footprint (%,d students, %,d courses, %,d enrollments) ==%n",
+                students, courses, checkConsistency(university));
+
+        //The same data is copied into the old and the new collections, and only the copies are measured.
+        Object[] kept = new Object[1];
+        long before = usedHeap();
+        kept[0] = studentCollections(studentList, false);
+        long hashedStudents = usedHeap() - before;
+        kept[0] = null;
+        before = usedHeap();
+        kept[0] = studentCollections(studentList, true);
+        long compactStudents = usedHeap() - before;
+        kept[0] = null;
+        before = usedHeap();
+        kept[0] = courseCollections(courseList, false);
+        long indexedCourses = usedHeap() - before;
+        kept[0] = null;
+        before = usedHeap();
+        kept[0] = courseCollections(courseList, true);
+        long compactCourses = usedHeap() - before;
+        kept[0] = null;
+
+        System.out.printf("per student: 2 HashSets + bit set      %6.1f bytes%n", hashedStudents / (double) students);
+        System.out.printf("per student: 2 CompactSets + OrdinalSet %6.1f bytes (%.0f%% less)%n",
+                compactStudents / (double) students, 100 - 100.0 * compactStudents / hashedStudents);
+        System.out.printf("per course:  2 indexed Rosters          %6.1f bytes%n", indexedCourses / (double) courses);
+        System.out.printf("per course:  2 Rosters indexed past %d   %6.1f bytes (%.0f%% less)%n", Roster.MAX_UNINDEXED,
+                compactCourses / (double) courses, 100 - 100.0 * compactCourses / indexedCourses);
+    }
+
+    /**
+     * Copies the enrolled and previous courses of every student, and the ordinals of the courses they passed.
+     */
+    private static Object[] studentCollections(List<Student> students, boolean compact) {
+        Object[] copies = new Object[students.size() * 3];
+        int i = 0;
+        for (Student student : students) {
+            if (compact) {
+                CompactSet<Course> enrolled = new CompactSet<>();
+                enrolled.addAll(student.getEnrolledCourses());
+                CompactSet<Course> previous = new CompactSet<>();
+                previous.addAll(student.getPreviousCourses());
+                OrdinalSet passed = new OrdinalSet();
+                for (Course course : previous) {
+                    passed.add(course.getOrdinal());
+                }
+                copies[i++] = enrolled;
+                copies[i++] = previous;
+                copies[i++] = passed;
+            } else {
+                //What Student used to keep: two HashSets and one bit per course of the catalog up to the highest passed.
+                BitSet passed = new BitSet();
+                for (Course course : student.getPreviousCourses()) {
+                    passed.set(course.getOrdinal());
+                }
+                copies[i++] = new HashSet<>(student.getEnrolledCourses());
+                copies[i++] = new HashSet<>(student.getPreviousCourses());
+                copies[i++] = passed;
+            }
+        }
+        return copies;
+    }
+
+    /**
+     * Copies the class list and the dependent courses of every course.
+     */
+    private static Object[] courseCollections(List<Course> courses, boolean compact) {
+        Object[] copies = new Object[courses.size() * 2];
+        int i = 0;
+        for (Course course : courses) {
+            //Roster(10) is what new Roster() used to be: a HashMap created up front.
+            Roster<Student> classList = compact ? new Roster<>() : new Roster<>(10);
+            classList.addAll(course.getEnrolledStudents());
+            Roster<Course> dependents = compact ? new Roster<>() : new Roster<>(10);
+            dependents.addAll(course.getDependentCourses());
+            copies[i++] = classList;
+            copies[i++] = dependents;
+        }
+        return copies;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long time(Runnable task) {
+        long start = System.nanoTime();
+        task.run();
+        return System.nanoTime() - start;
+    }
+
+    /*
+     * Saving and loading
+     */
+
+    private static void snapshotRoundTrip() throws Exception {
+        University university = populatedUniversity(200_000, 2_000, 5);
+        int enrollments = checkConsistency(university);
+        System.out.printf("== snapshot round trip (%,d students, %,d courses, %,d enrollments) ==%n",
+                university.getStudents().size(), university.getCourses().size(), enrollments);
+
+        Path file = Files.createTempFile("university", ".snapshot");
+        try {
+            long save = time(() -> {
+                try {
+                    UniversitySnapshot.write(university, file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            long size = Files.size(file);
+            University[] loaded = new University[1];
+            long load = time(() -> {
+                try {
+                    loaded[0] = UniversitySnapshot.read(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            if (checkConsistency(loaded[0]) != enrollments) {
+                throw new IllegalStateException("Enrollments were lost in the round trip");
+            }
+            System.out.printf("%-22s save %,7d ms  load %,7d ms  %,12d bytes%n",
+                    "UniversitySnapshot", save / 1_000_000, load / 1_000_000, size);
+
+            //Serialization recurses through the whole graph, so it gets a thread with a very large stack.
+            Thread serialization = new Thread(null, () -> {
+                List<Student> students = university.getStudents();
+                long javaSave = time(() -> Student.writeStudentsToFile(students, file.toString()));
+                long javaSize = file.toFile().length();
+                String javaLoad;
+                try {
+                    javaLoad = String.format("%,7d ms", time(() -> Student.loadStudentsFromFile(file.toString())) / 1_000_000);
+                } catch (RuntimeException | StackOverflowError e) {
+                    //Reading recurses as deep as writing did, so a graph too deep for the stack fails here too.
+                    javaLoad = "failed (" + e.getClass().getSimpleName() + ")";
+                }
+                System.out.printf("%-22s save %,7d ms  load %s  %,12d bytes%n",
+                        "Java serialization", javaSave / 1_000_000, javaLoad, javaSize);
+            }, "serialization", 1L << 30);
+            serialization.start();
+            serialization.join();
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static void mappedSnapshot() throws Exception {
+        University university = populatedUniversity(200_000, 2_000, 5);
+        System.out.printf("== mapped snapshot (%,d students, %,d courses) ==%n",
+                university.getStudents().size(), university.getCourses().size());
+        Path file = Files.createTempFile("university", ".snapshot");
+        try {
+            UniversitySnapshot.write(university, file);
+
+            long before = usedHeap();
+            MappedUniversity[] mapped = new MappedUniversity[1];
+            long open = time(() -> {
+                try {
+                    mapped[0] = MappedUniversity.open(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            long heap = usedHeap() - before;
+            System.out.printf("open %,d us, %,d bytes of heap%n", open / 1_000, heap);
+
+            Random random = new Random(5);
+            int lookups = 200_000;
+            long lookupTime = time(() -> {
+                for (int i = 0; i < lookups; i++) {
+                    Student expected = university.getStudent(random.nextInt(200_000));
+                    MappedUniversity.StudentView student = mapped[0].getStudent(expected.getIdNumber());
+                    if (student.getEnrolledCourses().size() != expected.getEnrolledCourses().size()
+                            || student.getPreviousCourses().size() != expected.getPreviousCourses().size()) {
+                        throw new IllegalStateException(student + " does not match " + expected);
+                    }
+                }
+            });
+            System.out.printf("%,d student lookups with their courses: %,d ns each%n", lookups, lookupTime / lookups);
+
+            for (Course expected : university.getCourses()) {
+                MappedUniversity.CourseView course = mapped[0].getCourse(expected.getCourseCode());
+                List<MappedUniversity.StudentView> roster = course.getEnrolledStudents();
+                if (!course.toString().equals(expected.toString()) || roster.size() != expected.getEnrolledStudents().size()
+                        || (roster.size() > 0 && roster.get(0).getIdNumber() != expected.getEnrolledStudents().get(0).getIdNumber())) {
+                    throw new IllegalStateException(course + " does not match " + expected);
+                }
+            }
+            System.out.println("every course matches the saved university");
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /*
+     * Write-ahead log
+     */
+
+    private static void mutationLog() throws Exception {
+        final int students = 20_000;
+        final int courses = 500;
+        final int operations = 1_000_000;
+        int threads = Integer.getInteger("threads", Runtime.getRuntime().availableProcessors());
+        System.out.printf("== mutation log (%d threads, %,d operations) ==%n", threads, operations);
+
+        University plain = syntheticUniversity(students, courses);
+        long plainTime = registrationTraffic(plain, threads, operations / threads, students, courses);
+
+        Path directory = Files.createTempDirectory("university-log");
+        try {
+            University logged = new University("Benchmark University", "Measure twice");
+            MutationLog log = MutationLog.attach(logged, directory);
+            for (int i = 0; i < students; i++) {
+                logged.addStudent("Student " + i, i);
+            }
+            for (int i = 0; i < courses; i++) {
+                logged.addCourse("Course " + i, courseCode(i));
+            }
+            logged.setCourseCapacity(courseCode(0), 50);
+            long loggedTime = registrationTraffic(logged, threads, operations / threads / 2, students, courses);
+            loggedTime += time(() -> {
+                try {
+                    log.checkpoint();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            loggedTime += registrationTraffic(logged, threads, operations / threads / 2, students, courses);
+            loggedTime += time(() -> {
+                try {
+                    log.sync();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            System.out.printf("without log %,12.0f ops/s%n", operations / (plainTime / 1e9));
+            System.out.printf("with log    %,12.0f ops/s (including a checkpoint and a final sync)%n",
+                    operations / (loggedTime / 1e9));
+            log.close();
+
+            //A crash in the middle of a write leaves half a record at the end of the last segment.
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "log-*.wal")) {
+                for (Path segment : files) {
+                    Files.write(segment, new byte[]{0, 0, 0, 42, 1, 2}, StandardOpenOption.APPEND);
+                }
+            }
+            University recovered = MutationLog.recover(directory, "unused", "unused");
+            int enrollments = checkConsistency(recovered);
+            if (enrollments != checkConsistency(logged)) {
+                throw new IllegalStateException("Recovered " + enrollments + " enrollments");
+            }
+            for (Course course : logged.getCourses()) {
+                Course copy = recovered.getCourse(course.getCourseCode());
+                if (!ids(copy.getEnrolledStudents()).equals(ids(course.getEnrolledStudents()))
+                        || !ids(copy.getWaitlist()).equals(ids(course.getWaitlist()))) {
+                    throw new IllegalStateException(course + " was not recovered correctly");
+                }
+            }
+            System.out.printf("recovered %,d enrollments, every class list and waitlist matches%n", enrollments);
+        } finally {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                for (Path file : files) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    /*
+     * Change feed
+     */
+
+    private static void changeFeed() throws Exception {
+        final int students = 20_000;
+        final int courses = 500;
+        final int operations = 1_000_000;
+        int threads = Integer.getInteger("threads", Runtime.getRuntime().availableProcessors());
+        System.out.printf("== change feed (%d threads, %,d operations) ==%n", threads, operations);
+
+        University plain = syntheticUniversity(students, courses);
+        long plainTime = registrationTraffic(plain, threads, operations / threads, students, courses);
+
+        University university = syntheticUniversity(students, courses);
+        ChangeFeed feed = ChangeFeed.attach(university, 1 << 20);
+        ChangeFeed.Subscription subscription = feed.subscribe();
+        //The consumer keeps the size of every class list from the deltas only.
+        Map<String, Integer> sizes = new HashMap<>();
+        long[] consumed = new long[2];
+        ChangeFeed.Handler handler = event -> {
+            switch (event.getType()) {
+                case ENROLLED:
+                    sizes.merge(event.getCourse().getCourseCode(), 1, Integer::sum);
+                    break;
+                case DROPPED:
+                    //Also recorded for every enrollment a removed student or course had.
+                    sizes.merge(event.getCourse().getCourseCode(), -1, Integer::sum);
+                    break;
+                default:
+            }
+        };
+        Thread consumer = new Thread(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    //Only batches read without waiting are timed.
+                    long start = System.nanoTime();
+                    int events = subscription.poll(handler, 1024);
+                    if (events > 0) {
+                        consumed[0] += events;
+                        consumed[1] += System.nanoTime() - start;
+                    } else {
+                        subscription.poll(handler, 1024, 10, TimeUnit.MILLISECONDS);
+                    }
+                    if (subscription.hasOverflowed()) {
+                        throw new IllegalStateException("The consumer lost events");
+                    }
+                }
+            } catch (InterruptedException e) {
+                //Stopped, the rest of the feed is read below.
+            }
+        }, "feed-consumer");
+        consumer.start();
+        long feedTime = registrationTraffic(university, threads, operations / threads, students, courses);
+        consumer.interrupt();
+        consumer.join();
+        while (subscription.poll(handler, 1024) > 0) {
+            //Whatever the consumer did not read before it stopped.
+        }
+
+        for (Course course : university.getCourses()) {
+            if (sizes.getOrDefault(course.getCourseCode(), 0) != course.getEnrolledStudents().size()) {
+                throw new IllegalStateException("The feed missed changes of " + course);
+            }
+        }
+        System.out.printf("without feed %,12.0f ops/s%n", operations / (plainTime / 1e9));
+        System.out.printf("with feed    %,12.0f ops/s (%,d events, class sizes rebuilt from them match the rosters)%n",
+                operations / (feedTime / 1e9), feed.getEventCount());
+
+        //What consumers did before: copy every roster and diff it with the copy of the previous poll.
+        Map<String, Set<Integer>> previous = new HashMap<>();
+        long[] changes = new long[1];
+        long diffNanos = time(() -> {
+            for (Course course : university.getCourses()) {
+                Set<Integer> current = new HashSet<>();
+                for (Student student : course.getEnrolledStudents()) {
+                    current.add(student.getIdNumber());
+                }
+                Set<Integer> before = previous.getOrDefault(course.getCourseCode(), Collections.emptySet());
+                for (Integer id : current) {
+                    if (!before.contains(id)) {
+                        changes[0]++;
+                    }
+                }
+                for (Integer id : before) {
+                    if (!current.contains(id)) {
+                        changes[0]++;
+                    }
+                }
+                previous.put(course.getCourseCode(), current);
+            }
+        });
+        System.out.printf("roster diff poll %,10.1f ms per poll, whatever changed (%,d changes found in the first one)%n",
+                diffNanos / 1e6, changes[0]);
+        System.out.printf("feed consumer    %,10.1f ns per event%n", consumed[1] / (double) Math.max(1, consumed[0]));
+    }
+
+    /*
+     * Pre-requisite closure and eligibility
+     */
+
+    private static void eligibility() {
+        final int students = 10_000;
+        final int courses = 2_000;
+        University university = new University("Benchmark University", "Measure twice", students, courses);
+        Random random = new Random(2024);
+        for (int i = 0; i < courses; i++) {
+            university.addCourse("Course " + i, courseCode(i));
+            //Up to four pre-requisites among the courses just before, so the chains get long.
+            for (int r = random.nextInt(5); r > 0 && i > 0; r--) {
+                university.addRequisiteToCourse(courseCode(i), courseCode(Math.max(0, i - 1 - random.nextInt(20))));
+            }
+        }
+        for (int i = 0; i < students; i++) {
+            university.addStudent("Student " + i, i);
+            for (int passed = 0; passed < 20; passed++) {
+                String code = courseCode(random.nextInt(courses));
+                if (random.nextBoolean()) {
+                    for (Course course : university.getAllPreRequisites(code)) {
+                        university.addPreviousCourseToStudent(i, course.getCourseCode());
+                    }
+                }
+                university.addPreviousCourseToStudent(i, code);
+            }
+        }
+        System.out.printf("== eligibility (%,d students, %,d courses) ==%n", students, courses);
+        //Measures the bit tests, not answers served by the query cache.
+        university.getQueryCache().setMaxWeight(0);
+        university.getQueryCache().clear();
+
+        List<Student> all = university.getStudents();
+        List<Course> catalog = university.getCourses();
+        int[] expected = new int[students];
+        int[] found = new int[students];
+        long hashNanos = 0;
+        long bitNanos = 0;
+        //The first rounds warm up the JIT.
+        for (int round = 0; round < 3; round++) {
+            hashNanos = time(() -> {
+                for (Student student : all) {
+                    int eligible = 0;
+                    for (Course course : catalog) {
+                        if (!student.getPreviousCourses().contains(course)
+                                && !student.getEnrolledCourses().contains(course)
+                                && student.getPreviousCourses().containsAll(course.getPreRequisites())) {
+                            eligible++;
+                        }
+                    }
+                    expected[student.getIdNumber()] = eligible;
+                }
+            });
+            bitNanos = time(() -> {
+                for (Student student : all) {
+                    found[student.getIdNumber()] = university.getEligibleCourses(student.getIdNumber()).size();
+                }
+            });
+        }
+        if (!Arrays.equals(expected, found)) {
+            throw new IllegalStateException("Eligible courses differ from the HashSet lookups");
+        }
+        double checks = (double) students * courses;
+        System.out.printf("HashSet lookups %8.1f ns per course checked%n", hashNanos / checks);
+        System.out.printf("OrdinalSet bits %8.1f ns per course checked%n", bitNanos / checks);
+
+        checkClosures(university);
+        //The last course depends on many others, none of them can require it.
+        for (Course preReqCourse : university.getAllPreRequisites(courseCode(courses - 1))) {
+            if (university.addRequisiteToCourse(preReqCourse.getCourseCode(), courseCode(courses - 1))) {
+                throw new IllegalStateException("A pre-requisite cycle was accepted");
+            }
+        }
+        for (int i = 0; i < 100; i++) {
+            university.removeCourseFromUniversity(courseCode(random.nextInt(courses)));
+        }
+        checkClosures(university);
+        System.out.println("closures match a graph walk before and after removing courses, cycles are refused");
+    }
+
+    /**
+     * Compares the closure kept by the university with a depth-first walk of the pre-requisite lists.
+     */
+    private static void checkClosures(University university) {
+        for (Course course : university.getCourses()) {
+            Set<Course> walked = new HashSet<>();
+            Deque<Course> stack = new ArrayDeque<>(course.getPreRequisites());
+            while (!stack.isEmpty()) {
+                Course preReqCourse = stack.pop();
+                if (walked.add(preReqCourse)) {
+                    stack.addAll(preReqCourse.getPreRequisites());
+                }
+            }
+            if (!walked.equals(new HashSet<>(university.getAllPreRequisites(course.getCourseCode())))) {
+                throw new IllegalStateException("Wrong closure for " + course);
+            }
+        }
+    }
+
+    /*
+     * Bulk course retirement
+     */
+
+    private static void courseRetirement() {
+        final int courses = 12_000;
+        University university = populatedUniversity(50_000, courses, 3);
+        //Extra pre-requisites between four levels (like 100 to 400 level courses), so courses of the first levels
+        //have many dependents, directly or not.
+        Random random = new Random(7);
+        int level = courses / 4;
+        for (int i = level; i < courses; i++) {
+            int lowerLevel = (i / level - 1) * level;
+            university.addRequisiteToCourse(courseCode(i), courseCode(lowerLevel + random.nextInt(level)));
+        }
+        List<Course> retired = new ArrayList<>();
+        for (int i = 0; i < courses; i += 10) {
+            retired.add(university.getCourse(courseCode(i)));
+        }
+        System.out.printf("== course retirement (%,d of %,d courses) ==%n", retired.size(), courses);
+
+        //What removing a course used to cost: looking for it in the pre-requisites of every course.
+        List<Course> catalog = university.getCourses();
+        long[] found = new long[1];
+        long scanNanos = time(() -> {
+            for (Course course : retired) {
+                for (Course course1 : catalog) {
+                    if (course1.getPreRequisites().contains(course)) {
+                        found[0]++;
+                    }
+                }
+            }
+        });
+        int dependents = 0;
+        for (Course course : retired) {
+            dependents += course.getDependentCourses().size();
+        }
+        if (found[0] != dependents) {
+            throw new IllegalStateException("The reverse index lists " + dependents + " dependents, not " + found[0]);
+        }
+        long removeNanos = time(() -> {
+            for (Course course : retired) {
+                university.removeCourseFromUniversity(course.getCourseCode());
+            }
+        });
+        System.out.printf("catalog scan %,10.1f us per course (lookups only)%n", scanNanos / 1e3 / retired.size());
+        System.out.printf("reverse index %,9.1f us per course (complete removal)%n", removeNanos / 1e3 / retired.size());
+
+        checkConsistency(university);
+        for (Course course : university.getCourses()) {
+            for (Course preReqCourse : course.getPreRequisites()) {
+                if (retired.contains(preReqCourse) || !preReqCourse.getDependentCourses().contains(course)) {
+                    throw new IllegalStateException(course + " has a stale pre-requisite " + preReqCourse);
+                }
+            }
+            for (Course dependent : course.getDependentCourses()) {
+                if (!dependent.getPreRequisites().contains(course)) {
+                    throw new IllegalStateException(course + " has a stale dependent " + dependent);
+                }
+            }
+        }
+        checkClosures(university);
+        System.out.println("pre-requisites, dependents and closures are consistent after the retirement");
+    }
+
+    /*
+     * CSV import
+     */
+
+    private static void csvImport() throws Exception {
+        final int students = 200_000;
+        final int courses = 5_000;
+        final int enrollmentsPerStudent = 5;
+        Path directory = Files.createTempDirectory("university-import");
+        try {
+            Path studentFile = directory.resolve("students.csv");
+            Path courseFile = directory.resolve("courses.csv");
+            Path requisiteFile = directory.resolve("prerequisites.csv");
+            Path previousFile = directory.resolve("previous.csv");
+            Path enrollmentFile = directory.resolve("enrollments.csv");
+            int badRows = writeImportFiles(studentFile, courseFile, requisiteFile, previousFile, enrollmentFile,
+                    students, courses, enrollmentsPerStudent);
+            int threads = Integer.getInteger("threads", Runtime.getRuntime().availableProcessors());
+            System.out.printf("== CSV import (%,d students, %,d courses, %,d enrollment rows, %d threads) ==%n",
+                    students, courses, students * enrollmentsPerStudent, threads);
+
+            University rowByRow = new University("Benchmark University", "Measure twice");
+            int[] refused = new int[1];
+            long rowNanos = time(() -> {
+                try {
+                    refused[0] += applyRows(studentFile, row -> rowByRow.addStudent(row[1], Integer.parseInt(row[0])));
+                    refused[0] += applyRows(courseFile, row -> rowByRow.addCourse(new Course(row[1], row[0], Integer.parseInt(row[2]))));
+                    refused[0] += applyRows(requisiteFile, row -> rowByRow.addRequisiteToCourse(row[0], row[1]));
+                    refused[0] += applyRows(previousFile, row -> rowByRow.addPreviousCourseToStudent(Integer.parseInt(row[0]), row[1]));
+                    refused[0] += applyRows(enrollmentFile, row -> rowByRow.enrollStudentInCourse(Integer.parseInt(row[0]), row[1]));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+
+            University imported = new University("Benchmark University", "Measure twice");
+            ImportReport[] report = new ImportReport[1];
+            long importNanos = time(() -> {
+                try {
+                    report[0] = new UniversityImporter(imported, threads)
+                            .importFiles(studentFile, courseFile, requisiteFile, previousFile, enrollmentFile);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            System.out.printf("row by row    %,8d ms (%,d rows refused with false)%n", rowNanos / 1_000_000, refused[0]);
+            System.out.printf("importer      %,8d ms (%,d rows rejected)%n", importNanos / 1_000_000,
+                    report[0].getRejections().size());
+
+            int enrollments = checkConsistency(imported);
+            if (enrollments != checkConsistency(rowByRow) || enrollments != report[0].getEnrollments()) {
+                throw new IllegalStateException("The importer loaded " + enrollments + " enrollments");
+            }
+            //The malformed rows could not even be tried row by row.
+            if (report[0].getRejections().size() != refused[0] + badRows / 2
+                    || report[0].getRejectionCount(ImportReport.Reason.MALFORMED) != badRows / 2) {
+                throw new IllegalStateException("Wrong rejections " + report[0]);
+            }
+            System.out.println("same enrollments, rejected rows: " + report[0].toString().replace('\n', ' '));
+        } finally {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                for (Path file : files) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    private interface Row {
+        boolean apply(String[] fields);
+    }
+
+    /**
+     * What loading a file looked like before the importer. Lines that cannot be split are skipped.
+     * @return the number of rows the university refused
+     */
+    private static int applyRows(Path file, Row row) throws IOException {
+        int refused = 0;
+        try (BufferedReader in = Files.newBufferedReader(file)) {
+            in.readLine();
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.split(",");
+                try {
+                    if (!row.apply(fields)) {
+                        refused++;
+                    }
+                } catch (RuntimeException e) {
+                    //Malformed, see writeImportFiles.
+                }
+            }
+        }
+        return refused;
+    }
+
+    /**
+     * Writes the CSV files of a university like populatedUniversity, with a few duplicate, unknown and
+     * malformed rows in each file.
+     * @return the number of bad rows, half of them malformed
+     */
+    private static int writeImportFiles(Path studentFile, Path courseFile, Path requisiteFile, Path previousFile,
+                                        Path enrollmentFile, int students, int courses, int enrollmentsPerStudent)
+            throws IOException {
+        Random random = new Random(2010);
+        int badRows = 0;
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(studentFile))) {
+            out.println("id,name");
+            for (int i = 0; i < students; i++) {
+                out.println(i + ",Student " + i);
+            }
+            out.println("17,Duplicate Student");
+            out.println("not a number,Student");
+            badRows += 2;
+        }
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(courseFile))) {
+            out.println("code,name,capacity");
+            for (int i = 0; i < courses; i++) {
+                out.println(courseCode(i) + ",Course " + i + "," + (i % 10 == 0 ? 100 : Course.UNLIMITED));
+            }
+            out.println(courseCode(3) + ",Duplicate Course,10");
+            out.println(courseCode(courses) + ",Negative Course,-1");
+            badRows += 2;
+        }
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(requisiteFile))) {
+            out.println("course,prerequisite");
+            for (int i = 0; i < courses; i++) {
+                if (i % 3 != 0) {
+                    out.println(courseCode(i) + "," + courseCode(i - 1));
+                }
+            }
+            out.println(courseCode(1) + ",NOPE 1");
+            out.println(courseCode(1));
+            badRows += 2;
+        }
+        //Students mostly enroll in the first course of a chain or in the course after one they passed.
+        int[][] passed = new int[students][3];
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(previousFile))) {
+            out.println("student,course");
+            for (int i = 0; i < students; i++) {
+                for (int p = 0; p < passed[i].length; p++) {
+                    passed[i][p] = random.nextInt(courses);
+                    out.println(i + "," + courseCode(passed[i][p]));
+                }
+            }
+            out.println(students + "," + courseCode(0));
+            out.println("1;" + courseCode(0));
+            badRows += 2;
+        }
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(enrollmentFile))) {
+            out.println("student,course");
+            for (int i = 0; i < students; i++) {
+                for (int enrollment = 0; enrollment < enrollmentsPerStudent; enrollment++) {
+                    int course = random.nextBoolean() ? 3 * random.nextInt(courses / 3)
+                            : Math.min(courses - 1, passed[i][random.nextInt(passed[i].length)] + 1);
+                    out.println(i + "," + courseCode(course));
+                }
+            }
+            out.println("1,NOPE 1");
+            out.println("one," + courseCode(0));
+            badRows += 2;
+        }
+        return badRows;
+    }
+
+    /*
+     * Analytics
+     */
+
+    private static void analytics() throws Exception {
+        int students = Integer.getInteger("students", 200_000);
+        University university = populatedUniversity(students, 5_000, 10);
+        int maxThreads = Integer.getInteger("threads", Runtime.getRuntime().availableProcessors());
+        System.out.printf("== analytics (%,d students, %,d enrollments) ==%n", students, checkConsistency(university));
+
+        //What the client loops looked like: boxed counts in maps keyed by course codes.
+        UniversityAnalytics.CoEnrollment[] pairs = new UniversityAnalytics.CoEnrollment[1];
+        Map<String, Integer> loopPairs = new HashMap<>();
+        long loopNanos = time(() -> {
+            Map<String, Integer> fill = new HashMap<>();
+            Map<Integer, Integer> loads = new HashMap<>();
+            for (Student student : university.getStudents()) {
+                loads.merge(student.getEnrolledCourses().size(), 1, Integer::sum);
+                List<Course> enrolled = new ArrayList<>(student.getEnrolledCourses());
+                for (int i = 0; i < enrolled.size(); i++) {
+                    fill.merge(enrolled.get(i).getCourseCode(), 1, Integer::sum);
+                    for (int j = i + 1; j < enrolled.size(); j++) {
+                        String first = enrolled.get(i).getCourseCode();
+                        String second = enrolled.get(j).getCourseCode();
+                        String key = first.compareTo(second) < 0 ? first + "|" + second : second + "|" + first;
+                        loopPairs.merge(key, 1, Integer::sum);
+                    }
+                }
+            }
+        });
+        System.out.printf("client loops (boxed maps) %,8d ms%n", loopNanos / 1_000_000);
+
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                UniversityAnalytics analytics = university.getAnalytics();
+                long fill = time(() -> pool.submit(analytics::getCourseFill).join());
+                long load = time(() -> pool.submit(analytics::getLoadDistribution).join());
+                long bottlenecks = time(() -> pool.submit(analytics::getPrerequisiteBottlenecks).join());
+                long coEnrollment = time(() -> pairs[0] = pool.submit(analytics::getCoEnrollment).join());
+                System.out.printf("threads=%2d fill %,5d ms  load %,5d ms  bottlenecks %,5d ms  co-enrollment %,6d ms%n",
+                        threads, fill / 1_000_000, load / 1_000_000, bottlenecks / 1_000_000, coEnrollment / 1_000_000);
+            } finally {
+                pool.shutdown();
+            }
+        }
+
+        if (pairs[0].getPairCount() != loopPairs.size()) {
+            throw new IllegalStateException(pairs[0].getPairCount() + " co-enrolled pairs instead of " + loopPairs.size());
+        }
+        pairs[0].forEach((first, second, count) -> {
+            String key = first.getCourseCode().compareTo(second.getCourseCode()) < 0
+                    ? first.getCourseCode() + "|" + second.getCourseCode()
+                    : second.getCourseCode() + "|" + first.getCourseCode();
+            if (loopPairs.get(key) != count) {
+                throw new IllegalStateException("Wrong co-enrollment for " + key);
+            }
+        });
+        UniversityAnalytics.LoadDistribution load = university.getAnalytics().getLoadDistribution();
+        System.out.printf("co-enrollment matches the client loops; mean load %.2f, 90th percentile %d, top pair %s%n",
+                load.getMeanLoad(), load.getPercentile(90), pairs[0].getTopPairs(1));
+    }
+
+    /*
+     * Conflicts
+     */
+
+    private static void conflicts() throws Exception {
+        final int students = Integer.getInteger("students", 100_000);
+        final int courses = 3_000;
+        final int operations = 1_000_000;
+        int threads = Integer.getInteger("threads", Runtime.getRuntime().availableProcessors());
+        University plain = populatedUniversity(students, courses, 5);
+        University followed = populatedUniversity(students, courses, 5);
+        System.out.printf("== conflicts (%,d students, %,d courses, %,d enrollments) ==%n",
+                students, courses, checkConsistency(followed));
+
+        ConflictEngine[] engine = new ConflictEngine[1];
+        long attach = time(() -> engine[0] = ConflictEngine.attach(followed));
+        System.out.printf("attach                %,8d ms (%,d co-enrolled pairs)%n", attach / 1_000_000, engine[0].getPairCount());
+
+        long plainTime = registrationTraffic(plain, threads, operations / threads, students, courses);
+        long followedTime = registrationTraffic(followed, threads, operations / threads, students, courses);
+        System.out.printf("without engine %,12.0f ops/s%n", operations / (plainTime / 1e9));
+        System.out.printf("with engine    %,12.0f ops/s%n", operations / (followedTime / 1e9));
+
+        //After the traffic the graph kept by the engine must be the one computed from scratch.
+        UniversityAnalytics.CoEnrollment pairs = followed.getAnalytics().getCoEnrollment();
+        if (pairs.getPairCount() != engine[0].getPairCount()) {
+            throw new IllegalStateException(engine[0].getPairCount() + " co-enrolled pairs instead of " + pairs.getPairCount());
+        }
+        pairs.forEach((first, second, count) -> {
+            if (engine[0].getSharedStudents(first, second) != count) {
+                throw new IllegalStateException("Wrong co-enrollment for " + first + " & " + second);
+            }
+        });
+        System.out.println("co-enrollment matches UniversityAnalytics after the traffic");
+
+        ConflictEngine.ExamSchedule[] schedule = new ConflictEngine.ExamSchedule[1];
+        long scheduling = time(() -> schedule[0] = engine[0].scheduleExams());
+        pairs.forEach((first, second, count) -> {
+            if (schedule[0].getSlot(first) == schedule[0].getSlot(second)) {
+                throw new IllegalStateException(first + " and " + second + " share students and an exam slot");
+            }
+        });
+        System.out.printf("exam schedule         %,8d ms (%d slots, no shared student in a slot)%n",
+                scheduling / 1_000_000, schedule[0].getSlotCount());
+        schedule[0].apply();
+
+        //Half of the courses meet once a week, in one of 20 slots.
+        for (int i = 0; i < courses; i += 2) {
+            LocalTime start = LocalTime.of(8 + i % 4 * 2, 0);
+            followed.getCourse(courseCode(i)).setMeetingTimes(
+                    new TimeSlot(DayOfWeek.of(1 + i / 4 % 5), start, start.plusMinutes(90)));
+        }
+        Random random = new Random(15);
+        int checks = 1_000_000;
+        int[] clashes = new int[1];
+        long checking = time(() -> {
+            for (int i = 0; i < checks; i++) {
+                if (engine[0].wouldClash(random.nextInt(students), courseCode(random.nextInt(courses)))) {
+                    clashes[0]++;
+                }
+            }
+        });
+        System.out.printf("clash checks   %,12.0f ops/s (%.1f%% clash)%n",
+                checks / (checking / 1e9), 100.0 * clashes[0] / checks);
+    }
+
+    /*
+     * Request front-end
+     */
+
+    /**
+     * Sends registration requests, so both servers run the same load.
+     */
+    private interface Registrar {
+        CompletableFuture<?> enroll(int studentID, String courseCode);
+
+        CompletableFuture<?> drop(int studentID, String courseCode);
+    }
+
+    private static void frontEnd() throws Exception {
+        final int students = Integer.getInteger("students", 100_000);
+        final int courses = 2_000;
+        final int requestsPerStudent = 5;
+        System.out.printf("== request front-end (%,d concurrent students, %d requests each, %s) ==%n",
+                students, requestsPerStudent, RegistrationFrontEnd.hasVirtualThreads()
+                        ? "a virtual thread per student" : "no virtual threads, students driven by their futures");
+
+        //What we had: a pool of platform threads, each request holding the university's monitor.
+        University plain = frontEndUniversity(students, courses);
+        ExecutorService pool = Executors.newFixedThreadPool(64);
+        Registrar synchronizedServer = new Registrar() {
+            @Override
+            public CompletableFuture<?> enroll(int studentID, String courseCode) {
+                return CompletableFuture.supplyAsync(() -> {
+                    synchronized (plain) {
+                        return plain.enroll(studentID, courseCode);
+                    }
+                }, pool);
+            }
+
+            @Override
+            public CompletableFuture<?> drop(int studentID, String courseCode) {
+                return CompletableFuture.supplyAsync(() -> {
+                    synchronized (plain) {
+                        return plain.removeStudentFromCourse(studentID, courseCode);
+                    }
+                }, pool);
+            }
+        };
+        LatencyHistogram baseline = new LatencyHistogram();
+        long baselineTime = runStudents(synchronizedServer, students, requestsPerStudent, courses, baseline);
+        pool.shutdown();
+
+        University university = frontEndUniversity(students, courses);
+        LatencyHistogram batched = new LatencyHistogram();
+        long batchedTime;
+        double batchSize;
+        long coalesced;
+        try (RegistrationFrontEnd frontEnd = new RegistrationFrontEnd(university)) {
+            Registrar registrar = new Registrar() {
+                @Override
+                public CompletableFuture<?> enroll(int studentID, String courseCode) {
+                    return frontEnd.enroll(studentID, courseCode);
+                }
+
+                @Override
+                public CompletableFuture<?> drop(int studentID, String courseCode) {
+                    return frontEnd.drop(studentID, courseCode);
+                }
+            };
+            batchedTime = runStudents(registrar, students, requestsPerStudent, courses, batched);
+            batchSize = frontEnd.getAverageBatchSize();
+            coalesced = frontEnd.getCoalescedCount();
+        }
+
+        int requests = students * requestsPerStudent;
+        System.out.printf("synchronized pool %,10.0f req/s  p50 %,8.2f ms  p99 %,8.2f ms  (%,d enrollments)%n",
+                requests / (baselineTime / 1e9), baseline.getPercentile(50) / 1e6, baseline.getPercentile(99) / 1e6,
+                checkConsistency(plain));
+        System.out.printf("front-end         %,10.0f req/s  p50 %,8.2f ms  p99 %,8.2f ms  (%,d enrollments, "
+                        + "%.1f requests per batch, %,d coalesced)%n",
+                requests / (batchedTime / 1e9), batched.getPercentile(50) / 1e6, batched.getPercentile(99) / 1e6,
+                checkConsistency(university), batchSize, coalesced);
+    }
+
+    private static University frontEndUniversity(int students, int courses) {
+        University university = syntheticUniversity(students, courses);
+        for (int i = 0; i < 10; i++) {
+            university.setCourseCapacity(courseCode(i), 500);
+        }
+        return university;
+    }
+
+    /**
+     * Starts every student at once and waits until all of them got the answers to their requests.
+     * @return the elapsed time in nanoseconds
+     */
+    private static long runStudents(Registrar registrar, int students, int requests, int courses,
+                                    LatencyHistogram latency) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(students);
+        long start = System.nanoTime();
+        if (RegistrationFrontEnd.hasVirtualThreads()) {
+            ExecutorService clients = RegistrationFrontEnd.newRequestExecutor();
+            for (int i = 0; i < students; i++) {
+                int id = i;
+                clients.execute(() -> {
+                    for (int request = 0; request < requests; request++) {
+                        long sent = System.nanoTime();
+                        sendRequest(registrar, id, request, courses).join();
+                        latency.record(System.nanoTime() - sent);
+                    }
+                    done.countDown();
+                });
+            }
+            done.await();
+            clients.shutdown();
+        } else {
+            //Without virtual threads 100k waiting clients would need 100k platform threads. Each student sends its
+            //next request when the answer to the previous one arrives instead.
+            for (int i = 0; i < students; i++) {
+                sendNext(registrar, i, 0, requests, courses, latency, done);
+            }
+            done.await();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void sendNext(Registrar registrar, int id, int request, int requests, int courses,
+                                 LatencyHistogram latency, CountDownLatch done) {
+        if (request == requests) {
+            done.countDown();
+            return;
+        }
+        long sent = System.nanoTime();
+        sendRequest(registrar, id, request, courses).whenComplete((result, failure) -> {
+            latency.record(System.nanoTime() - sent);
+            sendNext(registrar, id, request + 1, requests, courses, latency, done);
+        });
+    }
+
+    /**
+     * The third request of a student drops the course of the first one, the others are enrollments.
+     */
+    private static CompletableFuture<?> sendRequest(Registrar registrar, int id, int request, int courses) {
+        if (request == 2) {
+            return registrar.drop(id, courseCode(studentCourse(id, 0, courses)));
+        }
+        return registrar.enroll(id, courseCode(studentCourse(id, request, courses)));
+    }
+
+    private static int studentCourse(int id, int request, int courses) {
+        int hash = (id * 31 + request) * 0x9E3779B1;
+        //One request in five goes to one of the 10 popular courses.
+        return (hash >>> 8) % 5 == 0 ? (hash >>> 16) % 10 : (hash >>> 1) % courses;
+    }
+
+    /**
+     * Runs a mix of enrollments, waitlist requests, drops and student removals on several threads.
+     * @return the elapsed time in nanoseconds
+     */
+    private static long registrationTraffic(University university, int threads, int operationsPerThread,
+                                            int students, int courses) throws InterruptedException {
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < operationsPerThread; i++) {
+                    int id = random.nextInt(students);
+                    String code = courseCode(random.nextInt(courses));
+                    int action = random.nextInt(100);
+                    if (action < 48) {
+                        if (!university.enrollStudentInCourse(id, code)) {
+                            university.addStudentToWaitlist(id, code);
+                        }
+                    } else if (action < 96) {
+                        university.removeStudentFromCourse(id, code);
+                    } else if (university.removeStudentFromUniversity(id)) {
+                        university.addStudent("Student " + id, id);
+                    }
+                }
+            });
+        }
+        long start = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static List<Integer> ids(Collection<Student> students) {
+        List<Integer> ids = new ArrayList<>();
+        for (Student student : students) {
+            ids.add(student.getIdNumber());
+        }
+        return ids;
+    }
+
+    /*
+     * Query cache
+     */
+
+    private static void queryCache() throws InterruptedException {
+        final int students = 50_000;
+        final int courses = 2_000;
+        final int threads = 4;
+        final int operationsPerThread = 200_000;
+        System.out.printf("== query cache (%,d students, %,d courses, %d threads, 90%% reads) ==%n", students, courses, threads);
+
+        for (boolean cached : new boolean[]{false, true}) {
+            University university = populatedUniversity(students, courses, 4);
+            QueryCache cache = university.getQueryCache();
+            if (!cached) {
+                cache.setMaxWeight(0);
+            }
+            long time = portalTraffic(university, threads, operationsPerThread, students, courses);
+            System.out.printf("%-9s %,10.0f ops/s  %s%n", cached ? "cached" : "uncached",
+                    threads * operationsPerThread / (time / 1e9), cache);
+            if (cached) {
+                checkQueryCache(university, students, courses);
+            }
+        }
+    }
+
+    /**
+     * What the portal does: mostly eligible courses of the students logged in and course pages, with some
+     * enrollments and drops among them.
+     * @return the elapsed time in nanoseconds
+     */
+    private static long portalTraffic(University university, int threads, int operationsPerThread,
+                                      int students, int courses) throws InterruptedException {
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < operationsPerThread; i++) {
+                    //Four requests in five come from the 1,000 students logged in.
+                    int id = random.nextInt(5) == 0 ? random.nextInt(students) : random.nextInt(1_000);
+                    int action = random.nextInt(100);
+                    if (action < 60) {
+                        university.getEligibleCourses(id);
+                    } else if (action < 90) {
+                        university.getFullCourseInfo(courseCode(random.nextInt(courses)));
+                    } else if (action < 95) {
+                        university.enrollStudentInCourse(id, courseCode(random.nextInt(courses)));
+                    } else {
+                        university.removeStudentFromCourse(id, courseCode(random.nextInt(courses)));
+                    }
+                }
+            });
+        }
+        long start = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Checks the answers the cache gives (after the traffic, and after catalog changes) against answers computed
+     * without it.
+     */
+    private static void checkQueryCache(University university, int students, int courses) {
+        compareWithUncached(university, students, courses);
+        //Catalog changes make the answers depending on them stale, and only those.
+        long invalidations = university.getQueryCache().getInvalidationCount();
+        university.addRequisiteToCourse(courseCode(4), courseCode(0));
+        university.removeCourseFromUniversity(courseCode(1));
+        university.addStudent("Student " + students, students);
+        compareWithUncached(university, students + 1, courses);
+        System.out.printf("checked: %,d stale answers dropped after the catalog changed%n",
+                university.getQueryCache().getInvalidationCount() - invalidations);
+    }
+
+    private static void compareWithUncached(University university, int students, int courses) {
+        QueryCache cache = university.getQueryCache();
+        List<List<Course>> eligible = new ArrayList<>();
+        List<String> infos = new ArrayList<>();
+        List<List<Course>> preRequisites = new ArrayList<>();
+        //Courses first: their answers are the most recently cached, the students' would evict them.
+        for (int i = 0; i < courses; i++) {
+            infos.add(university.getFullCourseInfo(courseCode(i)));
+            preRequisites.add(university.getAllPreRequisites(courseCode(i)));
+        }
+        for (int i = 0; i < students; i++) {
+            eligible.add(university.getEligibleCourses(i));
+        }
+        long maxWeight = cache.getMaxWeight();
+        cache.clear();
+        cache.setMaxWeight(0);
+        for (int i = 0; i < students; i++) {
+            if (!eligible.get(i).equals(university.getEligibleCourses(i))) {
+                throw new IllegalStateException("Stale eligible courses for student " + i);
+            }
+        }
+        for (int i = 0; i < courses; i++) {
+            if (!Objects.equals(infos.get(i), university.getFullCourseInfo(courseCode(i)))
+                    || !Objects.equals(preRequisites.get(i), university.getAllPreRequisites(courseCode(i)))) {
+                throw new IllegalStateException("Stale course information for " + courseCode(i));
+            }
+        }
+        //Fills the cache again for the next check.
+        cache.setMaxWeight(maxWeight);
+        for (int i = 0; i < students; i++) {
+            university.getEligibleCourses(i);
+        }
+        for (int i = 0; i < courses; i++) {
+            university.getFullCourseInfo(courseCode(i));
+            university.getAllPreRequisites(courseCode(i));
+        }
+    }
+
+    /*
+     * Term snapshots
+     */
+
+    private static void termSnapshot() throws Exception {
+        final int students = 200_000;
+        final int courses = 2_000;
+        final int threads = 2;
+        final int operationsPerThread = 500_000;
+        System.out.printf("== term snapshot (%,d students, %,d courses, %d writer threads) ==%n", students, courses, threads);
+
+        //Writers alone, for reference, after a first run (and reports) that warm up the JIT.
+        University university = populatedUniversity(students, courses, 4);
+        registrationTraffic(university, threads, operationsPerThread, students, courses);
+        for (int i = 0; i < 5; i++) {
+            liveReport(university);
+            try (TermSnapshot snapshot = university.openSnapshot()) {
+                snapshotReport(snapshot);
+            }
+        }
+        long alone = registrationTraffic(university, threads, operationsPerThread, students, courses);
+        System.out.printf("writers alone              %,10.0f ops/s%n", threads * operationsPerThread / (alone / 1e9));
+
+        //What we had: stop the writers while the report reads the live objects.
+        university = populatedUniversity(students, courses, 4);
+        University stopped = university;
+        long[] report = new long[1];
+        long stopTheWorld = withReport(() -> registrationTraffic(stopped, threads, operationsPerThread, students, courses), () -> {
+            stopped.catalogWriteLock().lock();
+            try {
+                report[0] = time(() -> liveReport(stopped));
+            } finally {
+                stopped.catalogWriteLock().unlock();
+            }
+        });
+        System.out.printf("report with writes stopped %,10.0f ops/s  (report %,d ms, writers stopped all along)%n",
+                threads * operationsPerThread / (stopTheWorld / 1e9), report[0] / 1_000_000);
+
+        //A snapshot: the reference is copied at the same moment, only to check the report against it.
+        university = populatedUniversity(students, courses, 4);
+        University live = university;
+        Map<Integer, List<Course>> expected = new HashMap<>();
+        TermSnapshot[] opened = new TermSnapshot[1];
+        long[] openTime = new long[1];
+        live.catalogWriteLock().lock();
+        try {
+            for (Student student : live.getStudents()) {
+                expected.put(student.getIdNumber(), new ArrayList<>(student.getEnrolledCourses()));
+            }
+            openTime[0] = time(() -> opened[0] = live.openSnapshot());
+        } finally {
+            live.catalogWriteLock().unlock();
+        }
+        int[] found = new int[1];
+        try (TermSnapshot snapshot = opened[0]) {
+            long withSnapshot = withReport(() -> registrationTraffic(live, threads, operationsPerThread, students, courses), () -> {
+                report[0] = time(() -> snapshotReport(snapshot));
+                found[0] = checkSnapshot(snapshot, expected);
+            });
+            System.out.printf("report on a snapshot       %,10.0f ops/s  (report %,d ms, writers stopped %,d us to open it)%n",
+                    threads * operationsPerThread / (withSnapshot / 1e9), report[0] / 1_000_000, openTime[0] / 1_000);
+            System.out.printf("snapshot matches the university when it was opened (%,d enrollments), %,d students and %,d courses preserved%n",
+                    found[0], snapshot.getPreservedStudentCount(), snapshot.getPreservedCourseCount());
+        }
+        checkConsistency(live);
+    }
+
+    private interface Traffic {
+        long run() throws InterruptedException;
+    }
+
+    /**
+     * Runs the traffic and, once it started, the report on this thread.
+     * @return the elapsed time of the traffic in nanoseconds
+     */
+    private static long withReport(Traffic traffic, Runnable report) throws InterruptedException {
+        long[] elapsed = new long[1];
+        Thread writers = new Thread(() -> {
+            try {
+                elapsed[0] = traffic.run();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        writers.start();
+        Thread.sleep(50);
+        report.run();
+        writers.join();
+        return elapsed[0];
+    }
+
+    /**
+     * The report as it was written before snapshots: every student's courses and every class list, read from the
+     * live objects. Only correct while nobody writes.
+     */
+    private static long liveReport(University university) {
+        long lines = 0;
+        for (Student student : university.getStudents()) {
+            lines += student.getEnrolledCourses().size();
+        }
+        for (Course course : university.getCourses()) {
+            lines += course.getEnrolledStudents().size();
+        }
+        return lines;
+    }
+
+    private static long snapshotReport(TermSnapshot snapshot) {
+        long lines = 0;
+        for (Student student : snapshot.getStudents()) {
+            lines += snapshot.getEnrolledCourses(student.getIdNumber()).size();
+        }
+        for (Course course : snapshot.getCourses()) {
+            lines += snapshot.getClassList(course.getCourseCode()).size();
+        }
+        return lines;
+    }
+
+    /**
+     * Checks the report on a snapshot against what the university had when the snapshot was opened.
+     * @return the number of enrollments
+     */
+    private static int checkSnapshot(TermSnapshot snapshot, Map<Integer, List<Course>> expected) {
+        List<Student> students = snapshot.getStudents();
+        if (students.size() != expected.size()) {
+            throw new IllegalStateException(students.size() + " students in the snapshot, expected " + expected.size());
+        }
+        int enrollments = 0;
+        for (Student student : students) {
+            List<Course> courses = snapshot.getEnrolledCourses(student.getIdNumber());
+            if (!courses.equals(expected.get(student.getIdNumber()))) {
+                throw new IllegalStateException(student + " has " + courses + " in the snapshot, expected "
+                        + expected.get(student.getIdNumber()));
+            }
+            enrollments += courses.size();
+        }
+        int rosterEntries = 0;
+        for (Course course : snapshot.getCourses()) {
+            for (Student student : snapshot.getClassList(course.getCourseCode())) {
+                if (!expected.get(student.getIdNumber()).contains(course)) {
+                    throw new IllegalStateException(course + " lists " + student + " in the snapshot");
+                }
+                rosterEntries++;
+            }
+        }
+        if (rosterEntries != enrollments) {
+            throw new IllegalStateException(rosterEntries + " class list entries for " + enrollments + " enrollments");
+        }
+        return enrollments;
+    }
+
+    /*
+     * Sharded university
+     */
+
+    private static void shardedUniversity() throws Exception {
+        final int students = Integer.getInteger("students", 50_000);
+        final int courses = 2_000;
+        final int requestsPerStudent = 5;
+        System.out.printf("== sharded university (%,d concurrent students, %d requests each, %d cores) ==%n",
+                students, requestsPerStudent, Runtime.getRuntime().availableProcessors());
+        for (int shards = 1; shards <= 8; shards *= 2) {
+            try (ShardedUniversity university = shardedUniversity(students, courses, shards)) {
+                Registrar registrar = new Registrar() {
+                    @Override
+                    public CompletableFuture<?> enroll(int studentID, String courseCode) {
+                        return university.enrollAsync(studentID, courseCode);
+                    }
+
+                    @Override
+                    public CompletableFuture<?> drop(int studentID, String courseCode) {
+                        return university.dropAsync(studentID, courseCode);
+                    }
+                };
+                LatencyHistogram latency = new LatencyHistogram();
+                long time = runStudents(registrar, students, requestsPerStudent, courses, latency);
+                int requests = students * requestsPerStudent;
+                System.out.printf("%d shards  %,10.0f req/s  p50 %,8.2f ms  p99 %,8.2f ms  (%,d enrollments)%n",
+                        shards, requests / (time / 1e9), latency.getPercentile(50) / 1e6,
+                        latency.getPercentile(99) / 1e6, checkShards(university, students, courses));
+            }
+        }
+        //Nodes only scale with cores to run on: with one core the shards take turns and pay for the extra messages.
+    }
+
+    /**
+     * The data of frontEndUniversity, plus pre-requisite chains of three and a passed course per student, so
+     * the course nodes check pre-requisites against their passed-courses views.
+     */
+    private static ShardedUniversity shardedUniversity(int students, int courses, int shards) {
+        ShardedUniversity university = ShardedUniversity.inProcess("Benchmark University", "Measure twice", shards);
+        for (int i = 0; i < courses; i++) {
+            university.addCourse("Course " + i, courseCode(i), i < 10 ? 500 : Course.UNLIMITED);
+            if (i % 3 == 2) {
+                university.addRequisiteToCourse(courseCode(i), courseCode(i - 1));
+            }
+        }
+        Random random = new Random(1110);
+        for (int i = 0; i < students; i++) {
+            university.addStudent("Student " + i, i);
+            university.addPreviousCourseToStudent(i, courseCode(random.nextInt(courses)));
+        }
+        return university;
+    }
+
+    /**
+     * Checks the class lists kept by the course nodes against the enrolled courses kept by the student nodes, and
+     * that the popular courses are not overbooked.
+     * @return the number of enrollments
+     */
+    private static int checkShards(ShardedUniversity university, int students, int courses) {
+        Set<Long> fromCourses = new HashSet<>();
+        for (int i = 0; i < courses; i++) {
+            List<Integer> classList = university.getClassList(courseCode(i));
+            if (i < 10 && classList.size() > 500) {
+                throw new IllegalStateException(courseCode(i) + " is overbooked: " + classList.size());
+            }
+            for (int id : classList) {
+                fromCourses.add((long) id * courses + i);
+            }
+        }
+        Set<Long> fromStudents = new HashSet<>();
+        for (int id = 0; id < students; id++) {
+            for (String code : university.getEnrolledCourses(id)) {
+                fromStudents.add((long) id * courses + Integer.parseInt(code.substring("BNCH ".length())));
+            }
+        }
+        if (!fromCourses.equals(fromStudents)) {
+            throw new IllegalStateException("Class lists and enrolled courses disagree: " + fromCourses.size()
+                    + " against " + fromStudents.size());
+        }
+        return fromCourses.size();
+    }
+
+    /*
+     * Synthetic data
+     */
+
+    private static University syntheticUniversity(int students, int courses) {
+        University university = new University("Benchmark University", "Measure twice");
+        for (int i = 0; i < students; i++) {
+            university.addStudent("Student " + i, i);
+        }
+        for (int i = 0; i < courses; i++) {
+            university.addCourse("Course " + i, courseCode(i));
+        }
+        return university;
+    }
+
+    /**
+     * Creates a university where courses form pre-requisite chains of three (every course that is not the first
+     * of its chain requires the previous one). Students have passed a few random courses and are enrolled in
+     * up to enrollmentsPerStudent courses they have the pre-requisites for.
+     */
+    private static University populatedUniversity(int students, int courses, int enrollmentsPerStudent) {
+        University university = new University("Benchmark University", "Measure twice", students, courses);
+        for (int i = 0; i < courses; i++) {
+            university.addCourse("Course " + i, courseCode(i));
+            if (i % 3 != 0) {
+                university.addRequisiteToCourse(courseCode(i), courseCode(i - 1));
+            }
+        }
+        Random random = new Random(1110);
+        for (int i = 0; i < students; i++) {
+            university.addStudent("Student " + i, i);
+            Student student = university.getStudent(i);
+            for (int passed = 0; passed < 3; passed++) {
+                student.addPreviousCourse(university.getCourse(courseCode(random.nextInt(courses))));
+            }
+            for (int attempt = 0; attempt < enrollmentsPerStudent * 2
+                    && student.getEnrolledCourses().size() < enrollmentsPerStudent; attempt++) {
+                university.enrollStudentInCourse(i, courseCode(random.nextInt(courses)));
+            }
+        }
+        return university;
+    }
+
+    private static String courseCode(int i) {
+        return "BNCH " + i;
+    }
+}
@@ -0,0 +1,460 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Loads students, courses, pre-requisites, previous courses and enrollments from registrar CSV exports.
+ *
+ * Each file goes through a small pipeline:
+ *   - a reader thread reads the file in batches of lines. Only a few batches are in flight at a time
+ *     (a bounded queue), so memory does not depend on the size of the file;
+ *   - parser threads turn the batches into rows (e.g. Student objects) in parallel;
+ *   - the calling thread applies the parsed batches to the university, in the order of the file, so the first of
+ *     two duplicate rows wins and full courses are filled first-come first-served, like the registrar expects.
+ * The phases run one after the other: students, courses, pre-requisites, previous courses, enrollments.
+ * The size of each file is estimated from its first batch, and the indexes of the university are sized for it
+ * before the rows are applied. Each batch is applied under the catalog lock, taken once for its rows.
+ *
+ * Changes go through the public University methods, so listeners (e.g. a MutationLog) see the import.
+ * Rows that cannot be applied are listed in the ImportReport with the reason, instead of a plain false.
+ *
+ * File formats (UTF-8, the first line of every file is a header and is skipped, fields may be quoted):
+ *   - students:         id,name
+ *   - courses:          code,name[,capacity]
+ *   - pre-requisites:   courseCode,preRequisiteCode
+ *   - previous courses: studentId,courseCode
+ *   - enrollments:      studentId,courseCode
+ */
+public class UniversityImporter {
+    //Lines handed to a parser thread at a time.
+    private static final int BATCH_LINES = 4096;
+
+    //Marks the end of a file in the queue of batches.
+    private static final Batch END = new Batch(0, new String[0]);
+    //Row of a blank line, skipped without being rejected.
+    private static final Object BLANK = new Object();
+
+    private final University university;
+    private final int threads;
+
+    public UniversityImporter(University university) {
+        this(university, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param university the university the rows are added to
+     * @param threads the number of parser threads
+     */
+    public UniversityImporter(University university, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one parser thread is needed: " + threads);
+        }
+        this.university = university;
+        this.threads = threads;
+    }
+
+    /**
+     * Imports the files, in the order students, courses, pre-requisites, previous courses, enrollments.
+     * Any file can be null to skip that phase.
+     *
+     * @return how many rows were applied, and the rows that were rejected
+     * @throws IOException if a file cannot be read. Rows applied before the error stay in the university.
+     */
+    public ImportReport importFiles(Path students, Path courses, Path preRequisites, Path previousCourses,
+                                    Path enrollments) throws IOException {
+        ImportReport report = new ImportReport();
+        ExecutorService parsers = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "university-import-parser");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            if (students != null) {
+                importFile(students, new StudentPhase(), parsers, report);
+            }
+            if (courses != null) {
+                importFile(courses, new CoursePhase(), parsers, report);
+            }
+            if (preRequisites != null) {
+                importFile(preRequisites, new RequisitePhase(), parsers, report);
+            }
+            if (previousCourses != null) {
+                importFile(previousCourses, new PreviousCoursePhase(), parsers, report);
+            }
+            if (enrollments != null) {
+                importFile(enrollments, new EnrollmentPhase(), parsers, report);
+            }
+        } finally {
+            parsers.shutdownNow();
+        }
+        return report;
+    }
+
+    /*
+     * Pipeline
+     */
+
+    /**
+     * Lines of a file and, once parsed, their rows (null for a malformed line).
+     */
+    private static class Batch {
+        final long firstLine;
+        final String[] lines;
+        Object[] rows;
+        //Rows expected in the whole file, only set on the first batch.
+        int expectedRows;
+
+        Batch(long firstLine, String[] lines) {
+            this.firstLine = firstLine;
+            this.lines = lines;
+        }
+    }
+
+    private <R> void importFile(Path file, Phase<R> phase, ExecutorService parsers, ImportReport report)
+            throws IOException {
+        //Enough batches in flight to keep every parser busy, and no more.
+        BlockingQueue<Future<Batch>> batches = new ArrayBlockingQueue<>(threads * 2);
+        Thread reader = new Thread(() -> read(file, phase, parsers, batches), "university-import-reader");
+        reader.setDaemon(true);
+        reader.start();
+        String name = file.getFileName().toString();
+        try {
+            while (true) {
+                Batch batch = batches.take().get();
+                if (batch == END) {
+                    break;
+                }
+                if (batch.expectedRows > 0) {
+                    phase.presize(batch.expectedRows);
+                }
+                apply(batch, phase, name, report);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import of " + file + " was interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IllegalStateException("Could not parse " + file, e.getCause());
+        } finally {
+            //Stops the reader if we stopped early; it is blocked on the queue or already done.
+            reader.interrupt();
+        }
+    }
+
+    /**
+     * Applies the rows of a batch, in order. The catalog lock is taken once for the batch instead of once per row;
+     * it is released between batches, so other threads never wait for the file to be read or parsed.
+     */
+    private <R> void apply(Batch batch, Phase<R> phase, String name, ImportReport report) {
+        Lock exclusive = university.catalogWriteLock();
+        exclusive.lock();
+        try {
+            for (int i = 0; i < batch.rows.length; i++) {
+                Object row = batch.rows[i];
+                if (row == BLANK) {
+                    continue;
+                }
+                @SuppressWarnings("unchecked")
+                ImportReport.Reason reason = row == null ? ImportReport.Reason.MALFORMED : phase.apply((R) row);
+                if (reason == null) {
+                    phase.applied(report);
+                } else {
+                    report.reject(name, batch.firstLine + i, batch.lines[i], reason);
+                }
+            }
+        } finally {
+            exclusive.unlock();
+        }
+    }
+
+    /**
+     * Runs on the reader thread: reads the file in batches and queues them for parsing, in order.
+     */
+    private <R> void read(Path file, Phase<R> phase, ExecutorService parsers, BlockingQueue<Future<Batch>> batches) {
+        try {
+            try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                long fileSize = Files.size(file);
+                //Line 1 is the header.
+                long line = in.readLine() == null ? 1 : 2;
+                boolean first = true;
+                List<String> lines = new ArrayList<>(BATCH_LINES);
+                long characters = 0;
+                String text;
+                while ((text = in.readLine()) != null) {
+                    lines.add(text);
+                    characters += text.length() + 1;
+                    if (lines.size() == BATCH_LINES) {
+                        Batch batch = new Batch(line, lines.toArray(new String[0]));
+                        if (first) {
+                            batch.expectedRows = (int) Math.min(Integer.MAX_VALUE, fileSize * lines.size() / characters);
+                            first = false;
+                        }
+                        batches.put(parsers.submit(() -> parse(batch, phase)));
+                        line += lines.size();
+                        lines.clear();
+                    }
+                }
+                if (!lines.isEmpty()) {
+                    Batch batch = new Batch(line, lines.toArray(new String[0]));
+                    if (first) {
+                        batch.expectedRows = lines.size();
+                    }
+                    batches.put(parsers.submit(() -> parse(batch, phase)));
+                }
+            } catch (IOException e) {
+                batches.put(CompletableFuture.failedFuture(new UncheckedIOException(e)));
+                return;
+            }
+            batches.put(CompletableFuture.completedFuture(END));
+        } catch (InterruptedException e) {
+            //The import stopped, nobody is waiting for the rest of the file.
+        }
+    }
+
+    private static <R> Batch parse(Batch batch, Phase<R> phase) {
+        Object[] rows = new Object[batch.lines.length];
+        for (int i = 0; i < rows.length; i++) {
+            String line = batch.lines[i];
+            if (line.isBlank()) {
+                rows[i] = BLANK;
+                continue;
+            }
+            try {
+                rows[i] = phase.parse(fields(line));
+            } catch (IllegalArgumentException e) {
+                //Includes NumberFormatException. The row is reported as malformed.
+                rows[i] = null;
+            }
+        }
+        batch.rows = rows;
+        return batch;
+    }
+
+    /**
+     * Splits a CSV line. Fields may be quoted ("a, b") and a quote inside a quoted field is doubled ("").
+     */
+    static List<String> fields(String line) {
+        List<String> fields = new ArrayList<>(4);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString().trim());
+        return fields;
+    }
+
+    /*
+     * Phases
+     */
+
+    /**
+     * How the rows of one file are parsed (on the parser threads) and applied (on the calling thread).
+     */
+    private abstract static class Phase<R> {
+        /**
+         * @return the row, or null if the fields are not valid
+         * @throws IllegalArgumentException if a field is not valid
+         */
+        abstract R parse(List<String> fields);
+
+        /**
+         * @return null if the row was applied, otherwise why it was rejected
+         */
+        abstract ImportReport.Reason apply(R row);
+
+        abstract void applied(ImportReport report);
+
+        void presize(int expectedRows) {
+        }
+    }
+
+    /**
+     * A student ID and a course code, the rows of the previous courses and enrollments files.
+     */
+    private static class StudentCourse {
+        final int studentID;
+        final String courseCode;
+
+        StudentCourse(int studentID, String courseCode) {
+            this.studentID = studentID;
+            this.courseCode = courseCode;
+        }
+
+        static StudentCourse parse(List<String> fields) {
+            if (fields.size() != 2 || fields.get(1).isEmpty()) {
+                return null;
+            }
+            return new StudentCourse(Integer.parseInt(fields.get(0)), fields.get(1));
+        }
+    }
+
+    private class StudentPhase extends Phase<Student> {
+        @Override
+        Student parse(List<String> fields) {
+            if (fields.size() != 2 || fields.get(1).isEmpty()) {
+                return null;
+            }
+            return new Student(fields.get(1), Integer.parseInt(fields.get(0)));
+        }
+
+        @Override
+        ImportReport.Reason apply(Student student) {
+            return university.addStudent(student) ? null : ImportReport.Reason.DUPLICATE_STUDENT;
+        }
+
+        @Override
+        void applied(ImportReport report) {
+            report.studentAdded();
+        }
+
+        @Override
+        void presize(int expectedRows) {
+            university.ensureCapacity(expectedRows, 0);
+        }
+    }
+
+    private class CoursePhase extends Phase<Course> {
+        @Override
+        Course parse(List<String> fields) {
+            if (fields.size() < 2 || fields.size() > 3 || fields.get(0).isEmpty()) {
+                return null;
+            }
+            if (fields.size() == 2 || fields.get(2).isEmpty()) {
+                return new Course(fields.get(1), fields.get(0));
+            }
+            //A negative capacity is refused by the Course constructor.
+            return new Course(fields.get(1), fields.get(0), Integer.parseInt(fields.get(2)));
+        }
+
+        @Override
+        ImportReport.Reason apply(Course course) {
+            return university.addCourse(course) ? null : ImportReport.Reason.DUPLICATE_COURSE;
+        }
+
+        @Override
+        void applied(ImportReport report) {
+            report.courseAdded();
+        }
+
+        @Override
+        void presize(int expectedRows) {
+            university.ensureCapacity(0, expectedRows);
+        }
+    }
+
+    private class RequisitePhase extends Phase<String[]> {
+        @Override
+        String[] parse(List<String> fields) {
+            if (fields.size() != 2 || fields.get(0).isEmpty() || fields.get(1).isEmpty()) {
+                return null;
+            }
+            return new String[]{fields.get(0), fields.get(1)};
+        }
+
+        @Override
+        ImportReport.Reason apply(String[] row) {
+            if (university.addRequisiteToCourse(row[0], row[1])) {
+                return null;
+            }
+            if (university.getCourse(row[0]) == null || university.getCourse(row[1]) == null) {
+                return ImportReport.Reason.UNKNOWN_COURSE;
+            }
+            return ImportReport.Reason.INVALID_REQUISITE;
+        }
+
+        @Override
+        void applied(ImportReport report) {
+            report.requisiteAdded();
+        }
+    }
+
+    private class PreviousCoursePhase extends Phase<StudentCourse> {
+        @Override
+        StudentCourse parse(List<String> fields) {
+            return StudentCourse.parse(fields);
+        }
+
+        @Override
+        ImportReport.Reason apply(StudentCourse row) {
+            if (university.addPreviousCourseToStudent(row.studentID, row.courseCode)) {
+                return null;
+            }
+            if (university.getStudent(row.studentID) == null) {
+                return ImportReport.Reason.UNKNOWN_STUDENT;
+            }
+            if (university.getCourse(row.courseCode) == null) {
+                return ImportReport.Reason.UNKNOWN_COURSE;
+            }
+            return ImportReport.Reason.ALREADY_PASSED;
+        }
+
+        @Override
+        void applied(ImportReport report) {
+            report.previousCourseAdded();
+        }
+    }
+
+    private class EnrollmentPhase extends Phase<StudentCourse> {
+        @Override
+        StudentCourse parse(List<String> fields) {
+            return StudentCourse.parse(fields);
+        }
+
+        @Override
+        ImportReport.Reason apply(StudentCourse row) {
+            switch (university.enroll(row.studentID, row.courseCode)) {
+                case ENROLLED:
+                    return null;
+                case UNKNOWN_STUDENT:
+                    return ImportReport.Reason.UNKNOWN_STUDENT;
+                case UNKNOWN_COURSE:
+                    return ImportReport.Reason.UNKNOWN_COURSE;
+                case ALREADY_ENROLLED:
+                    return ImportReport.Reason.ALREADY_ENROLLED;
+                case MISSING_PREREQUISITES:
+                    return ImportReport.Reason.MISSING_PREREQUISITES;
+                default:
+                    return ImportReport.Reason.COURSE_FULL;
+            }
+        }
+
+        @Override
+        void applied(ImportReport report) {
+            report.studentEnrolled();
+        }
+    }
+}
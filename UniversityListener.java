@@ -0,0 +1,48 @@
+/**
+ * Receives every successful change made through a University (see University.addListener).
+ *
+ * Methods are called by the thread making the change, right after it was applied and while the university still
+ * holds the locks protecting it. Changes to the same student or course are therefore seen in the order they were
+ * applied. Listeners must be fast and must not call back into the university.
+ *
+ * Every method does nothing by default, so listeners only implement the changes they care about.
+ */
+public interface UniversityListener {
+
+    default void studentAdded(Student student) {
+    }
+
+    default void courseAdded(Course course) {
+    }
+
+    default void requisiteAdded(Course course, Course preRequisite) {
+    }
+
+    default void previousCourseAdded(Student student, Course course) {
+    }
+
+    default void studentEnrolled(Student student, Course course) {
+    }
+
+    default void studentDropped(Student student, Course course) {
+    }
+
+    default void studentWaitlisted(Student student, Course course) {
+    }
+
+    default void capacityChanged(Course course, int capacity) {
+    }
+
+    /**
+     * Called after the student was removed from the university and from the courses in student.getEnrolledCourses().
+     */
+    default void studentRemoved(Student student) {
+    }
+
+    /**
+     * Called after the course was removed from the university, from its students and from the pre-requisites of
+     * other courses (and lost its own). course.getEnrolledStudents() still lists the students that were enrolled.
+     */
+    default void courseRemoved(Course course) {
+    }
+}
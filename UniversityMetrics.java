@@ -0,0 +1,225 @@
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counts and times the hot operations of a University: a LatencyHistogram and a failure count per operation, and
+ * the number of enrollments per EnrollmentResult, so the reasons behind the "false"s can be told apart.
+ *
+ *     UniversityMetrics metrics = UniversityMetrics.attach(university);
+ *     metrics.registerMBean("Main campus");
+ *
+ * Recording never locks or allocates: a few atomic additions per operation, on counters that threads rarely share
+ * (LongAdder). A university without metrics only reads a null field per operation.
+ */
+public class UniversityMetrics implements MetricsSink, UniversityMetricsMXBean {
+
+    /**
+     * Counts and latency percentiles of one operation, as shown over JMX.
+     */
+    public static class OperationStats {
+        private final long count;
+        private final long failures;
+        private final double meanNanos;
+        private final long p50Nanos;
+        private final long p99Nanos;
+        private final long p999Nanos;
+        private final long maxNanos;
+
+        OperationStats(long count, long failures, LatencyHistogram latency) {
+            this.count = count;
+            this.failures = failures;
+            meanNanos = latency.getMean();
+            p50Nanos = latency.getPercentile(50);
+            p99Nanos = latency.getPercentile(99);
+            p999Nanos = latency.getPercentile(99.9);
+            maxNanos = latency.getMax();
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return the number of times the operation returned false (or an enrollment was refused)
+         */
+        public long getFailures() {
+            return failures;
+        }
+
+        public double getMeanNanos() {
+            return meanNanos;
+        }
+
+        public long getP50Nanos() {
+            return p50Nanos;
+        }
+
+        public long getP99Nanos() {
+            return p99Nanos;
+        }
+
+        public long getP999Nanos() {
+            return p999Nanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d failures=%d mean=%.0fns p50=%dns p99=%dns p99.9=%dns max=%dns",
+                    count, failures, meanNanos, p50Nanos, p99Nanos, p999Nanos, maxNanos);
+        }
+    }
+
+    private final University university;
+    private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> failures = new EnumMap<>(Operation.class);
+    //Indexed by EnrollmentResult.ordinal(), read on every enrollment.
+    private final LongAdder[] enrollmentResults = new LongAdder[EnrollmentResult.values().length];
+
+    private UniversityMetrics(University university) {
+        this.university = university;
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new LatencyHistogram());
+            failures.put(operation, new LongAdder());
+        }
+        for (int i = 0; i < enrollmentResults.length; i++) {
+            enrollmentResults[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Starts recording the operations of the university (see University.setMetricsSink).
+     */
+    public static UniversityMetrics attach(University university) {
+        UniversityMetrics metrics = new UniversityMetrics(university);
+        university.setMetricsSink(metrics);
+        return metrics;
+    }
+
+    /**
+     * Stops recording, if the university still reports to these metrics.
+     */
+    public void detach() {
+        if (university.getMetricsSink() == this) {
+            university.setMetricsSink(null);
+        }
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server.
+     * @param name tells universities of the same JVM apart
+     * @return the name of the MBean, to unregister it
+     */
+    public ObjectName registerMBean(String name) throws JMException {
+        ObjectName objectName = new ObjectName("UniversityManagementSystem:type=UniversityMetrics,name=" + ObjectName.quote(name));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        server.registerMBean(this, objectName);
+        return objectName;
+    }
+
+    /*
+     * Recording
+     */
+
+    @Override
+    public void enrolled(EnrollmentResult result, long nanos) {
+        latencies.get(Operation.ENROLL).record(nanos);
+        enrollmentResults[result.ordinal()].increment();
+        if (result != EnrollmentResult.ENROLLED) {
+            failures.get(Operation.ENROLL).increment();
+        }
+    }
+
+    @Override
+    public void completed(Operation operation, boolean succeeded, long nanos) {
+        latencies.get(operation).record(nanos);
+        if (!succeeded) {
+            failures.get(operation).increment();
+        }
+    }
+
+    /*
+     * Reading
+     */
+
+    public LatencyHistogram getLatency(Operation operation) {
+        return latencies.get(operation);
+    }
+
+    public long getCount(Operation operation) {
+        return latencies.get(operation).getCount();
+    }
+
+    public long getFailures(Operation operation) {
+        return failures.get(operation).sum();
+    }
+
+    public long getCount(EnrollmentResult result) {
+        return enrollmentResults[result.ordinal()].sum();
+    }
+
+    public OperationStats getStats(Operation operation) {
+        return new OperationStats(getCount(operation), getFailures(operation), latencies.get(operation));
+    }
+
+    @Override
+    public OperationStats getEnroll() {
+        return getStats(Operation.ENROLL);
+    }
+
+    @Override
+    public OperationStats getDrop() {
+        return getStats(Operation.DROP);
+    }
+
+    @Override
+    public OperationStats getRemoveStudent() {
+        return getStats(Operation.REMOVE_STUDENT);
+    }
+
+    @Override
+    public OperationStats getRemoveCourse() {
+        return getStats(Operation.REMOVE_COURSE);
+    }
+
+    @Override
+    public Map<String, Long> getEnrollmentResults() {
+        Map<String, Long> results = new LinkedHashMap<>();
+        for (EnrollmentResult result : EnrollmentResult.values()) {
+            results.put(result.name(), getCount(result));
+        }
+        return results;
+    }
+
+    /**
+     * Forgets everything recorded so far, e.g. at the start of a registration period.
+     */
+    @Override
+    public void reset() {
+        for (Operation operation : Operation.values()) {
+            latencies.get(operation).reset();
+            failures.get(operation).reset();
+        }
+        for (LongAdder results : enrollmentResults) {
+            results.reset();
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (Operation operation : Operation.values()) {
+            text.append(operation).append(": ").append(getStats(operation)).append('\n');
+        }
+        return text.append("Enrollment results: ").append(getEnrollmentResults()).toString();
+    }
+}
@@ -0,0 +1,23 @@
+import java.util.Map;
+
+/**
+ * What UniversityMetrics shows over JMX (e.g. in JConsole or VisualVM), see UniversityMetrics.registerMBean.
+ * Latencies are in nanoseconds.
+ */
+public interface UniversityMetricsMXBean {
+
+    UniversityMetrics.OperationStats getEnroll();
+
+    UniversityMetrics.OperationStats getDrop();
+
+    UniversityMetrics.OperationStats getRemoveStudent();
+
+    UniversityMetrics.OperationStats getRemoveCourse();
+
+    /**
+     * @return the number of enrollments per EnrollmentResult
+     */
+    Map<String, Long> getEnrollmentResults();
+
+    void reset();
+}
@@ -0,0 +1,500 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Saves and loads a whole University in a compact binary format.
+ *
+ * Java serialization (see Student.writeStudentsToFile) follows every reference of the object graph recursively,
+ * so big universities are slow to save and can overflow the stack. Here every student and course is written once,
+ * and references between them (pre-requisites, previous courses, enrollments, waitlists) are written as the
+ * position (ordinal) of the referenced record. The file size is proportional to the number of students, courses
+ * and enrollments, and loading rebuilds the graph in one linear pass.
+ *
+ * File layout (big endian, strings are an int length followed by UTF-8 bytes):
+ *   header   int MAGIC, short VERSION, string name, string motto, int studentCount, int courseCount
+ *   student  int id, string name, int n, n x course ordinal (previous courses)
+ *   course   string code, string name, int capacity,
+ *            int n, n x course ordinal (pre-requisites),
+ *            int n, n x student ordinal (enrolled students, in enrollment order),
+ *            int n, n x student ordinal (waitlist, in order)
+ * Students come first, then courses. Ordinals are the position of the record in its section.
+ *
+ * Since version 2 an index follows the records, so the file can be used without loading it (see MappedUniversity):
+ *   index    long x studentCount  offset of each student record
+ *            long x courseCount   offset of each course record
+ *            int x studentCount   student IDs, sorted
+ *            int x studentCount   ordinal of the student with each of the sorted IDs
+ *            int x courseCount    course ordinals, sorted by the UTF-8 bytes of their codes
+ *            long x studentCount  offset of the enrolled courses of each student
+ *            per student          int n, n x course ordinal (enrolled courses)
+ *   footer   long offset of the index, int MAGIC
+ * The loader in this class only needs the records and ignores the index.
+ */
+public class UniversitySnapshot {
+    static final int MAGIC = 0x554E4956; //"UNIV"
+    static final short VERSION = 2;
+    //Size of the footer at the end of version 2 files.
+    static final int FOOTER_SIZE = Long.BYTES + Integer.BYTES;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Writes the university to a file, replacing the file if it exists.
+     * The file holds the university as it was when the method was called. Other threads can keep changing it
+     * while it is being written (the file is written from a TermSnapshot).
+     *
+     * @param university the university to be saved
+     * @param file the output file
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(University university, Path file) throws IOException {
+        try (TermSnapshot snapshot = university.openSnapshot()) {
+            write(snapshot, file);
+        }
+    }
+
+    /**
+     * Writes a snapshot of a university to a file, replacing the file if it exists. The university can be
+     * changed while the file is written, the file holds what the snapshot sees.
+     *
+     * @param snapshot an open snapshot of the university to be saved
+     * @param file the output file
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(TermSnapshot snapshot, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Output output = new Output(channel);
+            Student[] students = snapshot.getStudents().toArray(new Student[0]);
+            Course[] courses = snapshot.getCourses().toArray(new Course[0]);
+            //The ordinal of each record, used to write references.
+            Ordinals ordinals = new Ordinals(students, courses);
+
+            output.putInt(MAGIC);
+            output.putShort(VERSION);
+            output.putString(snapshot.getUniversityName());
+            output.putString(snapshot.getUniversityMotto());
+            output.putInt(students.length);
+            output.putInt(courses.length);
+
+            long[] studentOffsets = new long[students.length];
+            //Kept for the index, which lists the enrolled courses of each student.
+            Course[][] enrolledCourses = new Course[students.length][];
+            for (int i = 0; i < students.length; i++) {
+                Student student = students[i];
+                //The image holds both lists, so the snapshot is asked once per student.
+                TermSnapshot.StudentImage image = snapshot.studentImage(student.getIdNumber());
+                studentOffsets[i] = output.position();
+                output.putInt(student.getIdNumber());
+                output.putString(student.getName());
+                output.putOrdinals(image.passed, ordinals);
+                enrolledCourses[i] = image.enrolled;
+            }
+            long[] courseOffsets = new long[courses.length];
+            byte[][] codes = new byte[courses.length][];
+            for (int i = 0; i < courses.length; i++) {
+                Course course = courses[i];
+                String code = course.getCourseCode();
+                TermSnapshot.CourseImage image = snapshot.courseImage(code);
+                courseOffsets[i] = output.position();
+                codes[i] = code.getBytes(StandardCharsets.UTF_8);
+                output.putString(code);
+                output.putString(course.getName());
+                output.putInt(image.capacity);
+                output.putOrdinals(image.preRequisites, ordinals);
+                output.putOrdinals(image.classList, ordinals);
+                output.putOrdinals(image.waitlist, ordinals);
+            }
+
+            writeIndex(output, students, enrolledCourses, studentOffsets, codes, courseOffsets, ordinals);
+            output.flush();
+        }
+    }
+
+    private static void writeIndex(Output output, Student[] students, Course[][] enrolledCourses,
+                                   long[] studentOffsets, byte[][] codes, long[] courseOffsets,
+                                   Ordinals ordinals) throws IOException {
+        long indexOffset = output.position();
+        for (long offset : studentOffsets) {
+            output.putLong(offset);
+        }
+        for (long offset : courseOffsets) {
+            output.putLong(offset);
+        }
+
+        //The snapshot lists the students sorted by ID, so the ordinal of each sorted ID is its position.
+        for (Student student : students) {
+            output.putInt(student.getIdNumber());
+        }
+        for (int i = 0; i < students.length; i++) {
+            output.putInt(i);
+        }
+
+        Integer[] byCode = new Integer[codes.length];
+        for (int i = 0; i < byCode.length; i++) {
+            byCode[i] = i;
+        }
+        Arrays.sort(byCode, (a, b) -> Arrays.compareUnsigned(codes[a], codes[b]));
+        for (int ordinal : byCode) {
+            output.putInt(ordinal);
+        }
+
+        //Enrolled courses are stored on the course side, the index adds them per student for direct access.
+        long enrolledOffsetsStart = output.position();
+        long enrolledStart = enrolledOffsetsStart + (long) Long.BYTES * students.length;
+        long offset = enrolledStart;
+        for (Course[] enrolled : enrolledCourses) {
+            output.putLong(offset);
+            offset += Integer.BYTES * (1L + ordinals.countKnown(enrolled));
+        }
+        for (Course[] enrolled : enrolledCourses) {
+            output.putOrdinals(enrolled, ordinals);
+        }
+
+        output.putLong(indexOffset);
+        output.putInt(MAGIC);
+    }
+
+    /**
+     * The ordinal (position in the file) of the students and courses written, found without boxing or hashing:
+     * courses by their Course.getOrdinal(), students through an open addressing table of their IDs. A student or course that is not one of those written (e.g. another instance with the same ID
+     * or code) has none.
+     */
+    private static final class Ordinals {
+        private final Student[] students;
+        private final int[] ids;
+        //Open addressing with linear probing: the ordinal + 1 of the student whose ID hashes there, 0 for none.
+        private final int[] studentSlots;
+        private final Course[] courses;
+        //The ordinal in the file of each Course.getOrdinal(), -1 for none.
+        private final int[] courseOrdinals;
+        //Courses that share their Course.getOrdinal() with another one written, which only happens to a course
+        //that was moved to another University. Null when there are none.
+        private Map<Course, Integer> sharedOrdinals;
+
+        Ordinals(Student[] students, Course[] courses) {
+            this.students = students;
+            this.courses = courses;
+            ids = new int[students.length];
+            int tableSize = 16;
+            while (tableSize / 2 < students.length) {
+                tableSize <<= 1;
+            }
+            studentSlots = new int[tableSize];
+            for (int i = 0; i < students.length; i++) {
+                ids[i] = students[i].getIdNumber();
+                int slot = slotOf(ids[i], tableSize - 1);
+                while (studentSlots[slot] != 0) {
+                    slot = (slot + 1) & (tableSize - 1);
+                }
+                studentSlots[slot] = i + 1;
+            }
+            int maxOrdinal = -1;
+            for (Course course : courses) {
+                maxOrdinal = Math.max(maxOrdinal, course.getOrdinal());
+            }
+            courseOrdinals = new int[maxOrdinal + 1];
+            Arrays.fill(courseOrdinals, -1);
+            for (int i = 0; i < courses.length; i++) {
+                int catalogOrdinal = courses[i].getOrdinal();
+                if (catalogOrdinal >= 0 && courseOrdinals[catalogOrdinal] < 0) {
+                    courseOrdinals[catalogOrdinal] = i;
+                } else {
+                    if (sharedOrdinals == null) {
+                        sharedOrdinals = new IdentityHashMap<>();
+                    }
+                    sharedOrdinals.put(courses[i], i);
+                }
+            }
+        }
+
+        int of(Student student) {
+            int id = student.getIdNumber();
+            int mask = studentSlots.length - 1;
+            for (int slot = slotOf(id, mask); studentSlots[slot] != 0; slot = (slot + 1) & mask) {
+                int ordinal = studentSlots[slot] - 1;
+                if (ids[ordinal] == id) {
+                    return students[ordinal] == student ? ordinal : -1;
+                }
+            }
+            return -1;
+        }
+
+        private static int slotOf(int id, int mask) {
+            //IDs are often sequential, so the bits are mixed to spread them over the table.
+            int hash = id * 0x9E3779B9;
+            return (hash ^ (hash >>> 16)) & mask;
+        }
+
+        int of(Course course) {
+            int catalogOrdinal = course.getOrdinal();
+            if (catalogOrdinal >= 0 && catalogOrdinal < courseOrdinals.length) {
+                int ordinal = courseOrdinals[catalogOrdinal];
+                if (ordinal >= 0 && courses[ordinal] == course) {
+                    return ordinal;
+                }
+            }
+            if (sharedOrdinals == null) {
+                return -1;
+            }
+            Integer ordinal = sharedOrdinals.get(course);
+            return ordinal == null ? -1 : ordinal;
+        }
+
+        int countKnown(Course[] values) {
+            int count = 0;
+            for (Course value : values) {
+                if (of(value) >= 0) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        int countKnown(Student[] values) {
+            int count = 0;
+            for (Student value : values) {
+                if (of(value) >= 0) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Loads a university saved with write.
+     *
+     * @param file the file to be read
+     * @return the university stored in the file
+     * @throws IOException if the file cannot be read or is not a university snapshot
+     */
+    public static University read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Input input = new Input(channel);
+            if (input.getInt() != MAGIC) {
+                throw new IOException(file + " is not a university snapshot");
+            }
+            short version = input.getShort();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + " in " + file);
+            }
+            String name = input.getString();
+            String motto = input.getString();
+            int studentCount = input.getInt();
+            int courseCount = input.getInt();
+            University university = new University(name, motto, studentCount, courseCount);
+
+            //Previous courses reference courses we have not read yet, so their ordinals are kept until the end.
+            Student[] students = new Student[studentCount];
+            int[][] previousCourses = new int[studentCount][];
+            for (int i = 0; i < studentCount; i++) {
+                int id = input.getInt();
+                students[i] = new Student(input.getString(), id);
+                previousCourses[i] = input.getOrdinals(courseCount);
+                if (!university.addStudent(students[i])) {
+                    throw new IOException("Corrupted snapshot: student ID " + id + " is there twice");
+                }
+            }
+
+            Course[] courses = new Course[courseCount];
+            int[][] preRequisites = new int[courseCount][];
+            for (int i = 0; i < courseCount; i++) {
+                String code = input.getString();
+                String courseName = input.getString();
+                int capacity = input.getInt();
+                //Seats are counted with an unlimited capacity, the real one may be lower than the class size.
+                Course course = new Course(courseName, code);
+                preRequisites[i] = input.getOrdinals(courseCount);
+                for (int ordinal : input.getOrdinals(studentCount)) {
+                    course.tryClaimSeat();
+                    course.addStudentToCourse(students[ordinal]);
+                    students[ordinal].enrollInCourse(course);
+                }
+                for (int ordinal : input.getOrdinals(studentCount)) {
+                    course.addToWaitlist(students[ordinal]);
+                }
+                course.setCapacity(capacity);
+                courses[i] = course;
+                if (!university.addCourse(course)) {
+                    throw new IOException("Corrupted snapshot: course code " + code + " is there twice");
+                }
+            }
+
+            for (int i = 0; i < courseCount; i++) {
+                for (int ordinal : preRequisites[i]) {
+                    university.addRequisiteToCourse(courses[i].getCourseCode(), courses[ordinal].getCourseCode());
+                }
+            }
+            for (int i = 0; i < studentCount; i++) {
+                for (int ordinal : previousCourses[i]) {
+                    students[i].addPreviousCourse(courses[ordinal]);
+                }
+            }
+            return university;
+        }
+    }
+
+    /**
+     * Buffered writer on top of a channel.
+     */
+    private static class Output {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private long flushed;
+
+        Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void putShort(short value) throws IOException {
+            ensure(Short.BYTES);
+            buffer.putShort(value);
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(Long.BYTES);
+            buffer.putLong(value);
+        }
+
+        /**
+         * @return the offset in the file of the next byte to be written
+         */
+        long position() {
+            return flushed + buffer.position();
+        }
+
+        void putString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            int written = 0;
+            while (written < bytes.length) {
+                ensure(1);
+                int chunk = Math.min(buffer.remaining(), bytes.length - written);
+                buffer.put(bytes, written, chunk);
+                written += chunk;
+            }
+        }
+
+        /**
+         * Writes a count followed by the ordinals of the values.
+         * Values without an ordinal (students or courses no longer in the university) are left out.
+         */
+        void putOrdinals(Course[] values, Ordinals ordinals) throws IOException {
+            putInt(ordinals.countKnown(values));
+            for (Course value : values) {
+                int ordinal = ordinals.of(value);
+                if (ordinal >= 0) {
+                    putInt(ordinal);
+                }
+            }
+        }
+
+        void putOrdinals(Student[] values, Ordinals ordinals) throws IOException {
+            putInt(ordinals.countKnown(values));
+            for (Student value : values) {
+                int ordinal = ordinals.of(value);
+                if (ordinal >= 0) {
+                    putInt(ordinal);
+                }
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                flushed += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Buffered reader on top of a channel.
+     */
+    private static class Input {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        Input(FileChannel channel) {
+            this.channel = channel;
+            buffer.flip();
+        }
+
+        int getInt() throws IOException {
+            ensure(Integer.BYTES);
+            return buffer.getInt();
+        }
+
+        short getShort() throws IOException {
+            ensure(Short.BYTES);
+            return buffer.getShort();
+        }
+
+        String getString() throws IOException {
+            int length = getInt();
+            if (length < 0) {
+                throw new IOException("Corrupted snapshot: negative string length");
+            }
+            byte[] bytes = new byte[length];
+            int read = 0;
+            while (read < length) {
+                ensure(1);
+                int chunk = Math.min(buffer.remaining(), length - read);
+                buffer.get(bytes, read, chunk);
+                read += chunk;
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Reads a count followed by that many ordinals, checking each one is below the given bound.
+         */
+        int[] getOrdinals(int bound) throws IOException {
+            int count = getInt();
+            if (count < 0) {
+                throw new IOException("Corrupted snapshot: negative count");
+            }
+            int[] ordinals = new int[count];
+            for (int i = 0; i < count; i++) {
+                ordinals[i] = getInt();
+                if (ordinals[i] < 0 || ordinals[i] >= bound) {
+                    throw new IOException("Corrupted snapshot: reference " + ordinals[i] + " out of range");
+                }
+            }
+            return ordinals;
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+            buffer.compact();
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException("Snapshot ended unexpectedly");
+                }
+            }
+            buffer.flip();
+        }
+    }
+}
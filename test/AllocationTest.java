@@ -0,0 +1,70 @@
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * Allocation budgets of the hot paths measured by HotPathBenchmark, so a change that starts allocating per student
+ * or per operation fails the build instead of only showing in the benchmark.
+ */
+public class AllocationTest {
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static final int STUDENTS = 20_000;
+    private static final int COURSES = 200;
+
+    //Results written here, so the JIT cannot drop the work that computed them.
+    static volatile long sink;
+
+    public static void testEnrollAndDropAllocateLittlePerOperation() {
+        for (int round = 0; round < 3; round++) {
+            University university = university();
+            long bytes = THREADS.getCurrentThreadAllocatedBytes();
+            for (int i = 0; i < STUDENTS; i++) {
+                university.enrollStudentInCourse(i, "C " + (i % COURSES));
+            }
+            long enroll = (THREADS.getCurrentThreadAllocatedBytes() - bytes) / STUDENTS;
+            bytes = THREADS.getCurrentThreadAllocatedBytes();
+            for (int i = 0; i < STUDENTS; i++) {
+                university.removeStudentFromCourse(i, "C " + (i % COURSES));
+            }
+            long drop = (THREADS.getCurrentThreadAllocatedBytes() - bytes) / STUDENTS;
+            if (round == 2) {
+                //Both include building the course code, about 40 bytes.
+                Assert.assertTrue(enroll < 512, "enrollment allocates " + enroll + " B/op");
+                Assert.assertTrue(drop < 128, "drop allocates " + drop + " B/op");
+            }
+        }
+    }
+
+    public static void testViewsAndPagesDoNotCopyEveryStudent() {
+        University university = university();
+        long view = 0;
+        long page = 0;
+        for (int round = 0; round < 20; round++) {
+            long bytes = THREADS.getCurrentThreadAllocatedBytes();
+            long ids = 0;
+            for (Student student : university.getStudentsView()) {
+                ids += student.getIdNumber();
+            }
+            view = THREADS.getCurrentThreadAllocatedBytes() - bytes;
+            bytes = THREADS.getCurrentThreadAllocatedBytes();
+            List<Student> students = university.getStudents(STUDENTS / 2, 50);
+            page = THREADS.getCurrentThreadAllocatedBytes() - bytes;
+            sink = ids + students.size();
+        }
+        //A copy of 20,000 references alone is 80 KB.
+        Assert.assertTrue(view < 1_024, "iterating the view allocates " + view + " B");
+        Assert.assertTrue(page < 1_024, "a page of 50 students allocates " + page + " B");
+    }
+
+    private static University university() {
+        University university = new University("U", "M", STUDENTS, COURSES);
+        for (int i = 0; i < COURSES; i++) {
+            university.addCourse(new Course("Course " + i, "C " + i));
+        }
+        for (int i = 0; i < STUDENTS; i++) {
+            university.addStudent("Student " + i, i);
+        }
+        return university;
+    }
+}
@@ -0,0 +1,76 @@
+import java.util.Objects;
+import java.util.concurrent.Callable;
+
+/**
+ * The checks the tests use. Each one throws an AssertionError, which fails the test (see TestRunner).
+ */
+public final class Assert {
+
+    private Assert() {
+    }
+
+    public static void fail(String message) {
+        throw new AssertionError(message);
+    }
+
+    public static void assertTrue(boolean condition, String message) {
+        if (!condition) {
+            fail(message);
+        }
+    }
+
+    public static void assertFalse(boolean condition, String message) {
+        assertTrue(!condition, message);
+    }
+
+    public static void assertEquals(Object expected, Object actual, String message) {
+        if (!Objects.equals(expected, actual)) {
+            fail(message + ": expected <" + expected + "> but was <" + actual + ">");
+        }
+    }
+
+    public static void assertEquals(long expected, long actual, String message) {
+        if (expected != actual) {
+            fail(message + ": expected <" + expected + "> but was <" + actual + ">");
+        }
+    }
+
+    public static void assertEquals(double expected, double actual, double delta, String message) {
+        if (Math.abs(expected - actual) > delta) {
+            fail(message + ": expected <" + expected + "> but was <" + actual + ">");
+        }
+    }
+
+    public static void assertSame(Object expected, Object actual, String message) {
+        if (expected != actual) {
+            fail(message + ": expected the same instance as <" + expected + "> but was <" + actual + ">");
+        }
+    }
+
+    public static void assertNull(Object actual, String message) {
+        if (actual != null) {
+            fail(message + ": expected null but was <" + actual + ">");
+        }
+    }
+
+    public static void assertNotNull(Object actual, String message) {
+        if (actual == null) {
+            fail(message + ": was null");
+        }
+    }
+
+    /**
+     * Checks that the call throws an exception of the given type, and returns it.
+     */
+    public static <T extends Throwable> T assertThrows(Class<T> type, Callable<?> call, String message) {
+        try {
+            call.call();
+        } catch (Throwable thrown) {
+            if (type.isInstance(thrown)) {
+                return type.cast(thrown);
+            }
+            throw new AssertionError(message + ": expected " + type.getSimpleName() + " but got " + thrown, thrown);
+        }
+        throw new AssertionError(message + ": expected " + type.getSimpleName() + " but nothing was thrown");
+    }
+}
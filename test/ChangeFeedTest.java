@@ -0,0 +1,214 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Tests of ChangeFeed: the events of every kind of change, batches, overflow, waiting polls, and state rebuilt from
+ * the events while registration goes on.
+ */
+public class ChangeFeedTest {
+
+    private static List<ChangeEvent> pollAll(ChangeFeed.Subscription subscription) {
+        List<ChangeEvent> events = new ArrayList<>();
+        while (subscription.poll(event -> events.add(event.copy()), 64) > 0) {
+            //Until the feed is drained.
+        }
+        return events;
+    }
+
+    public static void testEveryKindOfChangeIsAnEvent() {
+        University university = new University("U", "M");
+        ChangeFeed feed = ChangeFeed.attach(university, 64);
+        ChangeFeed.Subscription subscription = feed.subscribe();
+        Course algebra = new Course("Algebra", "ALG", 1);
+        Course biology = new Course("Biology", "BIO");
+        university.addCourse(algebra);
+        university.addCourse(biology);
+        university.addRequisiteToCourse("BIO", "ALG");
+        university.addStudent("A", 1);
+        university.addStudent("B", 2);
+        university.addPreviousCourseToStudent(1, "ALG");
+        university.enrollStudentInCourse(1, "BIO");
+        university.enrollStudentInCourse(2, "ALG");
+        university.addStudentToWaitlist(1, "ALG");
+        university.setCourseCapacity("ALG", 3);
+        university.removeStudentFromCourse(1, "BIO");
+        university.removeStudentFromUniversity(2);
+        university.enrollStudentInCourse(1, "BIO");
+        university.removeCourseFromUniversity("BIO");
+        //Refused changes are not events.
+        university.enrollStudentInCourse(7, "ALG");
+        university.removeStudentFromCourse(1, "BIO");
+
+        List<ChangeEvent> events = pollAll(subscription);
+        List<String> described = new ArrayList<>();
+        for (ChangeEvent event : events) {
+            described.add(event.getType() + (event.getStudent() == null ? "" : " " + event.getStudent().getIdNumber())
+                    + (event.getCourse() == null ? "" : " " + event.getCourse().getCourseCode())
+                    + (event.getOtherCourse() == null ? "" : " " + event.getOtherCourse().getCourseCode()));
+        }
+        Assert.assertEquals(List.of("COURSE_ADDED ALG", "COURSE_ADDED BIO", "REQUISITE_ADDED BIO ALG",
+                "STUDENT_ADDED 1", "STUDENT_ADDED 2", "PREVIOUS_COURSE_ADDED 1 ALG", "ENROLLED 1 BIO",
+                "ENROLLED 2 ALG", "WAITLISTED 1 ALG", "CAPACITY_CHANGED ALG", "ENROLLED 1 ALG", "DROPPED 1 BIO",
+                "DROPPED 2 ALG", "STUDENT_REMOVED 2", "ENROLLED 1 BIO", "DROPPED 1 BIO", "COURSE_REMOVED BIO"),
+                described, "events");
+        Assert.assertEquals(3, events.get(9).getCapacity(), "new capacity");
+        for (int i = 0; i < events.size(); i++) {
+            Assert.assertEquals(i, events.get(i).getSequence(), "sequence of event " + i);
+        }
+        Assert.assertEquals(events.size(), feed.getEventCount(), "event count");
+        Assert.assertEquals(0, subscription.getLag(), "lag once drained");
+        Assert.assertEquals(events.size(), subscription.getPosition(), "position once drained");
+    }
+
+    public static void testPollHandsOverAtMostTheBatch() {
+        University university = new University("U", "M");
+        ChangeFeed feed = ChangeFeed.attach(university, 16);
+        university.addStudent("Before", 0);
+        ChangeFeed.Subscription subscription = feed.subscribe();
+        for (int id = 1; id <= 10; id++) {
+            university.addStudent("S", id);
+        }
+        Assert.assertEquals(10, subscription.getLag(), "lag");
+        List<Integer> ids = new ArrayList<>();
+        Assert.assertEquals(4, subscription.poll(event -> ids.add(event.getStudent().getIdNumber()), 4), "batch");
+        Assert.assertEquals(6, subscription.poll(event -> ids.add(event.getStudent().getIdNumber()), 100), "rest");
+        Assert.assertEquals(0, subscription.poll(event -> ids.add(-1), 100), "nothing left");
+        Assert.assertEquals(List.of(1, 2, 3, 4, 5, 6, 7, 8, 9, 10), ids, "students, not the one before subscribing");
+    }
+
+    public static void testSlowSubscriptionOverflowsAndSkipsAhead() {
+        University university = new University("U", "M");
+        ChangeFeed feed = ChangeFeed.attach(university, 4);
+        ChangeFeed.Subscription subscription = feed.subscribe();
+        for (int id = 0; id < 10; id++) {
+            university.addStudent("S", id);
+        }
+        Assert.assertEquals(0, subscription.poll(event -> Assert.fail("overwritten event " + event), 10), "poll");
+        Assert.assertTrue(subscription.hasOverflowed(), "overflowed");
+        Assert.assertEquals(10, subscription.skipToLatest(), "skipped");
+        Assert.assertFalse(subscription.hasOverflowed(), "overflow cleared");
+        university.addStudent("S", 10);
+        List<ChangeEvent> events = pollAll(subscription);
+        Assert.assertEquals(1, events.size(), "events after skipping");
+        Assert.assertEquals(10, events.get(0).getSequence(), "sequence after skipping");
+    }
+
+    public static void testWaitingPollGetsAnEventFromAnotherThread() throws Exception {
+        University university = new University("U", "M");
+        ChangeFeed feed = ChangeFeed.attach(university, 8);
+        ChangeFeed.Subscription subscription = feed.subscribe();
+        long start = System.nanoTime();
+        Assert.assertEquals(0, subscription.poll(event -> { }, 1, 20, TimeUnit.MILLISECONDS), "nothing in time");
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20), "waited for the timeout");
+
+        Thread writer = new Thread(() -> {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(30));
+            university.addStudent("Late", 1);
+        });
+        writer.start();
+        int[] received = new int[1];
+        Assert.assertEquals(1, subscription.poll(event -> received[0] = event.getStudent().getIdNumber(), 10, 10,
+                TimeUnit.SECONDS), "event waited for");
+        Assert.assertEquals(1, received[0], "student of the event");
+        writer.join();
+    }
+
+    public static void testDetachedFeedKeepsWhatWasRecorded() {
+        University university = new University("U", "M");
+        ChangeFeed feed = ChangeFeed.attach(university, 8);
+        ChangeFeed.Subscription subscription = feed.subscribe();
+        university.addStudent("A", 1);
+        feed.detach();
+        university.addStudent("B", 2);
+        Assert.assertEquals(1, pollAll(subscription).size(), "events");
+        Assert.assertThrows(IllegalArgumentException.class, () -> ChangeFeed.attach(university, 12),
+                "capacity not a power of two");
+    }
+
+    public static void testClassSizesRebuiltFromEventsMatchTheRosters() throws Exception {
+        University university = new University("U", "M");
+        for (int i = 0; i < 8; i++) {
+            university.addCourse(new Course("Course " + i, "C " + i));
+        }
+        for (int id = 0; id < 500; id++) {
+            university.addStudent("Student " + id, id);
+        }
+        ChangeFeed feed = ChangeFeed.attach(university, 1 << 12);
+        ChangeFeed.Subscription subscription = feed.subscribe();
+        Map<String, Integer> sizes = new HashMap<>();
+        AtomicInteger writing = new AtomicInteger(3);
+        TestThreads.run(4, 60, thread -> {
+            if (thread == 0) {
+                //The consumer keeps up with the writers, so it never overflows.
+                while (writing.get() > 0 || subscription.getLag() > 0) {
+                    subscription.poll(event -> {
+                        String code = event.getCourse() == null ? null : event.getCourse().getCourseCode();
+                        if (event.getType() == ChangeEvent.Type.ENROLLED) {
+                            sizes.merge(code, 1, Integer::sum);
+                        } else if (event.getType() == ChangeEvent.Type.DROPPED) {
+                            sizes.merge(code, -1, Integer::sum);
+                        }
+                    }, 256, 1, TimeUnit.MILLISECONDS);
+                    Assert.assertFalse(subscription.hasOverflowed(), "consumer overflowed");
+                }
+                return;
+            }
+            try {
+                Random random = new Random(thread);
+                for (int i = 0; i < 20_000; i++) {
+                    int id = random.nextInt(500);
+                    String code = "C " + random.nextInt(8);
+                    if (random.nextBoolean()) {
+                        university.enroll(id, code);
+                    } else {
+                        university.removeStudentFromCourse(id, code);
+                    }
+                    if (random.nextInt(200) == 0) {
+                        //Ends every enrollment of the student at once.
+                        university.removeStudentFromUniversity(id);
+                        university.addStudent("Again " + id, id);
+                    }
+                    if (subscription.getLag() > feed.getCapacity() / 2) {
+                        Thread.yield();
+                    }
+                }
+            } finally {
+                writing.decrementAndGet();
+            }
+        });
+        for (Course course : university.getCoursesView()) {
+            int size = sizes.getOrDefault(course.getCourseCode(), 0);
+            Assert.assertEquals(course.getEnrolledStudents().size(), size, "class size of " + course.getCourseCode());
+        }
+        Assert.assertEquals(0, feed.getLostEventCount(), "lost events");
+    }
+
+    public static void testWritersNeverWaitForEachOtherOnATinyRing() throws Exception {
+        University university = new University("U", "M");
+        //Two slots for four writers: writers often find the one of the lap before still in their slot.
+        ChangeFeed feed = ChangeFeed.attach(university, 2);
+        ChangeFeed.Subscription subscription = feed.subscribe();
+        TestThreads.run(4, 60, thread -> {
+            for (int i = 0; i < 50_000; i++) {
+                int id = thread * 100_000 + i;
+                university.addStudent("S", id);
+                university.removeStudentFromUniversity(id);
+            }
+        });
+        Assert.assertEquals(4 * 2 * 50_000, feed.getEventCount(), "events recorded");
+        //Whatever was lost, a subscription either reads events in order or is told it overflowed.
+        long[] expected = {subscription.getPosition()};
+        while (subscription.poll(event -> {
+            Assert.assertEquals(expected[0]++, event.getSequence(), "sequence");
+        }, 64) > 0) {
+            //Until the feed is drained or the subscription overflows.
+        }
+        Assert.assertTrue(subscription.hasOverflowed() || subscription.getLag() == 0, "stuck subscription");
+    }
+}
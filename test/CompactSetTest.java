@@ -0,0 +1,111 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests of CompactSet, against a LinkedHashSet doing the same changes, inline and once promoted.
+ */
+public class CompactSetTest {
+
+    public static void testMatchesALinkedHashSetAcrossPromotion() {
+        Random random = new Random(13);
+        for (int round = 0; round < 200; round++) {
+            CompactSet<Integer> set = new CompactSet<>();
+            LinkedHashSet<Integer> expected = new LinkedHashSet<>();
+            int values = round % 2 == 0 ? CompactSet.MAX_INLINE : 3 * CompactSet.MAX_INLINE;
+            for (int i = 0; i < 60; i++) {
+                int value = random.nextInt(values);
+                if (random.nextInt(3) == 0) {
+                    Assert.assertEquals(expected.remove(value), set.remove(value), "remove " + value);
+                } else {
+                    Assert.assertEquals(expected.add(value), set.add(value), "add " + value);
+                }
+                Assert.assertEquals(expected.size(), set.size(), "size");
+                Assert.assertEquals(expected.contains(i % values), set.contains(i % values), "contains " + i % values);
+            }
+            Assert.assertEquals(expected, set, "elements");
+            Assert.assertEquals(new HashSet<>(expected), new HashSet<>(List.of(set.toArray())), "toArray");
+        }
+    }
+
+    public static void testKeepsTheOrderOfAdditionWhileInline() {
+        CompactSet<String> set = new CompactSet<>();
+        for (String element : new String[] {"d", "a", "c", "b"}) {
+            set.add(element);
+        }
+        set.remove("a");
+        set.add("e");
+        Assert.assertEquals(List.of("d", "c", "b", "e"), new ArrayList<>(set), "order");
+        Assert.assertEquals(List.of("d", "c", "b", "e"), List.of(set.toArray(new String[0])), "toArray");
+        String[] bigger = set.toArray(new String[6]);
+        Assert.assertNull(bigger[4], "toArray ends the elements with null");
+    }
+
+    public static void testIteratorRemoveKeepsTheOtherElements() {
+        CompactSet<Integer> set = new CompactSet<>();
+        for (int i = 0; i < CompactSet.MAX_INLINE; i++) {
+            set.add(i);
+        }
+        for (Iterator<Integer> iterator = set.iterator(); iterator.hasNext(); ) {
+            if (iterator.next() % 2 == 0) {
+                iterator.remove();
+            }
+        }
+        Assert.assertEquals(List.of(1, 3, 5, 7), new ArrayList<>(set), "odd elements left");
+        Iterator<Integer> iterator = set.iterator();
+        Assert.assertThrows(IllegalStateException.class, () -> {
+            iterator.remove();
+            return null;
+        }, "remove before next");
+    }
+
+    public static void testIteratorFailsAfterAChange() {
+        CompactSet<Integer> set = new CompactSet<>();
+        set.add(1);
+        set.add(2);
+        Iterator<Integer> iterator = set.iterator();
+        iterator.next();
+        set.add(3);
+        Assert.assertThrows(ConcurrentModificationException.class, iterator::next, "next after add");
+    }
+
+    public static void testIteratorFailsAfterPromotion() {
+        CompactSet<Integer> set = new CompactSet<>();
+        for (int i = 0; i < CompactSet.MAX_INLINE; i++) {
+            set.add(i);
+        }
+        Iterator<Integer> iterator = set.iterator();
+        iterator.next();
+        set.add(CompactSet.MAX_INLINE);
+        Assert.assertThrows(ConcurrentModificationException.class, iterator::next, "next after promotion");
+        Assert.assertEquals(CompactSet.MAX_INLINE + 1, set.size(), "size once promoted");
+    }
+
+    @SuppressWarnings("unchecked")
+    public static void testSerializesInlineAndPromoted() throws Exception {
+        for (int elements : new int[] {0, 3, CompactSet.MAX_INLINE + 5}) {
+            CompactSet<String> set = new CompactSet<>();
+            for (int i = 0; i < elements; i++) {
+                set.add("s" + i);
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+                output.writeObject(set);
+            }
+            try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                CompactSet<String> copy = (CompactSet<String>) input.readObject();
+                Assert.assertEquals(set, copy, "copy of " + elements + " elements");
+                Assert.assertTrue(copy.add("new"), "copy of " + elements + " elements takes more");
+                Assert.assertEquals(elements + 1, copy.size(), "size of the copy");
+            }
+        }
+    }
+}
@@ -0,0 +1,198 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Tests of ConflictEngine: the co-enrollment graph against a count from scratch, clashes and exam scheduling.
+ */
+public class ConflictEngineTest {
+
+    private static TimeSlot slot(DayOfWeek day, String start, String end) {
+        return new TimeSlot(day, LocalTime.parse(start), LocalTime.parse(end));
+    }
+
+    public static void testTimeSlotsOverlapOnTheSameDayOnly() {
+        TimeSlot morning = slot(DayOfWeek.MONDAY, "09:00", "10:30");
+        Assert.assertTrue(morning.overlaps(slot(DayOfWeek.MONDAY, "10:00", "11:00")), "overlapping");
+        Assert.assertFalse(morning.overlaps(slot(DayOfWeek.MONDAY, "10:30", "11:00")), "starting at the end");
+        Assert.assertFalse(morning.overlaps(slot(DayOfWeek.TUESDAY, "09:00", "10:30")), "other day");
+        Assert.assertThrows(IllegalArgumentException.class,
+                () -> slot(DayOfWeek.MONDAY, "10:00", "10:00"), "empty slot");
+    }
+
+    public static void testTimeSlotSerializes() throws Exception {
+        TimeSlot slot = slot(DayOfWeek.FRIDAY, "14:00", "15:15");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(slot);
+        }
+        try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            Assert.assertEquals(slot, input.readObject(), "copy");
+        }
+    }
+
+    public static void testGraphFollowsEveryChange() {
+        Random random = new Random(11);
+        University university = new University("U", "M");
+        for (int i = 0; i < 12; i++) {
+            university.addCourse(new Course("Course " + i, "C" + i));
+        }
+        for (int id = 0; id < 200; id++) {
+            university.addStudent("Student " + id, id);
+        }
+        for (int i = 0; i < 600; i++) {
+            university.enroll(random.nextInt(200), "C" + random.nextInt(12));
+        }
+        //Attached to a university that already has enrollments, then kept up to date.
+        ConflictEngine engine = ConflictEngine.attach(university);
+        assertMatchesACount(university, engine, "after attach");
+        for (int i = 0; i < 3_000; i++) {
+            int id = random.nextInt(220);
+            String code = "C" + random.nextInt(12);
+            switch (random.nextInt(10)) {
+                case 0:
+                    university.removeStudentFromUniversity(id);
+                    break;
+                case 1:
+                    university.addStudent("Student " + id, id);
+                    break;
+                case 2:
+                    if (random.nextInt(20) == 0) {
+                        university.removeCourseFromUniversity(code);
+                    } else {
+                        university.addCourse(new Course("Course", code));
+                    }
+                    break;
+                case 3:
+                case 4:
+                case 5:
+                    university.removeStudentFromCourse(id, code);
+                    break;
+                default:
+                    university.enroll(id, code);
+            }
+        }
+        assertMatchesACount(university, engine, "after the changes");
+    }
+
+    public static void testGraphStaysExactUnderConcurrentRegistration() throws Exception {
+        University university = new University("U", "M");
+        for (int i = 0; i < 16; i++) {
+            university.addCourse(new Course("Course " + i, "C" + i));
+        }
+        for (int id = 0; id < 400; id++) {
+            university.addStudent("Student " + id, id);
+        }
+        ConflictEngine engine = ConflictEngine.attach(university);
+        TestThreads.run(4, 60, thread -> {
+            Random random = new Random(thread);
+            for (int i = 0; i < 20_000; i++) {
+                int id = random.nextInt(400);
+                String code = "C" + random.nextInt(16);
+                if (random.nextBoolean()) {
+                    university.enroll(id, code);
+                } else {
+                    university.removeStudentFromCourse(id, code);
+                }
+            }
+        });
+        assertMatchesACount(university, engine, "after concurrent registration");
+    }
+
+    private static void assertMatchesACount(University university, ConflictEngine engine, String when) {
+        List<Course> courses = List.copyOf(university.getCoursesView());
+        int pairs = 0;
+        for (Course first : courses) {
+            for (Course second : courses) {
+                int shared = 0;
+                for (Student student : university.getStudentsView()) {
+                    Set<Course> enrolled = student.getEnrolledCourses();
+                    if (first != second && enrolled.contains(first) && enrolled.contains(second)) {
+                        shared++;
+                    }
+                }
+                Assert.assertEquals(shared, engine.getSharedStudents(first, second),
+                        "students in " + first.getCourseCode() + " and " + second.getCourseCode() + " " + when);
+                if (shared > 0 && first.getOrdinal() < second.getOrdinal()) {
+                    pairs++;
+                }
+            }
+        }
+        Assert.assertEquals(pairs, engine.getPairCount(), "pairs " + when);
+    }
+
+    public static void testClashesByMeetingTimeAndExamSlot() {
+        University university = new University("U", "M");
+        Course algebra = new Course("Algebra", "ALG");
+        Course biology = new Course("Biology", "BIO");
+        Course chemistry = new Course("Chemistry", "CHE");
+        Course drawing = new Course("Drawing", "DRA");
+        algebra.setMeetingTimes(slot(DayOfWeek.MONDAY, "09:00", "10:30"));
+        biology.setMeetingTimes(slot(DayOfWeek.MONDAY, "10:00", "11:00"));
+        chemistry.setMeetingTimes(slot(DayOfWeek.MONDAY, "10:30", "12:00"));
+        chemistry.setExamSlot(3);
+        drawing.setExamSlot(3);
+        for (Course course : new Course[] {algebra, biology, chemistry, drawing}) {
+            university.addCourse(course);
+        }
+        university.addStudent("A", 1);
+        university.enroll(1, "ALG");
+        university.enroll(1, "DRA");
+        ConflictEngine engine = ConflictEngine.attach(university);
+
+        Assert.assertEquals(List.of(algebra), engine.getClashes(1, "BIO"), "meeting at the same time");
+        Assert.assertEquals(List.of(drawing), engine.getClashes(1, "CHE"), "exam in the same slot");
+        Assert.assertTrue(engine.wouldClash(1, "BIO"), "would clash with algebra");
+        Assert.assertFalse(engine.wouldClash(1, "ALG"), "a course does not clash with itself");
+        Assert.assertEquals(List.of(), engine.getClashes(2, "BIO"), "unknown student");
+        Assert.assertFalse(engine.wouldClash(1, "XYZ"), "unknown course");
+    }
+
+    public static void testExamScheduleSeparatesCoursesSharingStudents() {
+        Random random = new Random(5);
+        University university = new University("U", "M");
+        for (int i = 0; i < 30; i++) {
+            university.addCourse(new Course("Course " + i, "C" + i));
+        }
+        for (int id = 0; id < 300; id++) {
+            university.addStudent("Student " + id, id);
+            for (int k = 0; k < 3; k++) {
+                university.enroll(id, "C" + random.nextInt(30));
+            }
+        }
+        university.removeCourseFromUniversity("C7");
+        ConflictEngine engine = ConflictEngine.attach(university);
+        ConflictEngine.ExamSchedule schedule = engine.scheduleExams();
+
+        List<Course> courses = List.copyOf(university.getCoursesView());
+        int scheduled = 0;
+        for (int slot = 0; slot < schedule.getSlotCount(); slot++) {
+            scheduled += schedule.getCourses(slot).size();
+        }
+        Assert.assertEquals(courses.size(), scheduled, "every course scheduled once");
+        for (Course first : courses) {
+            int slot = schedule.getSlot(first);
+            Assert.assertTrue(slot >= 0 && slot < schedule.getSlotCount(), "slot of " + first.getCourseCode());
+            for (Course second : courses) {
+                if (first != second && engine.getSharedStudents(first, second) > 0) {
+                    Assert.assertTrue(slot != schedule.getSlot(second),
+                            first.getCourseCode() + " and " + second.getCourseCode() + " share a slot");
+                }
+            }
+        }
+        Assert.assertEquals(Course.NO_EXAM_SLOT, schedule.getSlot(new Course("Other", "C7")), "removed course");
+
+        schedule.apply();
+        for (Course course : courses) {
+            Assert.assertEquals(schedule.getSlot(course), course.getExamSlot(), "applied to " + course.getCourseCode());
+            Assert.assertEquals(!engine.getClashes(0, course.getCourseCode()).isEmpty(),
+                    engine.wouldClash(0, course.getCourseCode()), "wouldClash for " + course.getCourseCode());
+        }
+    }
+}
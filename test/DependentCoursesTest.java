@@ -0,0 +1,103 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Tests of the reverse pre-requisite index (Course.getDependentCourses) and of removing courses with it.
+ */
+public class DependentCoursesTest {
+
+    public static void testRemovingACourseUpdatesItsDependents() {
+        //C 0 <- C 1 <- C 3 and C 0 <- C 2 <- C 3 (a diamond), C 4 depends on C 3.
+        University university = university(5);
+        university.addRequisiteToCourse("C 1", "C 0");
+        university.addRequisiteToCourse("C 2", "C 0");
+        university.addRequisiteToCourse("C 3", "C 1");
+        university.addRequisiteToCourse("C 3", "C 2");
+        university.addRequisiteToCourse("C 4", "C 3");
+        Assert.assertEquals(codes(university, "C 1", "C 2", "C 3", "C 4"), university.getDependentCourses("C 0"),
+                "dependents of C 0");
+
+        Assert.assertTrue(university.removeCourseFromUniversity("C 1"), "removal");
+        Assert.assertEquals(codes(university, "C 2"), university.getCourse("C 3").getPreRequisites(),
+                "direct pre-requisites of C 3");
+        Assert.assertEquals(codes(university, "C 0", "C 2", "C 3"), university.getAllPreRequisites("C 4"),
+                "all pre-requisites of C 4");
+        Assert.assertEquals(codes(university, "C 2", "C 3", "C 4"), university.getDependentCourses("C 0"),
+                "dependents of C 0");
+        Assert.assertTrue(university.getCourse("C 0").getDependentCourses().contains(university.getCourse("C 2")),
+                "index of C 0");
+
+        Assert.assertTrue(university.removeCourseFromUniversity("C 2"), "removal of the other branch");
+        Assert.assertEquals(codes(university, "C 3"), university.getAllPreRequisites("C 4"),
+                "C 0 is no longer needed by C 4");
+        Assert.assertTrue(university.getCourse("C 0").getDependentCourses().isEmpty(), "no dependents left");
+    }
+
+    public static void testIndexMatchesThePreRequisitesOfARandomCatalog() {
+        Random random = new Random(9);
+        int size = 400;
+        University university = university(size);
+        for (int i = 0; i < 1_200; i++) {
+            int course = 1 + random.nextInt(size - 1);
+            university.addRequisiteToCourse("C " + course, "C " + random.nextInt(course));
+        }
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 20; i++) {
+                university.removeCourseFromUniversity("C " + random.nextInt(size));
+            }
+            for (Course course : university.getCourses()) {
+                for (Course preRequisite : course.getPreRequisites()) {
+                    Assert.assertTrue(preRequisite.getDependentCourses().contains(course),
+                            course.getCourseCode() + " missing from the dependents of " + preRequisite.getCourseCode());
+                    Assert.assertSame(preRequisite, university.getCourse(preRequisite.getCourseCode()),
+                            "removed pre-requisite left in " + course.getCourseCode());
+                }
+                for (Course dependent : course.getDependentCourses()) {
+                    Assert.assertTrue(dependent.getPreRequisites().contains(course),
+                            dependent.getCourseCode() + " wrongly listed as a dependent of " + course.getCourseCode());
+                }
+                Assert.assertEquals(walk(course), new HashSet<>(university.getAllPreRequisites(course.getCourseCode())),
+                        "closure of " + course.getCourseCode());
+            }
+        }
+    }
+
+    public static void testUnknownCourse() {
+        Assert.assertNull(university(1).getDependentCourses("NOPE"), "unknown course");
+    }
+
+    //Every pre-requisite reachable from the course, found by walking the lists.
+    private static Set<Course> walk(Course course) {
+        Set<Course> seen = new HashSet<>();
+        ArrayDeque<Course> pending = new ArrayDeque<>(course.getPreRequisites());
+        while (!pending.isEmpty()) {
+            Course next = pending.poll();
+            if (seen.add(next)) {
+                pending.addAll(next.getPreRequisites());
+            }
+        }
+        return seen;
+    }
+
+    private static List<Course> codes(University university, String... codes) {
+        List<Course> courses = new ArrayList<>();
+        for (String code : codes) {
+            courses.add(university.getCourse(code));
+        }
+        courses.sort(Comparator.comparingInt(Course::getOrdinal));
+        return courses;
+    }
+
+    private static University university(int courses) {
+        University university = new University("U", "M");
+        for (int i = 0; i < courses; i++) {
+            university.addCourse(new Course("Course " + i, "C " + i));
+        }
+        return university;
+    }
+}
@@ -0,0 +1,76 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests of LatencyHistogram: the bucket bounds, percentiles against the sorted values, and concurrent recording.
+ */
+public class LatencyHistogramTest {
+
+    public static void testBucketsKeepValuesWithinThreePercent() {
+        Random random = new Random(3);
+        int previous = -1;
+        for (long value = 0; value < 100_000; value++) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            Assert.assertTrue(bucket >= previous, "buckets grow with the values at " + value);
+            previous = bucket;
+            assertWithinBucket(value);
+        }
+        for (int i = 0; i < 100_000; i++) {
+            assertWithinBucket((random.nextLong() >>> 1) >>> random.nextInt(63));
+        }
+        assertWithinBucket(Long.MAX_VALUE);
+    }
+
+    private static void assertWithinBucket(long value) {
+        long highest = LatencyHistogram.highestValueOf(LatencyHistogram.bucketOf(value));
+        Assert.assertTrue(highest >= value, "bucket of " + value + " ends at " + highest);
+        Assert.assertTrue(highest - value <= value / 32, "bucket of " + value + " ends too far, at " + highest);
+    }
+
+    public static void testPercentilesMatchTheSortedValues() {
+        Random random = new Random(9);
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] values = new long[50_000];
+        long sum = 0;
+        for (int i = 0; i < values.length; i++) {
+            //Log-normal like latencies, from a few hundred nanoseconds to milliseconds.
+            values[i] = (long) Math.exp(6 + 2 * Math.abs(random.nextGaussian()));
+            histogram.record(values[i]);
+            sum += values[i];
+        }
+        Arrays.sort(values);
+        Assert.assertEquals(values.length, histogram.getCount(), "count");
+        Assert.assertEquals(values[values.length - 1], histogram.getMax(), "max");
+        Assert.assertEquals(sum / (double) values.length, histogram.getMean(), 1e-6, "mean");
+        for (double percentile : new double[] {1, 50, 90, 99, 99.9, 100}) {
+            long exact = values[(int) Math.ceil(values.length * percentile / 100) - 1];
+            long measured = histogram.getPercentile(percentile);
+            Assert.assertTrue(measured >= exact && measured - exact <= exact / 32,
+                    "p" + percentile + ": " + measured + " for " + exact);
+        }
+    }
+
+    public static void testNegativeValuesCountAsZeroAndResetForgetsEverything() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(0, histogram.getPercentile(50), "empty");
+        histogram.record(-5);
+        Assert.assertEquals(1, histogram.getCount(), "count");
+        Assert.assertEquals(0, histogram.getPercentile(100), "negative value");
+        histogram.record(1_000);
+        histogram.reset();
+        Assert.assertEquals(0, histogram.getCount(), "count after reset");
+        Assert.assertEquals(0, histogram.getMax(), "max after reset");
+        Assert.assertEquals(0.0, histogram.getMean(), 0, "mean after reset");
+    }
+
+    public static void testConcurrentRecordingLosesNothing() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        TestThreads.run(4, 60, thread -> {
+            for (int i = 0; i < 100_000; i++) {
+                histogram.record(i % 1_000 + thread);
+            }
+        });
+        Assert.assertEquals(400_000, histogram.getCount(), "count");
+        Assert.assertEquals(1_002, histogram.getMax(), "max");
+    }
+}
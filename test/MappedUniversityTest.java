@@ -0,0 +1,253 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+/**
+ * Tests of MappedUniversity, against the University the snapshot file was written from.
+ */
+public class MappedUniversityTest {
+
+    public static void testViewsMatchTheUniversity() throws Exception {
+        University university = randomUniversity(new Random(3), 2_000, 60);
+        Path file = save(university);
+        try {
+            MappedUniversity mapped = MappedUniversity.open(file);
+            Assert.assertEquals(university.getStudents().size(), mapped.getStudentCount(), "students");
+            Assert.assertEquals(university.getCourses().size(), mapped.getCourseCount(), "courses");
+            for (Student student : university.getStudents()) {
+                MappedUniversity.StudentView view = mapped.getStudent(student.getIdNumber());
+                Assert.assertNotNull(view, "student " + student.getIdNumber());
+                Assert.assertEquals(student.getName(), view.getName(), "name");
+                Assert.assertEquals(codes(student.getEnrolledCourses()), viewCodes(view.getEnrolledCourses()),
+                        "enrolled courses of " + student.getIdNumber());
+                Assert.assertEquals(codes(student.getPreviousCourses()), viewCodes(view.getPreviousCourses()),
+                        "previous courses of " + student.getIdNumber());
+            }
+            for (Course course : university.getCourses()) {
+                MappedUniversity.CourseView view = mapped.getCourse(course.getCourseCode());
+                Assert.assertNotNull(view, "course " + course.getCourseCode());
+                Assert.assertEquals(course.getName(), view.getName(), "name");
+                Assert.assertEquals(course.getCapacity(), view.getCapacity(), "capacity");
+                Assert.assertEquals(codes(course.getPreRequisites()), viewCodes(view.getPreRequisites()),
+                        "pre-requisites of " + course.getCourseCode());
+                Assert.assertEquals(ids(course.getEnrolledStudents()), viewIds(view.getEnrolledStudents()),
+                        "class list of " + course.getCourseCode());
+                Assert.assertEquals(ids(course.getWaitlist()), viewIds(view.getWaitlist()),
+                        "waitlist of " + course.getCourseCode());
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    public static void testLookupsOfExtremeAndMissingKeys() throws Exception {
+        University university = new University("U", "M");
+        int[] ids = {Integer.MIN_VALUE, -5, 0, 7, Integer.MAX_VALUE};
+        for (int id : ids) {
+            university.addStudent("S" + id, id);
+        }
+        //Codes whose UTF-8 order differs from their String order (a surrogate pair sorts before U+FFFD in Java).
+        String[] codes = {"A", "B 1", "\u00e9", "\ufffd", "\ud83d\ude00", "Z"};
+        for (String code : codes) {
+            university.addCourse(new Course("Course " + code, code));
+        }
+        Path file = save(university);
+        try {
+            MappedUniversity mapped = MappedUniversity.open(file);
+            for (int id : ids) {
+                Assert.assertEquals(id, mapped.getStudent(id).getIdNumber(), "student " + id);
+            }
+            for (String code : codes) {
+                Assert.assertEquals(code, mapped.getCourse(code).getCourseCode(), "course " + code);
+            }
+            Assert.assertNull(mapped.getStudent(6), "missing student");
+            Assert.assertNull(mapped.getCourse("B"), "missing course");
+            Assert.assertNull(mapped.getCourse("B 10"), "missing course with a known prefix");
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    public static void testConcurrentReads() throws Exception {
+        University university = randomUniversity(new Random(5), 5_000, 40);
+        Path file = save(university);
+        try {
+            MappedUniversity mapped = MappedUniversity.open(file);
+            List<Student> students = university.getStudents();
+            TestThreads.run(4, 60, thread -> {
+                Random random = new Random(thread);
+                for (int i = 0; i < 20_000; i++) {
+                    Student student = students.get(random.nextInt(students.size()));
+                    MappedUniversity.StudentView view = mapped.getStudent(student.getIdNumber());
+                    Assert.assertEquals(student.getName(), view.getName(), "name of " + student.getIdNumber());
+                    Assert.assertEquals(student.getEnrolledCourses().size(), view.getEnrolledCourses().size(),
+                            "enrolled courses of " + student.getIdNumber());
+                }
+            });
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    public static void testOtherFilesAreRefused() throws Exception {
+        Path file = Files.createTempFile("university", ".bin");
+        try {
+            Files.write(file, new byte[64]);
+            Assert.assertThrows(IOException.class, () -> MappedUniversity.open(file), "not a snapshot");
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    public static void testDamagedHeaderOrIndexIsRefused() throws Exception {
+        University university = randomUniversity(new Random(5), 50, 5);
+        Path file = save(university);
+        try {
+            byte[] original = Files.readAllBytes(file);
+            byte[] saved = original.clone();
+            //The counts follow the magic, the version and the strings "U" and "M".
+            int counts = Integer.BYTES + Short.BYTES + 2 * (Integer.BYTES + 1);
+            int footer = original.length - UniversitySnapshot.FOOTER_SIZE;
+
+            ByteBuffer.wrap(saved).putInt(counts, Integer.MAX_VALUE);
+            Files.write(file, saved);
+            Assert.assertThrows(IOException.class, () -> MappedUniversity.open(file), "student count too big");
+
+            saved = original.clone();
+            ByteBuffer.wrap(saved).putInt(counts + Integer.BYTES, -1);
+            Files.write(file, saved);
+            Assert.assertThrows(IOException.class, () -> MappedUniversity.open(file), "negative course count");
+
+            saved = original.clone();
+            ByteBuffer.wrap(saved).putLong(footer, footer - 8);
+            Files.write(file, saved);
+            Assert.assertThrows(IOException.class, () -> MappedUniversity.open(file), "index past the footer");
+
+            saved = original.clone();
+            ByteBuffer.wrap(saved).putInt(Integer.BYTES + Short.BYTES, 1 << 30);
+            Files.write(file, saved);
+            Assert.assertThrows(IOException.class, () -> MappedUniversity.open(file), "name longer than the file");
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    public static void testDamagedRecordsAreReportedAsIOExceptions() throws Exception {
+        University university = randomUniversity(new Random(5), 50, 5);
+        Path file = save(university);
+        try {
+            byte[] saved = Files.readAllBytes(file);
+            ByteBuffer bytes = ByteBuffer.wrap(saved);
+            int footer = saved.length - UniversitySnapshot.FOOTER_SIZE;
+            int studentOffsets = (int) bytes.getLong(footer);
+            //The first student's offset points past the file, the second student's name is too long.
+            bytes.putLong(studentOffsets, saved.length + 100L);
+            int secondStudent = (int) bytes.getLong(studentOffsets + Long.BYTES);
+            bytes.putInt(secondStudent + Integer.BYTES, saved.length);
+            //The first course's class list holds a student ordinal that does not exist.
+            int courseOffsets = studentOffsets + Long.BYTES * university.getStudents().size();
+            int firstCourse = (int) bytes.getLong(courseOffsets);
+            int position = firstCourse;
+            position += Integer.BYTES + bytes.getInt(position);
+            position += Integer.BYTES + bytes.getInt(position);
+            position += Integer.BYTES;
+            position += Integer.BYTES * (1 + bytes.getInt(position));
+            bytes.putInt(position, 1);
+            bytes.putInt(position + Integer.BYTES, 1_000_000);
+            Files.write(file, saved);
+
+            MappedUniversity mapped = MappedUniversity.open(file);
+            assertCorrupted(() -> mapped.getStudents().get(0).getIdNumber(), "student offset out of the file");
+            assertCorrupted(() -> mapped.getStudents().get(1).getName(), "name longer than the file");
+            assertCorrupted(() -> mapped.getCourses().get(0).getEnrolledStudents().get(0),
+                    "student ordinal that does not exist");
+            Assert.assertThrows(IndexOutOfBoundsException.class, () -> mapped.getStudents().get(50),
+                    "index past the list, which is not corruption");
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static void assertCorrupted(Callable<Object> read, String message) {
+        try {
+            read.call();
+            Assert.fail("no error: " + message);
+        } catch (UncheckedIOException e) {
+            Assert.assertTrue(e.getCause() instanceof IOException, "cause of " + message);
+        } catch (Exception e) {
+            Assert.fail(e + ": " + message);
+        }
+    }
+
+    private static University randomUniversity(Random random, int students, int courses) {
+        University university = new University("U", "M");
+        for (int i = 0; i < courses; i++) {
+            university.addCourse(new Course("Course " + i, "C " + i, 10 + random.nextInt(40)));
+            if (i > 0 && random.nextBoolean()) {
+                university.addRequisiteToCourse("C " + i, "C " + random.nextInt(i));
+            }
+        }
+        for (int i = 0; i < students; i++) {
+            int id = random.nextInt(1_000_000) - 500_000;
+            if (!university.addStudent("Student " + i, id)) {
+                continue;
+            }
+            if (random.nextInt(4) == 0) {
+                university.addPreviousCourseToStudent(id, "C " + random.nextInt(courses));
+            }
+            for (int j = 0; j < 3; j++) {
+                String code = "C " + random.nextInt(courses);
+                if (university.enroll(id, code) == EnrollmentResult.COURSE_FULL) {
+                    university.addStudentToWaitlist(id, code);
+                }
+            }
+        }
+        return university;
+    }
+
+    private static Path save(University university) throws IOException {
+        Path file = Files.createTempFile("university", ".bin");
+        UniversitySnapshot.write(university, file);
+        return file;
+    }
+
+    private static List<String> codes(Iterable<Course> courses) {
+        List<String> codes = new ArrayList<>();
+        for (Course course : courses) {
+            codes.add(course.getCourseCode());
+        }
+        codes.sort(null);
+        return codes;
+    }
+
+    private static List<String> viewCodes(List<MappedUniversity.CourseView> courses) {
+        List<String> codes = new ArrayList<>();
+        for (MappedUniversity.CourseView course : courses) {
+            codes.add(course.getCourseCode());
+        }
+        codes.sort(null);
+        return codes;
+    }
+
+    private static List<Integer> ids(Iterable<Student> students) {
+        List<Integer> ids = new ArrayList<>();
+        for (Student student : students) {
+            ids.add(student.getIdNumber());
+        }
+        return ids;
+    }
+
+    private static List<Integer> viewIds(List<MappedUniversity.StudentView> students) {
+        List<Integer> ids = new ArrayList<>();
+        for (MappedUniversity.StudentView student : students) {
+            ids.add(student.getIdNumber());
+        }
+        return ids;
+    }
+}
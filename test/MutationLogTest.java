@@ -0,0 +1,260 @@
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Tests of MutationLog: recovery from the log alone, from a checkpoint and the log after it, and from a torn tail.
+ */
+public class MutationLogTest {
+
+    public static void testRecoversEveryKindOfChange() throws Exception {
+        Path directory = Files.createTempDirectory("mutation-log");
+        try {
+            University university = new University("U", "M");
+            MutationLog log = MutationLog.attach(university, directory);
+            change(university);
+            log.sync();
+            log.close();
+            University recovered = MutationLog.recover(directory, "U", "M");
+            Assert.assertEquals(TestUniversities.describe(university), TestUniversities.describe(recovered),
+                    "recovered university");
+        } finally {
+            TestUniversities.delete(directory);
+        }
+    }
+
+    public static void testRecoversFromACheckpointAndTheLogAfterIt() throws Exception {
+        Path directory = Files.createTempDirectory("mutation-log");
+        try {
+            University university = new University("U", "M");
+            MutationLog log = MutationLog.attach(university, directory);
+            change(university);
+            log.checkpoint();
+            university.removeStudentFromCourse(0, "C 0");
+            university.addStudent("Late", 50);
+            university.enrollStudentInCourse(50, "C 2");
+            log.sync();
+            log.close();
+
+            long snapshots;
+            try (Stream<Path> files = Files.list(directory)) {
+                snapshots = files.filter(file -> file.getFileName().toString().endsWith(".bin")).count();
+            }
+            Assert.assertEquals(1, snapshots, "snapshots written");
+            University recovered = MutationLog.recover(directory, "U", "M");
+            Assert.assertEquals(TestUniversities.describe(university), TestUniversities.describe(recovered),
+                    "recovered university");
+        } finally {
+            TestUniversities.delete(directory);
+        }
+    }
+
+    public static void testCheckpointsDuringChangesLoseNothing() throws Exception {
+        Path directory = Files.createTempDirectory("mutation-log");
+        try {
+            University university = new University("U", "M");
+            for (int i = 0; i < 8; i++) {
+                university.addCourse(new Course("Course " + i, "C " + i, 5));
+            }
+            MutationLog log = MutationLog.attach(university, directory);
+            AtomicBoolean done = new AtomicBoolean();
+            TestThreads.run(4, 120, thread -> {
+                if (thread == 0) {
+                    //Checkpoints until the writers are done, each one while they keep changing the university.
+                    int checkpoints = 0;
+                    while (!done.get() || checkpoints < 3) {
+                        log.checkpoint();
+                        checkpoints++;
+                    }
+                    return;
+                }
+                try {
+                    for (int i = 0; i < 3_000; i++) {
+                        int id = thread * 100_000 + i;
+                        university.addStudent("Student " + id, id);
+                        university.enroll(id, "C " + (i % 8));
+                        if (i % 3 == 0) {
+                            university.removeStudentFromCourse(id - 3, "C " + ((i - 3) % 8));
+                        }
+                        if (i % 7 == 0) {
+                            university.removeStudentFromUniversity(id - 7);
+                        }
+                    }
+                } finally {
+                    done.set(true);
+                }
+            });
+            log.sync();
+            log.close();
+            University recovered = MutationLog.recover(directory, "U", "M");
+            Assert.assertEquals(TestUniversities.describe(university), TestUniversities.describe(recovered),
+                    "recovered university");
+        } finally {
+            TestUniversities.delete(directory);
+        }
+    }
+
+    public static void testChangesGoOnWhileTheSnapshotIsWritten() throws Exception {
+        Path directory = Files.createTempDirectory("mutation-log");
+        try {
+            University university = new University("U", "M");
+            for (int i = 0; i < 20; i++) {
+                university.addCourse(new Course("Course " + i, "C " + i));
+            }
+            for (int i = 0; i < 100_000; i++) {
+                university.addStudent("Student " + i, i);
+                university.enrollStudentInCourse(i, "C " + (i % 20));
+            }
+            MutationLog log = MutationLog.attach(university, directory);
+            long[] checkpoint = new long[2];
+            List<long[]> changes = new ArrayList<>();
+            AtomicBoolean done = new AtomicBoolean();
+            TestThreads.run(2, 120, thread -> {
+                if (thread == 0) {
+                    checkpoint[0] = System.nanoTime();
+                    log.checkpoint();
+                    checkpoint[1] = System.nanoTime();
+                    done.set(true);
+                    return;
+                }
+                for (int i = 0; !done.get(); i++) {
+                    long start = System.nanoTime();
+                    university.enroll(i % 100_000, "C " + ((i + 1) % 20));
+                    changes.add(new long[] {start, System.nanoTime()});
+                }
+            });
+            log.close();
+
+            //The middle half of the checkpoint is spent writing the snapshot: changes must get through meanwhile.
+            long quarter = (checkpoint[1] - checkpoint[0]) / 4;
+            long from = checkpoint[0] + quarter;
+            long to = checkpoint[1] - quarter;
+            int during = 0;
+            for (long[] change : changes) {
+                if (change[0] >= from && change[1] <= to) {
+                    during++;
+                }
+            }
+            Assert.assertTrue(during > 0, "no change made while the snapshot was written ("
+                    + changes.size() + " changes, checkpoint of " + (checkpoint[1] - checkpoint[0]) / 1_000_000
+                    + " ms)");
+        } finally {
+            TestUniversities.delete(directory);
+        }
+    }
+
+    public static void testStudentAddedWithPassedCoursesIsRecovered() throws Exception {
+        Path directory = Files.createTempDirectory("mutation-log");
+        try {
+            University university = new University("U", "M");
+            MutationLog log = MutationLog.attach(university, directory);
+            university.addCourse(new Course("Course 1", "C 1"));
+            university.addCourse(new Course("Course 3", "C 3"));
+            university.addRequisiteToCourse("C 3", "C 1");
+            //One course the university offers and one it does not offer yet.
+            Student student = new Student("Transfer", 7);
+            student.addPreviousCourse(university.getCourse("C 1"));
+            student.addPreviousCourse(new Course("Future course", "Future"));
+            university.addStudent(student);
+            university.enrollStudentInCourse(7, "C 3");
+            university.addCourse(new Course("Future course", "Future"));
+            log.sync();
+            log.close();
+
+            University recovered = MutationLog.recover(directory, "U", "M");
+            Assert.assertEquals(TestUniversities.describe(university), TestUniversities.describe(recovered),
+                    "recovered university");
+            Assert.assertSame(recovered.getCourse("Future"),
+                    recovered.getStudent(7).getPreviousCourses().stream()
+                            .filter(course -> course.getCourseCode().equals("Future")).findFirst().orElseThrow(),
+                    "passed course resolved once offered");
+        } finally {
+            TestUniversities.delete(directory);
+        }
+    }
+
+    public static void testTornLastRecordIsIgnored() throws Exception {
+        Path directory = Files.createTempDirectory("mutation-log");
+        try {
+            University university = new University("U", "M");
+            MutationLog log = MutationLog.attach(university, directory);
+            university.addStudent("A", 1);
+            log.sync();
+            String expected = TestUniversities.describe(university);
+            university.addStudent("B", 2);
+            log.sync();
+            log.close();
+
+            //A crash in the middle of writing the last record leaves only a part of it.
+            Path segment;
+            try (Stream<Path> files = Files.list(directory)) {
+                segment = files.filter(file -> file.getFileName().toString().endsWith(".wal")).findFirst()
+                        .orElseThrow();
+            }
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                channel.truncate(channel.size() - 3);
+            }
+            University recovered = MutationLog.recover(directory, "U", "M");
+            Assert.assertEquals(expected, TestUniversities.describe(recovered), "university before the torn record");
+        } finally {
+            TestUniversities.delete(directory);
+        }
+    }
+
+    public static void testCorruptRecordEndsTheReplay() throws Exception {
+        Path directory = Files.createTempDirectory("mutation-log");
+        try {
+            University university = new University("U", "M");
+            MutationLog log = MutationLog.attach(university, directory);
+            university.addStudent("A", 1);
+            log.sync();
+            String expected = TestUniversities.describe(university);
+            university.addStudent("B", 2);
+            log.sync();
+            log.close();
+
+            Path segment;
+            try (Stream<Path> files = Files.list(directory)) {
+                segment = files.filter(file -> file.getFileName().toString().endsWith(".wal")).findFirst()
+                        .orElseThrow();
+            }
+            byte[] bytes = Files.readAllBytes(segment);
+            bytes[bytes.length - 2] ^= 0x55;
+            Files.write(segment, bytes);
+            University recovered = MutationLog.recover(directory, "U", "M");
+            Assert.assertEquals(expected, TestUniversities.describe(recovered), "university before the corrupt record");
+        } finally {
+            TestUniversities.delete(directory);
+        }
+    }
+
+    /**
+     * Makes one change of every kind the log records, including a waitlist.
+     */
+    private static void change(University university) {
+        for (int i = 0; i < 4; i++) {
+            university.addCourse(new Course("Course " + i, "C " + i));
+        }
+        for (int i = 0; i < 6; i++) {
+            university.addStudent("Student " + i, i);
+        }
+        university.addRequisiteToCourse("C 3", "C 1");
+        university.addPreviousCourseToStudent(2, "C 1");
+        university.setCourseCapacity("C 0", 2);
+        for (int i = 0; i < 5; i++) {
+            if (university.enroll(i, "C 0") == EnrollmentResult.COURSE_FULL) {
+                university.addStudentToWaitlist(i, "C 0");
+            }
+        }
+        university.enrollStudentInCourse(2, "C 3");
+        university.enrollStudentInCourse(4, "C 2");
+        university.removeStudentFromUniversity(5);
+        university.removeCourseFromUniversity("C 2");
+    }
+
+}
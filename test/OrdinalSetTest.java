@@ -0,0 +1,98 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Tests of OrdinalSet, against a TreeSet doing the same changes, in both representations.
+ */
+public class OrdinalSetTest {
+
+    public static void testMatchesATreeSet() {
+        Random random = new Random(11);
+        for (int round = 0; round < 200; round++) {
+            OrdinalSet set = new OrdinalSet();
+            TreeSet<Integer> expected = new TreeSet<>();
+            //Small rounds stay sorted arrays, big ones are promoted to bits.
+            int size = random.nextInt(2) == 0 ? OrdinalSet.MAX_SORTED : 4 * OrdinalSet.MAX_SORTED;
+            int bound = random.nextInt(2) == 0 ? 64 : 5_000;
+            for (int i = 0; i < 2 * size; i++) {
+                int ordinal = random.nextInt(bound);
+                if (random.nextInt(4) == 0) {
+                    set.remove(ordinal);
+                    expected.remove(ordinal);
+                } else {
+                    set.add(ordinal);
+                    expected.add(ordinal);
+                }
+                Assert.assertEquals(expected.contains(ordinal), set.contains(ordinal), "contains " + ordinal);
+            }
+            Assert.assertEquals(expected.size(), set.size(), "size");
+            Assert.assertEquals(expected.isEmpty(), set.isEmpty(), "isEmpty");
+            Assert.assertEquals(new ArrayList<>(expected), elements(set), "elements in order");
+        }
+    }
+
+    public static void testContainsAllAcrossRepresentations() {
+        OrdinalSet small = of(3, 70, 4_000);
+        OrdinalSet big = new OrdinalSet();
+        for (int i = 0; i < 4_096; i += 3) {
+            big.add(i);
+        }
+        big.add(70);
+        big.add(4_000);
+        Assert.assertTrue(big.containsAll(small), "bits contain the sorted set");
+        Assert.assertFalse(small.containsAll(big), "sorted set does not contain the bits");
+        Assert.assertTrue(small.containsAll(new OrdinalSet()), "every set contains the empty set");
+        small.add(5_000);
+        Assert.assertFalse(big.containsAll(small), "element past the last word");
+
+        OrdinalSet promoted = new OrdinalSet(big);
+        Assert.assertTrue(promoted.containsAll(big) && big.containsAll(promoted), "copy");
+        Assert.assertEquals(big, promoted, "equals");
+        Assert.assertEquals(big.hashCode(), promoted.hashCode(), "hashCode");
+    }
+
+    public static void testEqualSetsInBothRepresentationsHaveTheSameHash() {
+        OrdinalSet sorted = of(1, 2, 100);
+        OrdinalSet bits = new OrdinalSet();
+        for (int i = 0; i < 2 * OrdinalSet.MAX_SORTED; i++) {
+            bits.add(1_000 + i);
+        }
+        for (int i = 0; i < 2 * OrdinalSet.MAX_SORTED; i++) {
+            bits.remove(1_000 + i);
+        }
+        bits.add(100);
+        bits.add(2);
+        bits.add(1);
+        Assert.assertEquals(sorted, bits, "equals");
+        Assert.assertEquals(sorted.hashCode(), bits.hashCode(), "hashCode");
+    }
+
+    public static void testAddAllReportsChanges() {
+        OrdinalSet set = of(1, 2);
+        Assert.assertFalse(set.addAll(of(2)), "nothing new");
+        Assert.assertTrue(set.addAll(of(3)), "one new element");
+        OrdinalSet bits = new OrdinalSet();
+        for (int i = 0; i < 100; i++) {
+            bits.add(i * 7);
+        }
+        Assert.assertTrue(set.addAll(bits), "from bits");
+        Assert.assertTrue(set.containsAll(bits), "all added");
+        Assert.assertFalse(set.addAll(bits), "again");
+    }
+
+    private static OrdinalSet of(int... ordinals) {
+        OrdinalSet set = new OrdinalSet();
+        for (int ordinal : ordinals) {
+            set.add(ordinal);
+        }
+        return set;
+    }
+
+    private static List<Integer> elements(OrdinalSet set) {
+        List<Integer> elements = new ArrayList<>();
+        set.forEach(elements::add);
+        return elements;
+    }
+}
@@ -0,0 +1,120 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+
+/**
+ * Tests of the read-only views and of paged access to students and courses.
+ */
+public class PagingTest {
+
+    public static void testPagesOfStudentsAreSortedById() {
+        University university = new University("U", "M");
+        int[] ids = {50, -3, 7, Integer.MAX_VALUE, Integer.MIN_VALUE, 0, 12};
+        for (int id : ids) {
+            university.addStudent("S", id);
+        }
+        List<Integer> seen = new ArrayList<>();
+        for (int offset = 0; offset < ids.length; offset += 3) {
+            for (Student student : university.getStudents(offset, 3)) {
+                seen.add(student.getIdNumber());
+            }
+        }
+        Assert.assertEquals(List.of(Integer.MIN_VALUE, -3, 0, 7, 12, 50, Integer.MAX_VALUE), seen, "IDs of the pages");
+        Assert.assertTrue(university.getStudents(ids.length, 3).isEmpty(), "past the last student");
+        Assert.assertEquals(ids.length - 1, university.getStudents(1, Integer.MAX_VALUE).size(),
+                "limit that overflows");
+        Assert.assertEquals(0, university.getStudents(Integer.MAX_VALUE, Integer.MAX_VALUE).size(), "huge offset");
+        Assert.assertThrows(IllegalArgumentException.class, () -> university.getStudents(-1, 3), "negative offset");
+        Assert.assertThrows(UnsupportedOperationException.class, () -> university.getStudents(0, 3).remove(0),
+                "page is read-only");
+    }
+
+    public static void testKeysetPagesSurviveChangesBetweenPages() {
+        University university = new University("U", "M");
+        for (int i = 0; i < 100; i++) {
+            university.addStudent("S", i * 2);
+        }
+        List<Integer> seen = new ArrayList<>();
+        List<Integer> removed = new ArrayList<>();
+        int last = Integer.MIN_VALUE;
+        while (true) {
+            List<Student> students = university.getStudentsAfter(last, 10);
+            if (students.isEmpty()) {
+                break;
+            }
+            for (Student student : students) {
+                seen.add(student.getIdNumber());
+            }
+            last = students.get(students.size() - 1).getIdNumber();
+            //Between pages, a student behind the cursor is added and one ahead of it is removed.
+            university.addStudent("Late", last - 1);
+            if (university.removeStudentFromUniversity(last + 6)) {
+                removed.add(last + 6);
+            }
+        }
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            if (!removed.contains(i * 2)) {
+                expected.add(i * 2);
+            }
+        }
+        Assert.assertFalse(removed.isEmpty(), "students removed");
+        Assert.assertEquals(expected, seen, "every remaining student once, in order");
+    }
+
+    public static void testCoursePagesKeepTheOrderTheyWereAdded() {
+        University university = new University("U", "M");
+        for (int i = 9; i >= 0; i--) {
+            university.addCourse(new Course("Course " + i, "C " + i));
+        }
+        university.removeCourseFromUniversity("C 5");
+        List<String> codes = new ArrayList<>();
+        for (int offset = 0; offset < 9; offset += 4) {
+            for (Course course : university.getCourses(offset, 4)) {
+                codes.add(course.getCourseCode());
+            }
+        }
+        Assert.assertEquals(List.of("C 9", "C 8", "C 7", "C 6", "C 4", "C 3", "C 2", "C 1", "C 0"), codes, "codes");
+        Assert.assertEquals(8, university.getCourses(1, Integer.MAX_VALUE).size(), "limit that overflows");
+        Assert.assertThrows(IllegalArgumentException.class, () -> university.getCourses(0, -1), "negative limit");
+    }
+
+    public static void testViewsAreLiveAndReadOnly() {
+        University university = new University("U", "M");
+        university.addStudent("A", 1);
+        university.addCourse(new Course("Course", "C"));
+        Collection<Student> students = university.getStudentsView();
+        Collection<Course> courses = university.getCoursesView();
+        university.addStudent("B", 2);
+        Assert.assertEquals(2, students.size(), "students added after the view was taken");
+        Assert.assertTrue(students.contains(university.getStudent(2)), "contains");
+        Assert.assertTrue(courses.contains(new Course("Other name", "C")), "contains by code");
+        Assert.assertThrows(UnsupportedOperationException.class, () -> students.add(new Student("C", 3)), "add");
+        Assert.assertThrows(UnsupportedOperationException.class, () -> {
+            Iterator<Course> iterator = courses.iterator();
+            iterator.next();
+            iterator.remove();
+            return null;
+        }, "remove through the iterator");
+        Assert.assertEquals(1, university.getCourses().size(), "courses");
+    }
+
+    public static void testParallelStreamSeesEveryStudentOnce() {
+        University university = new University("U", "M");
+        long expected = 0;
+        for (int i = 0; i < 50_000; i++) {
+            university.addStudent("S", i);
+            expected += i;
+        }
+        Spliterator<Student> spliterator = university.getStudentsView().spliterator();
+        Assert.assertTrue(spliterator.hasCharacteristics(Spliterator.CONCURRENT | Spliterator.ORDERED), "concurrent");
+        Spliterator<Student> prefix = spliterator.trySplit();
+        Assert.assertNotNull(prefix, "splits");
+        Assert.assertTrue(prefix.estimateSize() > 10_000 && spliterator.estimateSize() > 10_000, "even halves");
+        Assert.assertEquals(expected,
+                university.getStudentsView().parallelStream().mapToLong(Student::getIdNumber).sum(), "sum of IDs");
+        Assert.assertEquals(50_000, university.getStudentsView().parallelStream().distinct().count(), "distinct");
+    }
+}
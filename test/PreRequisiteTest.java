@@ -0,0 +1,127 @@
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Tests of the pre-requisite checks: the closure kept by the catalog, and the passed courses of the students,
+ * whichever instance of a course they were recorded with.
+ */
+public class PreRequisiteTest {
+
+    public static void testClosureFollowsChainsAndRefusesCycles() {
+        University university = university(4);
+        Assert.assertTrue(university.addRequisiteToCourse("C 1", "C 0"), "C 0 before C 1");
+        Assert.assertTrue(university.addRequisiteToCourse("C 2", "C 1"), "C 1 before C 2");
+        Assert.assertEquals(List.of(university.getCourse("C 0"), university.getCourse("C 1")),
+                university.getAllPreRequisites("C 2"), "all pre-requisites of C 2");
+        Assert.assertFalse(university.addRequisiteToCourse("C 0", "C 2"), "cycle");
+        Assert.assertFalse(university.addRequisiteToCourse("C 0", "C 0"), "course before itself");
+        Assert.assertTrue(university.getCourse("C 0").getPreRequisites().isEmpty(), "nothing added on a cycle");
+    }
+
+    public static void testOnlyDirectPreRequisitesAreRequired() {
+        University university = university(3);
+        university.addRequisiteToCourse("C 1", "C 0");
+        university.addRequisiteToCourse("C 2", "C 1");
+        university.addStudent("A", 1);
+        Assert.assertEquals(EnrollmentResult.MISSING_PREREQUISITES, university.enroll(1, "C 2"), "nothing passed");
+        university.addPreviousCourseToStudent(1, "C 1");
+        Assert.assertEquals(EnrollmentResult.ENROLLED, university.enroll(1, "C 2"), "C 1 passed");
+    }
+
+    public static void testCourseOfAnotherInstanceCountsOnInsertion() {
+        University university = university(2);
+        university.addRequisiteToCourse("C 1", "C 0");
+        Student student = new Student("A", 1);
+        //Equal by code to the course the university offers, but not added to it: it has no ordinal.
+        student.addPreviousCourse(new Course("Course 0", "C 0"));
+        university.addStudent(student);
+        Assert.assertEquals(EnrollmentResult.ENROLLED, university.enroll(1, "C 1"), "passed by code");
+        Assert.assertSame(university.getCourse("C 0"), student.getPreviousCourses().iterator().next(),
+                "previous course resolved to the offered one");
+    }
+
+    public static void testCourseOfAnotherInstanceAddedLaterCounts() {
+        University university = university(2);
+        university.addRequisiteToCourse("C 1", "C 0");
+        university.addStudent("A", 1);
+        Student student = university.getStudent(1);
+        student.addPreviousCourse(new Course("Course 0", "C 0"));
+        Assert.assertEquals(EnrollmentResult.ENROLLED, university.enroll(1, "C 1"), "passed by code");
+        Assert.assertEquals(List.of(university.getCourse("C 0")), List.copyOf(student.getPreviousCourses()),
+                "previous courses");
+    }
+
+    public static void testCourseOfferedAfterTheStudentPassedItCounts() {
+        University university = university(0);
+        Student student = new Student("A", 1);
+        student.addPreviousCourse(new Course("Course 0", "C 0"));
+        university.addStudent(student);
+        Assert.assertTrue(university.getEligibleCourses(1).isEmpty(), "nothing offered");
+
+        university.addCourse(new Course("Course 0", "C 0"));
+        university.addCourse(new Course("Course 1", "C 1"));
+        university.addRequisiteToCourse("C 1", "C 0");
+        //C 0 was passed, so only C 1 is eligible: C 0 has its bit since it was added to the catalog.
+        Assert.assertEquals(List.of(university.getCourse("C 1")), university.getEligibleCourses(1),
+                "eligible courses");
+        Assert.assertEquals(EnrollmentResult.ENROLLED, university.enroll(1, "C 1"), "passed before it was offered");
+    }
+
+    public static void testRemovedPreviousCourseNoLongerCounts() {
+        University university = university(2);
+        university.addRequisiteToCourse("C 1", "C 0");
+        university.addStudent("A", 1);
+        Student student = university.getStudent(1);
+        student.addPreviousCourse(university.getCourse("C 0"));
+        student.removePreviousCourse(new Course("Course 0", "C 0"));
+        Assert.assertEquals(EnrollmentResult.MISSING_PREREQUISITES, university.enroll(1, "C 1"), "removed");
+    }
+
+    public static void testPreviousCoursesChangedThroughTheViewCount() {
+        University university = university(3);
+        university.addRequisiteToCourse("C 1", "C 0");
+        university.addRequisiteToCourse("C 2", "C 0");
+        university.addStudent("A", 1);
+        Student student = university.getStudent(1);
+        Assert.assertTrue(student.getPreviousCourses().add(university.getCourse("C 0")), "added through the view");
+        Assert.assertFalse(student.getPreviousCourses().add(university.getCourse("C 0")), "added twice");
+        Assert.assertEquals(EnrollmentResult.ENROLLED, university.enroll(1, "C 1"), "after adding");
+
+        Iterator<Course> courses = student.getPreviousCourses().iterator();
+        courses.next();
+        courses.remove();
+        Assert.assertTrue(student.getPreviousCourses().isEmpty(), "previous courses after the iterator removed one");
+        Assert.assertEquals(EnrollmentResult.MISSING_PREREQUISITES, university.enroll(1, "C 2"), "after removing");
+
+        student.getPreviousCourses().add(university.getCourse("C 0"));
+        Assert.assertTrue(student.getPreviousCourses().remove(new Course("Course 0", "C 0")), "removed by code");
+        Assert.assertFalse(student.getPreviousCourses().remove("C 0"), "removed something else");
+        Assert.assertEquals(EnrollmentResult.MISSING_PREREQUISITES, university.enroll(1, "C 2"), "removed again");
+    }
+
+    public static void testConcurrentChecksOfAnUnresolvedStudent() throws InterruptedException {
+        University university = university(40);
+        for (int i = 1; i < 40; i++) {
+            university.addRequisiteToCourse("C " + i, "C 0");
+        }
+        Student student = new Student("A", 1);
+        university.addStudent(student);
+        student.addPreviousCourse(new Course("Course 0", "C 0"));
+        TestThreads.run(4, 30, thread -> {
+            for (int i = 1 + thread; i < 40; i += 4) {
+                Assert.assertEquals(EnrollmentResult.ENROLLED, university.enroll(1, "C " + i), "C " + i);
+            }
+        });
+        Assert.assertEquals(39, student.getEnrolledCourses().size(), "enrolled courses");
+        Assert.assertSame(university.getCourse("C 0"), student.getPreviousCourses().iterator().next(),
+                "previous course resolved to the offered one");
+    }
+
+    private static University university(int courses) {
+        University university = new University("U", "M");
+        for (int i = 0; i < courses; i++) {
+            university.addCourse(new Course("Course " + i, "C " + i));
+        }
+        return university;
+    }
+}
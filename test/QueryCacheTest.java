@@ -0,0 +1,240 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tests of QueryCache: cached answers against answers computed without the cache through every kind of change,
+ * the statistics, weight-bounded LRU eviction, and queries made while registration goes on.
+ */
+public class QueryCacheTest {
+
+    /**
+     * Eight courses, C 2 requiring C 0 and C 3 requiring C 2, and 30 students. Student 0 passed C 0; student 1
+     * passed "Future", a course not offered yet.
+     */
+    private static University university(boolean cached) {
+        University university = new University("U", "M");
+        if (!cached) {
+            university.getQueryCache().setMaxWeight(0);
+        }
+        for (int i = 0; i < 8; i++) {
+            university.addCourse(new Course("Course " + i, "C " + i));
+        }
+        university.addRequisiteToCourse("C 2", "C 0");
+        university.addRequisiteToCourse("C 3", "C 2");
+        for (int id = 0; id < 30; id++) {
+            university.addStudent("Student " + id, id);
+        }
+        university.addPreviousCourseToStudent(0, "C 0");
+        Student student = university.getStudent(1);
+        student.addPreviousCourse(new Course("Future course", "Future"));
+        return university;
+    }
+
+    private static List<String> codes(List<Course> courses) {
+        List<String> codes = new ArrayList<>();
+        if (courses == null) {
+            return null;
+        }
+        for (Course course : courses) {
+            codes.add(course.getCourseCode());
+        }
+        return codes;
+    }
+
+    private static void assertSameAnswers(University expected, University cached, String when) {
+        for (int id = 0; id < 32; id++) {
+            Assert.assertEquals(codes(expected.getEligibleCourses(id)), codes(cached.getEligibleCourses(id)),
+                    "eligible courses of " + id + " " + when);
+        }
+        for (int i = 0; i < 11; i++) {
+            String code = i < 10 ? "C " + i : "Future";
+            Assert.assertEquals(codes(expected.getAllPreRequisites(code)), codes(cached.getAllPreRequisites(code)),
+                    "pre-requisites of " + code + " " + when);
+            Assert.assertEquals(expected.getFullCourseInfo(code), cached.getFullCourseInfo(code),
+                    "course info of " + code + " " + when);
+        }
+    }
+
+    public static void testCachedAnswersFollowEveryChange() {
+        University expected = university(false);
+        University cached = university(true);
+        Random random = new Random(5);
+        for (int step = 0; step < 400; step++) {
+            //Asks twice, so the second answer comes from the cache.
+            assertSameAnswers(expected, cached, "before step " + step);
+            assertSameAnswers(expected, cached, "again before step " + step);
+            int id = random.nextInt(32);
+            String code = "C " + random.nextInt(10);
+            String other = "C " + random.nextInt(10);
+            String change;
+            switch (random.nextInt(8)) {
+                case 0:
+                case 1:
+                    change = "enroll " + id + " in " + code;
+                    Assert.assertEquals(expected.enroll(id, code), cached.enroll(id, code), change);
+                    break;
+                case 2:
+                    change = "drop " + id + " from " + code;
+                    Assert.assertEquals(expected.removeStudentFromCourse(id, code),
+                            cached.removeStudentFromCourse(id, code), change);
+                    break;
+                case 3:
+                    change = "pass " + code + " by " + id;
+                    Assert.assertEquals(expected.addPreviousCourseToStudent(id, code),
+                            cached.addPreviousCourseToStudent(id, code), change);
+                    break;
+                case 4:
+                    change = "require " + other + " for " + code;
+                    Assert.assertEquals(expected.addRequisiteToCourse(code, other),
+                            cached.addRequisiteToCourse(code, other), change);
+                    break;
+                case 5:
+                    change = "remove " + code;
+                    Assert.assertEquals(expected.removeCourseFromUniversity(code),
+                            cached.removeCourseFromUniversity(code), change);
+                    break;
+                case 6:
+                    change = "add " + code;
+                    Assert.assertEquals(expected.addCourse(new Course("New " + code, code)),
+                            cached.addCourse(new Course("New " + code, code)), change);
+                    break;
+                default:
+                    change = "remove student " + id + " and add them again";
+                    expected.removeStudentFromUniversity(id);
+                    cached.removeStudentFromUniversity(id);
+                    expected.addStudent("Again " + id, id);
+                    cached.addStudent("Again " + id, id);
+                    break;
+            }
+            if (step == 200) {
+                //Resolves the previous course of student 1, which only changes the catalog.
+                expected.addCourse(new Course("Future course", "Future"));
+                cached.addCourse(new Course("Future course", "Future"));
+            }
+        }
+        assertSameAnswers(expected, cached, "at the end");
+        QueryCache cache = cached.getQueryCache();
+        Assert.assertTrue(cache.getHitCount() > 0, "hits: " + cache);
+        Assert.assertTrue(cache.getInvalidationCount() > 0, "invalidations: " + cache);
+        Assert.assertEquals(0, expected.getQueryCache().getSize(), "answers cached with a maximum weight of 0");
+    }
+
+    public static void testAChangeOnlyInvalidatesWhatDependsOnIt() {
+        University university = university(true);
+        QueryCache cache = university.getQueryCache();
+        university.getEligibleCourses(0);
+        university.getEligibleCourses(1);
+        university.getFullCourseInfo("C 2");
+        cache.resetStats();
+
+        university.enroll(0, "C 4");
+        Assert.assertEquals(List.of("C 1", "C 2", "C 5", "C 6", "C 7"), codes(university.getEligibleCourses(0)),
+                "eligible courses of 0 after enrolling");
+        university.getEligibleCourses(1);
+        university.getFullCourseInfo("C 2");
+        Assert.assertEquals(2, cache.getHitCount(), "hits");
+        Assert.assertEquals(1, cache.getMissCount(), "misses");
+        Assert.assertEquals(1, cache.getInvalidationCount(), "invalidations");
+        Assert.assertEquals(2 / 3.0, cache.getHitRate(), 1e-9, "hit rate");
+
+        cache.resetStats();
+        Assert.assertEquals(0.0, cache.getHitRate(), 0, "hit rate without lookups");
+        cache.clear();
+        Assert.assertEquals(0, cache.getSize(), "size after clear");
+        Assert.assertEquals(0, cache.getWeight(), "weight after clear");
+    }
+
+    public static void testStaysWithinItsWeightAndEvictsTheLeastRecentlyUsed() {
+        //Two answers of 4 bytes fit in each of the 16 segments.
+        long maxWeight = 16 * 2 * (QueryCache.ENTRY_WEIGHT + 4);
+        QueryCache cache = new QueryCache(maxWeight);
+        Object owner = new Object();
+        QueryCache.Key kept = QueryCache.Key.of(QueryCache.Query.ELIGIBLE_COURSES, -1);
+        cache.put(kept, owner, 1, "kept", 4);
+        for (int id = 0; id < 1_000; id++) {
+            Assert.assertEquals("kept", cache.get(kept, owner, 1), "used answer after " + id + " others");
+            cache.put(QueryCache.Key.of(QueryCache.Query.ELIGIBLE_COURSES, id), owner, 1, id, 4);
+            Assert.assertTrue(cache.getWeight() <= maxWeight, "weight " + cache.getWeight());
+        }
+        Assert.assertTrue(cache.getSize() <= 32, "size " + cache.getSize());
+        Assert.assertTrue(cache.getEvictionCount() >= 1_000 - 32, "evictions " + cache.getEvictionCount());
+        Assert.assertNull(cache.get(kept, owner, 2), "answer of another version");
+        Assert.assertNull(cache.get(kept, owner, 1), "stale answer dropped");
+
+        //An answer bigger than a segment's share is not kept, and the cache can be turned off.
+        QueryCache.Key big = QueryCache.Key.of(QueryCache.Query.COURSE_INFO, "Big");
+        cache.put(big, owner, 1, "too big", maxWeight / 16);
+        Assert.assertNull(cache.get(big, owner, 1), "answer bigger than a segment");
+        cache.put(big, owner, 1, "small", 4);
+        Assert.assertEquals("small", cache.get(big, owner, 1), "answer that fits");
+        cache.setMaxWeight(0);
+        cache.put(kept, owner, 1, "off", 4);
+        Assert.assertNull(cache.get(kept, owner, 1), "answer with the cache off");
+        Assert.assertThrows(IllegalArgumentException.class, () -> {
+            cache.setMaxWeight(-1);
+            return null;
+        }, "negative maximum weight");
+    }
+
+    public static void testCourseAddedAgainIsNotAnsweredFromTheOldOne() {
+        University university = university(true);
+        String before = university.getFullCourseInfo("C 3");
+        Assert.assertEquals(List.of("C 0", "C 2"), codes(university.getAllPreRequisites("C 3")), "before");
+        university.removeCourseFromUniversity("C 3");
+        university.addCourse(new Course("Course 3, again", "C 3"));
+        Assert.assertFalse(before.equals(university.getFullCourseInfo("C 3")), "course info of the new course");
+        Assert.assertEquals(List.of(), codes(university.getAllPreRequisites("C 3")), "after");
+    }
+
+    public static void testQueriesDuringRegistrationEndUpCurrent() throws Exception {
+        University cached = university(true);
+        AtomicBoolean done = new AtomicBoolean();
+        TestThreads.run(4, 60, thread -> {
+            Random random = new Random(thread);
+            if (thread < 2) {
+                try {
+                    for (int i = 0; i < 20_000; i++) {
+                        int id = random.nextInt(30);
+                        String code = "C " + random.nextInt(8);
+                        if (random.nextBoolean()) {
+                            cached.enroll(id, code);
+                        } else {
+                            cached.removeStudentFromCourse(id, code);
+                        }
+                    }
+                } finally {
+                    done.set(true);
+                }
+                return;
+            }
+            while (!done.get()) {
+                int id = random.nextInt(30);
+                for (Course course : cached.getEligibleCourses(id)) {
+                    Assert.assertNotNull(course, "eligible course of " + id);
+                }
+                cached.getAllPreRequisites("C " + random.nextInt(8));
+            }
+        });
+        //Once registration stops, every cached answer is the one computed from scratch.
+        University expected = new University("U", "M");
+        for (Course course : cached.getCoursesView()) {
+            expected.addCourse(new Course(course.getName(), course.getCourseCode()));
+        }
+        expected.addRequisiteToCourse("C 2", "C 0");
+        expected.addRequisiteToCourse("C 3", "C 2");
+        for (Student student : cached.getStudentsView()) {
+            expected.addStudent(student.getName(), student.getIdNumber());
+            for (Course course : student.getPreviousCourses()) {
+                expected.addPreviousCourseToStudent(student.getIdNumber(), course.getCourseCode());
+            }
+            for (Course course : student.getEnrolledCourses()) {
+                expected.enroll(student.getIdNumber(), course.getCourseCode());
+            }
+        }
+        expected.getStudent(1).addPreviousCourse(new Course("Future course", "Future"));
+        expected.getQueryCache().setMaxWeight(0);
+        assertSameAnswers(expected, cached, "after registration");
+    }
+}
@@ -0,0 +1,177 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests of RegistrationFrontEnd and of University.enrollAll, which it coalesces enrollments with: the answers and
+ * the final state are those of applying the requests one by one.
+ */
+public class RegistrationFrontEndTest {
+
+    /**
+     * Ten courses, the first two with 5 seats and C 9 requiring C 0, and 50 students; student 3 passed C 0.
+     */
+    private static University university() {
+        University university = new University("U", "M");
+        for (int i = 0; i < 10; i++) {
+            university.addCourse(new Course("Course " + i, "C " + i, i < 2 ? 5 : Course.UNLIMITED));
+        }
+        university.addRequisiteToCourse("C 9", "C 0");
+        for (int id = 0; id < 50; id++) {
+            university.addStudent("Student " + id, id);
+        }
+        university.addPreviousCourseToStudent(3, "C 0");
+        return university;
+    }
+
+    public static void testEnrollAllMatchesEnrollingOneByOne() {
+        Random random = new Random(17);
+        University batched = university();
+        University oneByOne = university();
+        UniversityMetrics metrics = UniversityMetrics.attach(batched);
+        for (int round = 0; round < 40; round++) {
+            //More students than a chunk, some of them twice and some unknown.
+            int[] studentIDs = new int[random.nextInt(40) + 1];
+            for (int i = 0; i < studentIDs.length; i++) {
+                studentIDs[i] = random.nextInt(55);
+            }
+            String courseCode = "C " + random.nextInt(11);
+            EnrollmentResult[] results = batched.enrollAll(courseCode, studentIDs);
+            for (int i = 0; i < studentIDs.length; i++) {
+                Assert.assertEquals(oneByOne.enroll(studentIDs[i], courseCode), results[i],
+                        "student " + studentIDs[i] + " in " + courseCode + ", round " + round);
+            }
+            if (round % 5 == 0) {
+                batched.removeStudentFromCourse(studentIDs[0], courseCode);
+                oneByOne.removeStudentFromCourse(studentIDs[0], courseCode);
+            }
+        }
+        Assert.assertEquals(TestUniversities.describe(oneByOne), TestUniversities.describe(batched), "universities");
+        Assert.assertEquals(5, batched.getCourse("C 0").getEnrolledStudents().size(), "seats of C 0");
+        Assert.assertTrue(metrics.getCount(EnrollmentResult.ENROLLED) > 0, "enrollments recorded");
+        Assert.assertTrue(metrics.getCount(EnrollmentResult.ALREADY_ENROLLED) > 0, "repeated enrollments recorded");
+    }
+
+    public static void testEnrollAllGivesTheLastSeatsInOrder() {
+        University university = university();
+        EnrollmentResult[] results = university.enrollAll("C 1", new int[] {7, 3, 7, 8, 9, 10, 11, 12});
+        Assert.assertEquals(List.of(EnrollmentResult.ENROLLED, EnrollmentResult.ENROLLED,
+                EnrollmentResult.ALREADY_ENROLLED, EnrollmentResult.ENROLLED, EnrollmentResult.ENROLLED,
+                EnrollmentResult.ENROLLED, EnrollmentResult.COURSE_FULL, EnrollmentResult.COURSE_FULL),
+                List.of(results), "results");
+        Assert.assertEquals(0, university.getCourse("C 1").getAvailableSeats(), "seats left");
+        Assert.assertEquals(List.of(EnrollmentResult.MISSING_PREREQUISITES, EnrollmentResult.ENROLLED),
+                List.of(university.enrollAll("C 9", new int[] {4, 3})), "pre-requisites");
+    }
+
+    public static void testRequestsFromOneClientAreAnsweredAsIfAppliedInOrder() throws Exception {
+        for (RegistrationFrontEnd.Partitioning partitioning : RegistrationFrontEnd.Partitioning.values()) {
+            Random random = new Random(23);
+            University university = university();
+            University oneByOne = university();
+            //The writers wait in the first enrollment until every request is queued, so they get coalesced.
+            CountDownLatch queued = new CountDownLatch(1);
+            university.addListener(new UniversityListener() {
+                @Override
+                public void studentEnrolled(Student student, Course course) {
+                    try {
+                        queued.await(30, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            List<CompletableFuture<?>> answers = new ArrayList<>();
+            List<Object> expected = new ArrayList<>();
+            //By student, several writers would apply the requests for a course in any order, so there is only one.
+            int partitions = partitioning == RegistrationFrontEnd.Partitioning.BY_COURSE ? 3 : 1;
+            try (RegistrationFrontEnd frontEnd = new RegistrationFrontEnd(university, partitions, partitioning)) {
+                for (int i = 0; i < 2_000; i++) {
+                    int id = random.nextInt(52);
+                    String courseCode = "C " + (random.nextBoolean() ? random.nextInt(2) : random.nextInt(11));
+                    int kind = random.nextInt(10);
+                    if (kind < 7) {
+                        answers.add(frontEnd.enroll(id, courseCode));
+                        expected.add(oneByOne.enroll(id, courseCode));
+                    } else if (kind < 9) {
+                        answers.add(frontEnd.drop(id, courseCode));
+                        expected.add(oneByOne.removeStudentFromCourse(id, courseCode));
+                    } else {
+                        answers.add(frontEnd.waitlist(id, courseCode));
+                        expected.add(oneByOne.addStudentToWaitlist(id, courseCode));
+                    }
+                }
+                queued.countDown();
+                for (int i = 0; i < answers.size(); i++) {
+                    Assert.assertEquals(expected.get(i), answers.get(i).get(30, TimeUnit.SECONDS),
+                            "answer " + i + " by " + partitioning);
+                }
+                Assert.assertEquals(answers.size(), frontEnd.getRequestCount(), "requests by " + partitioning);
+                Assert.assertTrue(frontEnd.getCoalescedCount() > 0, "nothing coalesced by " + partitioning);
+            }
+            Assert.assertEquals(TestUniversities.describe(oneByOne), TestUniversities.describe(university),
+                    "universities by " + partitioning);
+        }
+    }
+
+    public static void testConcurrentClientsNeverOverfillACourse() throws Exception {
+        University university = university();
+        for (int id = 50; id < 2_000; id++) {
+            university.addStudent("Student " + id, id);
+        }
+        try (RegistrationFrontEnd frontEnd = new RegistrationFrontEnd(university, 4,
+                RegistrationFrontEnd.Partitioning.BY_STUDENT)) {
+            TestThreads.run(4, 60, thread -> {
+                List<CompletableFuture<EnrollmentResult>> results = new ArrayList<>();
+                for (int id = thread; id < 2_000; id += 4) {
+                    results.add(frontEnd.enroll(id, "C 0"));
+                    results.add(frontEnd.enroll(id, "C 5"));
+                }
+                for (CompletableFuture<EnrollmentResult> result : results) {
+                    result.get(30, TimeUnit.SECONDS);
+                }
+            });
+        }
+        Assert.assertEquals(5, university.getCourse("C 0").getEnrolledStudents().size(), "students in C 0");
+        Assert.assertEquals(0, university.getCourse("C 0").getAvailableSeats(), "seats left in C 0");
+        Assert.assertEquals(2_000, university.getCourse("C 5").getEnrolledStudents().size(), "students in C 5");
+    }
+
+    public static void testRequestsAfterCloseFail() throws Exception {
+        RegistrationFrontEnd frontEnd = new RegistrationFrontEnd(university(), 2);
+        CompletableFuture<EnrollmentResult> before = frontEnd.enroll(1, "C 0");
+        frontEnd.close();
+        Assert.assertEquals(EnrollmentResult.ENROLLED, before.getNow(null), "request queued before close");
+        CompletableFuture<EnrollmentResult> after = frontEnd.enroll(2, "C 0");
+        try {
+            after.get();
+            Assert.fail("request after close answered");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException, "cause: " + e.getCause());
+        }
+        frontEnd.close();
+    }
+
+    public static void testCloseWaitsForTheWritersWhenInterrupted() {
+        University university = university();
+        RegistrationFrontEnd frontEnd = new RegistrationFrontEnd(university, 2);
+        List<CompletableFuture<EnrollmentResult>> results = new ArrayList<>();
+        for (int id = 0; id < 50; id++) {
+            results.add(frontEnd.enroll(id, "C 4"));
+        }
+        Thread.currentThread().interrupt();
+        try {
+            frontEnd.close();
+            Assert.assertTrue(Thread.interrupted(), "interrupt kept");
+        } finally {
+            Thread.interrupted();
+        }
+        for (CompletableFuture<EnrollmentResult> result : results) {
+            Assert.assertEquals(EnrollmentResult.ENROLLED, result.getNow(null), "answered before close returned");
+        }
+    }
+}
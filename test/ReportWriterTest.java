@@ -0,0 +1,81 @@
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Tests of ReportWriter and of the cached student and course headers it renders.
+ */
+public class ReportWriterTest {
+
+    public static void testHeadersMatchTheFormattedText() {
+        int[] ids = {0, 7, 42, 999_999, 1_234_567, -5, -123_456, Integer.MIN_VALUE, Integer.MAX_VALUE};
+        for (int id : ids) {
+            Student student = new Student("Ann", id);
+            Assert.assertEquals(String.format("Student %s (%06d)", "Ann", id), student.toString(), "header of " + id);
+        }
+        Assert.assertEquals("C 1 - Intro", new Course("Intro", "C 1").toString(), "course header");
+    }
+
+    public static void testLinesMatchTheFullInfo() throws Exception {
+        University university = university();
+        StringWriter text = new StringWriter();
+        ReportWriter report = new ReportWriter(text);
+        StringBuilder expected = new StringBuilder();
+        for (Student student : university.getStudents()) {
+            report.writeStudent(student);
+            expected.append(student.getFullStudentInfo()).append('\n');
+        }
+        for (Course course : university.getCourses()) {
+            report.writeCourse(course);
+            expected.append(course.getFullCourseInfo()).append('\n');
+        }
+        Assert.assertEquals(expected.toString(), text.toString(), "report");
+    }
+
+    public static void testClassListInEnrollmentOrder() throws Exception {
+        University university = university();
+        StringBuilder text = new StringBuilder();
+        new ReportWriter(text).writeClassList(university.getCourse("C 0"));
+        Assert.assertEquals("C 0 - Intro - Class List: 2 students\n"
+                + "    Student Grace (000002)\n"
+                + "    Student Ada (000001)\n", text.toString(), "class list");
+    }
+
+    public static void testEveryKindOfOutputGetsTheSameText() throws Exception {
+        University university = university();
+        //Longer than the buffers the writer starts with.
+        Student student = new Student("N\u00e9e " + "x".repeat(600), 3);
+        university.addStudent(student);
+        university.enrollStudentInCourse(3, "C 0");
+
+        StringBuilder builder = new StringBuilder();
+        new ReportWriter(builder).writeStudents(university.getStudents()).writeClassLists(university.getCourses());
+        StringWriter writer = new StringWriter();
+        new ReportWriter(writer).writeStudents(university.getStudents()).writeClassLists(university.getCourses());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ReportWriter stream = new ReportWriter(bytes);
+        stream.writeStudents(university.getStudents()).writeClassLists(university.getCourses());
+        stream.flush();
+        //Any other Appendable gets the line as a CharSequence.
+        StringBuffer buffer = new StringBuffer();
+        new ReportWriter(buffer).writeStudents(university.getStudents()).writeClassLists(university.getCourses());
+
+        Assert.assertTrue(builder.indexOf(student.getFullStudentInfo()) >= 0, "long line");
+        Assert.assertEquals(builder.toString(), writer.toString(), "Writer");
+        Assert.assertEquals(builder.toString(), new String(bytes.toByteArray(), StandardCharsets.UTF_8),
+                "OutputStream (UTF-8)");
+        Assert.assertEquals(builder.toString(), buffer.toString(), "Appendable");
+    }
+
+    private static University university() {
+        University university = new University("U", "M");
+        university.addCourse(new Course("Intro", "C 0"));
+        university.addCourse(new Course("Next", "C 1"));
+        university.addRequisiteToCourse("C 1", "C 0");
+        university.addStudent("Ada", 1);
+        university.addStudent("Grace", 2);
+        university.enrollStudentInCourse(2, "C 0");
+        university.enrollStudentInCourse(1, "C 0");
+        return university;
+    }
+}
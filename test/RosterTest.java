@@ -0,0 +1,146 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tests of Roster, against a LinkedHashSet doing the same changes.
+ */
+public class RosterTest {
+
+    public static void testKeepsInsertionOrderWithoutDuplicates() {
+        Roster<String> roster = new Roster<>();
+        Assert.assertTrue(roster.add("b"), "add b");
+        Assert.assertTrue(roster.add("a"), "add a");
+        Assert.assertFalse(roster.add("b"), "add b again");
+        Assert.assertEquals(List.of("b", "a"), roster, "roster");
+        Assert.assertEquals(1, roster.indexOf("a"), "index of a");
+    }
+
+    public static void testMatchesALinkedHashSetAcrossIndexingAndCompaction() {
+        Random random = new Random(42);
+        Roster<Integer> roster = new Roster<>();
+        LinkedHashSet<Integer> expected = new LinkedHashSet<>();
+        for (int i = 0; i < 20_000; i++) {
+            //Few values at first (the list stays unindexed), then up to a few hundred (indexed, with holes).
+            int value = random.nextInt(i < 2_000 ? 12 : 400);
+            if (random.nextInt(3) == 0) {
+                Assert.assertEquals(expected.remove(value), roster.remove((Object) value), "remove " + value);
+            } else {
+                Assert.assertEquals(expected.add(value), roster.add(value), "add " + value);
+            }
+            Assert.assertEquals(expected.size(), roster.size(), "size");
+            if (i % 97 == 0) {
+                Assert.assertEquals(new ArrayList<>(expected), new ArrayList<>(roster), "elements after " + i);
+                int index = expected.isEmpty() ? 0 : random.nextInt(expected.size());
+                if (!expected.isEmpty()) {
+                    Integer element = new ArrayList<>(expected).get(index);
+                    Assert.assertEquals(element, roster.get(index), "get " + index);
+                    Assert.assertEquals(index, roster.indexOf(element), "index of " + element);
+                }
+            }
+        }
+    }
+
+    public static void testIteratorRemoveKeepsTheOtherElements() {
+        Roster<Integer> roster = new Roster<>();
+        for (int i = 0; i < 50; i++) {
+            roster.add(i);
+        }
+        for (Iterator<Integer> iterator = roster.iterator(); iterator.hasNext(); ) {
+            if (iterator.next() % 2 == 0) {
+                iterator.remove();
+            }
+        }
+        List<Integer> odd = new ArrayList<>();
+        for (int i = 1; i < 50; i += 2) {
+            odd.add(i);
+        }
+        Assert.assertEquals(odd, roster, "odd elements left");
+    }
+
+    public static void testIteratorFailsAfterAConcurrentChange() {
+        Roster<Integer> roster = new Roster<>();
+        roster.add(1);
+        roster.add(2);
+        Iterator<Integer> iterator = roster.iterator();
+        iterator.next();
+        roster.add(3);
+        Assert.assertThrows(ConcurrentModificationException.class, iterator::next, "next after add");
+    }
+
+    public static void testReadersRacingRemovalsDoNotChangeTheRoster() throws Exception {
+        Roster<Integer> roster = new Roster<>();
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            roster.add(i);
+            expected.add(i);
+        }
+        AtomicBoolean done = new AtomicBoolean();
+        TestThreads.run(3, 60, thread -> {
+            if (thread == 0) {
+                //The only writer: removals leave holes, which reads used to compact behind its back.
+                try {
+                    Random random = new Random(7);
+                    for (int i = 0; i < 20_000; i++) {
+                        if (expected.size() > 100 && random.nextInt(3) > 0) {
+                            Integer element = expected.remove(random.nextInt(expected.size()));
+                            Assert.assertTrue(roster.remove(element), "remove " + element);
+                        } else {
+                            Integer element = 2_000 + i;
+                            roster.add(element);
+                            expected.add(element);
+                        }
+                    }
+                } finally {
+                    done.set(true);
+                }
+                return;
+            }
+            Random random = new Random(thread);
+            while (!done.get()) {
+                int size = roster.size();
+                if (size == 0) {
+                    continue;
+                }
+                try {
+                    Assert.assertNotNull(roster.get(random.nextInt(size)), "element read");
+                } catch (IndexOutOfBoundsException e) {
+                    //The writer removed elements since the size was read.
+                }
+                roster.indexOf(random.nextInt(22_000));
+            }
+        });
+        Assert.assertEquals(expected, new ArrayList<>(roster), "elements");
+        for (int i = 0; i < expected.size(); i += 37) {
+            Assert.assertEquals(expected.get(i), roster.get(i), "get " + i);
+            Assert.assertEquals(i, roster.indexOf(expected.get(i)), "index of " + expected.get(i));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public static void testSerializes() throws Exception {
+        Roster<String> roster = new Roster<>();
+        for (int i = 0; i < 30; i++) {
+            roster.add("s" + i);
+        }
+        roster.remove("s3");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(roster);
+        }
+        try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            Roster<String> copy = (Roster<String>) input.readObject();
+            Assert.assertEquals(roster, copy, "copy");
+            Assert.assertTrue(copy.remove("s10"), "copy is still indexed");
+            Assert.assertFalse(copy.contains("s10"), "removed from the copy");
+        }
+    }
+}
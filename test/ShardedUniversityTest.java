@@ -0,0 +1,268 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests of ShardedUniversity: where students are kept, answers and state against a single University, removals,
+ * concurrent enrollments in a full course, and messages that survive serialization.
+ */
+public class ShardedUniversityTest {
+
+    private static ShardNode node(ShardedUniversity university, int node) {
+        return ((LoopbackTransport) university.getTransport()).getNode(node);
+    }
+
+    /**
+     * Ten courses, the first two with 3 seats and C 9 requiring C 8, and 40 students; even students passed C 8.
+     */
+    private static void populate(ShardedUniversity sharded, University single) {
+        for (int i = 0; i < 10; i++) {
+            int capacity = i < 2 ? 3 : Course.UNLIMITED;
+            sharded.addCourse("Course " + i, "C " + i, capacity);
+            single.addCourse(new Course("Course " + i, "C " + i, capacity));
+        }
+        sharded.addRequisiteToCourse("C 9", "C 8");
+        single.addRequisiteToCourse("C 9", "C 8");
+        for (int id = 0; id < 40; id++) {
+            sharded.addStudent("Student " + id, id);
+            single.addStudent("Student " + id, id);
+            if (id % 2 == 0) {
+                sharded.addPreviousCourseToStudent(id, "C 8");
+                single.addPreviousCourseToStudent(id, "C 8");
+            }
+        }
+    }
+
+    public static void testStudentIsKeptOnlyOnItsNode() {
+        try (ShardedUniversity university = ShardedUniversity.inProcess("U", "M", 4)) {
+            university.addCourse("Course", "C", 10);
+            int courseNode = university.courseShardOf("C");
+            int id = courseNode + 1;
+            int studentNode = university.studentShardOf(id);
+            Assert.assertTrue(university.addStudent("Ada", id), "added");
+            Assert.assertFalse(university.addStudent("Ada", id), "added twice");
+            Assert.assertTrue(university.addPreviousCourseToStudent(id, "C"), "previous course");
+            for (int node = 0; node < 4; node++) {
+                Student student = node(university, node).getUniversity().getStudent(id);
+                if (node == studentNode) {
+                    Assert.assertEquals("Ada", student.getName(), "student on their node");
+                    Assert.assertEquals(1, student.getPreviousCourses().size(), "passed courses on their node");
+                    Assert.assertEquals(0, node(university, node).getReplicatedStudentCount(), "view of their node");
+                } else {
+                    Assert.assertNull(student, "student on node " + node);
+                    Assert.assertEquals(1, node(university, node).getReplicatedStudentCount(), "view of " + node);
+                }
+            }
+
+            //The course's node keeps a stub with the ID for the class list, for as long as the student is enrolled.
+            Assert.assertEquals(EnrollmentResult.ENROLLED, university.enroll(id, "C"), "enrolled");
+            Student stub = node(university, courseNode).getUniversity().getStudent(id);
+            Assert.assertEquals(id, stub.getIdNumber(), "stub ID");
+            Assert.assertTrue(stub.getPreviousCourses().isEmpty(), "stub passed courses");
+            Assert.assertEquals(1, node(university, courseNode).getStubCount(), "stubs");
+            Assert.assertEquals(List.of(id), university.getClassList("C"), "class list");
+            Assert.assertEquals(List.of("C"), university.getEnrolledCourses(id), "enrolled courses");
+            Assert.assertEquals(9, node(university, courseNode).getUniversity().getCourse("C").getAvailableSeats(),
+                    "seats on the course's node");
+
+            Assert.assertTrue(university.removeStudentFromCourse(id, "C"), "dropped");
+            Assert.assertNull(node(university, courseNode).getUniversity().getStudent(id), "stub after the drop");
+            Assert.assertEquals(0, node(university, courseNode).getStubCount(), "stubs after the drop");
+            Assert.assertEquals(List.of(), university.getClassList("C"), "class list after the drop");
+            Assert.assertEquals(10, node(university, courseNode).getUniversity().getCourse("C").getAvailableSeats(),
+                    "seats after the drop");
+        }
+    }
+
+    public static void testCourseNodeChecksPreRequisitesAgainstItsView() {
+        try (ShardedUniversity university = ShardedUniversity.inProcess("U", "M", 4)) {
+            university.addCourse("Basics", "B", 10);
+            university.addCourse("Advanced", "A", 10);
+            university.addRequisiteToCourse("A", "B");
+            int courseNode = university.courseShardOf("A");
+            int id = courseNode + 1;
+            university.addStudent("Ada", id);
+            //Asked directly, the course's node answers from its view without the student's node.
+            ShardNode node = node(university, courseNode);
+            Assert.assertEquals(EnrollmentResult.MISSING_PREREQUISITES, node.handle(ShardMessage.seat(id, "A")),
+                    "seat before passing B");
+            Assert.assertEquals(EnrollmentResult.UNKNOWN_STUDENT, node.handle(ShardMessage.seat(id + 4, "A")),
+                    "seat of an unknown student");
+            Assert.assertEquals(EnrollmentResult.MISSING_PREREQUISITES, university.enroll(id, "A"), "before");
+
+            Assert.assertTrue(university.addPreviousCourseToStudent(id, "B"), "passed B");
+            Assert.assertFalse(university.addPreviousCourseToStudent(id, "B"), "passed B twice");
+            Assert.assertEquals(EnrollmentResult.ENROLLED, university.enroll(id, "A"), "after passing B");
+            Assert.assertEquals(EnrollmentResult.ALREADY_ENROLLED, university.enroll(id, "A"), "again");
+            Assert.assertEquals(List.of("A"), university.getEnrolledCourses(id), "enrolled courses");
+
+            Assert.assertTrue(university.removeStudentFromUniversity(id), "removed");
+            for (int i = 0; i < 4; i++) {
+                Assert.assertEquals(0, node(university, i).getReplicatedStudentCount(), "view of node " + i);
+            }
+            Assert.assertEquals(EnrollmentResult.UNKNOWN_STUDENT, node.handle(ShardMessage.seat(id, "A")),
+                    "seat once removed");
+        }
+    }
+
+    public static void testAnswersAndStateMatchASingleUniversity() {
+        Random random = new Random(41);
+        University single = new University("U", "M");
+        try (ShardedUniversity sharded = ShardedUniversity.inProcess("U", "M", 3)) {
+            populate(sharded, single);
+            for (int i = 0; i < 3_000; i++) {
+                int id = random.nextInt(42);
+                String courseCode = "C " + (random.nextBoolean() ? random.nextInt(2) : random.nextInt(11));
+                if (random.nextInt(3) > 0) {
+                    Assert.assertEquals(single.enroll(id, courseCode), sharded.enroll(id, courseCode),
+                            "enroll " + id + " in " + courseCode + ", request " + i);
+                } else {
+                    Assert.assertEquals(single.removeStudentFromCourse(id, courseCode),
+                            sharded.removeStudentFromCourse(id, courseCode),
+                            "drop " + id + " from " + courseCode + ", request " + i);
+                }
+            }
+            assertSameState(single, sharded, 10, 42);
+            int stubs = 0;
+            for (int node = 0; node < 3; node++) {
+                stubs += node(sharded, node).getStubCount();
+            }
+            Assert.assertTrue(stubs > 0, "no student enrolled in a course of another node");
+        }
+    }
+
+    public static void testRemovalsLeaveNoStudentBehind() {
+        University single = new University("U", "M");
+        try (ShardedUniversity sharded = ShardedUniversity.inProcess("U", "M", 4)) {
+            populate(sharded, single);
+            for (int id = 0; id < 40; id++) {
+                for (int i = 2; i < 6; i++) {
+                    Assert.assertEquals(single.enroll(id, "C " + i), sharded.enroll(id, "C " + i), "enroll " + id);
+                }
+            }
+            for (int id = 0; id < 40; id += 3) {
+                Assert.assertTrue(sharded.removeStudentFromUniversity(id), "removed " + id);
+                single.removeStudentFromUniversity(id);
+            }
+            Assert.assertFalse(sharded.removeStudentFromUniversity(0), "removed twice");
+            for (int i = 2; i < 5; i++) {
+                Assert.assertTrue(sharded.removeCourseFromUniversity("C " + i), "removed C " + i);
+                single.removeCourseFromUniversity("C " + i);
+            }
+            assertSameState(single, sharded, 10, 40);
+            //Every student left is only enrolled in C 5, so the stubs are those of C 5 alone.
+            int owner = sharded.courseShardOf("C 5");
+            for (int node = 0; node < 4; node++) {
+                for (Student student : node(sharded, node).getUniversity().getStudentsView()) {
+                    int id = student.getIdNumber();
+                    Assert.assertTrue(node == sharded.studentShardOf(id) || node == owner,
+                            "student " + id + " left on node " + node);
+                    Assert.assertTrue(id % 3 != 0, "removed student " + id + " left on node " + node);
+                }
+            }
+            sharded.removeCourseFromUniversity("C 5");
+            for (int node = 0; node < 4; node++) {
+                Assert.assertEquals(0, node(sharded, node).getStubCount(), "stubs of node " + node);
+            }
+        }
+    }
+
+    public static void testConcurrentEnrollmentsNeverOverfillACourse() throws Exception {
+        ShardNode[] nodes = new ShardNode[4];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = new ShardNode(i, "U", "M");
+        }
+        try (ShardedUniversity university = new ShardedUniversity("U", "M", new LoopbackTransport(2, nodes))) {
+            university.addCourse("Popular", "P", 50);
+            university.addCourse("Large", "L");
+            for (int id = 0; id < 2_000; id++) {
+                university.addStudent("Student " + id, id);
+            }
+            List<CompletableFuture<EnrollmentResult>> results = new ArrayList<>();
+            for (int id = 0; id < 2_000; id++) {
+                results.add(university.enrollAsync(id, "P"));
+                results.add(university.enrollAsync(id, "L"));
+            }
+            int enrolled = 0;
+            for (CompletableFuture<EnrollmentResult> result : results) {
+                if (result.get(30, TimeUnit.SECONDS) == EnrollmentResult.ENROLLED) {
+                    enrolled++;
+                }
+            }
+            Assert.assertEquals(2_050, enrolled, "enrollments");
+            Assert.assertEquals(50, university.getClassList("P").size(), "students in P");
+            Assert.assertEquals(2_000, university.getClassList("L").size(), "students in L");
+
+            Set<String> fromCourses = new HashSet<>();
+            for (String code : new String[] {"P", "L"}) {
+                for (int id : university.getClassList(code)) {
+                    fromCourses.add(id + " " + code);
+                }
+            }
+            Set<String> fromStudents = new HashSet<>();
+            for (int id = 0; id < 2_000; id++) {
+                for (String code : university.getEnrolledCourses(id)) {
+                    fromStudents.add(id + " " + code);
+                }
+            }
+            Assert.assertEquals(fromCourses, fromStudents, "class lists against enrolled courses");
+        }
+    }
+
+    public static void testMessagesSurviveSerialization() throws Exception {
+        ShardMessage message = ShardMessage.seat(17, "COMP 3170");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(message);
+        }
+        ShardMessage copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (ShardMessage) in.readObject();
+        }
+        Assert.assertEquals(message.toString(), copy.toString(), "copy");
+
+        ShardNode node = new ShardNode(0, "U", "M");
+        node.handle(ShardMessage.addCourse("Algorithms", "COMP 3170", 1));
+        node.handle(ShardMessage.replicateStudent(17));
+        node.handle(ShardMessage.replicateStudent(18));
+        Assert.assertEquals(EnrollmentResult.ENROLLED, node.handle(copy), "seat from the copy");
+        Assert.assertEquals(EnrollmentResult.COURSE_FULL, node.handle(ShardMessage.seat(18, "COMP 3170")),
+                "seat of another student");
+        Assert.assertEquals(1, node.getStubCount(), "stubs");
+    }
+
+    /**
+     * Compares the class list of every course and the enrolled courses of every student.
+     */
+    private static void assertSameState(University single, ShardedUniversity sharded, int courses, int students) {
+        for (int i = 0; i < courses; i++) {
+            String code = "C " + i;
+            Set<Integer> expected = new HashSet<>();
+            Course course = single.getCourse(code);
+            if (course != null) {
+                for (Student student : course.getEnrolledStudents()) {
+                    expected.add(student.getIdNumber());
+                }
+            }
+            Assert.assertEquals(expected, new HashSet<>(sharded.getClassList(code)), "class list of " + code);
+        }
+        for (int id = 0; id < students; id++) {
+            Set<String> expected = new HashSet<>();
+            Student student = single.getStudent(id);
+            if (student != null) {
+                for (Course course : student.getEnrolledCourses()) {
+                    expected.add(course.getCourseCode());
+                }
+            }
+            Assert.assertEquals(expected, new HashSet<>(sharded.getEnrolledCourses(id)), "courses of " + id);
+        }
+    }
+}
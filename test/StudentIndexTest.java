@@ -0,0 +1,197 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.TreeMap;
+
+/**
+ * Tests of StudentIndex, against a HashMap doing the same changes.
+ */
+public class StudentIndexTest {
+
+    public static void testMatchesAHashMap() {
+        Random random = new Random(7);
+        StudentIndex index = new StudentIndex();
+        HashMap<Integer, Student> expected = new HashMap<>();
+        int[] ids = {0, -1, Integer.MIN_VALUE, Integer.MAX_VALUE};
+        for (int i = 0; i < 50_000; i++) {
+            //Mostly clustered IDs, so probe sequences collide and deletions have to move entries back.
+            int id = i % 10 == 0 ? ids[random.nextInt(ids.length)] : random.nextInt(2_000) * 64;
+            if (random.nextInt(3) == 0) {
+                Student student = expected.get(id);
+                Assert.assertEquals(student != null, index.remove(id, student), "remove " + id);
+                expected.remove(id);
+            } else {
+                Student student = new Student("Student " + id, id);
+                Student existing = expected.putIfAbsent(id, student);
+                Assert.assertSame(existing, index.putIfAbsent(student), "putIfAbsent " + id);
+            }
+            Assert.assertSame(expected.get(id), index.get(id), "get " + id);
+        }
+        Assert.assertEquals(expected.size(), index.size(), "size");
+        for (Student student : expected.values()) {
+            Assert.assertSame(student, index.get(student.getIdNumber()), "get " + student.getIdNumber());
+        }
+        Assert.assertEquals(expected.size(), index.toList().size(), "toList");
+    }
+
+    public static void testRemoveOnlyRemovesTheSameStudent() {
+        StudentIndex index = new StudentIndex();
+        Student student = new Student("A", 1);
+        index.putIfAbsent(student);
+        Assert.assertFalse(index.remove(1, new Student("B", 1)), "other student with the same ID");
+        Assert.assertSame(student, index.get(1), "student kept");
+        Assert.assertTrue(index.remove(1, student), "same student");
+        Assert.assertNull(index.get(1), "removed");
+    }
+
+    public static void testSortedSnapshotIsSortedAndCachedUntilAChange() {
+        StudentIndex index = new StudentIndex(4);
+        int[] ids = {5, -3, 100, 42, 0, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        for (int id : ids) {
+            index.putIfAbsent(new Student("S", id));
+        }
+        Student[] sorted = index.sortedSnapshot();
+        int[] sortedIds = new int[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            sortedIds[i] = sorted[i].getIdNumber();
+        }
+        int[] expected = ids.clone();
+        Arrays.sort(expected);
+        Assert.assertEquals(Arrays.toString(expected), Arrays.toString(sortedIds), "sorted IDs");
+        Assert.assertSame(sorted, index.sortedSnapshot(), "same snapshot without changes");
+        index.putIfAbsent(new Student("S", 7));
+        Assert.assertEquals(ids.length + 1, index.sortedSnapshot().length, "snapshot after a change");
+    }
+
+    public static void testPagesAndSpliteratorsMatchASortedMap() {
+        Random random = new Random(11);
+        StudentIndex index = new StudentIndex();
+        TreeMap<Integer, Student> expected = new TreeMap<>();
+        for (int i = 0; i < 40_000; i++) {
+            //Ranges of IDs fill up and empty again, so chunks are split, appended and merged.
+            int id = (i / 10_000 % 2 == 0 ? random.nextInt(3_000) : 1_000 + random.nextInt(500)) - 1_500;
+            if (random.nextInt(i / 10_000 % 2 == 0 ? 4 : 2) == 0) {
+                Student student = expected.remove(id);
+                index.remove(id, student);
+            } else {
+                Student student = new Student("S", id);
+                if (expected.putIfAbsent(id, student) == null) {
+                    index.putIfAbsent(student);
+                }
+            }
+            if (i % 2_000 == 0) {
+                assertSameOrder(expected, index);
+            }
+        }
+        assertSameOrder(expected, index);
+    }
+
+    private static void assertSameOrder(TreeMap<Integer, Student> expected, StudentIndex index) {
+        List<Student> sorted = new ArrayList<>(expected.values());
+        Assert.assertEquals(sorted, Arrays.asList(index.snapshot()), "snapshot");
+        for (int offset = 0; offset <= sorted.size() + 1; offset += 97) {
+            int to = Math.min(offset + 150, sorted.size());
+            Assert.assertEquals(offset > sorted.size() ? List.of() : sorted.subList(offset, to),
+                    index.getPage(offset, 150), "page at " + offset);
+        }
+        for (int id = -1_600; id < 1_600; id += 83) {
+            List<Student> after = new ArrayList<>(expected.tailMap(id, false).values());
+            Assert.assertEquals(after.subList(0, Math.min(40, after.size())), index.getPageAfter(id, 40),
+                    "page after " + id);
+        }
+        List<Student> split = new ArrayList<>();
+        collect(index.spliterator(), split);
+        Assert.assertEquals(sorted, split, "spliterator split all the way");
+    }
+
+    //Splits as far as it goes and traverses the prefixes first, like an ordered parallel stream.
+    private static void collect(Spliterator<Student> spliterator, List<Student> students) {
+        Spliterator<Student> prefix = spliterator.trySplit();
+        if (prefix != null) {
+            collect(prefix, students);
+            collect(spliterator, students);
+        } else {
+            spliterator.forEachRemaining(students::add);
+        }
+    }
+
+    public static void testIterationDuringChangesSeesEveryStableStudentOnceInOrder() throws Exception {
+        StudentIndex index = new StudentIndex();
+        for (int id = 0; id < 20_000; id += 2) {
+            index.putIfAbsent(new Student("Stable", id));
+        }
+        boolean[] done = new boolean[1];
+        TestThreads.run(3, 60, thread -> {
+            if (thread == 0) {
+                //Odd IDs come and go all over the order, splitting and merging the chunks the readers are in.
+                Random random = new Random(3);
+                try {
+                    for (int i = 0; i < 300_000; i++) {
+                        int id = random.nextInt(10_000) * 2 + 1;
+                        Student student = index.get(id);
+                        if (student == null) {
+                            index.putIfAbsent(new Student("Other", id));
+                        } else {
+                            index.remove(id, student);
+                        }
+                    }
+                } finally {
+                    synchronized (done) {
+                        done[0] = true;
+                    }
+                }
+                return;
+            }
+            while (true) {
+                synchronized (done) {
+                    if (done[0]) {
+                        return;
+                    }
+                }
+                int[] last = {Integer.MIN_VALUE};
+                int[] stable = {0};
+                index.spliterator().forEachRemaining(student -> {
+                    Assert.assertTrue(student.getIdNumber() > last[0], "ID " + student.getIdNumber() + " after "
+                            + last[0]);
+                    last[0] = student.getIdNumber();
+                    if (student.getIdNumber() % 2 == 0) {
+                        stable[0]++;
+                    }
+                });
+                Assert.assertEquals(10_000, stable[0], "stable students seen");
+            }
+        });
+    }
+
+    public static void testLockFreeReadsDuringWritesAndResizes() throws InterruptedException {
+        final int stable = 1_000;
+        StudentIndex index = new StudentIndex();
+        for (int i = 0; i < stable; i++) {
+            index.putIfAbsent(new Student("Stable", i));
+        }
+        TestThreads.run(3, 60, thread -> {
+            if (thread == 0) {
+                //The writer grows and shrinks the table with other IDs.
+                for (int round = 0; round < 20; round++) {
+                    for (int i = 0; i < 5_000; i++) {
+                        index.putIfAbsent(new Student("Other", 1_000_000 + i));
+                    }
+                    for (int i = 0; i < 5_000; i++) {
+                        index.remove(1_000_000 + i, index.get(1_000_000 + i));
+                    }
+                }
+            } else {
+                for (int i = 0; i < 2_000_000; i++) {
+                    int id = i % stable;
+                    Student student = index.get(id);
+                    Assert.assertNotNull(student, "student " + id + " not found during a write");
+                    Assert.assertEquals(id, student.getIdNumber(), "student found for " + id);
+                }
+            }
+        });
+        Assert.assertEquals(stable, index.size(), "size");
+    }
+}
@@ -0,0 +1,259 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tests of TermSnapshot: a snapshot sees the university as it was opened through every kind of change, only what
+ * changed is preserved, several snapshots each keep their own point in time, closing, and reads while registration
+ * goes on.
+ */
+public class TermSnapshotTest {
+
+    /**
+     * Six courses, C 0 with 2 seats and C 3 requiring C 1, and 8 students: the first four enrolled in C 0 or
+     * waitlisted for it, student 2 passed C 1 and is enrolled in C 3.
+     */
+    private static University university() {
+        University university = new University("U", "M");
+        for (int i = 0; i < 6; i++) {
+            university.addCourse(new Course("Course " + i, "C " + i, i == 0 ? 2 : Course.UNLIMITED));
+        }
+        university.addRequisiteToCourse("C 3", "C 1");
+        for (int id = 0; id < 8; id++) {
+            university.addStudent("Student " + id, id);
+        }
+        for (int id = 0; id < 4; id++) {
+            if (university.enroll(id, "C 0") == EnrollmentResult.COURSE_FULL) {
+                university.addStudentToWaitlist(id, "C 0");
+            }
+        }
+        university.addPreviousCourseToStudent(2, "C 1");
+        university.enroll(2, "C 3");
+        return university;
+    }
+
+    /**
+     * Changes every kind of state a snapshot keeps.
+     */
+    private static void change(University university) {
+        university.enroll(5, "C 2");
+        university.removeStudentFromCourse(2, "C 3");
+        //Promotes the first student of the waitlist.
+        university.removeStudentFromCourse(0, "C 0");
+        university.addStudentToWaitlist(6, "C 0");
+        university.setCourseCapacity("C 4", 7);
+        university.addPreviousCourseToStudent(4, "C 1");
+        university.addRequisiteToCourse("C 5", "C 2");
+        university.addStudent("Late", 20);
+        university.enroll(20, "C 1");
+        university.removeStudentFromUniversity(7);
+        university.addCourse(new Course("Course 9", "C 9"));
+        university.removeCourseFromUniversity("C 2");
+    }
+
+    /**
+     * The same description as TestUniversities.describe, read from the snapshot.
+     */
+    private static String describe(TermSnapshot snapshot) {
+        StringBuilder description = new StringBuilder();
+        for (Student student : snapshot.getStudents()) {
+            int id = student.getIdNumber();
+            description.append(id).append(' ').append(student.getName())
+                    .append(" enrolled ").append(codes(snapshot.getEnrolledCourses(id)))
+                    .append(" passed ").append(codes(snapshot.getPreviousCourses(id))).append('\n');
+        }
+        List<Course> courses = new ArrayList<>(snapshot.getCourses());
+        courses.sort((a, b) -> a.getCourseCode().compareTo(b.getCourseCode()));
+        for (Course course : courses) {
+            String code = course.getCourseCode();
+            description.append(code).append(' ').append(course.getName())
+                    .append(" capacity ").append(snapshot.getCapacity(code))
+                    .append(" requires ").append(codes(snapshot.getPreRequisites(code)))
+                    .append(" class ").append(ids(snapshot.getClassList(code)))
+                    .append(" waitlist ").append(ids(snapshot.getWaitlist(code))).append('\n');
+        }
+        return description.toString();
+    }
+
+    private static List<String> codes(List<Course> courses) {
+        List<String> codes = new ArrayList<>();
+        for (Course course : courses) {
+            codes.add(course.getCourseCode());
+        }
+        codes.sort(null);
+        return codes;
+    }
+
+    private static List<Integer> ids(List<Student> students) {
+        List<Integer> ids = new ArrayList<>();
+        for (Student student : students) {
+            ids.add(student.getIdNumber());
+        }
+        return ids;
+    }
+
+    public static void testSnapshotKeepsTheStateItWasOpenedWith() {
+        University university = university();
+        String before = TestUniversities.describe(university);
+        try (TermSnapshot snapshot = university.openSnapshot()) {
+            Assert.assertEquals(before, describe(snapshot), "snapshot before any change");
+            change(university);
+            Assert.assertFalse(before.equals(TestUniversities.describe(university)), "university unchanged");
+            Assert.assertEquals(before, describe(snapshot), "snapshot after the changes");
+
+            Assert.assertNull(snapshot.getStudent(20), "student added since");
+            Assert.assertEquals("Student 7", snapshot.getStudent(7).getName(), "student removed since");
+            Assert.assertNull(snapshot.getCourse("C 9"), "course added since");
+            Assert.assertNull(snapshot.getClassList("C 9"), "class list of a course added since");
+            Assert.assertEquals(-1, snapshot.getCapacity("C 9"), "capacity of a course added since");
+            Assert.assertEquals("C 2", snapshot.getCourse("C 2").getCourseCode(), "course removed since");
+            Assert.assertEquals("U", snapshot.getUniversityName(), "name");
+        }
+        try (TermSnapshot snapshot = university.openSnapshot()) {
+            Assert.assertEquals(TestUniversities.describe(university), describe(snapshot), "snapshot opened later");
+        }
+    }
+
+    public static void testOnlyWhatChangesIsPreserved() {
+        University university = university();
+        try (TermSnapshot snapshot = university.openSnapshot()) {
+            describe(snapshot);
+            Assert.assertEquals(0, snapshot.getPreservedStudentCount(), "students preserved by reading");
+            Assert.assertEquals(0, snapshot.getPreservedCourseCount(), "courses preserved by reading");
+            university.enroll(5, "C 4");
+            university.enroll(5, "C 5");
+            Assert.assertEquals(1, snapshot.getPreservedStudentCount(), "students preserved");
+            Assert.assertEquals(2, snapshot.getPreservedCourseCount(), "courses preserved");
+            //Only the first change is kept: the snapshot still sees student 5 in no course.
+            Assert.assertEquals(List.of(), snapshot.getEnrolledCourses(5), "courses of 5");
+        }
+    }
+
+    public static void testEverySnapshotKeepsItsOwnPointInTime() {
+        University university = university();
+        TermSnapshot first = university.openSnapshot();
+        String before = TestUniversities.describe(university);
+        university.enroll(5, "C 1");
+        TermSnapshot second = university.openSnapshot();
+        String between = TestUniversities.describe(university);
+        university.enroll(5, "C 4");
+        university.removeStudentFromCourse(5, "C 1");
+        Assert.assertEquals(before, describe(first), "first snapshot");
+        Assert.assertEquals(between, describe(second), "second snapshot");
+        Assert.assertEquals(List.of("C 1"), codes(second.getEnrolledCourses(5)), "courses of 5 in the second");
+        first.close();
+        Assert.assertEquals(between, describe(second), "second snapshot once the first is closed");
+        second.close();
+    }
+
+    public static void testClosedSnapshotCannotBeReadAndPreservesNothing() {
+        University university = university();
+        TermSnapshot snapshot = university.openSnapshot();
+        snapshot.close();
+        snapshot.close();
+        Assert.assertTrue(snapshot.isClosed(), "closed");
+        university.enroll(5, "C 4");
+        Assert.assertEquals(0, snapshot.getPreservedStudentCount(), "students preserved once closed");
+        Assert.assertThrows(IllegalStateException.class, snapshot::getStudents, "students of a closed snapshot");
+        Assert.assertThrows(IllegalStateException.class, () -> snapshot.getClassList("C 0"),
+                "class list of a closed snapshot");
+    }
+
+    public static void testSnapshotDroppedWithoutClosingStopsPreserving() throws Exception {
+        University university = university();
+        university.openSnapshot().close();
+        openAndDrop(university);
+        Assert.assertEquals(1, university.getOpenSnapshotCount(), "open snapshots before collection");
+        //The snapshot is unreachable, so the garbage collector lets its cleaner close it.
+        for (int attempt = 0; attempt < 200 && university.getOpenSnapshotCount() > 0; attempt++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(0, university.getOpenSnapshotCount(), "open snapshots after collection");
+        Assert.assertEquals(1, university.getAbandonedSnapshotCount(), "abandoned snapshots");
+
+        try (TermSnapshot snapshot = university.openSnapshot()) {
+            Assert.assertEquals(1, university.getOpenSnapshotCount(), "snapshot opened again");
+            university.enroll(5, "C 4");
+            Assert.assertEquals(1, snapshot.getPreservedStudentCount(), "students preserved");
+        }
+        Assert.assertEquals(1, university.getAbandonedSnapshotCount(), "closed snapshots are not abandoned");
+    }
+
+    private static void openAndDrop(University university) {
+        TermSnapshot snapshot = university.openSnapshot();
+        Assert.assertEquals("U", snapshot.getUniversityName(), "name");
+    }
+
+    public static void testReadsDuringRegistrationSeeOnePointInTime() throws Exception {
+        University university = new University("U", "M");
+        for (int i = 0; i < 10; i++) {
+            university.addCourse(new Course("Course " + i, "C " + i, 300));
+        }
+        for (int id = 0; id < 2_000; id++) {
+            university.addStudent("Student " + id, id);
+            university.enroll(id, "C " + id % 10);
+        }
+        AtomicBoolean done = new AtomicBoolean();
+        List<String> reads = new ArrayList<>();
+        TermSnapshot[] opened = new TermSnapshot[1];
+        TestThreads.run(3, 120, thread -> {
+            if (thread == 0) {
+                try {
+                    //Opened while the writers are at work; every read of it must give the same answer.
+                    Thread.sleep(20);
+                    try (TermSnapshot snapshot = university.openSnapshot()) {
+                        opened[0] = snapshot;
+                        for (int read = 0; read < 5; read++) {
+                            reads.add(describe(snapshot));
+                            assertClassListsMatchEnrolledCourses(snapshot);
+                        }
+                    }
+                } finally {
+                    done.set(true);
+                }
+                return;
+            }
+            Random random = new Random(thread);
+            while (!done.get()) {
+                int id = random.nextInt(2_000);
+                String code = "C " + random.nextInt(10);
+                if (random.nextBoolean()) {
+                    university.enroll(id, code);
+                } else {
+                    university.removeStudentFromCourse(id, code);
+                }
+                if (random.nextInt(50) == 0) {
+                    university.removeStudentFromUniversity(id);
+                    university.addStudent("Again " + id, id);
+                }
+            }
+        });
+        for (int read = 1; read < reads.size(); read++) {
+            Assert.assertEquals(reads.get(0), reads.get(read), "read " + read);
+        }
+        Assert.assertTrue(opened[0].getPreservedStudentCount() > 0, "nothing changed while the snapshot was read");
+    }
+
+    private static void assertClassListsMatchEnrolledCourses(TermSnapshot snapshot) {
+        Set<String> fromStudents = new HashSet<>();
+        for (Student student : snapshot.getStudents()) {
+            for (Course course : snapshot.getEnrolledCourses(student.getIdNumber())) {
+                fromStudents.add(student.getIdNumber() + " " + course.getCourseCode());
+            }
+        }
+        Set<String> fromCourses = new HashSet<>();
+        for (Course course : snapshot.getCourses()) {
+            List<Student> classList = snapshot.getClassList(course.getCourseCode());
+            Assert.assertTrue(classList.size() <= snapshot.getCapacity(course.getCourseCode()),
+                    "overfilled " + course.getCourseCode());
+            for (Student student : classList) {
+                fromCourses.add(student.getIdNumber() + " " + course.getCourseCode());
+            }
+        }
+        Assert.assertEquals(fromCourses, fromStudents, "class lists against enrolled courses");
+    }
+}
@@ -0,0 +1,74 @@
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the tests without any library. A test class is a class whose name ends with "Test", a test is one of its
+ * public static methods whose name starts with "test" and that takes no parameters. A test fails if it throws.
+ *
+ *     javac -d out *.java test/*.java && java -cp out TestRunner [TestClass...]
+ *
+ * Without arguments, every test class found next to TestRunner is run. The exit status is 1 if any test failed,
+ * so a script (or CI job) running it stops on the first broken build.
+ */
+public class TestRunner {
+
+    public static void main(String[] args) throws Exception {
+        List<String> classNames = args.length > 0 ? Arrays.asList(args) : findTestClasses();
+        int passed = 0;
+        List<String> failures = new ArrayList<>();
+        for (String className : classNames) {
+            Class<?> testClass = Class.forName(className);
+            //Methods are sorted so the tests always run in the same order.
+            Method[] methods = testClass.getMethods();
+            Arrays.sort(methods, (first, second) -> first.getName().compareTo(second.getName()));
+            for (Method method : methods) {
+                if (!isTest(method)) {
+                    continue;
+                }
+                String name = className + "." + method.getName();
+                long start = System.nanoTime();
+                try {
+                    method.invoke(null);
+                    passed++;
+                    System.out.printf("PASS %s (%d ms)%n", name, (System.nanoTime() - start) / 1_000_000);
+                } catch (InvocationTargetException e) {
+                    failures.add(name);
+                    System.out.printf("FAIL %s%n", name);
+                    e.getCause().printStackTrace(System.out);
+                }
+            }
+        }
+        System.out.printf("%d passed, %d failed%n", passed, failures.size());
+        if (!failures.isEmpty()) {
+            for (String failure : failures) {
+                System.out.println("  " + failure);
+            }
+            System.exit(1);
+        }
+    }
+
+    private static boolean isTest(Method method) {
+        int modifiers = method.getModifiers();
+        return method.getName().startsWith("test") && Modifier.isStatic(modifiers) && Modifier.isPublic(modifiers)
+                && method.getParameterCount() == 0;
+    }
+
+    /**
+     * The test classes compiled in the same directory as TestRunner (the classes are in the default package).
+     */
+    private static List<String> findTestClasses() throws Exception {
+        File directory = new File(TestRunner.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        String[] files = directory.list((dir, file) -> file.endsWith("Test.class") && file.indexOf('$') < 0);
+        List<String> classNames = new ArrayList<>();
+        for (String file : files == null ? new String[0] : files) {
+            classNames.add(file.substring(0, file.length() - ".class".length()));
+        }
+        classNames.sort(null);
+        return classNames;
+    }
+}
@@ -0,0 +1,51 @@
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the body of a concurrency test on several threads, all released at the same time.
+ */
+public final class TestThreads {
+
+    public interface Body {
+        void run(int thread) throws Exception;
+    }
+
+    private TestThreads() {
+    }
+
+    /**
+     * Runs the body on the given number of threads and waits for them. The test fails if a thread threw, or if the
+     * threads are still running after the timeout (e.g. on a deadlock).
+     */
+    public static void run(int threads, long timeoutSeconds, Body body) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final int thread = i;
+            workers[i] = new Thread(() -> {
+                try {
+                    start.await();
+                    body.run(thread);
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            }, "test-thread-" + i);
+            //A deadlocked test must not keep the JVM from exiting.
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+        start.countDown();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        for (Thread worker : workers) {
+            worker.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            if (worker.isAlive()) {
+                Assert.fail(worker.getName() + " did not finish within " + timeoutSeconds + " s (deadlock?)");
+            }
+        }
+        if (!failures.isEmpty()) {
+            throw new AssertionError(failures.size() + " thread(s) failed", failures.peek());
+        }
+    }
+}
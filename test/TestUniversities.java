@@ -0,0 +1,68 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Helpers of the tests that save and rebuild universities.
+ */
+public final class TestUniversities {
+
+    private TestUniversities() {
+    }
+
+    /**
+     * Describes everything a snapshot or the log has to restore, so two universities can be compared as strings.
+     */
+    public static String describe(University university) {
+        StringBuilder description = new StringBuilder();
+        List<Student> students = new ArrayList<>(university.getStudents());
+        students.sort(Comparator.comparingInt(Student::getIdNumber));
+        for (Student student : students) {
+            description.append(student.getIdNumber()).append(' ').append(student.getName())
+                    .append(" enrolled ").append(codes(student.getEnrolledCourses()))
+                    .append(" passed ").append(codes(student.getPreviousCourses())).append('\n');
+        }
+        List<Course> courses = new ArrayList<>(university.getCourses());
+        courses.sort(Comparator.comparing(Course::getCourseCode));
+        for (Course course : courses) {
+            description.append(course.getCourseCode()).append(' ').append(course.getName())
+                    .append(" capacity ").append(course.getCapacity())
+                    .append(" requires ").append(codes(course.getPreRequisites()))
+                    .append(" class ").append(ids(course.getEnrolledStudents()))
+                    .append(" waitlist ").append(ids(course.getWaitlist())).append('\n');
+        }
+        return description.toString();
+    }
+
+    private static List<String> codes(Iterable<Course> courses) {
+        List<String> codes = new ArrayList<>();
+        for (Course course : courses) {
+            codes.add(course.getCourseCode());
+        }
+        codes.sort(null);
+        return codes;
+    }
+
+    private static List<Integer> ids(Iterable<Student> students) {
+        List<Integer> ids = new ArrayList<>();
+        for (Student student : students) {
+            ids.add(student.getIdNumber());
+        }
+        return ids;
+    }
+
+    /**
+     * Deletes a temporary directory and the files in it.
+     */
+    public static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tests of UniversityAnalytics: every statistic on a small university worked out by hand, the order of the top
+ * courses, and registration going on while a statistic is computed.
+ */
+public class UniversityAnalyticsTest {
+
+    /**
+     * Courses A (capacity 2), B, C and D, which requires B and C. Student 1 passed B, student 2 passed B and C,
+     * student 3 passed C and student 4 passed B and D. Students 1 and 2 are enrolled in A and C, student 3 in C
+     * and waitlisted for A.
+     */
+    private static University fixture() {
+        University university = new University("U", "M");
+        university.addCourse(new Course("Course A", "A", 2));
+        for (String code : new String[] {"B", "C", "D"}) {
+            university.addCourse(new Course("Course " + code, code));
+        }
+        university.addRequisiteToCourse("D", "B");
+        university.addRequisiteToCourse("D", "C");
+        for (int id = 1; id <= 4; id++) {
+            university.addStudent("Student " + id, id);
+        }
+        university.addPreviousCourseToStudent(1, "B");
+        university.addPreviousCourseToStudent(2, "B");
+        university.addPreviousCourseToStudent(2, "C");
+        university.addPreviousCourseToStudent(3, "C");
+        university.addPreviousCourseToStudent(4, "B");
+        university.addPreviousCourseToStudent(4, "D");
+        for (int id = 1; id <= 3; id++) {
+            if (university.enroll(id, "A") == EnrollmentResult.COURSE_FULL) {
+                university.addStudentToWaitlist(id, "A");
+            }
+            university.enroll(id, "C");
+        }
+        return university;
+    }
+
+    public static void testCourseFill() {
+        UniversityAnalytics.CourseFill fill = fixture().getAnalytics().getCourseFill();
+        List<String> codes = new ArrayList<>();
+        for (Course course : fill.getCourses()) {
+            codes.add(course.getCourseCode());
+        }
+        Assert.assertEquals(List.of("A", "B", "C", "D"), codes, "courses");
+        Assert.assertEquals(2, fill.getEnrolled(0), "enrolled in A");
+        Assert.assertEquals(2, fill.getCapacity(0), "capacity of A");
+        Assert.assertEquals(1, fill.getWaitlisted(0), "waitlisted for A");
+        Assert.assertEquals(1.0, fill.getFillRate(0), 1e-9, "fill rate of A");
+        Assert.assertEquals(3, fill.getEnrolled(2), "enrolled in C");
+        Assert.assertEquals(0, fill.getWaitlisted(2), "waitlisted for C");
+        Assert.assertEquals("[0]", Arrays.toString(fill.getFullCourses()), "full courses");
+    }
+
+    public static void testLoadDistribution() {
+        UniversityAnalytics.LoadDistribution load = fixture().getAnalytics().getLoadDistribution();
+        Assert.assertEquals(4, load.getStudentCount(), "students");
+        Assert.assertEquals(5, load.getEnrollments(), "enrollments");
+        Assert.assertEquals(2, load.getMaxLoad(), "max load");
+        Assert.assertEquals(1, load.getStudents(0), "students with no course");
+        Assert.assertEquals(1, load.getStudents(1), "students with one course");
+        Assert.assertEquals(2, load.getStudents(2), "students with two courses");
+        Assert.assertEquals(1.25, load.getMeanLoad(), 1e-9, "mean load");
+    }
+
+    public static void testPrerequisiteBottlenecks() {
+        University university = fixture();
+        UniversityAnalytics.CourseCounts bottlenecks = university.getAnalytics().getPrerequisiteBottlenecks();
+        //Student 1 still needs C for D and student 3 still needs B; students 2 and 4 are not held back.
+        Assert.assertEquals(1, bottlenecks.getCount(university.getCourse("B")), "held back by B");
+        Assert.assertEquals(1, bottlenecks.getCount(university.getCourse("C")), "held back by C");
+        Assert.assertEquals(0, bottlenecks.getCount(university.getCourse("A")), "held back by A");
+        Assert.assertEquals(0, bottlenecks.getCount(university.getCourse("D")), "held back by D");
+    }
+
+    public static void testCoEnrollment() {
+        University university = fixture();
+        UniversityAnalytics.CoEnrollment pairs = university.getAnalytics().getCoEnrollment();
+        Assert.assertEquals(1, pairs.getPairCount(), "pairs");
+        Assert.assertEquals(2, pairs.getCount(university.getCourse("A"), university.getCourse("C")), "A and C");
+        Assert.assertEquals(2, pairs.getCount(university.getCourse("C"), university.getCourse("A")), "C and A");
+        Assert.assertEquals(0, pairs.getCount(university.getCourse("A"), university.getCourse("B")), "A and B");
+    }
+
+    public static void testTopIsHighestFirstWithTiesInOrderAdded() {
+        University university = new University("U", "M");
+        int[] enrolled = {3, 0, 5, 3, 1, 5, 2};
+        for (int i = 0; i < enrolled.length; i++) {
+            university.addCourse(new Course("Course " + i, "C" + i));
+        }
+        for (int id = 0; id < 5; id++) {
+            university.addStudent("Student " + id, id);
+            for (int i = 0; i < enrolled.length; i++) {
+                if (id < enrolled[i]) {
+                    university.enroll(id, "C" + i);
+                }
+            }
+        }
+        //CourseCounts of the class sizes: C2 and C5 tie, as do C0 and C3, and C1 has none.
+        UniversityAnalytics.CourseCounts counts = classSizes(university);
+        Assert.assertEquals(List.of("C2", "C5", "C0", "C3", "C6", "C4"), codes(counts.getTop(10)), "all courses");
+        Assert.assertEquals(List.of("C2", "C5", "C0"), codes(counts.getTop(3)), "top 3");
+        Assert.assertEquals(List.of(), codes(counts.getTop(0)), "top 0");
+        Assert.assertThrows(IllegalArgumentException.class, () -> counts.getTop(-1), "negative limit");
+    }
+
+    private static UniversityAnalytics.CourseCounts classSizes(University university) {
+        Course[] coursesByOrdinal = university.getCoursesByOrdinal();
+        long[] counts = new long[coursesByOrdinal.length];
+        for (Course course : coursesByOrdinal) {
+            if (course != null) {
+                counts[course.getOrdinal()] = course.getEnrolledStudents().size();
+            }
+        }
+        return new UniversityAnalytics.CourseCounts(coursesByOrdinal, counts);
+    }
+
+    private static List<String> codes(List<Course> courses) {
+        List<String> codes = new ArrayList<>();
+        for (Course course : courses) {
+            codes.add(course.getCourseCode());
+        }
+        return codes;
+    }
+
+    public static void testRegistrationGoesOnWhileAStatisticIsComputed() throws Exception {
+        University university = new University("U", "M");
+        for (int i = 0; i < 20; i++) {
+            university.addCourse(new Course("Course " + i, "C " + i));
+        }
+        for (int i = 1; i < 20; i++) {
+            university.addRequisiteToCourse("C " + i, "C " + (i - 1));
+        }
+        for (int i = 0; i < 100_000; i++) {
+            university.addStudent("Student " + i, i);
+            university.addPreviousCourseToStudent(i, "C " + (i % 19));
+            university.enrollStudentInCourse(i, "C " + (i % 20));
+            university.enrollStudentInCourse(i, "C " + ((i + 7) % 20));
+        }
+        long[] statistic = new long[2];
+        List<long[]> changes = new ArrayList<>();
+        AtomicBoolean done = new AtomicBoolean();
+        TestThreads.run(2, 120, thread -> {
+            if (thread == 0) {
+                statistic[0] = System.nanoTime();
+                university.getAnalytics().getCoEnrollment();
+                statistic[1] = System.nanoTime();
+                done.set(true);
+                return;
+            }
+            for (int i = 0; !done.get(); i++) {
+                long start = System.nanoTime();
+                university.enroll(i % 100_000, "C " + ((i + 3) % 20));
+                changes.add(new long[] {start, System.nanoTime()});
+            }
+        });
+
+        //Opening the snapshot takes the catalog lock briefly; in the middle half of the time, changes must go on.
+        long quarter = (statistic[1] - statistic[0]) / 4;
+        long from = statistic[0] + quarter;
+        long to = statistic[1] - quarter;
+        int during = 0;
+        for (long[] change : changes) {
+            if (change[0] >= from && change[1] <= to) {
+                during++;
+            }
+        }
+        Assert.assertTrue(during > 0, "no change made while the statistic was computed ("
+                + changes.size() + " changes, statistic took " + (statistic[1] - statistic[0]) / 1_000_000 + " ms)");
+    }
+}
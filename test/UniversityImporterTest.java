@@ -0,0 +1,133 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests of UniversityImporter: rows applied in file order, rejected rows reported with their line, and the
+ * university sized for the files.
+ */
+public class UniversityImporterTest {
+
+    public static void testImportsEveryFileAndReportsRejectedRows() throws Exception {
+        Path directory = Files.createTempDirectory("import");
+        try {
+            Path students = write(directory, "students.csv", "id,name",
+                    "1,Ada", "2,\"Hopper, Grace\"", "1,Duplicate", "x,Malformed", "", "3,Alan");
+            Path courses = write(directory, "courses.csv", "code,name,capacity",
+                    "C 0,Intro,", "C 1,\"Say \"\"hi\"\"\",1", "C 0,Again", "C 2,Bad,-1");
+            Path requisites = write(directory, "requisites.csv", "course,requisite",
+                    "C 1,C 0", "C 0,C 1", "C 1,NOPE");
+            Path previous = write(directory, "previous.csv", "student,course", "1,C 0", "2,C 0", "1,C 0", "9,C 0");
+            Path enrollments = write(directory, "enrollments.csv", "student,course",
+                    "1,C 1", "2,C 1", "3,C 1", "1,C 1", "3,C 0", "9,C 0", "3,NOPE");
+
+            University university = new University("U", "M");
+            ImportReport report = new UniversityImporter(university, 2)
+                    .importFiles(students, courses, requisites, previous, enrollments);
+
+            Assert.assertEquals(3, report.getStudents(), "students");
+            Assert.assertEquals("Hopper, Grace", university.getStudent(2).getName(), "quoted name");
+            Assert.assertEquals("Ada", university.getStudent(1).getName(), "the first duplicate wins");
+            Assert.assertEquals(2, report.getCourses(), "courses");
+            Assert.assertEquals("Say \"hi\"", university.getCourse("C 1").getName(), "doubled quotes");
+            Assert.assertEquals(1, report.getRequisites(), "pre-requisites");
+            Assert.assertEquals(2, report.getPreviousCourses(), "previous courses");
+            //C 1 has one seat: the first eligible row of the file gets it.
+            Assert.assertEquals(2, report.getEnrollments(), "enrollments");
+            Assert.assertEquals(List.of(university.getStudent(1)), university.getCourse("C 1").getEnrolledStudents(),
+                    "class list of C 1");
+
+            Assert.assertEquals(List.of(
+                    "students.csv:4 DUPLICATE_STUDENT", "students.csv:5 MALFORMED",
+                    "courses.csv:4 DUPLICATE_COURSE", "courses.csv:5 MALFORMED",
+                    "requisites.csv:3 INVALID_REQUISITE", "requisites.csv:4 UNKNOWN_COURSE",
+                    "previous.csv:4 ALREADY_PASSED", "previous.csv:5 UNKNOWN_STUDENT",
+                    "enrollments.csv:3 COURSE_FULL", "enrollments.csv:4 MISSING_PREREQUISITES",
+                    "enrollments.csv:5 ALREADY_ENROLLED", "enrollments.csv:7 UNKNOWN_STUDENT",
+                    "enrollments.csv:8 UNKNOWN_COURSE"), rejections(report), "rejected rows");
+        } finally {
+            TestUniversities.delete(directory);
+        }
+    }
+
+    public static void testLargeFilesKeepTheirOrderAcrossBatches() throws Exception {
+        Path directory = Files.createTempDirectory("import");
+        try {
+            int rows = 30_000;
+            List<String> students = new ArrayList<>();
+            students.add("id,name");
+            for (int i = 0; i < rows; i++) {
+                students.add(i + ",Student " + i);
+            }
+            List<String> courses = new ArrayList<>();
+            courses.add("code,name,capacity");
+            for (int i = 0; i < 500; i++) {
+                courses.add("C " + i + ",Course " + i + ",10");
+            }
+            List<String> enrollments = new ArrayList<>();
+            enrollments.add("student,course");
+            for (int i = 0; i < rows; i++) {
+                enrollments.add(i + ",C " + (i % 500));
+            }
+            University university = new University("U", "M");
+            university.addCourse(new Course("Existing", "E"));
+            ImportReport report = new UniversityImporter(university, 3).importFiles(
+                    write(directory, "students.csv", students), write(directory, "courses.csv", courses),
+                    null, null, write(directory, "enrollments.csv", enrollments));
+
+            Assert.assertEquals(rows, report.getStudents(), "students");
+            Assert.assertEquals(500, report.getCourses(), "courses");
+            Assert.assertEquals(5_000, report.getEnrollments(), "enrollments");
+            Assert.assertEquals(rows - 5_000, report.getRejectionCount(ImportReport.Reason.COURSE_FULL), "full");
+            //First come, first served: the students of the first rows got the seats.
+            for (int i = 0; i < 500; i++) {
+                List<Student> classList = university.getCourse("C " + i).getEnrolledStudents();
+                for (int j = 0; j < classList.size(); j++) {
+                    Assert.assertEquals(i + 500 * j, classList.get(j).getIdNumber(), "class list of C " + i);
+                }
+            }
+            //The map of courses was replaced by a bigger one: the course added before is still there.
+            Assert.assertNotNull(university.getCourse("E"), "course added before the import");
+            Assert.assertEquals(501, university.getCoursesView().size(), "courses view");
+            Assert.assertTrue(university.getCoursesView().contains(university.getCourse("C 499")), "view contains");
+        } finally {
+            TestUniversities.delete(directory);
+        }
+    }
+
+    public static void testEnsureCapacityKeepsCoursesWhileReadersRun() throws InterruptedException {
+        University university = new University("U", "M");
+        for (int i = 0; i < 100; i++) {
+            university.addCourse(new Course("Course " + i, "C " + i));
+        }
+        TestThreads.run(2, 30, thread -> {
+            if (thread == 0) {
+                for (int capacity = 200; capacity < 20_000; capacity += 200) {
+                    university.ensureCapacity(0, capacity);
+                }
+                return;
+            }
+            for (int i = 0; i < 200_000; i++) {
+                Assert.assertNotNull(university.getCourse("C " + (i % 100)), "course " + (i % 100));
+            }
+        });
+        Assert.assertEquals(100, university.getCourses().size(), "courses");
+    }
+
+    private static List<String> rejections(ImportReport report) {
+        List<String> rejections = new ArrayList<>();
+        for (ImportReport.Rejection rejection : report.getRejections()) {
+            rejections.add(rejection.getFile() + ":" + rejection.getLine() + " " + rejection.getReason());
+        }
+        return rejections;
+    }
+
+    private static Path write(Path directory, String name, String... lines) throws Exception {
+        return write(directory, name, List.of(lines));
+    }
+
+    private static Path write(Path directory, String name, List<String> lines) throws Exception {
+        return Files.write(directory.resolve(name), lines);
+    }
+}
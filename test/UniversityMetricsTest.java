@@ -0,0 +1,116 @@
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Tests of UniversityMetrics: every operation and enrollment result is counted, and the counts reach JMX.
+ */
+public class UniversityMetricsTest {
+
+    private static University university() {
+        University university = new University("U", "M");
+        university.addCourse(new Course("Course A", "A", 1));
+        university.addCourse(new Course("Course B", "B"));
+        university.addRequisiteToCourse("B", "A");
+        for (int id = 1; id <= 3; id++) {
+            university.addStudent("Student " + id, id);
+        }
+        return university;
+    }
+
+    public static void testCountsEveryEnrollmentResult() {
+        University university = university();
+        UniversityMetrics metrics = UniversityMetrics.attach(university);
+        Assert.assertEquals(EnrollmentResult.ENROLLED, university.enroll(1, "A"), "enrolled");
+        Assert.assertEquals(EnrollmentResult.ALREADY_ENROLLED, university.enroll(1, "A"), "already enrolled");
+        Assert.assertEquals(EnrollmentResult.COURSE_FULL, university.enroll(2, "A"), "full");
+        Assert.assertEquals(EnrollmentResult.MISSING_PREREQUISITES, university.enroll(2, "B"), "missing");
+        Assert.assertEquals(EnrollmentResult.UNKNOWN_STUDENT, university.enroll(9, "A"), "unknown student");
+        Assert.assertEquals(EnrollmentResult.UNKNOWN_COURSE, university.enroll(1, "Z"), "unknown course");
+        Assert.assertFalse(university.enrollStudentInCourse(1, "Z"), "unknown course again");
+
+        for (EnrollmentResult result : EnrollmentResult.values()) {
+            long expected = result == EnrollmentResult.UNKNOWN_COURSE ? 2 : 1;
+            Assert.assertEquals(expected, metrics.getCount(result), "count of " + result);
+        }
+        Assert.assertEquals(7, metrics.getCount(MetricsSink.Operation.ENROLL), "enrollments");
+        Assert.assertEquals(6, metrics.getFailures(MetricsSink.Operation.ENROLL), "refused enrollments");
+        Assert.assertEquals(7, metrics.getLatency(MetricsSink.Operation.ENROLL).getCount(), "timed enrollments");
+    }
+
+    public static void testCountsTheOtherOperationsAndTheirFailures() {
+        University university = university();
+        UniversityMetrics metrics = UniversityMetrics.attach(university);
+        university.enroll(1, "A");
+        Assert.assertTrue(university.removeStudentFromCourse(1, "A"), "drop");
+        Assert.assertFalse(university.removeStudentFromCourse(1, "A"), "drop again");
+        Assert.assertTrue(university.removeStudentFromUniversity(3), "remove student");
+        Assert.assertFalse(university.removeStudentFromUniversity(3), "remove student again");
+        Assert.assertFalse(university.removeStudentFromUniversity(8), "remove unknown student");
+        Assert.assertTrue(university.removeCourseFromUniversity("B"), "remove course");
+
+        Assert.assertEquals(2, metrics.getCount(MetricsSink.Operation.DROP), "drops");
+        Assert.assertEquals(1, metrics.getFailures(MetricsSink.Operation.DROP), "failed drops");
+        Assert.assertEquals(3, metrics.getCount(MetricsSink.Operation.REMOVE_STUDENT), "student removals");
+        Assert.assertEquals(2, metrics.getFailures(MetricsSink.Operation.REMOVE_STUDENT), "failed student removals");
+        Assert.assertEquals(1, metrics.getCount(MetricsSink.Operation.REMOVE_COURSE), "course removals");
+        Assert.assertEquals(0, metrics.getFailures(MetricsSink.Operation.REMOVE_COURSE), "failed course removals");
+    }
+
+    public static void testDetachAndResetStopAndClearTheCounts() {
+        University university = university();
+        UniversityMetrics metrics = UniversityMetrics.attach(university);
+        university.enroll(1, "A");
+        metrics.reset();
+        Assert.assertEquals(0, metrics.getCount(MetricsSink.Operation.ENROLL), "enrollments after reset");
+        Assert.assertEquals(0, metrics.getCount(EnrollmentResult.ENROLLED), "enrolled after reset");
+
+        //Metrics attached later replace these ones, which then must not detach them.
+        UniversityMetrics other = UniversityMetrics.attach(university);
+        metrics.detach();
+        Assert.assertSame(other, university.getMetricsSink(), "newer metrics kept");
+        other.detach();
+        Assert.assertNull(university.getMetricsSink(), "detached");
+        university.enroll(2, "B");
+        Assert.assertEquals(0, other.getCount(MetricsSink.Operation.ENROLL), "nothing counted once detached");
+    }
+
+    public static void testCountsUnderConcurrentRegistration() throws InterruptedException {
+        University university = new University("U", "M");
+        university.addCourse(new Course("Course A", "A", 100));
+        for (int id = 0; id < 400; id++) {
+            university.addStudent("Student " + id, id);
+        }
+        UniversityMetrics metrics = UniversityMetrics.attach(university);
+        TestThreads.run(4, 60, thread -> {
+            for (int id = 0; id < 400; id++) {
+                university.enroll(id, "A");
+            }
+        });
+        Assert.assertEquals(1_600, metrics.getCount(MetricsSink.Operation.ENROLL), "enrollments");
+        Assert.assertEquals(100, metrics.getCount(EnrollmentResult.ENROLLED), "seats taken");
+        Assert.assertEquals(1_500, metrics.getFailures(MetricsSink.Operation.ENROLL), "refused");
+    }
+
+    public static void testReadableOverJmx() throws Exception {
+        University university = university();
+        UniversityMetrics metrics = UniversityMetrics.attach(university);
+        university.enroll(1, "A");
+        university.enroll(2, "A");
+        ObjectName name = metrics.registerMBean("metrics test");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            CompositeData enroll = (CompositeData) server.getAttribute(name, "Enroll");
+            Assert.assertEquals(2L, enroll.get("count"), "enrollments over JMX");
+            Assert.assertEquals(1L, enroll.get("failures"), "refused over JMX");
+            Map<String, Long> results = metrics.getEnrollmentResults();
+            Assert.assertEquals(Long.valueOf(1), results.get("COURSE_FULL"), "full course in the results");
+            server.invoke(name, "reset", null, null);
+            Assert.assertEquals(0, metrics.getCount(MetricsSink.Operation.ENROLL), "reset over JMX");
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tests of UniversitySnapshot: a saved university loads back unchanged, whatever its shape.
+ */
+public class UniversitySnapshotTest {
+
+    public static void testRoundTripKeepsEverything() throws Exception {
+        University university = new University("Universit\u00e9", "Lux et veritas");
+        for (int i = 0; i < 5; i++) {
+            university.addCourse(new Course("Course \u00e9" + i, "C " + i));
+            university.addStudent("Student \u00fc" + i, i - 2);
+        }
+        university.addRequisiteToCourse("C 3", "C 1");
+        university.addRequisiteToCourse("C 3", "C 2");
+        university.addPreviousCourseToStudent(0, "C 1");
+        university.setCourseCapacity("C 0", 2);
+        for (int id = -2; id < 3; id++) {
+            if (university.enroll(id, "C 0") == EnrollmentResult.COURSE_FULL) {
+                university.addStudentToWaitlist(id, "C 0");
+            }
+        }
+        university.enrollStudentInCourse(2, "C 4");
+
+        University loaded = roundTrip(university);
+        Assert.assertEquals("Universit\u00e9", loaded.getUniversityName(), "name");
+        Assert.assertEquals("Lux et veritas", loaded.getUniversityMotto(), "motto");
+        Assert.assertEquals(TestUniversities.describe(university), TestUniversities.describe(loaded), "university");
+        Assert.assertEquals(0, loaded.getCourse("C 0").getAvailableSeats(), "seats of the full course");
+        Assert.assertEquals(Set.of(loaded.getCourse("C 0")), loaded.getStudent(2).getWaitlistedCourses(),
+                "waitlisted courses of a student");
+    }
+
+    public static void testLoadedUniversityKeepsWorking() throws Exception {
+        University university = new University("U", "M");
+        university.addCourse(new Course("Course 0", "C 0", 1));
+        university.addCourse(new Course("Course 1", "C 1"));
+        university.addRequisiteToCourse("C 1", "C 0");
+        university.addStudent("A", 1);
+        university.addStudent("B", 2);
+        university.enrollStudentInCourse(1, "C 0");
+        university.addStudentToWaitlist(2, "C 0");
+
+        University loaded = roundTrip(university);
+        //The waitlist and the pre-requisites were rebuilt, not only copied.
+        Assert.assertTrue(loaded.removeStudentFromCourse(1, "C 0"), "drop");
+        Assert.assertEquals(List.of(loaded.getStudent(2)), loaded.getCourse("C 0").getEnrolledStudents(),
+                "the waitlisted student got the seat");
+        Assert.assertEquals(EnrollmentResult.MISSING_PREREQUISITES, loaded.enroll(1, "C 1"), "pre-requisite");
+        loaded.addPreviousCourseToStudent(1, "C 0");
+        Assert.assertEquals(EnrollmentResult.ENROLLED, loaded.enroll(1, "C 1"), "pre-requisite passed");
+    }
+
+    public static void testEmptyUniversity() throws Exception {
+        University loaded = roundTrip(new University("U", "M"));
+        Assert.assertTrue(loaded.getStudents().isEmpty(), "students");
+        Assert.assertTrue(loaded.getCourses().isEmpty(), "courses");
+    }
+
+    public static void testLongPrerequisiteChainDoesNotRecurse() throws Exception {
+        //Java serialization overflows the stack on a chain like this one.
+        University university = new University("U", "M");
+        int length = 10_000;
+        for (int i = 0; i < length; i++) {
+            university.addCourse(new Course("Course " + i, "C " + i));
+            if (i > 0) {
+                university.addRequisiteToCourse("C " + i, "C " + (i - 1));
+            }
+        }
+        University loaded = roundTrip(university);
+        Assert.assertEquals(length, loaded.getCourses().size(), "courses");
+        Assert.assertEquals(List.of(loaded.getCourse("C 41")), loaded.getCourse("C 42").getPreRequisites(),
+                "pre-requisite of C 42");
+    }
+
+    public static void testOtherFilesAreRefused() throws Exception {
+        Path file = Files.createTempFile("university", ".bin");
+        try {
+            Files.write(file, new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+            Assert.assertThrows(IOException.class, () -> UniversitySnapshot.read(file), "not a snapshot");
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    public static void testDuplicateStudentsAndCoursesAreRefused() throws Exception {
+        Path file = Files.createTempFile("university", ".bin");
+        try {
+            //Version 1 files have no index, so the records can be written by hand.
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file))) {
+                header(out, 2, 0);
+                student(out, 7, "A");
+                student(out, 7, "B");
+            }
+            Assert.assertThrows(IOException.class, () -> UniversitySnapshot.read(file), "student ID twice");
+
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file))) {
+                header(out, 0, 2);
+                course(out, "C 1", "First");
+                course(out, "C 1", "Second");
+            }
+            Assert.assertThrows(IOException.class, () -> UniversitySnapshot.read(file), "course code twice");
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static void header(DataOutputStream out, int studentCount, int courseCount) throws IOException {
+        out.writeInt(UniversitySnapshot.MAGIC);
+        out.writeShort(1);
+        string(out, "U");
+        string(out, "M");
+        out.writeInt(studentCount);
+        out.writeInt(courseCount);
+    }
+
+    private static void student(DataOutputStream out, int id, String name) throws IOException {
+        out.writeInt(id);
+        string(out, name);
+        out.writeInt(0);
+    }
+
+    private static void course(DataOutputStream out, String code, String name) throws IOException {
+        string(out, code);
+        string(out, name);
+        out.writeInt(Course.UNLIMITED);
+        out.writeInt(0);
+        out.writeInt(0);
+        out.writeInt(0);
+    }
+
+    private static void string(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static University roundTrip(University university) throws IOException {
+        Path file = Files.createTempFile("university", ".bin");
+        try {
+            UniversitySnapshot.write(university, file);
+            return UniversitySnapshot.read(file);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
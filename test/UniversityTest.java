@@ -0,0 +1,354 @@
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests of the University: enrollment rules, seats and waitlists, and concurrent use.
+ */
+public class UniversityTest {
+
+    /*
+     * Enrollment
+     */
+
+    public static void testEnrollmentIsSeenFromBothSides() {
+        University university = university(3, 2);
+        Assert.assertTrue(university.enrollStudentInCourse(1, "C 0"), "first enrollment");
+        Student student = university.getStudent(1);
+        Course course = university.getCourse("C 0");
+        Assert.assertTrue(student.getEnrolledCourses().contains(course), "course in the student's courses");
+        Assert.assertEquals(List.of(student), course.getEnrolledStudents(), "class list");
+    }
+
+    public static void testEnrolledCoursesAreAReadOnlyView() {
+        University university = university(3, 2);
+        Student student = university.getStudent(1);
+        Set<Course> courses = student.getEnrolledCourses();
+        university.enroll(1, "C 0");
+        Assert.assertEquals(Set.of(university.getCourse("C 0")), courses, "view after enrolling");
+        Assert.assertThrows(UnsupportedOperationException.class, () -> courses.add(university.getCourse("C 1")),
+                "course added to the view");
+        Assert.assertThrows(UnsupportedOperationException.class, () -> {
+            courses.clear();
+            return null;
+        }, "view cleared");
+        Assert.assertEquals(List.of(student), university.getCourse("C 0").getEnrolledStudents(), "class list");
+    }
+
+    public static void testStudentCannotEnrollTwice() {
+        University university = university(3, 2);
+        Assert.assertTrue(university.enrollStudentInCourse(1, "C 0"), "first enrollment");
+        Assert.assertFalse(university.enrollStudentInCourse(1, "C 0"), "second enrollment");
+        Assert.assertEquals(1, university.getCourse("C 0").getEnrolledStudents().size(), "class list size");
+    }
+
+    public static void testUnknownIdsAndCodesAreRefused() {
+        University university = university(3, 2);
+        Assert.assertFalse(university.enrollStudentInCourse(99, "C 0"), "unknown student");
+        Assert.assertFalse(university.enrollStudentInCourse(1, "NOPE"), "unknown course");
+        Assert.assertFalse(university.removeStudentFromCourse(99, "C 0"), "drop of an unknown student");
+        Assert.assertFalse(university.removeStudentFromCourse(1, "C 0"), "drop without enrollment");
+        Assert.assertFalse(university.removeStudentFromUniversity(99), "removal of an unknown student");
+        Assert.assertFalse(university.removeCourseFromUniversity("NOPE"), "removal of an unknown course");
+    }
+
+    public static void testRemovingStudentLeavesNoRosterEntry() {
+        University university = university(3, 2);
+        university.enrollStudentInCourse(1, "C 0");
+        university.enrollStudentInCourse(1, "C 1");
+        Assert.assertTrue(university.removeStudentFromUniversity(1), "removal");
+        Assert.assertNull(university.getStudent(1), "removed student");
+        Assert.assertTrue(university.getCourse("C 0").getEnrolledStudents().isEmpty(), "C 0 class list");
+        Assert.assertTrue(university.getCourse("C 1").getEnrolledStudents().isEmpty(), "C 1 class list");
+    }
+
+    public static void testRemovingCourseDropsItEverywhere() {
+        University university = university(3, 3);
+        university.addRequisiteToCourse("C 2", "C 0");
+        university.enrollStudentInCourse(1, "C 0");
+        Assert.assertTrue(university.removeCourseFromUniversity("C 0"), "removal");
+        Assert.assertTrue(university.getStudent(1).getEnrolledCourses().isEmpty(), "student's courses");
+        Assert.assertTrue(university.getCourse("C 2").getPreRequisites().isEmpty(), "pre-requisites of C 2");
+    }
+
+    /*
+     * Seats and waitlists
+     */
+
+    public static void testFullCourseRefusesStudents() {
+        University university = university(3, 1);
+        university.setCourseCapacity("C 0", 1);
+        Assert.assertEquals(EnrollmentResult.ENROLLED, university.enroll(0, "C 0"), "first student");
+        Assert.assertEquals(EnrollmentResult.COURSE_FULL, university.enroll(1, "C 0"), "second student");
+        Assert.assertEquals(0, university.getCourse("C 0").getAvailableSeats(), "available seats");
+    }
+
+    public static void testOtherReasonsComeBeforeAFullCourse() {
+        University university = university(3, 2);
+        university.addRequisiteToCourse("C 0", "C 1");
+        university.setCourseCapacity("C 0", 1);
+        university.getStudent(0).addPreviousCourse(university.getCourse("C 1"));
+        Assert.assertEquals(EnrollmentResult.ENROLLED, university.enroll(0, "C 0"), "eligible student");
+        Assert.assertEquals(EnrollmentResult.ALREADY_ENROLLED, university.enroll(0, "C 0"), "enrolled student");
+        Assert.assertEquals(EnrollmentResult.MISSING_PREREQUISITES, university.enroll(1, "C 0"), "ineligible student");
+    }
+
+    public static void testIneligibleStudentWaitingForLocksDoesNotHoldTheLastSeat() throws Exception {
+        University university = university(3, 2);
+        university.addRequisiteToCourse("C 0", "C 1");
+        university.setCourseCapacity("C 0", 2);
+        university.getStudent(0).addPreviousCourse(university.getCourse("C 1"));
+        university.getStudent(2).addPreviousCourse(university.getCourse("C 1"));
+        //Student 0's enrollment keeps the course's locks until released, with one seat left.
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        university.addListener(new UniversityListener() {
+            @Override
+            public void studentEnrolled(Student student, Course course) {
+                if (student.getIdNumber() == 0) {
+                    holding.countDown();
+                    await(release);
+                }
+            }
+        });
+        Thread first = new Thread(() -> university.enroll(0, "C 0"));
+        first.start();
+        holding.await();
+
+        //Student 1 does not have the pre-requisite and waits for the locks. Student 2 can take the last seat.
+        Thread ineligible = new Thread(() -> university.enroll(1, "C 0"));
+        ineligible.start();
+        while (ineligible.getState() != Thread.State.WAITING) {
+            Thread.onSpinWait();
+        }
+        CompletableFuture<EnrollmentResult> eligible = CompletableFuture.supplyAsync(() -> university.enroll(2, "C 0"));
+        Thread.sleep(50);
+        release.countDown();
+        Assert.assertEquals(EnrollmentResult.ENROLLED, eligible.get(10, TimeUnit.SECONDS), "eligible student");
+        first.join();
+        ineligible.join();
+        assertConsistent(university);
+    }
+
+    public static void testWaitlistGetsReleasedSeatsInOrder() {
+        University university = university(4, 1);
+        university.setCourseCapacity("C 0", 1);
+        university.enroll(0, "C 0");
+        Assert.assertTrue(university.addStudentToWaitlist(1, "C 0"), "first on the waitlist");
+        Assert.assertTrue(university.addStudentToWaitlist(2, "C 0"), "second on the waitlist");
+        Assert.assertFalse(university.addStudentToWaitlist(2, "C 0"), "waitlisted twice");
+        Assert.assertFalse(university.addStudentToWaitlist(0, "C 0"), "enrolled student waitlisted");
+
+        university.removeStudentFromCourse(0, "C 0");
+        Course course = university.getCourse("C 0");
+        Assert.assertEquals(List.of(university.getStudent(1)), course.getEnrolledStudents(), "after the first drop");
+        Assert.assertEquals(1, course.getWaitlistSize(), "still waiting");
+
+        university.setCourseCapacity("C 0", 2);
+        Assert.assertEquals(2, course.getEnrolledStudents().size(), "after growing the course");
+        Assert.assertTrue(course.isWaitlistEmpty(), "waitlist emptied");
+        assertConsistent(university);
+    }
+
+    public static void testRemovedStudentLeavesTheWaitlist() {
+        University university = university(3, 1);
+        university.setCourseCapacity("C 0", 1);
+        university.enroll(0, "C 0");
+        university.addStudentToWaitlist(1, "C 0");
+        university.removeStudentFromUniversity(1);
+        Assert.assertTrue(university.getCourse("C 0").isWaitlistEmpty(), "waitlist");
+        university.removeStudentFromCourse(0, "C 0");
+        Assert.assertEquals(1, university.getCourse("C 0").getAvailableSeats(), "freed seat");
+    }
+
+    public static void testStudentKnowsTheWaitlistsTheyAreOn() {
+        University university = university(3, 3);
+        for (int i = 0; i < 3; i++) {
+            university.setCourseCapacity("C " + i, 1);
+            university.enroll(0, "C " + i);
+        }
+        university.addStudentToWaitlist(1, "C 0");
+        university.addStudentToWaitlist(1, "C 2");
+        Student student = university.getStudent(1);
+        Assert.assertEquals(2, student.getWaitlistedCourses().size(), "waitlists");
+
+        //Getting the seat takes the student off that waitlist only.
+        university.removeStudentFromCourse(0, "C 0");
+        Assert.assertEquals(List.of(university.getCourse("C 2")), List.copyOf(student.getWaitlistedCourses()),
+                "waitlists after getting a seat");
+
+        university.removeCourseFromUniversity("C 2");
+        Assert.assertTrue(student.getWaitlistedCourses().isEmpty(), "waitlists after the course was removed");
+        assertConsistent(university);
+    }
+
+    public static void testSeatsNeverExceedTheCapacity() throws InterruptedException {
+        final int students = 300;
+        University university = university(students, 4);
+        for (int i = 0; i < 4; i++) {
+            university.setCourseCapacity("C " + i, 10);
+        }
+        TestThreads.run(4, 60, thread -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < 20_000; i++) {
+                int studentID = random.nextInt(students);
+                String code = "C " + random.nextInt(4);
+                int operation = random.nextInt(10);
+                if (operation < 4) {
+                    university.enroll(studentID, code);
+                } else if (operation < 6) {
+                    university.addStudentToWaitlist(studentID, code);
+                } else if (operation < 9) {
+                    university.removeStudentFromCourse(studentID, code);
+                } else {
+                    //Removing a student frees their seats while their drops may be running.
+                    university.removeStudentFromUniversity(studentID);
+                    university.addStudent("Student " + studentID, studentID);
+                }
+            }
+        });
+        for (Course course : university.getCourses()) {
+            Assert.assertTrue(course.getEnrolledStudents().size() <= 10, course + " over capacity");
+        }
+        assertConsistent(university);
+    }
+
+    /*
+     * Concurrency
+     */
+
+    public static void testSameEnrollmentFromManyThreadsSucceedsOnce() throws InterruptedException {
+        University university = university(1, 1);
+        AtomicInteger enrolled = new AtomicInteger();
+        TestThreads.run(8, 30, thread -> {
+            for (int i = 0; i < 1_000; i++) {
+                if (university.enrollStudentInCourse(0, "C 0")) {
+                    enrolled.incrementAndGet();
+                }
+                if (thread == 0 && i % 10 == 0 && university.removeStudentFromCourse(0, "C 0")) {
+                    enrolled.decrementAndGet();
+                }
+            }
+        });
+        Assert.assertEquals(university.getCourse("C 0").getEnrolledStudents().size(), enrolled.get(), "enrolled");
+        assertConsistent(university);
+    }
+
+    public static void testConcurrentRegistrationKeepsBothSidesConsistent() throws InterruptedException {
+        final int students = 400;
+        final int courses = 40;
+        University university = university(students, courses);
+        TestThreads.run(4, 60, thread -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < 50_000; i++) {
+                int studentID = random.nextInt(students);
+                String code = "C " + random.nextInt(courses);
+                int operation = random.nextInt(100);
+                if (operation < 60) {
+                    university.enrollStudentInCourse(studentID, code);
+                } else if (operation < 95) {
+                    university.removeStudentFromCourse(studentID, code);
+                } else if (operation < 98) {
+                    university.removeStudentFromUniversity(studentID);
+                } else {
+                    university.addStudent("Student " + studentID, studentID);
+                }
+            }
+        });
+        assertConsistent(university);
+    }
+
+    public static void testCatalogChangesDuringRegistrationDoNotDeadlock() throws InterruptedException {
+        final int students = 200;
+        final int courses = 30;
+        University university = university(students, courses);
+        TestThreads.run(4, 60, thread -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < 20_000; i++) {
+                String code = "C " + random.nextInt(courses);
+                if (thread == 0 && i % 50 == 0) {
+                    //Catalog changes take the catalog lock exclusively, in the middle of enrollments.
+                    if (random.nextBoolean()) {
+                        university.addRequisiteToCourse(code, "C " + random.nextInt(courses));
+                    } else if (university.removeCourseFromUniversity(code)) {
+                        university.addCourse("Course " + code, code);
+                    }
+                } else if (random.nextBoolean()) {
+                    university.enrollStudentInCourse(random.nextInt(students), code);
+                } else {
+                    university.removeStudentFromUniversity(random.nextInt(students));
+                    university.addStudent("Student", random.nextInt(students));
+                }
+            }
+        });
+        assertConsistent(university);
+    }
+
+    /*
+     * Helpers
+     */
+
+    static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * A university with students 0 to students - 1 and courses "C 0" to "C courses-1", without pre-requisites.
+     */
+    static University university(int students, int courses) {
+        University university = new University("Test University", "Tests pass");
+        for (int i = 0; i < students; i++) {
+            university.addStudent("Student " + i, i);
+        }
+        for (int i = 0; i < courses; i++) {
+            university.addCourse("Course " + i, "C " + i);
+        }
+        return university;
+    }
+
+    /**
+     * Checks that both sides of every enrollment agree, and that removed students and courses are not left behind.
+     * @return the number of enrollments
+     */
+    static int assertConsistent(University university) {
+        int enrollments = 0;
+        for (Student student : university.getStudents()) {
+            for (Course course : student.getEnrolledCourses()) {
+                Assert.assertSame(university.getCourse(course.getCourseCode()), course, student + " enrolled in");
+                Assert.assertTrue(course.getEnrolledStudents().contains(student),
+                        student + " is enrolled in " + course + " but not on its class list");
+                enrollments++;
+            }
+        }
+        int classListEntries = 0;
+        for (Course course : university.getCourses()) {
+            for (Student student : course.getEnrolledStudents()) {
+                Assert.assertSame(university.getStudent(student.getIdNumber()), student, course + " lists");
+                Assert.assertTrue(student.getEnrolledCourses().contains(course),
+                        course + " lists " + student + " who is not enrolled in it");
+                classListEntries++;
+            }
+            Assert.assertEquals(course.getEnrolledStudents().size(), course.getSeatsTaken(), course + " seats taken");
+            for (Student student : course.getWaitlist()) {
+                Assert.assertSame(university.getStudent(student.getIdNumber()), student, course + " waitlist has");
+                Assert.assertTrue(student.getWaitlistedCourses().contains(course),
+                        student + " is on the waitlist of " + course + " but does not know it");
+            }
+        }
+        for (Student student : university.getStudents()) {
+            for (Course course : student.getWaitlistedCourses()) {
+                Assert.assertTrue(course.isOnWaitlist(student), student + " thinks they wait for " + course);
+            }
+        }
+        Assert.assertEquals(enrollments, classListEntries, "class list entries");
+        return enrollments;
+    }
+}